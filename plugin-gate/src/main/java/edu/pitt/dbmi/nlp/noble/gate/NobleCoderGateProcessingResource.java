@@ -18,7 +18,9 @@
 
 package edu.pitt.dbmi.nlp.noble.gate;
 
-import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TerminologyRegistry;
 import edu.pitt.dbmi.nlp.noble.terminology.Annotation;
 import edu.pitt.dbmi.nlp.noble.terminology.Concept;
 import edu.pitt.dbmi.nlp.noble.terminology.SemanticType;
@@ -44,6 +46,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
 
 /**
  * This class is the implementation of the resource NOBLE CODER GATE PROCESSING
@@ -58,7 +61,7 @@ public class NobleCoderGateProcessingResource extends AbstractLanguageAnalyser {
 	private gate.Annotation currentCodableSpanAnnotation;
 	private String currentCodeableSpanText;
 
-	private NobleCoderTerminology coder;
+	private TerminologyRegistry.Handle handle;
 
 	private boolean isInterrupted;
 
@@ -385,6 +388,17 @@ public class NobleCoderGateProcessingResource extends AbstractLanguageAnalyser {
 	public void reInit() throws ResourceInstantiationException {
 	}
 
+	/**
+	 * release shared terminology, it is disposed of when the last resource that uses it is deleted
+	 */
+	public void cleanup() {
+		if (handle != null) {
+			handle.close();
+			handle = null;
+		}
+		super.cleanup();
+	}
+
 	public boolean isInterrupted() {
 		return isInterrupted;
 	}
@@ -395,7 +409,7 @@ public class NobleCoderGateProcessingResource extends AbstractLanguageAnalyser {
 	public void execute() throws ExecutionException {
 
 		try {
-			if (coder == null) {
+			if (handle == null) {
 				openNobleCoder();
 			}
 		} catch (Exception e) {
@@ -423,65 +437,58 @@ public class NobleCoderGateProcessingResource extends AbstractLanguageAnalyser {
 
 	}
 
+	/**
+	 * search options of this processing resource, shared terminology is not changed.
+	 */
 	private void initializeParameters() {
-		//coder.setCachingEnabled(getCachingEnabled());
-		coder.setContiguousMode(getContiguousMode());
-		coder.setDefaultSearchMethod(getDefaultSearchMethod());
-		coder.setLanguageFilter(parameterizeLanguages(languages));
-		parameterizeSemanticTypes();
-		parameterizeSources();
-		coder.setIgnoreAcronyms(getIgnoreAcronyms());
-		coder.setIgnoreCommonWords(getIgnoreCommonWords());
-		coder.setIgnoreDigits(getIgnoreDigits());
-		coder.setIgnoreSmallWords(getIgnoreSmallWords());
-		coder.setIgnoreUsedWords(getIgnoreUsedWords());
-		coder.setOrderedMode(getOrderedMode());
-		coder.setOverlapMode(getOverlapMode());
-		coder.setPartialMode(getPartialMode());
-		coder.setScoreConcepts(getScoreConcepts());
-		coder.setSelectBestCandidate(getSelectBestCandidate());
-		coder.setStemWords(getStemWords());
-		coder.setSubsumptionMode(getSubsumptionMode());
-		coder.setWindowSize(getWindowSize());
-	}
-
-	private String[] parameterizeLanguages(List<String> languages) {
-		 String[] lArray = new String[languages.size()];
-		 int ldex = 0;
-		 for (String language : languages) {
-			 lArray[ldex++] = language;
-		 }
-		 return lArray;
-	}
-
-	private void parameterizeSemanticTypes() {
+		//p.setProperty("caching.enabled",""+getCachingEnabled());
+		Properties p = new Properties();
+		p.setProperty("contiguous.mode", "" + getContiguousMode());
+		p.setProperty("default.search.method", getDefaultSearchMethod());
+		if (languages != null)
+			p.setProperty("language.filter", NobleCoderUtils.toString(languages.toArray()));
+		p.setProperty("ignore.acronyms", "" + getIgnoreAcronyms());
+		p.setProperty("ignore.common.words", "" + getIgnoreCommonWords());
+		p.setProperty("ignore.digits", "" + getIgnoreDigits());
+		p.setProperty("ignore.small.words", "" + getIgnoreSmallWords());
+		p.setProperty("ignore.used.words", "" + getIgnoreUsedWords());
+		p.setProperty("ordered.mode", "" + getOrderedMode());
+		p.setProperty("overlap.mode", "" + getOverlapMode());
+		p.setProperty("partial.mode", "" + getPartialMode());
+		p.setProperty("score.concepts", "" + getScoreConcepts());
+		p.setProperty("select.best.candidate", "" + getSelectBestCandidate());
+		p.setProperty("stem.words", "" + getStemWords());
+		p.setProperty("subsumption.mode", "" + getSubsumptionMode());
+		p.setProperty("window.size", "" + getWindowSize());
+		handle.setSearchProperties(p);
+		// semantic type names can have commas in them, so filters are passed as objects and not as properties
+		handle.setSearchOptions(new SearchOptions(handle.getSearchOptions(), parameterizeSources(), parameterizeSemanticTypes()));
+	}
+
+	private SemanticType[] parameterizeSemanticTypes() {
+		List<SemanticType> semTypeFilters = new ArrayList<SemanticType>();
 		if (tuis != null && !tuis.isEmpty()) {
-			final SemanticType[] semTypeFilters = new SemanticType[tuis.size()];
 			Iterator<String> tuiIterator = tuis.iterator();
 			Iterator<String> styIterator = stys.iterator();
-			int tdx = 0;
 			while (tuiIterator.hasNext() && styIterator.hasNext()) {
 				String sty = styIterator.next();
 				String tui = tuiIterator.next();
-				semTypeFilters[tdx++] = SemanticType.getSemanticType(sty, tui);
+				semTypeFilters.add(SemanticType.getSemanticType(sty, tui));
 			}
-			coder.setSemanticTypeFilter(semTypeFilters);
-		} else {
-			coder.setSemanticTypeFilter("");
 		}
+		return semTypeFilters.toArray(new SemanticType[semTypeFilters.size()]);
 	}
 
-	private void parameterizeSources() {
+	private Source[] parameterizeSources() {
 		if (sources != null && !sources.isEmpty()) {
 			final Source[] sourceFilters = new Source[sources.size()];
 			int tdx = 0;
 			for (String sab : sources) {
-				sourceFilters[tdx++] = new Source(sab);
+				sourceFilters[tdx++] = Source.getSource(sab);
 			}
-			coder.setSourceFilter(sourceFilters);
-		} else {
-			coder.setLanguageFilter(null);
+			return sourceFilters;
 		}
+		return null;
 	}
 
 	private void processCodableSpanAnnotation() {
@@ -494,7 +501,7 @@ public class NobleCoderGateProcessingResource extends AbstractLanguageAnalyser {
 					System.out.println("Calling Noble Coder with => "
 							+ currentCodeableSpanText);
 				}
-				Concept[] concepts = coder.search(currentCodeableSpanText);
+				Concept[] concepts = handle.search(currentCodeableSpanText);
 				for (Concept srcConcept : concepts) {
 					int[] annotationRange = deriveAnnotationRange(srcConcept
 							.getAnnotations());
@@ -549,7 +556,7 @@ public class NobleCoderGateProcessingResource extends AbstractLanguageAnalyser {
 	}
 
 	private void openNobleCoder() throws Exception {
-		if (coder == null) {
+		if (handle == null) {
 			URL terminologyURL = getTerminologyURL();
 			File nobleCoderInfoFile = new File(terminologyURL.getFile());
 			if (!nobleCoderInfoFile.exists() || !nobleCoderInfoFile.isFile()) {
@@ -562,7 +569,7 @@ public class NobleCoderGateProcessingResource extends AbstractLanguageAnalyser {
 						+ nobleDirectory.getAbsolutePath()));
 			}
 
-			coder = new NobleCoderTerminology(nobleDirectory.getAbsolutePath());
+			handle = TerminologyRegistry.open(nobleDirectory);
 			initializeParameters();
 
 			if (debugging) {
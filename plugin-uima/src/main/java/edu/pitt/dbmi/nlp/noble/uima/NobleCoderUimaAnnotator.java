@@ -4,6 +4,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
 
 import edu.pitt.dbmi.nlp.noble.util.StringUtils;
 
@@ -31,6 +32,8 @@ import edu.pitt.dbmi.nlp.noble.coder.model.Modifier;
 import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
 import edu.pitt.dbmi.nlp.noble.terminology.Terminology;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TerminologyRegistry;
 import edu.pitt.dbmi.nlp.noble.terminology.Annotation;
 import edu.pitt.dbmi.nlp.noble.terminology.Concept;
 import edu.pitt.dbmi.nlp.noble.terminology.Definition;
@@ -43,7 +46,12 @@ import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
 public class NobleCoderUimaAnnotator extends JCasAnnotator_ImplBase {
 
 	private static final String PARAM_DATA_BLOCK_FS = "SpanFeatureStructure";
+	private static final String RESOURCE_TERMINOLOGY = "NobleCoderTerminology";
+	private static final String [] SEARCH_PARAMETERS = new String [] {"contiguous.mode","default.search.method","ignore.acronyms",
+		"ignore.common.words","ignore.small.words","ignore.used.words","ordered.mode","overlap.mode","partial.mode","score.concepts",
+		"select.best.candidate","subsumption.mode","maximum.word.gap","window.size"};
 
+	private TerminologyRegistry.Handle handle = null;
 	private NobleCoderTerminology terminology = null;
 	private NobleCoder coder = null;
 
@@ -80,9 +88,16 @@ public class NobleCoderUimaAnnotator extends JCasAnnotator_ImplBase {
 
 	private void initializeComponents(UimaContext uimaContext) throws ResourceInitializationException {
 		try {
-			String terminologyPath = (String) uimaContext.getConfigParameterValue("terminology.name");
-			
-			terminology = new NobleCoderTerminology(terminologyPath);
+			// terminology is shared between annotators that open the same location,
+			// a bound terminology resource takes precedence over terminology name
+			Object resource = uimaContext.getResourceObject(RESOURCE_TERMINOLOGY);
+			if (resource instanceof TerminologyResource) {
+				handle = ((TerminologyResource) resource).open();
+			} else {
+				String terminologyPath = (String) uimaContext.getConfigParameterValue("terminology.name");
+				handle = TerminologyRegistry.open(terminologyPath);
+			}
+			terminology = handle.getTerminology();
 			coder = new NobleCoder(terminology);
 			coder.setContextDetection(((Boolean) uimaContext.getConfigParameterValue("context.detection")).booleanValue());
 			coder.setAcronymExpansion(((Boolean) uimaContext.getConfigParameterValue("acronym.expansion")).booleanValue());
@@ -94,24 +109,18 @@ public class NobleCoderUimaAnnotator extends JCasAnnotator_ImplBase {
 
 	private void initializeParameters(UimaContext uimaContext) throws ResourceInitializationException {
 		try {
-			terminology.setContiguousMode(((Boolean) uimaContext.getConfigParameterValue("contiguous.mode")).booleanValue());
-			terminology.setDefaultSearchMethod((String) uimaContext.getConfigParameterValue("default.search.method"));
-			terminology.setIgnoreAcronyms(((Boolean) uimaContext.getConfigParameterValue("ignore.acronyms")).booleanValue());
-			terminology.setIgnoreCommonWords(((Boolean) uimaContext.getConfigParameterValue("ignore.common.words")).booleanValue());
-			terminology.setIgnoreSmallWords(((Boolean) uimaContext.getConfigParameterValue("ignore.small.words")).booleanValue());
-			terminology.setIgnoreUsedWords(((Boolean) uimaContext.getConfigParameterValue("ignore.used.words")).booleanValue());
-			terminology.setOrderedMode(((Boolean) uimaContext.getConfigParameterValue("ordered.mode")).booleanValue());
-			terminology.setOverlapMode(((Boolean) uimaContext.getConfigParameterValue("overlap.mode")).booleanValue());
-			terminology.setPartialMode(((Boolean) uimaContext.getConfigParameterValue("partial.mode")).booleanValue());
-			terminology.setScoreConcepts(((Boolean) uimaContext.getConfigParameterValue("score.concepts")).booleanValue());
-			terminology.setSelectBestCandidate(((Boolean) uimaContext.getConfigParameterValue("select.best.candidate")).booleanValue());
-			terminology.setSubsumptionMode(((Boolean) uimaContext.getConfigParameterValue("subsumption.mode")).booleanValue());
-			terminology.setMaximumWordGap(((Integer) uimaContext.getConfigParameterValue("maximum.word.gap")).intValue());
-			terminology.setWindowSize(((Integer) uimaContext.getConfigParameterValue("window.size")).intValue());
-			
-			parameterizeSemanticTypes(uimaContext);
-			parameterizeSources(uimaContext);
-			
+			// search options of this annotator, shared terminology is not changed
+			Properties p = new Properties();
+			for (String name : SEARCH_PARAMETERS) {
+				Object value = uimaContext.getConfigParameterValue(name);
+				if (value != null)
+					p.setProperty(name, value.toString());
+			}
+			parameterizeSources(uimaContext, p);
+			handle.setSearchProperties(p);
+			// semantic type names can have commas in them, so they are passed as objects and not as a property
+			handle.setSearchOptions(new SearchOptions(handle.getSearchOptions(), null, parameterizeSemanticTypes(uimaContext)));
+			coder.setSearchOptions(handle.getSearchOptions());
 			
 			spanFeatureStructureName = (String) uimaContext.getConfigParameterValue(PARAM_DATA_BLOCK_FS);
 
@@ -120,31 +129,24 @@ public class NobleCoderUimaAnnotator extends JCasAnnotator_ImplBase {
 		}
 	}
 
-	private void parameterizeSemanticTypes(UimaContext uimaContext) {
+	private SemanticType[] parameterizeSemanticTypes(UimaContext uimaContext) {
 		String colonSeparatedTuis = (String) uimaContext.getConfigParameterValue("tui.filter");
 		String colonSeparatedStys = (String) uimaContext.getConfigParameterValue("sty.filter");
+		List<SemanticType> semTypeFilters = new ArrayList<SemanticType>();
 		if (!StringUtils.isEmpty(colonSeparatedTuis) && !StringUtils.isEmpty(colonSeparatedStys)) {
 			final String[] tuis = colonSeparatedTuis.split(":");
 			final String[] stys = colonSeparatedStys.split(":");
-			final SemanticType[] semTypeFilters = new SemanticType[tuis.length];
 			for (int tdx = 0; tdx < tuis.length; tdx++) {
-				semTypeFilters[tdx] = SemanticType.getSemanticType(stys[tdx], tuis[tdx]);
+				semTypeFilters.add(SemanticType.getSemanticType(stys[tdx], tuis[tdx]));
 			}
-			terminology.setSemanticTypeFilter(semTypeFilters);
-		} else {
-			terminology.setSemanticTypeFilter("");
 		}
+		return semTypeFilters.toArray(new SemanticType[semTypeFilters.size()]);
 	}
 
-	private void parameterizeSources(UimaContext uimaContext) {
+	private void parameterizeSources(UimaContext uimaContext, Properties p) {
 		String colonSeparatedSources = (String) uimaContext.getConfigParameterValue("source.filter");
 		if (!StringUtils.isEmpty(colonSeparatedSources)) {
-			final String[] sabs = colonSeparatedSources.split(":");
-			final Source[] sourceFilters = new Source[sabs.length];
-			for (int tdx = 0; tdx < sabs.length; tdx++) {
-				sourceFilters[tdx] = new Source(sabs[tdx]);
-			}
-			terminology.setSourceFilter(sourceFilters);
+			p.setProperty("source.filter", colonSeparatedSources.replace(':', ';'));
 		}
 	}
 
@@ -169,14 +171,17 @@ public class NobleCoderUimaAnnotator extends JCasAnnotator_ImplBase {
 		}
 	}
 
+	/**
+	 * release shared terminology, it is disposed of when the last annotator that uses it is destroyed
+	 */
 	@Override
-	public void collectionProcessComplete() {
-		if (terminology != null) {
-			// System.out.println("DISPOSING of NC Terminology...");
-			terminology.dispose();
+	public void destroy() {
+		if (handle != null) {
+			handle.close();
+			handle = null;
 			terminology = null;
-			// System.out.println("FINISHED of NC Terminology...");
 		}
+		super.destroy();
 	}
 
 	@SuppressWarnings("rawtypes")
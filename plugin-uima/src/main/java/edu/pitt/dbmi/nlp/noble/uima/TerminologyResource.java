@@ -0,0 +1,54 @@
+package edu.pitt.dbmi.nlp.noble.uima;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TerminologyRegistry;
+
+/**
+ * UIMA shared resource that points to a persisted NobleCoder terminology.
+ * Bind it to NobleCoderTerminology external resource of NobleCoderUimaAnnotator
+ * to have all annotators in a pipeline use the same terminology.
+ * The terminology itself is loaded and reference counted by TerminologyRegistry,
+ * so annotators that open the same location by name share it as well.
+ *
+ * @author tseytlin
+ */
+public class TerminologyResource implements SharedResourceObject {
+	private File location;
+
+	/**
+	 * load resource, the URL can point to .term directory or to a file inside of it, s.a. info.txt
+	 */
+	public void load(DataResource data) throws ResourceInitializationException {
+		try {
+			File file = new File(data.getUri());
+			location = file.isFile() ? file.getParentFile() : file;
+		} catch (Exception e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	/**
+	 * Gets the location of terminology.
+	 *
+	 * @return the location
+	 */
+	public File getLocation() {
+		return location;
+	}
+
+	/**
+	 * open a handle to a shared terminology, it should be closed when annotator is destroyed.
+	 *
+	 * @return the handle
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public TerminologyRegistry.Handle open() throws IOException {
+		return TerminologyRegistry.open(location);
+	}
+}
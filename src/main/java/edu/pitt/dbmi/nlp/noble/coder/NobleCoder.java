@@ -10,7 +10,18 @@ import java.io.PrintStream;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.pitt.dbmi.nlp.noble.coder.model.Document;
 import edu.pitt.dbmi.nlp.noble.coder.model.Mention;
@@ -23,6 +34,7 @@ import edu.pitt.dbmi.nlp.noble.terminology.Terminology;
 import edu.pitt.dbmi.nlp.noble.terminology.TerminologyError;
 import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
 import edu.pitt.dbmi.nlp.noble.tools.AcronymDetector;
 import edu.pitt.dbmi.nlp.noble.tools.ConText;
 import edu.pitt.dbmi.nlp.noble.tools.NegEx;
@@ -41,11 +53,15 @@ public class NobleCoder implements Processor<Document>{
 	//private final String ABBREV_TERMINOLOGY = "BiomedicalAbbreviations";
 	//private DefaultRepository repository;
 	private Terminology terminology; //,abbreviations;
+	private SearchOptions searchOptions;
 	private Processor<Document> documentProcessor;
 	private AcronymDetector acronymDetector;
 	private ConText conText;
 	private boolean handleAcronyms = true,handleNegation = true; //skipAbbrreviationLogic
 	private int processFilter = FILTER_DEID|FILTER_HEADER;
+	private int sentenceThreadCount = 1;
+	private ExecutorService sentencePool;
+	private ThreadLocal<ConText> conTexts;
 	//private Map<String,String> abbreviationWhitelist;
 	private long time;
 	
@@ -153,6 +169,26 @@ public class NobleCoder implements Processor<Document>{
 		}
 	}
 
+	/**
+	 * get search options that are used with NobleCoderTerminology.
+	 *
+	 * @return the search options, null if terminology defaults are used
+	 */
+	public SearchOptions getSearchOptions() {
+		return searchOptions;
+	}
+
+	/**
+	 * set search options that should be used with NobleCoderTerminology
+	 * instead of its defaults. This allows several NobleCoder instances to 
+	 * share the same terminology with different search settings.
+	 *
+	 * @param searchOptions the new search options, null to use terminology defaults
+	 */
+	public void setSearchOptions(SearchOptions searchOptions) {
+		this.searchOptions = searchOptions;
+	}
+
 	/**
 	 * get an instance of acronym detector that .
 	 *
@@ -244,6 +280,39 @@ public class NobleCoder implements Processor<Document>{
 		this.handleNegation = handleNegation;
 	}
 
+	/**
+	 * Gets the number of threads that process sentences of a single document.
+	 *
+	 * @return the sentence thread count, default is 1
+	 */
+	public int getSentenceThreadCount() {
+		return sentenceThreadCount;
+	}
+
+	/**
+	 * Sets the number of threads that process sentences of a single document.
+	 * If more then one, dictionary lookup and ConText of sentences run as concurrent stages,
+	 * while acronym detection is done in document order.
+	 * Only NobleCoderTerminology can be used by several threads.
+	 *
+	 * @param sentenceThreadCount the new sentence thread count
+	 */
+	public synchronized void setSentenceThreadCount(int sentenceThreadCount) {
+		this.sentenceThreadCount = Math.max(1,sentenceThreadCount);
+		dispose();
+		conTexts = null;
+	}
+	
+	/**
+	 * stop threads that process sentences of a document. Coder can still be used,
+	 * the threads are started again when they are needed.
+	 */
+	public synchronized void dispose() {
+		if(sentencePool != null)
+			sentencePool.shutdown();
+		sentencePool = null;
+	}
+
 	
 	/**
 	 * process document represented as a string.
@@ -278,8 +347,15 @@ public class NobleCoder implements Processor<Document>{
 		}
 		
 		// go over all sentences  
+		List<Sentence> sentences = new ArrayList<Sentence>();
 		for(Sentence s : doc.getSentences()){
 			if(!filterSentence(s))
+				sentences.add(s);
+		}
+		if(sentenceThreadCount > 1 && sentences.size() > 1 && getTerminology() instanceof NobleCoderTerminology){
+			processPipelined(sentences);
+		}else{
+			for(Sentence s: sentences)
 				process(s);
 		}
 		doc.setDocumentStatus(Document.STATUS_CODED);
@@ -315,27 +391,248 @@ public class NobleCoder implements Processor<Document>{
 		// optionally filter text
 		String text = sentence.getText(); 
 		sentence.setText(filterText(text));		
+		try{
+			// search for concepts from main terminology
+			if(searchOptions != null && getTerminology() instanceof NobleCoderTerminology)
+				((NobleCoderTerminology)getTerminology()).process(sentence,searchOptions);
+			else
+				getTerminology().process(sentence);
+			
+			// handle acronyms that are mentioned in a document
+			if(handleAcronyms){
+				getAcronymDetector().process(sentence);
+			}
+			
+			// now lets do negation detection
+			if(handleNegation){
+				getConText().process(sentence);
+			}
+		}finally{
+			// roll-back oritinal text
+			sentence.setText(text);
+		}
 		
-		// search for concepts from main terminology
-		getTerminology().process(sentence);
+		// set process time
+		sentence.getProcessTime().put(getClass().getSimpleName(),(System.currentTimeMillis()-time));
+		return sentence;
+	}
+	
+	
+	
+	/**
+	 * sentence that is in flight in a sentence pipeline
+	 */
+	private static class PipelinedSentence {
+		private Sentence sentence;
+		private String text;
+		private long time;
+		private boolean restored;
 		
-		// handle acronyms that are mentioned in a document
-		if(handleAcronyms){
-			getAcronymDetector().process(sentence);
+		public PipelinedSentence(Sentence sentence){
+			this.sentence = sentence;
+			this.text = sentence.getText();
 		}
 		
-		// now lets do negation detection
-		if(handleNegation){
-			getConText().process(sentence);
+		/**
+		 * replace sentence text with filtered text, unless original text was already restored
+		 */
+		public synchronized void filter(String filtered){
+			if(!restored)
+				sentence.setText(filtered);
 		}
 		
-		// set process time and roll-back oritinal text
-		sentence.setText(text);
-		sentence.getProcessTime().put(getClass().getSimpleName(),(System.currentTimeMillis()-time));
-		return sentence;
+		/**
+		 * roll-back original text, a stage that is still running can no longer replace it
+		 */
+		public synchronized void restore(){
+			restored = true;
+			sentence.setText(text);
+		}
+	}
+	
+	/**
+	 * process sentences of a document as a pipeline of concurrent stages. Dictionary lookup and
+	 * ConText of different sentences run in parallel, while acronyms are detected on the calling thread
+	 * in document order, since an acronym is defined before it is used.
+	 * The number of sentences in each stage is bounded.
+	 *
+	 * @param sentences the sentences
+	 * @throws TerminologyException the terminology exception
+	 */
+	private void processPipelined(List<Sentence> sentences) throws TerminologyException {
+		ExecutorService pool = getSentencePool();
+		int limit = sentenceThreadCount*4;
+		LinkedList<Future<PipelinedSentence>> lookups = new LinkedList<Future<PipelinedSentence>>();
+		LinkedList<Future<PipelinedSentence>> contexts = new LinkedList<Future<PipelinedSentence>>();
+		List<PipelinedSentence> started = new ArrayList<PipelinedSentence>();
+		AtomicBoolean aborted = new AtomicBoolean();
+		int next = 0;
+		try{
+			while(next < sentences.size() || !lookups.isEmpty()){
+				// keep a bounded number of sentences in dictionary lookup
+				while(next < sentences.size() && lookups.size() < limit){
+					PipelinedSentence ps = new PipelinedSentence(sentences.get(next++));
+					started.add(ps);
+					lookups.add(pool.submit(createLookupTask(ps,aborted)));
+				}
+				
+				// handle acronyms that are mentioned in a document in order
+				PipelinedSentence ps = lookups.removeFirst().get();
+				if(handleAcronyms)
+					getAcronymDetector().process(ps.sentence);
+				
+				// now lets do negation detection
+				contexts.add(pool.submit(createContextTask(ps,aborted)));
+				while(contexts.size() >= limit)
+					contexts.removeFirst().get();
+			}
+			while(!contexts.isEmpty())
+				contexts.removeFirst().get();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new TerminologyException("Sentence processing was interrupted",ex);
+		}catch(ExecutionException ex){
+			Throwable cause = (ex.getCause() != null)?ex.getCause():ex;
+			if(cause instanceof TerminologyException)
+				throw (TerminologyException) cause;
+			throw new TerminologyException("Failed to process sentence: "+cause.getMessage(),cause);
+		}finally{
+			// stages that did not start yet are skipped, stages that are running can still add mentions,
+			// so wait for them before sentences that did not make it through the pipeline are restored
+			aborted.set(true);
+			await(lookups);
+			await(contexts);
+			for(PipelinedSentence ps: started)
+				ps.restore();
+		}
+	}
+	
+	/**
+	 * wait for stages in flight to finish regardless of their outcome.
+	 * Interrupt status of calling thread is preserved.
+	 *
+	 * @param futures the futures
+	 */
+	private static void await(List<Future<PipelinedSentence>> futures){
+		boolean interrupted = Thread.interrupted();
+		for(Future<PipelinedSentence> f: futures){
+			while(true){
+				try{
+					f.get();
+					break;
+				}catch(InterruptedException ex){
+					interrupted = true;
+				}catch(ExecutionException ex){
+					break;
+				}catch(CancellationException ex){
+					break;
+				}
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	/**
+	 * create dictionary lookup stage for a sentence.
+	 *
+	 * @param ps the sentence in flight
+	 * @param aborted the pipeline was aborted, stage is skipped
+	 * @return the callable
+	 */
+	private Callable<PipelinedSentence> createLookupTask(final PipelinedSentence ps, final AtomicBoolean aborted){
+		return new Callable<PipelinedSentence>() {
+			public PipelinedSentence call() throws Exception {
+				if(aborted.get())
+					return ps;
+				ps.time = System.currentTimeMillis();
+				
+				// optionally filter text
+				ps.filter(filterText(ps.text));
+				try{
+					// search for concepts from main terminology
+					if(searchOptions != null)
+						((NobleCoderTerminology)getTerminology()).process(ps.sentence,searchOptions);
+					else
+						getTerminology().process(ps.sentence);
+				}catch(Exception ex){
+					ps.restore();
+					throw ex;
+				}
+				return ps;
+			}
+		};
 	}
 	
+	/**
+	 * create ConText stage for a sentence.
+	 *
+	 * @param ps the sentence in flight
+	 * @param aborted the pipeline was aborted, stage is skipped
+	 * @return the callable
+	 * @throws TerminologyException the terminology exception
+	 */
+	private Callable<PipelinedSentence> createContextTask(final PipelinedSentence ps, final AtomicBoolean aborted) throws TerminologyException{
+		final ThreadLocal<ConText> conTexts = handleNegation?getConTexts():null;
+		return new Callable<PipelinedSentence>() {
+			public PipelinedSentence call() throws Exception {
+				if(aborted.get())
+					return ps;
+				try{
+					if(conTexts != null)
+						conTexts.get().process(ps.sentence);
+				}finally{
+					// roll-back oritinal text
+					ps.restore();
+				}
+				
+				// set process time
+				ps.sentence.getProcessTime().put(NobleCoder.class.getSimpleName(),(System.currentTimeMillis()-ps.time));
+				return ps;
+			}
+		};
+	}
+	
+	/**
+	 * get thread pool that processes sentences.
+	 *
+	 * @return the sentence pool
+	 */
+	private synchronized ExecutorService getSentencePool(){
+		if(sentencePool == null){
+			final AtomicInteger count = new AtomicInteger();
+			sentencePool = Executors.newFixedThreadPool(sentenceThreadCount,new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r,"NobleCoder-sentence-"+count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sentencePool;
+	}
 	
+	/**
+	 * get per-thread ConText instances that share modifier terminology of this coder's ConText.
+	 *
+	 * @return the thread local
+	 * @throws TerminologyException the terminology exception
+	 */
+	private synchronized ThreadLocal<ConText> getConTexts() throws TerminologyException{
+		if(conTexts == null){
+			final ConText conText = getConText();
+			final Map<String,String> defaults = conText.getDefaultValues();
+			conTexts = new ThreadLocal<ConText>(){
+				protected ConText initialValue() {
+					ConText ct = new ConText(conText.getLexicon());
+					ct.setModifierResolver(conText.getModifierResolver());
+					ct.setDefaultValues(defaults);
+					return ct;
+				}
+			};
+		}
+		return conTexts;
+	}
 	
 	/**
 	 * Gets the con text.
@@ -353,8 +650,9 @@ public class NobleCoder implements Processor<Document>{
 	 *
 	 * @param ct the new con text
 	 */
-	public void setConText(ConText ct){
+	public synchronized void setConText(ConText ct){
 		conText = ct;
+		conTexts = null;
 	}
 
 	/**
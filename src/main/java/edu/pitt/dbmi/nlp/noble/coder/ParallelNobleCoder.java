@@ -0,0 +1,446 @@
+package edu.pitt.dbmi.nlp.noble.coder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.pitt.dbmi.nlp.noble.coder.model.Document;
+import edu.pitt.dbmi.nlp.noble.coder.processor.DocumentProcessor;
+import edu.pitt.dbmi.nlp.noble.terminology.Terminology;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+import edu.pitt.dbmi.nlp.noble.tools.ConText;
+import edu.pitt.dbmi.nlp.noble.tools.ConTextLexicon;
+import edu.pitt.dbmi.nlp.noble.util.FileTools;
+
+/**
+ * code multiple documents in parallel against a single shared terminology.
+ * Every worker thread gets its own NobleCoder with its own AcronymDetector, ConText and
+ * DocumentProcessor, while the main terminology and ConText modifier terminology are loaded once.
+ * The number of documents that are in flight is bounded by queue size, so
+ * arbitrary large inputs can be streamed through.
+ *
+ * Processed documents are passed to DocumentHandler on the calling thread,
+ * either in input order (ordered mode) or as soon as they are done.
+ *
+ * @author tseytlin
+ */
+public class ParallelNobleCoder {
+
+	/**
+	 * receives coded documents, always called from the thread that invoked process()
+	 */
+	public static interface DocumentHandler {
+		/**
+		 * document was coded
+		 * @param doc - coded document
+		 * @throws Exception - any exception aborts the batch
+		 */
+		public void documentProcessed(Document doc) throws Exception;
+	}
+
+	private static final long TERMINATION_TIMEOUT = 60;
+	private Terminology terminology;
+	private SearchOptions searchOptions;
+	private ConText conText;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private int queueSize = -1;
+	private boolean ordered = true, handleAcronyms = true, handleNegation = true;
+	private int processFilter = NobleCoder.FILTER_DEID|NobleCoder.FILTER_HEADER;
+	private String documentType;
+	private ThreadLocal<NobleCoder> coders;
+	private List<NobleCoder> createdCoders;
+	private long time;
+
+	/**
+	 * create parallel coder for a given terminology
+	 * @param terminology - terminology that will be shared by all worker threads
+	 */
+	public ParallelNobleCoder(Terminology terminology){
+		this.terminology = terminology;
+	}
+
+	/**
+	 * Gets the terminology.
+	 *
+	 * @return the terminology
+	 */
+	public Terminology getTerminology() {
+		return terminology;
+	}
+
+	/**
+	 * get number of worker threads
+	 * @return number of threads, default is number of available processors
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * set number of worker threads
+	 * @param threadCount - number of threads
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1,threadCount);
+	}
+
+	/**
+	 * get maximum number of documents that can be in flight at the same time
+	 * @return queue size, default is 4 times the number of threads
+	 */
+	public int getQueueSize() {
+		return (queueSize > 0)?queueSize:threadCount*4;
+	}
+
+	/**
+	 * set maximum number of documents that can be in flight at the same time
+	 * @param queueSize - queue size
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * are processed documents returned in input order
+	 * @return true, if ordered
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * return processed documents in input order (true) or as soon as they are done (false)
+	 * @param ordered - ordered output
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Gets the search options.
+	 *
+	 * @return the search options
+	 */
+	public SearchOptions getSearchOptions() {
+		if(searchOptions == null && terminology instanceof NobleCoderTerminology)
+			searchOptions = ((NobleCoderTerminology)terminology).getSearchOptions();
+		return searchOptions;
+	}
+
+	/**
+	 * set search options to use with NobleCoderTerminology,
+	 * if not set, terminology defaults are captured when first document is processed
+	 * @param searchOptions the new search options
+	 */
+	public void setSearchOptions(SearchOptions searchOptions) {
+		this.searchOptions = searchOptions;
+	}
+
+	/**
+	 * get ConText instance whose modifier terminology is shared by all workers
+	 * @return the con text
+	 */
+	public ConText getConText() {
+		if(conText == null)
+			conText = new ConText();
+		return conText;
+	}
+
+	/**
+	 * set ConText instance whose modifier terminology is shared by all workers
+	 * @param conText the new con text
+	 */
+	public void setConText(ConText conText) {
+		this.conText = conText;
+	}
+
+	/**
+	 * Checks if is acronym expansion.
+	 *
+	 * @return true, if is acronym expansion
+	 */
+	public boolean isAcronymExpansion() {
+		return handleAcronyms;
+	}
+
+	/**
+	 * handle acronym expansion.
+	 *
+	 * @param handleAcronyms the new acronym expansion
+	 */
+	public void setAcronymExpansion(boolean handleAcronyms) {
+		this.handleAcronyms = handleAcronyms;
+	}
+
+	/**
+	 * Checks if is context detection.
+	 *
+	 * @return true, if is context detection
+	 */
+	public boolean isContextDetection() {
+		return handleNegation;
+	}
+
+	/**
+	 * Sets the context detection.
+	 *
+	 * @param handleNegation the new context detection
+	 */
+	public void setContextDetection(boolean handleNegation) {
+		this.handleNegation = handleNegation;
+	}
+
+	/**
+	 * @see NobleCoder#getProcessFilter()
+	 * @return the process filter
+	 */
+	public int getProcessFilter() {
+		return processFilter;
+	}
+
+	/**
+	 * @see NobleCoder#setProcessFilter(int)
+	 * @param processFilter - a conjunction (OR) of filters
+	 */
+	public void setProcessFilter(int processFilter) {
+		this.processFilter = processFilter;
+	}
+
+	/**
+	 * get document type for DocumentProcessor
+	 * @return document type
+	 */
+	public String getDocumentType() {
+		return documentType;
+	}
+
+	/**
+	 * set document type for DocumentProcessor, default is medical report
+	 * @param documentType - document type
+	 */
+	public void setDocumentType(String documentType) {
+		this.documentType = documentType;
+	}
+
+	/**
+	 * get wall clock time in milis of the last process() call
+	 * @return process time
+	 */
+	public long getProcessTime(){
+		return time;
+	}
+
+	/**
+	 * create per-thread coders that share the same terminologies
+	 */
+	private void setupCoders(){
+		final SearchOptions options = getSearchOptions();
+		final ConTextLexicon modifiers = handleNegation?getConText().getLexicon():null;
+		final ConText.ModifierResolver resolver = handleNegation?getConText().getModifierResolver():null;
+		final List<NobleCoder> created = new ArrayList<NobleCoder>();
+		createdCoders = created;
+		coders = new ThreadLocal<NobleCoder>(){
+			protected NobleCoder initialValue() {
+				NobleCoder coder = new NobleCoder(terminology);
+				coder.setSearchOptions(options);
+				coder.setAcronymExpansion(handleAcronyms);
+				coder.setContextDetection(handleNegation);
+				coder.setProcessFilter(processFilter);
+				if(documentType != null)
+					coder.setDocumentProcessor(new DocumentProcessor(documentType));
+				if(modifiers != null){
+					ConText ct = new ConText(modifiers);
+					ct.setModifierResolver(resolver);
+					coder.setConText(ct);
+				}
+				synchronized(created){
+					created.add(coder);
+				}
+				return coder;
+			}
+		};
+	}
+
+	/**
+	 * code a single file or directory of files
+	 * @param input - file or directory
+	 * @param handler - handler that receives coded documents
+	 * @throws TerminologyException - if processing failed
+	 */
+	public void process(File input, DocumentHandler handler) throws TerminologyException {
+		final Iterator<File> files = FileTools.getFilesInDirectory(input).iterator();
+		execute(new Iterator<Callable<Document>>() {
+			public boolean hasNext() {
+				return files.hasNext();
+			}
+			public Callable<Document> next() {
+				final File file = files.next();
+				return new Callable<Document>() {
+					public Document call() throws Exception {
+						return coders.get().process(file);
+					}
+				};
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		},handler);
+	}
+
+	/**
+	 * code a stream of documents
+	 * @param documents - documents to process
+	 * @param handler - handler that receives coded documents
+	 * @throws TerminologyException - if processing failed
+	 */
+	public void process(final Iterator<Document> documents, DocumentHandler handler) throws TerminologyException {
+		execute(new Iterator<Callable<Document>>() {
+			public boolean hasNext() {
+				return documents.hasNext();
+			}
+			public Callable<Document> next() {
+				final Document doc = documents.next();
+				return new Callable<Document>() {
+					public Document call() throws Exception {
+						return coders.get().process(doc);
+					}
+				};
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		},handler);
+	}
+
+	/**
+	 * code a list of documents and return them in input order.
+	 *
+	 * @param documents - documents to process
+	 * @return list of processed documents
+	 * @throws TerminologyException - if processing failed
+	 */
+	public List<Document> process(List<Document> documents) throws TerminologyException {
+		final List<Document> result = new ArrayList<Document>();
+		boolean o = ordered;
+		ordered = true;
+		try{
+			process(documents.iterator(),new DocumentHandler() {
+				public void documentProcessed(Document doc) throws Exception {
+					result.add(doc);
+				}
+			});
+		}finally{
+			ordered = o;
+		}
+		return result;
+	}
+
+	/**
+	 * run coding tasks on a worker pool with a bounded number of documents in flight
+	 * @param tasks - tasks
+	 * @param handler - result handler
+	 * @throws TerminologyException - if processing failed
+	 */
+	private void execute(Iterator<Callable<Document>> tasks, DocumentHandler handler) throws TerminologyException {
+		time = System.currentTimeMillis();
+		setupCoders();
+
+		final AtomicInteger count = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threadCount,new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r,"NobleCoder-worker-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		CompletionService<Document> completion = ordered?null:new ExecutorCompletionService<Document>(pool);
+		LinkedList<Future<Document>> pending = new LinkedList<Future<Document>>();
+		int limit = getQueueSize();
+		try{
+			while(tasks.hasNext()){
+				Callable<Document> task = tasks.next();
+				pending.add(ordered?pool.submit(task):completion.submit(task));
+				while(pending.size() >= limit)
+					deliver(completion,pending,handler);
+			}
+			while(!pending.isEmpty())
+				deliver(completion,pending,handler);
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new TerminologyException("Document processing was interrupted",ex);
+		}catch(ExecutionException ex){
+			Throwable cause = (ex.getCause() != null)?ex.getCause():ex;
+			if(cause instanceof TerminologyException)
+				throw (TerminologyException) cause;
+			throw new TerminologyException("Failed to process document: "+cause.getMessage(),cause);
+		}catch(TerminologyException ex){
+			throw ex;
+		}catch(Exception ex){
+			throw new TerminologyException("Failed to handle processed document: "+ex.getMessage(),ex);
+		}finally{
+			// coders are only released once no worker can use them anymore
+			if(awaitTermination(pool))
+				disposeCoders();
+			time = System.currentTimeMillis() - time;
+		}
+	}
+
+	/**
+	 * stop worker pool and wait for running workers to finish
+	 * @param pool - worker pool
+	 * @return true, if all workers are done
+	 */
+	private static boolean awaitTermination(ExecutorService pool){
+		pool.shutdownNow();
+		try{
+			return pool.awaitTermination(TERMINATION_TIMEOUT,TimeUnit.SECONDS);
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * release per-thread coders once worker pool is done with them
+	 */
+	private void disposeCoders(){
+		if(createdCoders != null){
+			synchronized(createdCoders){
+				for(NobleCoder coder: createdCoders)
+					coder.dispose();
+				createdCoders.clear();
+			}
+		}
+		createdCoders = null;
+		coders = null;
+	}
+
+	/**
+	 * hand over a single processed document to the handler
+	 */
+	private void deliver(CompletionService<Document> completion, LinkedList<Future<Document>> pending, DocumentHandler handler) throws Exception {
+		Future<Document> f = null;
+		if(completion == null){
+			f = pending.removeFirst();
+		}else{
+			f = completion.take();
+			pending.remove(f);
+		}
+		handler.documentProcessed(f.get());
+	}
+
+}
@@ -0,0 +1,220 @@
+package edu.pitt.dbmi.nlp.noble.coder.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * index of word boundaries and mention spans of a sentence or a document.
+ * Mentions are sorted by start offset, and every position keeps the maximum end offset
+ * of all mentions before it, so mentions that start in a range, or that cover an offset,
+ * are found with binary search instead of going over all mentions. Word windows are computed
+ * from sorted offsets of whitespace instead of re-scanning the text.
+ * Mentions that are returned from range queries keep their original order.
+ *
+ * @author tseytlin
+ */
+public class SpanIndex {
+	private final List<Mention> mentions;
+	private final Mention [] sorted;
+	private final int [] order, starts, maxEnds, spaces;
+	private final int offset, length;
+
+	/**
+	 * create index of a sentence text and its current mentions.
+	 *
+	 * @param sentence the sentence
+	 */
+	public SpanIndex(Sentence sentence){
+		this(sentence.getMentions(),sentence.getText(),sentence.getOffset());
+	}
+
+	/**
+	 * create index of a list of mentions, such as global modifiers of a document.
+	 *
+	 * @param mentions the mentions
+	 */
+	public SpanIndex(List<Mention> mentions){
+		this(mentions,null,0);
+	}
+
+	/**
+	 * create index of mentions and text.
+	 *
+	 * @param mentions the mentions
+	 * @param text the text, can be null
+	 * @param offset the offset of the text
+	 */
+	private SpanIndex(List<Mention> mentions, String text, int offset){
+		this.mentions = mentions;
+		this.offset = offset;
+		this.length = (text != null)?text.length():0;
+
+		// sort mentions by start offset, ties keep original order
+		final int n = mentions.size();
+		Integer [] idx = new Integer [n];
+		for(int i=0;i<n;i++)
+			idx[i] = i;
+		final Mention [] list = mentions.toArray(new Mention[n]);
+		Arrays.sort(idx,new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int d = list[a].getStartPosition() - list[b].getStartPosition();
+				return (d != 0)?d:a-b;
+			}
+		});
+		sorted = new Mention [n];
+		order = new int [n];
+		starts = new int [n];
+		maxEnds = new int [n];
+		for(int i=0;i<n;i++){
+			sorted[i] = list[idx[i]];
+			order[i] = idx[i];
+			starts[i] = sorted[i].getStartPosition();
+			maxEnds[i] = (i > 0)?Math.max(maxEnds[i-1],sorted[i].getEndPosition()):sorted[i].getEndPosition();
+		}
+
+		// offsets of whitespace
+		int count = 0;
+		int [] sp = new int [16];
+		for(int i=0;i<length;i++){
+			if(text.charAt(i) == ' '){
+				if(count == sp.length)
+					sp = Arrays.copyOf(sp,count*2);
+				sp[count++] = i;
+			}
+		}
+		spaces = Arrays.copyOf(sp,count);
+	}
+
+	/**
+	 * Gets the indexed mentions in original order.
+	 *
+	 * @return the mentions
+	 */
+	public List<Mention> getMentions() {
+		return mentions;
+	}
+
+	/**
+	 * number of indexed mentions.
+	 *
+	 * @return the int
+	 */
+	public int size(){
+		return sorted.length;
+	}
+
+	/**
+	 * get mentions that start within a given range.
+	 *
+	 * @param start the start offset (inclusive)
+	 * @param end the end offset (inclusive)
+	 * @return the mentions in original order
+	 */
+	public List<Mention> getMentionsStartingIn(int start, int end){
+		List<Integer> found = new ArrayList<Integer>();
+		for(int i = lowerBound(starts,start); i < starts.length && starts[i] <= end;i++)
+			found.add(i);
+		return toMentions(found);
+	}
+
+	/**
+	 * get mentions that start before a given offset and end after another offset.
+	 *
+	 * @param before the offset that mentions start before (exclusive)
+	 * @param after the offset that mentions end after (exclusive)
+	 * @return the mentions in original order
+	 */
+	public List<Mention> getMentionsSpanning(int before, int after){
+		List<Integer> found = new ArrayList<Integer>();
+		for(int i = lowerBound(starts,before)-1; i >= 0 && maxEnds[i] > after;i--){
+			if(sorted[i].getEndPosition() > after)
+				found.add(i);
+		}
+		return toMentions(found);
+	}
+
+	/**
+	 * convert positions in sorted list to mentions in original order.
+	 */
+	private List<Mention> toMentions(List<Integer> found){
+		if(found.isEmpty())
+			return Collections.EMPTY_LIST;
+		int [] positions = new int [found.size()];
+		for(int i=0;i<positions.length;i++)
+			positions[i] = order[found.get(i)];
+		Arrays.sort(positions);
+		List<Mention> list = new ArrayList<Mention>(positions.length);
+		for(int p: positions)
+			list.add(mentions.get(p));
+		return list;
+	}
+
+	/**
+	 * get offset in text that is a given number of words before or after a span.
+	 * The result is the same as counting words by going from one space to the next
+	 * in indexed text, where consecutive spaces don't count as separate words.
+	 *
+	 * @param span the span
+	 * @param afterSpan if true, count words after the span, else before the span
+	 * @param windowSize the number of words
+	 * @return the absolute offset of the window boundary
+	 */
+	public int getWordWindowIndex(Spannable span, boolean afterSpan, int windowSize){
+		if(afterSpan){
+			int i = span.getEndPosition()-offset;
+			if(i < 0 || i >= length)
+				return length+offset;
+			if(windowSize <= 0)
+				return i+offset;
+			for(int n = upperBound(spaces,i),j=0,k=i; n < spaces.length; n++){
+				i = spaces[n];
+				// to avoid multiple consecutive spaces only increment word count if the delta is more then 1
+				if(i > k+1)
+					j++;
+				if(j >= windowSize)
+					return i+offset;
+				k = i;
+			}
+			return length+offset;
+		}
+		int i = span.getStartPosition()-offset;
+		if(i < 0)
+			return offset;
+		if(windowSize <= 0)
+			return i+offset;
+		for(int n = lowerBound(spaces,i)-1,j=0,k=i; n >= 0; n--){
+			i = spaces[n];
+			if(i < k-1)
+				j++;
+			if(j >= windowSize)
+				return i+offset;
+			k = i;
+		}
+		return offset;
+	}
+
+	/**
+	 * first position with value that is greater or equal to a key.
+	 */
+	private static int lowerBound(int [] values, int key){
+		int lo = 0, hi = values.length;
+		while(lo < hi){
+			int mid = (lo+hi) >>> 1;
+			if(values[mid] < key)
+				lo = mid+1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * first position with value that is greater then a key.
+	 */
+	private static int upperBound(int [] values, int key){
+		return lowerBound(values,key+1);
+	}
+}
@@ -7,6 +7,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import edu.pitt.dbmi.nlp.noble.coder.model.*;
+import edu.pitt.dbmi.nlp.noble.tools.LineClassifier;
 import edu.pitt.dbmi.nlp.noble.tools.SentenceDetector;
 import edu.pitt.dbmi.nlp.noble.tools.SynopticReportDetector;
 import edu.pitt.dbmi.nlp.noble.tools.TextTools;
@@ -16,7 +17,10 @@ import edu.pitt.dbmi.nlp.noble.tools.TextTools;
  */
 public class DocumentProcessor implements Processor<Document> {
 	private static final String AB = "AB"; //medline abstract tag
-	private static final String PROSE_PATTERN = ".*\\b[a-z]+(\\.|\\?|!)\\s+[A-Z][a-z]+\\b.*";
+	private static final Pattern MEDLINE_PATTERN = Pattern.compile("(?s)^[A-Z]{2}  - .*");
+	private static final Pattern INDENT_PATTERN = Pattern.compile("^(\\s+)\\w.*",Pattern.DOTALL|Pattern.MULTILINE);
+	private static final Pattern SENTENCE_END = Pattern.compile(".+\\s([A-Z]?[a-z]+|\\d+),?");
+	private static final Pattern SENTENCE_START = Pattern.compile("([A-Z]?[a-z]+)\\b.+");
 	private String documentType;
 	private Map<String,Pattern> sectioningMap;
 	private long time;
@@ -70,7 +74,7 @@ public class DocumentProcessor implements Processor<Document> {
 	 * @return the string
 	 */
 	public static String suggestDocumentType(String text){
-		if(text.matches("(?s)^[A-Z]{2}  - .*"))
+		if(MEDLINE_PATTERN.matcher(text).matches())
 			return Document.TYPE_MEDLINE_RECORD;
 		return Document.TYPE_MEDICAL_REPORT;
 	}
@@ -176,7 +180,7 @@ public class DocumentProcessor implements Processor<Document> {
 					}
 				}
 			}else{*/
-				if(section.getBody().trim().matches(PROSE_PATTERN)){
+				if(LineClassifier.isProse(section.getBody().trim())){
 					parseSentences(doc,section.getBody(), section.getBodyOffset(), Sentence.TYPE_PROSE);
 				}else{
 					int offs = section.getBodyOffset();
@@ -215,7 +219,7 @@ public class DocumentProcessor implements Processor<Document> {
 				// save previous region
 				if(str.toString().trim().length() > 0){
 					// if multiline buffer, then do prose parsing
-					if(str.toString().trim().contains("\n") || str.toString().trim().matches(PROSE_PATTERN)){
+					if(str.toString().trim().contains("\n") || LineClassifier.isProse(str.toString().trim())){
 						parseSentences(doc, str.toString(), strOffset, Sentence.TYPE_PROSE);
 					}else{
 						parseSentences(doc, str.toString(), strOffset, Sentence.TYPE_LINE);
@@ -232,7 +236,7 @@ public class DocumentProcessor implements Processor<Document> {
 		}
 		// take care of the last sentence
 		if(str.length() > 0){
-			if(str.toString().trim().contains("\n") || str.toString().trim().matches(PROSE_PATTERN)){
+			if(str.toString().trim().contains("\n") || LineClassifier.isProse(str.toString().trim())){
 				parseSentences(doc, str.toString(), strOffset, Sentence.TYPE_PROSE);
 			}else{
 				parseSentences(doc, str.toString(), strOffset, Sentence.TYPE_LINE);
@@ -273,8 +277,7 @@ public class DocumentProcessor implements Processor<Document> {
 	 */
 	private void parseSentences(Document doc, String text, int offset, String type){
 		// if sentence starts with lots of 
-		Pattern p = Pattern.compile("^(\\s+)\\w.*",Pattern.DOTALL|Pattern.MULTILINE);
-		Matcher m = p.matcher(text);
+		Matcher m = INDENT_PATTERN.matcher(text);
 		if(m.matches()){
 			String prefix = m.group(1);
 			text = text.substring(prefix.length());
@@ -331,8 +334,7 @@ public class DocumentProcessor implements Processor<Document> {
 	 * @param text the text
 	 */
 	private void parseProperties(Document doc, String text){
-		Pattern p = Pattern.compile("([A-Z][A-Za-z /]{3,25})(?:\\.{2,}|\\:)(.{2,25})");
-		Matcher m = p.matcher(text);
+		Matcher m = LineClassifier.PROPERTIES_PATTERN.matcher(text);
 		while(m.find()){
 			doc.getProperties().put(m.group(1).trim(),m.group(2).trim());
 		}
@@ -362,7 +364,7 @@ public class DocumentProcessor implements Processor<Document> {
 			return false;
 		
 		// if previous sentence ends with a lower case word or digit or comma
-		if(last.matches(".+\\s([A-Z]?[a-z]+|\\d+),?") && s.matches("([A-Z]?[a-z]+)\\b.+")){
+		if(SENTENCE_END.matcher(last).matches() && SENTENCE_START.matcher(s).matches()){
 			return true;
 		}
 		return false;
@@ -13,6 +13,8 @@ public class ParagraphProcessor implements Processor<Document> {
 	private static final String PARTS = "PARTS?\\s+\\d+(\\s+AND\\s+\\d+)?:?";
 	private static final Pattern PATTERN = Pattern.compile("("+PARAGRAPH+"|"+DIVS+"|"+PARTS+")",Pattern.MULTILINE|Pattern.CASE_INSENSITIVE);
 	private static final Pattern DSPACE_PATTERN = Pattern.compile("("+DSPACE_PARAGRAPH+"|"+DIVS+"|"+PARTS+")",Pattern.MULTILINE|Pattern.CASE_INSENSITIVE);
+	private static final Pattern PARTS_PATTERN = Pattern.compile(PARTS);
+	private static final Pattern WHITESPACE_PATTERN = Pattern.compile("^\\s+",Pattern.DOTALL|Pattern.MULTILINE);
 	private static final Pattern SINGLE_SPACE = Pattern.compile("^[^\\n]{5,}\\n[^\\n]{5,}$",Pattern.MULTILINE|Pattern.DOTALL); 
 	private long time;
 	
@@ -58,7 +60,6 @@ public class ParagraphProcessor implements Processor<Document> {
 			return;
 		
 		int offs = 0;
-		Pattern whitespace = Pattern.compile("^\\s+",Pattern.DOTALL|Pattern.MULTILINE);
 		Matcher mt = isDoubleSpace(text)?DSPACE_PATTERN.matcher(text):PATTERN.matcher(text);
 		String delim = null;
 		while(mt.find()){
@@ -66,7 +67,7 @@ public class ParagraphProcessor implements Processor<Document> {
 			
 			//add whitespace buffer at the end
 			int whiteSpaceBufferOffset = 0;
-			Matcher wm = whitespace.matcher(delim);
+			Matcher wm = WHITESPACE_PATTERN.matcher(delim);
 			if(wm.find()){
 				whiteSpaceBufferOffset = wm.group().length();
 			}
@@ -74,7 +75,7 @@ public class ParagraphProcessor implements Processor<Document> {
 			//String txt = text.substring(offs,mt.start());
 			//Paragraph pgh = new Paragraph(txt,offs+section.getBodyOffset());
 			Paragraph pgh = new Paragraph(doc,offs+bodyOffset,mt.start()+bodyOffset+whiteSpaceBufferOffset);
-			if(delim.matches(PARTS))
+			if(PARTS_PATTERN.matcher(delim).matches())
 				pgh.setPart(delim);
 			doc.addParagraph(pgh);
 			offs = mt.end();
@@ -82,7 +83,7 @@ public class ParagraphProcessor implements Processor<Document> {
 		// mopup 
 		//Paragraph pgh = new Paragraph(text.substring(offs),offs+section.getBodyOffset());
 		Paragraph pgh = new Paragraph(doc,offs+bodyOffset,endPosition);
-		if(delim != null && delim.matches(PARTS))
+		if(delim != null && PARTS_PATTERN.matcher(delim).matches())
 			pgh.setPart(delim);
 		doc.addParagraph(pgh);
 	}
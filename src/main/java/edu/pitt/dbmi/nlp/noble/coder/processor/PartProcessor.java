@@ -13,6 +13,7 @@ import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
  */
 public class PartProcessor implements Processor<Section> {
 	public static final String PART_PATTERN = "PARTS?\\s+\\d+(\\s+AND\\s+\\d+)?:"; 
+	private static final Pattern PART = Pattern.compile(PART_PATTERN,Pattern.MULTILINE|Pattern.DOTALL);
 	private long time;
 	
 	/**
@@ -36,8 +37,7 @@ public class PartProcessor implements Processor<Section> {
 	 */
 	public Section process(Section section)  {
 		time = System.currentTimeMillis();
-		Pattern pt = Pattern.compile(PART_PATTERN,Pattern.MULTILINE|Pattern.DOTALL);
-		Matcher mt = pt.matcher(section.getBody());
+		Matcher mt = PART.matcher(section.getBody());
 		List<Section> parts = new ArrayList<Section>();
 		String text = section.getBody();
 		Section part = null;
@@ -10,7 +10,7 @@ import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
 
 public class SectionProcessor implements Processor<Document> {
 	private long time;
-	private Pattern SECTION_PATTERN = Pattern.compile("^([A-Z][A-Z/\\- ]{5,40}:)\\s+(.*)",Pattern.DOTALL|Pattern.MULTILINE);
+	private static final Pattern SECTION_PATTERN = Pattern.compile("^([A-Z][A-Z/\\- ]{5,40}:)\\s+(.*)",Pattern.DOTALL|Pattern.MULTILINE);
 	
 	public Document process(Document doc) throws TerminologyException {
 		time = System.currentTimeMillis();
@@ -3,24 +3,17 @@ package edu.pitt.dbmi.nlp.noble.coder.processor;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import edu.pitt.dbmi.nlp.noble.coder.model.Document;
 import edu.pitt.dbmi.nlp.noble.coder.model.Processor;
 import edu.pitt.dbmi.nlp.noble.coder.model.Section;
 import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+import edu.pitt.dbmi.nlp.noble.tools.LineClassifier;
+import edu.pitt.dbmi.nlp.noble.tools.LineClassifier.Line;
 import edu.pitt.dbmi.nlp.noble.tools.SentenceDetector;
 import edu.pitt.dbmi.nlp.noble.tools.SynopticReportDetector;
 
 public class SentenceProcessor implements Processor<Document> {
-	private static final String PROSE_PATTERN = ".*\\b[a-z]+(\\.|\\?|!)\\s+[A-Z][a-z]+\\b.*";
-	private static final String BULLET_PATTERN =  	"^(\\s*(?:[A-Z][0-9]?|[0-9]{1,2}|[\\*\\-])(?:[\\.:\\)]\\s+|\\s{2,}))\\w.*"; //"^\\s*(([A-Z]?[0-9-\\)\\*]{1,2}\\.?:?)\\s+)\\w.*";
-	private static final String DIVIDER_PATTERN = "(\\-{5,}|_{5,}|={5,})" ;
-	private static final String PROPERTIES_PATTERN = "([A-Z][A-Za-z /]{3,25})(?:\\.{2,}|\\:)(.{2,25})";
-	private static final String PROSE_SENTENCE_END = ".+\\s([A-Z]?[a-z]+|\\d+),?\\s*";
-	private static final String PROSE_SENTENCE_START = "\\s*([a-z]+|\\d+)\\b.+"; //[A-Z]? 
-	private static final String BULLET_SENTENCE_START = "\\s*([A-Z]{2,}|\\d+)\\b.+"; //[A-Z]? 
-	private static final String BULLET_SENTENCE_END = ".+\\s([A-Z]{2,}|\\d+),?\\s*";
 	private long time;
 	
 	
@@ -32,11 +25,14 @@ public class SentenceProcessor implements Processor<Document> {
 		
 		int offset = 0, strOffset = 0;
 		StringBuilder str = new StringBuilder();
-		String last = null;
+		Line last = null;
 		boolean doubleSpace = true;
 		for(String s: doc.getText().split("\n")){
+			// classify each line once, it is reused when the next line is looked at
+			Line line = LineClassifier.classify(s);
+			
 			// skip blank lines for the purpose of merging them
-			if(s.trim().length() == 0 && doubleSpace){
+			if(line.isBlank() && doubleSpace){
 				str.append(s+"\n");
 				offset += s.length()+1;
 				doubleSpace = false;
@@ -45,11 +41,11 @@ public class SentenceProcessor implements Processor<Document> {
 			
 			// check if this sentence does not need to be merged
 			// with the previous one, lets save it
-			if(!mergeLines(str,last,s)){
+			if(!mergeLines(str,last,line)){
 				// save previous region
 				if(str.toString().trim().length() > 0){
 					// if multiline buffer, then do prose parsing
-					if(str.toString().trim().contains("\n") || str.toString().trim().matches(PROSE_PATTERN)){
+					if(str.toString().trim().contains("\n") || LineClassifier.isProse(str.toString().trim())){
 						parseSentences(doc, str.toString(), strOffset, Sentence.TYPE_PROSE);
 					}else{
 						parseSentences(doc, str.toString(), strOffset, Sentence.TYPE_LINE);
@@ -62,12 +58,12 @@ public class SentenceProcessor implements Processor<Document> {
 			// add this line to the next buffer
 			str.append(s+"\n");
 			offset += s.length()+1;
-			last  = s;
+			last  = line;
 			doubleSpace = true;
 		}
 		// take care of the last sentence
 		if(str.length() > 0){
-			if(str.toString().trim().contains("\n") || str.toString().trim().matches(PROSE_PATTERN)){
+			if(str.toString().trim().contains("\n") || LineClassifier.isProse(str.toString().trim())){
 				parseSentences(doc, str.toString(), strOffset, Sentence.TYPE_PROSE);
 			}else{
 				parseSentences(doc, str.toString(), strOffset, Sentence.TYPE_LINE);
@@ -98,11 +94,9 @@ public class SentenceProcessor implements Processor<Document> {
 	 */
 	private void parseSentences(Document doc, String text, int offset, String type){
 		// if sentence starts with lots of spaces or bullets 
-		// old pattern
-		Pattern p = Pattern.compile(BULLET_PATTERN,Pattern.DOTALL|Pattern.MULTILINE);
 		boolean bullet = false;
 		
-		Matcher m = p.matcher(text);
+		Matcher m = LineClassifier.BULLET_BLOCK_PATTERN.matcher(text);
 		if(m.matches()){
 			String prefix = m.group(1);
 			if(prefix.length()>0){
@@ -180,7 +174,7 @@ public class SentenceProcessor implements Processor<Document> {
 	
 
 	private boolean isDivider(Sentence s) {
-		return s.getText().trim().matches(DIVIDER_PATTERN);
+		return LineClassifier.DIVIDER_PATTERN.matcher(s.getText().trim()).matches();
 	}
 
 
@@ -191,8 +185,7 @@ public class SentenceProcessor implements Processor<Document> {
 	 * @param text the text
 	 */
 	private void parseProperties(Document doc, String text){
-		Pattern p = Pattern.compile(PROPERTIES_PATTERN);
-		Matcher m = p.matcher(text);
+		Matcher m = LineClassifier.PROPERTIES_PATTERN.matcher(text);
 		while(m.find()){
 			doc.getProperties().put(m.group(1).trim(),m.group(2).trim());
 		}
@@ -201,28 +194,29 @@ public class SentenceProcessor implements Processor<Document> {
 	/**
 	 * Merge lines.
 	 *
+	 * @param buf the buffer of lines that were merged so far
 	 * @param last the last
 	 * @param s the s
 	 * @return true, if successful
 	 */
-	private boolean mergeLines(StringBuilder buf, String last, String s) {
+	private boolean mergeLines(StringBuilder buf, Line last, Line s) {
 		if(last == null)
 			return false;
 		// if previous item is worksheet ..
-		if(!last.matches(BULLET_PATTERN) && SynopticReportDetector.detect(last))
+		if(!last.isBullet() && last.isWorksheet())
 			return false;
 		
 		// if current line is a bullet, then it is irrelevant of what the last line is
-		if(s.matches(BULLET_PATTERN))
+		if(s.isBullet())
 			return false;
 		
 		// if previous sentence ends with a lower case word or digit or comma
 		// and next one starts with normal non-upper case word
-		if(last.matches(PROSE_SENTENCE_END) && s.matches(PROSE_SENTENCE_START)){
+		if(last.isProseEnd() && s.isProseStart()){
 			return true;
 		}
 		// if last line is a bullet and the following is upper case continuation
-		if(Pattern.compile(BULLET_PATTERN, Pattern.DOTALL|Pattern.MULTILINE).matcher(buf).matches() && last.matches(BULLET_SENTENCE_END) && s.matches(BULLET_SENTENCE_START)){
+		if(last.isBulletEnd() && s.isBulletStart() && LineClassifier.BULLET_BLOCK_PATTERN.matcher(buf).matches()){
 			return true;
 		}
 		
@@ -73,11 +73,15 @@ public class NobleMentions implements Processor<Composition>{
 		coder.setProcessFilter(NobleCoder.FILTER_DEID);
 		
 		// initialize context
-		ConText conText = new ConText(domainOntology.getModifierTerminology());
+		ConText conText = new ConText(domainOntology.getModifierLexicon());
 		conText.setModifierResolver(domainOntology.getModifierResolver());
 		conText.setDefaultValues(domainOntology.getDefaultValues());
 		coder.setConText(conText);
 		
+		// build type index before any document instances are created, 
+		// so that it only knows about instances defined in ontology
+		domainOntology.getTypeIndex();
+		
 		//coder.setDocumentProcessor(documentProcessor);
 	}
 
@@ -137,8 +141,23 @@ public class NobleMentions implements Processor<Composition>{
 		// run coder: sentence parser + dictionary lookup + ConText on the document
 		coder.process(doc);
 		
+		// instances are created in domain ontology that can be shared by several threads
+		synchronized(domainOntology.getLock()){
+			createAnnotationVariables(doc);
+		}
+		
+		time = System.currentTimeMillis() - time;
+		doc.getProcessTime().put(getClass().getSimpleName(),time);
+		return doc;
+	}
+
+	/**
+	 * construct annotation variables from anchor mentions of a coded document
+	 * @param doc - composition document
+	 */
+	private void createAnnotationVariables(Composition doc){
 		// gether all global modifiers that need to be resolved beyound sentence boundaries
-		List<Mention> globalModifiers = getGlobalModifiers(doc);
+		SpanIndex globalModifiers = new SpanIndex(getGlobalModifiers(doc));
 		
 		// now lets construct annotation variables from anchor mentions
 		List<AnnotationVariable> failedVariables = new ArrayList<AnnotationVariable>();
@@ -181,7 +200,7 @@ public class NobleMentions implements Processor<Composition>{
 							AnnotationVariable oldVar = variables.get(""+var.getAnnotations());
 							// if new variable is more specific then the one we currently have,
 							// then replace it
-							if(var.getConceptClass().hasSuperClass(oldVar.getConceptClass())){
+							if(domainOntology.hasSuperClass(var.getConceptClass(),oldVar.getConceptClass())){
 								variables.put(""+var.getAnnotations(),var);
 								goodVariables.remove(oldVar);
 								goodVariables.add(var);
@@ -247,10 +266,6 @@ public class NobleMentions implements Processor<Composition>{
 		// add them to a document as good variables
 		doc.addAnnotationVariables(goodVariables);
 		doc.addRejectedAnnotationVariables(failedVariables);
-		
-		time = System.currentTimeMillis() - time;
-		doc.getProcessTime().put(getClass().getSimpleName(),time);
-		return doc;
 	}
 
 	/**
@@ -276,9 +291,9 @@ public class NobleMentions implements Processor<Composition>{
 					if(specific == null){
 						specific = v;
 					}else{
-						if(specific.getConceptClass().hasSuperClass(v.getConceptClass())){
+						if(domainOntology.hasSuperClass(specific.getConceptClass(),v.getConceptClass())){
 							torem.add(v);
-						}else if(specific.getConceptClass().hasSubClass(v.getConceptClass())){
+						}else if(domainOntology.hasSubClass(specific.getConceptClass(),v.getConceptClass())){
 							torem.add(specific);
 							specific = v;
 						}
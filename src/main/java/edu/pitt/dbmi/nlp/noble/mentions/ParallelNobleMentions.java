@@ -0,0 +1,394 @@
+package edu.pitt.dbmi.nlp.noble.mentions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.pitt.dbmi.nlp.noble.mentions.model.Composition;
+import edu.pitt.dbmi.nlp.noble.mentions.model.DomainOntology;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+import edu.pitt.dbmi.nlp.noble.util.FileTools;
+
+/**
+ * process multiple documents in parallel against a single shared domain ontology.
+ * Anchor, modifier and section terminologies of domain ontology are loaded once,
+ * while every worker thread gets its own NobleMentions with its own NobleCoder, ConText and
+ * ReportProcessor. Dictionary lookup and ConText run in parallel, while construction of annotation
+ * variables is guarded by domain ontology lock, since instances are created in a shared OWL ontology.
+ * The number of documents that are in flight is bounded by queue size.
+ *
+ * Processed documents are passed to CompositionHandler on the calling thread while holding
+ * domain ontology lock, either in input order (ordered mode) or as soon as they are done.
+ * A document that fails to process is reported to the handler and the rest of the batch continues.
+ *
+ * @author tseytlin
+ */
+public class ParallelNobleMentions {
+
+	/**
+	 * receives processed documents, always called from the thread that invoked process()
+	 */
+	public static interface CompositionHandler {
+		/**
+		 * document was processed
+		 * @param doc - processed document
+		 * @throws Exception - any exception aborts the batch
+		 */
+		public void compositionProcessed(Composition doc) throws Exception;
+		
+		/**
+		 * document could not be processed, remaining documents are still processed
+		 * @param name - document file name or title
+		 * @param ex - the reason it failed
+		 * @throws Exception - any exception aborts the batch
+		 */
+		public void compositionFailed(String name, Exception ex) throws Exception;
+	}
+	
+	/**
+	 * processing of a single document, failure is kept with the task, so that
+	 * it is reported for this document only
+	 */
+	private static abstract class Task implements Callable<Task> {
+		private final String name;
+		private Composition doc;
+		private Exception error;
+		
+		public Task(String name){
+			this.name = name;
+		}
+		
+		protected abstract Composition process() throws Exception;
+		
+		public Task call() {
+			try{
+				doc = process();
+			}catch(Exception ex){
+				error = ex;
+			}
+			return this;
+		}
+	}
+
+	private static final long TERMINATION_TIMEOUT = 60;
+	private DomainOntology domainOntology;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private int queueSize = -1;
+	private boolean ordered = true;
+	private boolean codeSectionHeadersWithAnchors = false;
+	private boolean codeSectionHeadersWithModifiers = true;
+	private boolean removeSubsumedVariables = true;
+	private volatile boolean canceled;
+	private ThreadLocal<NobleMentions> workers;
+	private long time;
+
+	/**
+	 * create parallel processor for a given domain ontology
+	 * @param ontology - domain ontology that will be shared by all worker threads
+	 */
+	public ParallelNobleMentions(DomainOntology ontology){
+		this.domainOntology = ontology;
+	}
+
+	/**
+	 * get domain ontology
+	 * @return get domain ontology
+	 */
+	public DomainOntology getDomainOntology() {
+		return domainOntology;
+	}
+
+	/**
+	 * get number of worker threads
+	 * @return number of threads, default is number of available processors
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * set number of worker threads
+	 * @param threadCount - number of threads
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1,threadCount);
+	}
+
+	/**
+	 * get maximum number of documents that can be in flight at the same time
+	 * @return queue size, default is 4 times the number of threads
+	 */
+	public int getQueueSize() {
+		return (queueSize > 0)?queueSize:threadCount*4;
+	}
+
+	/**
+	 * set maximum number of documents that can be in flight at the same time
+	 * @param queueSize - queue size
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * are processed documents returned in input order
+	 * @return true, if ordered
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * return processed documents in input order (true) or as soon as they are done (false)
+	 * @param ordered - ordered output
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	public boolean isProcessAnchorsInHeader() {
+		return codeSectionHeadersWithAnchors;
+	}
+
+	public void setProcessAnchorsInHeader(boolean codeSectionHeadersWithAnchors) {
+		this.codeSectionHeadersWithAnchors = codeSectionHeadersWithAnchors;
+	}
+
+	public boolean isProcessModifiersInHeader() {
+		return codeSectionHeadersWithModifiers;
+	}
+
+	public void setProcessModifiersInHeader(boolean codeSectionHeadersWithModifiers) {
+		this.codeSectionHeadersWithModifiers = codeSectionHeadersWithModifiers;
+	}
+
+	public boolean isRemoveSubsumedVariables() {
+		return removeSubsumedVariables;
+	}
+
+	public void setRemoveSubsumedVariables(boolean removeSubsumedVariables) {
+		this.removeSubsumedVariables = removeSubsumedVariables;
+	}
+
+	/**
+	 * stop submitting new documents, documents that are in flight are still delivered
+	 */
+	public void cancel(){
+		canceled = true;
+	}
+
+	/**
+	 * get wall clock time in milis of the last process() call
+	 * @return process time
+	 */
+	public long getProcessTime(){
+		return time;
+	}
+
+	/**
+	 * create per-thread NobleMentions that share the same domain ontology
+	 */
+	private void setupWorkers(){
+		// load terminologies and type index of domain ontology on this thread,
+		// before worker threads need them
+		new NobleMentions(domainOntology);
+		workers = new ThreadLocal<NobleMentions>(){
+			protected NobleMentions initialValue() {
+				return configure(new NobleMentions(domainOntology));
+			}
+		};
+	}
+
+	/**
+	 * copy settings to a worker instance
+	 * @param noble - worker instance
+	 * @return same instance
+	 */
+	private NobleMentions configure(NobleMentions noble){
+		noble.setProcessAnchorsInHeader(codeSectionHeadersWithAnchors);
+		noble.setProcessModifiersInHeader(codeSectionHeadersWithModifiers);
+		noble.setRemoveSubsumedVariables(removeSubsumedVariables);
+		return noble;
+	}
+
+	/**
+	 * process a single file or directory of files
+	 * @param input - file or directory
+	 * @param handler - handler that receives processed documents
+	 * @throws TerminologyException - if processing failed
+	 */
+	public void process(File input, CompositionHandler handler) throws TerminologyException {
+		final Iterator<File> files = FileTools.getFilesInDirectory(input,".txt").iterator();
+		execute(new Iterator<Task>() {
+			public boolean hasNext() {
+				return files.hasNext();
+			}
+			public Task next() {
+				final File file = files.next();
+				return new Task(file.getName()) {
+					protected Composition process() throws Exception {
+						return workers.get().process(file);
+					}
+				};
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		},handler);
+	}
+
+	/**
+	 * process a stream of documents
+	 * @param documents - documents to process
+	 * @param handler - handler that receives processed documents
+	 * @throws TerminologyException - if processing failed
+	 */
+	public void process(final Iterator<Composition> documents, CompositionHandler handler) throws TerminologyException {
+		execute(new Iterator<Task>() {
+			public boolean hasNext() {
+				return documents.hasNext();
+			}
+			public Task next() {
+				final Composition doc = documents.next();
+				doc.setDomainOntology(domainOntology);
+				return new Task(doc.getTitle()) {
+					protected Composition process() throws Exception {
+						return workers.get().process(doc);
+					}
+				};
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		},handler);
+	}
+
+	/**
+	 * process a list of documents and return them in input order.
+	 * Unlike streaming methods, a document that fails to process aborts the batch,
+	 * so that returned list always matches the input.
+	 *
+	 * @param documents - documents to process
+	 * @return list of processed documents
+	 * @throws TerminologyException - if processing failed
+	 */
+	public List<Composition> process(List<Composition> documents) throws TerminologyException {
+		final List<Composition> result = new ArrayList<Composition>();
+		boolean o = ordered;
+		ordered = true;
+		try{
+			process(documents.iterator(),new CompositionHandler() {
+				public void compositionProcessed(Composition doc) throws Exception {
+					result.add(doc);
+				}
+				public void compositionFailed(String name, Exception ex) throws Exception {
+					throw new TerminologyException("Failed to process document "+name+": "+ex.getMessage(),ex);
+				}
+			});
+		}finally{
+			ordered = o;
+		}
+		return result;
+	}
+
+	/**
+	 * run processing tasks on a worker pool with a bounded number of documents in flight
+	 * @param tasks - tasks
+	 * @param handler - result handler
+	 * @throws TerminologyException - if processing failed
+	 */
+	private void execute(Iterator<Task> tasks, CompositionHandler handler) throws TerminologyException {
+		time = System.currentTimeMillis();
+		canceled = false;
+		setupWorkers();
+
+		final AtomicInteger count = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threadCount,new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r,"NobleMentions-worker-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		CompletionService<Task> completion = ordered?null:new ExecutorCompletionService<Task>(pool);
+		LinkedList<Future<Task>> pending = new LinkedList<Future<Task>>();
+		int limit = getQueueSize();
+		try{
+			while(!canceled && tasks.hasNext()){
+				Task task = tasks.next();
+				pending.add(ordered?pool.submit(task):completion.submit(task));
+				while(pending.size() >= limit)
+					deliver(completion,pending,handler);
+			}
+			while(!pending.isEmpty())
+				deliver(completion,pending,handler);
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new TerminologyException("Document processing was interrupted",ex);
+		}catch(ExecutionException ex){
+			Throwable cause = (ex.getCause() != null)?ex.getCause():ex;
+			if(cause instanceof TerminologyException)
+				throw (TerminologyException) cause;
+			throw new TerminologyException("Failed to process document: "+cause.getMessage(),cause);
+		}catch(TerminologyException ex){
+			throw ex;
+		}catch(Exception ex){
+			throw new TerminologyException("Failed to handle processed document: "+ex.getMessage(),ex);
+		}finally{
+			// workers are only released once no pool thread can use them anymore
+			if(awaitTermination(pool))
+				workers = null;
+			time = System.currentTimeMillis() - time;
+		}
+	}
+
+	/**
+	 * stop worker pool and wait for running workers to finish
+	 * @param pool - worker pool
+	 * @return true, if all workers are done
+	 */
+	private static boolean awaitTermination(ExecutorService pool){
+		pool.shutdownNow();
+		try{
+			return pool.awaitTermination(TERMINATION_TIMEOUT,TimeUnit.SECONDS);
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * hand over a single processed document to the handler
+	 */
+	private void deliver(CompletionService<Task> completion, LinkedList<Future<Task>> pending, CompositionHandler handler) throws Exception {
+		Future<Task> f = null;
+		if(completion == null){
+			f = pending.removeFirst();
+		}else{
+			f = completion.take();
+			pending.remove(f);
+		}
+		Task task = f.get();
+		if(task.error != null){
+			handler.compositionFailed(task.name,task.error);
+			return;
+		}
+		// exporters read instances from the shared ontology
+		synchronized(domainOntology.getLock()){
+			handler.compositionProcessed(task.doc);
+		}
+	}
+
+}
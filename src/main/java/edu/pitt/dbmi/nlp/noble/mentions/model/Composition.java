@@ -136,4 +136,47 @@ public class Composition extends Document {
 		getRejectedAnnotationVariables().addAll(failedVariables);
 	}
 	
+	/**
+	 * get all ontology instances that were created for this document: an instance of the document itself,
+	 * instances of accepted and rejected annotation variables and everything that they reference.
+	 * Instances that are shared between documents are not included.
+	 * @return set of instances owned by this document
+	 */
+	public Set<IInstance> getDocumentInstances(){
+		Set<IInstance> instances = new LinkedHashSet<IInstance>();
+		LinkedList<IInstance> queue = new LinkedList<IInstance>();
+		if(instance != null)
+			queue.add(instance);
+		for(AnnotationVariable var: getRejectedAnnotationVariables()){
+			if(var.instance != null)
+				queue.add(var.instance);
+		}
+		while(!queue.isEmpty()){
+			IInstance inst = queue.removeFirst();
+			if(instances.contains(inst) || domainOntology.isSharedInstance(inst))
+				continue;
+			instances.add(inst);
+			for(IProperty prop: inst.getProperties()){
+				if(prop.isObjectProperty()){
+					for(Object o: inst.getPropertyValues(prop)){
+						if(o instanceof IInstance)
+							queue.add((IInstance) o);
+					}
+				}
+			}
+		}
+		return instances;
+	}
+	
+	/**
+	 * remove all instances that were created for this document from the ontology, so that
+	 * instances of processed documents don't accumulate in memory. Shared instances are kept.
+	 */
+	public void dispose(){
+		for(IInstance inst: getDocumentInstances()){
+			inst.delete();
+		}
+		instance = null;
+	}
+	
 }
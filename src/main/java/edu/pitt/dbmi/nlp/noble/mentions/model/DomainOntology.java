@@ -19,6 +19,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.pitt.dbmi.nlp.noble.coder.model.Document;
 import edu.pitt.dbmi.nlp.noble.coder.model.Mention;
@@ -46,6 +47,7 @@ import edu.pitt.dbmi.nlp.noble.terminology.TerminologyError;
 import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
 import edu.pitt.dbmi.nlp.noble.tools.ConText;
+import edu.pitt.dbmi.nlp.noble.tools.ConTextLexicon;
 import edu.pitt.dbmi.nlp.noble.tools.ConTextHelper;
 import edu.pitt.dbmi.nlp.noble.tools.TextTools;
 import edu.pitt.dbmi.nlp.noble.util.ConceptImporter;
@@ -96,6 +98,8 @@ public class DomainOntology {
 	public static final String HAS_VALUE = "hasValue";
 	public static final String UNIT = "Unit";
 	protected static final String EVAL_INSTANCE_SUFFIX = "_evaluation_inst";
+	protected static final String DEFAULT_INSTANCE_SUFFIX = "_Instance";
+	protected static final String DEFAULT_MODIFIER_INSTANCE_SUFFIX = "_default";
 	public static final String HAS_SECTION = "hasSection";
 	public static final String DOCUMENT_SECTION = "DocumentSection";
 	public static final String HAS_SPAN = "hasSpan";
@@ -107,10 +111,12 @@ public class DomainOntology {
 	private Terminology anchorTerminology, modifierTerminology,sectionTerminology;
 	//private Map<String,SemanticType> semanticTypeMap;
 	private ConText.ModifierResolver modifierResolver;
-	private Map<IClass,Set<IClass>> compoundAnchorMap;
+	private volatile TypeIndex typeIndex;
+	private volatile ConTextLexicon modifierLexicon;
 	private File ontologyLocation;
 	private Map<String,String> defaultValues;
-	private static int instanceCounter = 1;
+	private static AtomicInteger instanceCounter = new AtomicInteger(1);
+	private final Object lock = new Object();
 	private Map<IClass,List<IInstance>> classInstanceMap;
 	private boolean normalizeAnchors, normalizeModifiers, scoreConcepts;
 	private String annotatioRelationSkope = PARAGRAPH_SCOPE;
@@ -208,6 +214,72 @@ public class DomainOntology {
 			modifierTerminology.dispose();
 		anchorTerminology = null;
 		modifierTerminology = null;
+		modifierLexicon = null;
+		typeIndex = null;
+	}
+	
+	/**
+	 * get an object that guards access to the ontology. OWL ontology is not thread safe,
+	 * so threads that share domain ontology should hold this lock while they create or read instances
+	 * @return lock object
+	 */
+	public Object getLock(){
+		return lock;
+	}
+	
+	/**
+	 * get compiled index of class hierarchy that is used for type checks,
+	 * it is built the first time it is requested
+	 * @return type index
+	 */
+	public TypeIndex getTypeIndex(){
+		TypeIndex index = typeIndex;
+		if(index == null){
+			synchronized(this){
+				if(typeIndex == null)
+					typeIndex = new TypeIndex(ontology);
+				index = typeIndex;
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * is instance shared between documents, that is it was defined in ontology or it is
+	 * a default or evaluation instance that is reused for every document
+	 * @param inst - instance in question
+	 * @return true or false
+	 */
+	public boolean isSharedInstance(IInstance inst){
+		String name = inst.getName();
+		if(name.endsWith(DEFAULT_INSTANCE_SUFFIX) || name.endsWith(DEFAULT_MODIFIER_INSTANCE_SUFFIX) || name.endsWith(EVAL_INSTANCE_SUFFIX))
+			return true;
+		return getTypeIndex().isInstance(inst.getURI().toString());
+	}
+	
+	/**
+	 * does class have a given parent, uses type index if both classes are in it
+	 * @param cls - class in question
+	 * @param parent - parent class
+	 * @return true or false
+	 */
+	public boolean hasSuperClass(IClass cls, IClass parent){
+		if(cls == null || parent == null)
+			return false;
+		TypeIndex index = getTypeIndex();
+		if(index.contains(cls) && index.contains(parent))
+			return index.hasSuperClass(cls,parent);
+		return cls.hasSuperClass(parent);
+	}
+	
+	/**
+	 * does class have a given child, uses type index if both classes are in it
+	 * @param cls - class in question
+	 * @param child - child class
+	 * @return true or false
+	 */
+	public boolean hasSubClass(IClass cls, IClass child){
+		return hasSuperClass(child,cls);
 	}
 
 	
@@ -291,9 +363,11 @@ public class DomainOntology {
 				// check if there is a cache available
 				if(sectionFile != null && sectionFile.exists()){
 					sectionTerminology = new NobleCoderTerminology(sectionFile);
-				}else{
+				}else if(sectionFile != null){
 					DictionarySectionProcessor.loadDocumentSections(ontology,sectionFile);
 					sectionTerminology =  new NobleCoderTerminology(sectionFile);
+				}else{
+					sectionTerminology = DictionarySectionProcessor.loadDocumentSections(ontology,null);
 				}
 			} catch (Exception e) {
 				throw new TerminologyError("Unable to load anchor terminology from "+sectionTerminology,e);
@@ -316,7 +390,7 @@ public class DomainOntology {
 					anchorTerminology = new NobleCoderTerminology(anchorFile);
 				}else{
 					NobleCoderTerminology terminology = null;
-					if(anchorFile.getParentFile().exists()){
+					if(anchorFile != null && anchorFile.getParentFile().exists()){
 						terminology = new NobleCoderTerminology(anchorFile,false);
 					}else{
 						terminology = new NobleCoderTerminology();
@@ -345,7 +419,7 @@ public class DomainOntology {
 						}
 					}
 					// save cache
-					if(anchorFile.exists()){
+					if(anchorFile != null && anchorFile.exists()){
 						// compact
 						ConceptImporter.getInstance().compact(terminology);
 						
@@ -383,7 +457,7 @@ public class DomainOntology {
 				}else{
 					// setup special interest of noble coder
 					NobleCoderTerminology terminology = null;
-					if(modifierFile.getParentFile().exists()){
+					if(modifierFile != null && modifierFile.getParentFile().exists()){
 						terminology = new NobleCoderTerminology(modifierFile,false);
 					}else{
 						terminology = new NobleCoderTerminology();
@@ -433,7 +507,7 @@ public class DomainOntology {
 							}
 						}
 					}
-					if(modifierFile.exists()){
+					if(modifierFile != null && modifierFile.exists()){
 						// compact
 						ConceptImporter.getInstance().compact(terminology);
 						
@@ -452,6 +526,23 @@ public class DomainOntology {
 		return modifierTerminology;
 	}
 	
+	/**
+	 * get compiled lexicon of modifier terminology, it is built once and can be 
+	 * shared by ConText instances that run in different threads
+	 * @return modifier lexicon
+	 */
+	public ConTextLexicon getModifierLexicon(){
+		ConTextLexicon lexicon = modifierLexicon;
+		if(lexicon == null){
+			synchronized(this){
+				if(modifierLexicon == null)
+					modifierLexicon = new ConTextLexicon(getModifierTerminology());
+				lexicon = modifierLexicon;
+			}
+		}
+		return lexicon;
+	}
+	
 	/**
 	 * get anchor and modifier terminology together
 	 * @return all terminologies associated with this ontology
@@ -545,7 +636,9 @@ public class DomainOntology {
 	public IClass getConceptClass(Modifier modifier){
 		if(modifier.getMention() != null)
 			return getConceptClass(modifier.getMention());
-		return ontology.getClass(modifier.getValue());
+		synchronized(lock){
+			return ontology.getClass(modifier.getValue());
+		}
 	}
 	/**
 	 * get concept class for a given mention
@@ -568,14 +661,20 @@ public class DomainOntology {
 			return null;
 		String uri = concept.getCode(Source.URI);
 		if(uri != null){
-			IClass cls = ontology.getClass(uri);
-			if(cls == null){
-				IInstance inst = ontology.getInstance(uri);
-				if(inst != null){
-					return inst.getDirectTypes()[0];
+			IClass cls = getTypeIndex().getConceptClass(uri);
+			if(cls != null)
+				return cls;
+			// type index is immutable, while ontology is shared with threads that create instances
+			synchronized(lock){
+				cls = ontology.getClass(uri);
+				if(cls == null){
+					IInstance inst = ontology.getInstance(uri);
+					if(inst != null){
+						return inst.getDirectTypes()[0];
+					}
 				}
+				return cls;
 			}
-			return cls;
 		}
 		return null;
 	}
@@ -676,7 +775,13 @@ public class DomainOntology {
 	 */
 	private boolean isAnchor(Mention m) {
 		IClass cls = getConceptClass(m);
-		return cls != null ? cls.hasSuperClass(ontology.getClass(ANCHOR)) || cls.hasSuperClass(ontology.getClass(COMPOUND_ANCHOR)):false;
+		if(cls == null)
+			return false;
+		if(getTypeIndex().contains(cls))
+			return getTypeIndex().isAnchor(cls);
+		synchronized(lock){
+			return cls.hasSuperClass(ontology.getClass(ANCHOR)) || cls.hasSuperClass(ontology.getClass(COMPOUND_ANCHOR));
+		}
 	}
 	
 	/**
@@ -696,8 +801,15 @@ public class DomainOntology {
 	 * @return true or not
 	 */
 	public boolean isTypeOf(IClass cls, String type){
-		IClass typeCls = ontology.getClass(type); 
-		return cls != null && (cls.equals(typeCls) || cls.hasSuperClass(typeCls));
+		if(cls == null)
+			return false;
+		TypeIndex index = getTypeIndex();
+		if(index.contains(cls) && index.getId(type) > -1)
+			return index.isTypeOf(cls, type);
+		synchronized(lock){
+			IClass typeCls = ontology.getClass(type); 
+			return cls != null && (cls.equals(typeCls) || cls.hasSuperClass(typeCls));
+		}
 	}
 	
 	/**
@@ -828,11 +940,12 @@ public class DomainOntology {
 	
 	private Set<IClass> getPossibleCompoundAnchorArguments(IClass compoundCls,Set<IClass> mentionsClss){
 		Set<IClass> found = new LinkedHashSet<IClass>();
+		TypeIndex index = getTypeIndex();
+		Set<IClass> args = getCompoundAnchorMap().get(compoundCls);
 		for(IClass mention: mentionsClss){
-			Set<IClass> args = getCompoundAnchorMap().get(compoundCls);
-			if(args.contains(mention))
+			if(args.contains(mention) || index.isCompoundAnchorArgument(compoundCls,mention))
 				found.add(mention);
-			else{
+			else if(!index.contains(mention)){
 				for(IClass i: args){
 					if(i.hasSubClass(mention)){
 						found.add(mention);break;
@@ -851,19 +964,7 @@ public class DomainOntology {
 	 * @return compound anchor map
 	 */
 	private Map<IClass,Set<IClass>> getCompoundAnchorMap(){
-		if(compoundAnchorMap == null){
-			compoundAnchorMap = new HashMap<IClass, Set<IClass>>();
-			for(IClass cls: ontology.getClass(COMPOUND_ANCHOR).getSubClasses()){
-				// get all possible component classes
-				Set<IClass> possibleComponents = new LinkedHashSet<IClass>(); 
-				for(IRestriction r: cls.getRestrictions(ontology.getProperty(HAS_COMPOUND_ARGUMENT))){
-					possibleComponents.addAll(getContainedClasses(r.getParameter()));
-				}
-				// 
-				compoundAnchorMap.put(cls,possibleComponents);
-			}
-		}
-		return compoundAnchorMap;
+		return getTypeIndex().getCompoundAnchorMap();
 	}
 	
 	
@@ -908,76 +1009,80 @@ public class DomainOntology {
 			modifierResolver = new ConText.ModifierResolver() {
 				
 				public boolean isModifierApplicable(Mention modifier, Mention target) {
-					// get an annotation class for this target
-					if(target.getConcept().getRelationMap().containsKey(IS_ANCHOR_OF)){
-						for(String annotoationName: target.getConcept().getRelationMap().get(IS_ANCHOR_OF)){
-							IClass annotationCls = ontology.getClass(annotoationName);
-							if(annotationCls != null){
-								for(IRestriction r: getRestrictions(annotationCls)){
-									String inverseProp = getInversePropertyName(r.getProperty().getName());
-									// if we got an inverse property, awesome lets look if they match
-									if(modifier.getConcept().getRelationMap().containsKey(inverseProp)){
-										for(String domainName: modifier.getConcept().getRelationMap().get(inverseProp)){
-											IClass domainCls = ontology.getClass(domainName);
-											if(domainCls != null && domainCls.evaluate(annotationCls)){
-												return true;
+					synchronized(lock){
+						// get an annotation class for this target
+						if(target.getConcept().getRelationMap().containsKey(IS_ANCHOR_OF)){
+							for(String annotoationName: target.getConcept().getRelationMap().get(IS_ANCHOR_OF)){
+								IClass annotationCls = ontology.getClass(annotoationName);
+								if(annotationCls != null){
+									for(IRestriction r: getRestrictions(annotationCls)){
+										String inverseProp = getInversePropertyName(r.getProperty().getName());
+										// if we got an inverse property, awesome lets look if they match
+										if(modifier.getConcept().getRelationMap().containsKey(inverseProp)){
+											for(String domainName: modifier.getConcept().getRelationMap().get(inverseProp)){
+												IClass domainCls = ontology.getClass(domainName);
+												if(domainCls != null && domainCls.evaluate(annotationCls)){
+													return true;
+												}
 											}
 										}
 									}
 								}
 							}
 						}
-					}
-					// check if the target explicitly defines a relationship
-					IClass modifierCls = getConceptClass(modifier);
-					for(String propName: target.getConcept().getRelationMap().keySet()){
-						IProperty prop = ontology.getProperty(propName);
-						if(prop != null && isPropertyRangeSatisfied(prop, modifierCls)){
-							return true;
+						// check if the target explicitly defines a relationship
+						IClass modifierCls = getConceptClass(modifier);
+						for(String propName: target.getConcept().getRelationMap().keySet()){
+							IProperty prop = ontology.getProperty(propName);
+							if(prop != null && isPropertyRangeSatisfied(prop, modifierCls)){
+								return true;
+							}
 						}
+						return false;
 					}
-					return false;
 				}
 
 				/**
 				 * process numeric modifiers to get
 				 */
 				public void processNumericModifiers(Sentence sentence) {
-					//new ArrayList<Mention>(
-					for(Mention m: sentence.getMentions()){
-						IClass modifierCls = getConceptClass(m);
-						if(isTypeOf(modifierCls,NUMERIC_MODIFER)){
-							// parse numeric component
-							List<Double> numbers = parseNumbers(m);
+					synchronized(lock){
+						//new ArrayList<Mention>(
+						for(Mention m: sentence.getMentions()){
+							IClass modifierCls = getConceptClass(m);
+							if(isTypeOf(modifierCls,NUMERIC_MODIFER)){
+								// parse numeric component
+								List<Double> numbers = parseNumbers(m);
 							
-							// skip if there are no numbers
-							if(numbers.isEmpty())
-								continue;
+								// skip if there are no numbers
+								if(numbers.isEmpty())
+									continue;
 							
 							
-							// add appropriate fields
-							if(isTypeOf(modifierCls,QUANTITY)){
-								if(numbers.size() > 0){
-									m.addModifier(Modifier.getModifier(HAS_QUANTITY_VALUE,""+numbers.get(0)));
-								}
-							}else if(isTypeOf(modifierCls,RATIO)){
-								if(numbers.size() > 1){
-									m.addModifier(Modifier.getModifier(HAS_NUMERATOR_VALUE,""+numbers.get(0)));
-									m.addModifier(Modifier.getModifier(HAS_DENOMINATOR_VALUE,""+numbers.get(1)));
-								}
+								// add appropriate fields
+								if(isTypeOf(modifierCls,QUANTITY)){
+									if(numbers.size() > 0){
+										m.addModifier(Modifier.getModifier(HAS_QUANTITY_VALUE,""+numbers.get(0)));
+									}
+								}else if(isTypeOf(modifierCls,RATIO)){
+									if(numbers.size() > 1){
+										m.addModifier(Modifier.getModifier(HAS_NUMERATOR_VALUE,""+numbers.get(0)));
+										m.addModifier(Modifier.getModifier(HAS_DENOMINATOR_VALUE,""+numbers.get(1)));
+									}
 								
-							}else if(isTypeOf(modifierCls,RANGE)){
-								if(numbers.size() > 1){
-									m.addModifier(Modifier.getModifier(HAS_LOW_VALUE,""+numbers.get(0)));
-									m.addModifier(Modifier.getModifier(HAS_HIGH_VALUE,""+numbers.get(1)));
-								}
-							}else if(isTypeOf(modifierCls,DIMENSIONAL_MEASUREMENT)){
-								int i = 1;
-								for(Double d: numbers){
-									m.addModifier(Modifier.getModifier("has"+(i++)+DIMENSION_VALUE,""+d));
+								}else if(isTypeOf(modifierCls,RANGE)){
+									if(numbers.size() > 1){
+										m.addModifier(Modifier.getModifier(HAS_LOW_VALUE,""+numbers.get(0)));
+										m.addModifier(Modifier.getModifier(HAS_HIGH_VALUE,""+numbers.get(1)));
+									}
+								}else if(isTypeOf(modifierCls,DIMENSIONAL_MEASUREMENT)){
+									int i = 1;
+									for(Double d: numbers){
+										m.addModifier(Modifier.getModifier("has"+(i++)+DIMENSION_VALUE,""+d));
+									}
 								}
-							}
 							
+							}
 						}
 					}
 				}
@@ -1295,7 +1400,7 @@ public class DomainOntology {
 	 */
 	public static String createInstanceName(IClass cls){
 		//return cls.getName()+"-"+System.currentTimeMillis()+"-"+((int)(Math.random()*1000));
-		return cls.getName()+"-"+(instanceCounter++);
+		return cls.getName()+"-"+instanceCounter.getAndIncrement();
 	}
 	
 	/**
@@ -1305,7 +1410,7 @@ public class DomainOntology {
 	 */
 	public static IInstance getDefaultInstance(IClass cls){
 		IOntology ontology = cls.getOntology();
-		String name = cls.getName()+"_Instance";
+		String name = cls.getName()+DEFAULT_INSTANCE_SUFFIX;
 		IInstance instance = ontology.getInstance(name);
 		if(instance == null)
 			instance = cls.createInstance(name);
@@ -1413,7 +1518,7 @@ public class DomainOntology {
 				return m1.getModifierTypes().size() > m2.getModifierTypes().size();
 
 			// if modifier1 is more specific, it is better specified	
-			}else if(mod1.hasSuperClass(mod2)){
+			}else if(hasSuperClass(mod1,mod2)){
 				return true;
 			// if modifier1 is non-default, it is better then default one
 			}else if(!modifier1.isDefaultValue() && modifier2.isDefaultValue()){
@@ -1434,7 +1539,7 @@ public class DomainOntology {
 			if(o instanceof IRestriction){
 				IRestriction r = (IRestriction) o;
 				for(IClass cls : getContainedClasses(r.getParameter())){
-					if(cls.hasSuperClass(annotation)){
+					if(hasSuperClass(cls,annotation)){
 						return true;
 					}
 				}
@@ -1564,7 +1669,7 @@ public class DomainOntology {
 						Set<IClass> list = new LinkedHashSet<IClass>();
 						for (IClass c : getContainedClasses(r.getParameter())) {
 							// if a class is an annotation
-							if (c.hasSuperClass(annotation)) {
+							if (hasSuperClass(c,annotation)) {
 								list.add(c);
 							}
 						}
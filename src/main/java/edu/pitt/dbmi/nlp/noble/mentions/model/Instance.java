@@ -215,9 +215,9 @@ public class Instance {
 					return null;
 				}else{
 					// get default instance of something
-					instance = domainOntology.getOntology().getInstance(cls.getName()+"_default");
+					instance = domainOntology.getOntology().getInstance(cls.getName()+DomainOntology.DEFAULT_MODIFIER_INSTANCE_SUFFIX);
 					if(instance == null)
-						instance = cls.createInstance(cls.getName()+"_default");
+						instance = cls.createInstance(cls.getName()+DomainOntology.DEFAULT_MODIFIER_INSTANCE_SUFFIX);
 				}
 				
 			}
@@ -422,12 +422,12 @@ public class Instance {
 
         // check if this number instance is too general for THIS instance
       	IClass vc = inst.getConceptClass();
-        if(vc != null && vc.hasSuperClass(number) && !prop.isDatatypeProperty() && !isSatisfied(getConceptClass(),prop,vc)) {
+        if(vc != null && domainOntology.hasSuperClass(vc,number) && !prop.isDatatypeProperty() && !isSatisfied(getConceptClass(),prop,vc)) {
 			//if we don't have a more specific numeric class, skip it
 			boolean skip = false;
 			for(Modifier m: getModifiers()){
 				IClass mc = domainOntology.getConceptClass(m);
-				if(mc.hasSuperClass(vc))
+				if(domainOntology.hasSuperClass(mc,vc))
 					skip = true;
 			}
         	if(skip)
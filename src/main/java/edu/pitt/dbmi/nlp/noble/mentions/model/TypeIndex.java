@@ -0,0 +1,328 @@
+package edu.pitt.dbmi.nlp.noble.mentions.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.pitt.dbmi.nlp.noble.ontology.IClass;
+import edu.pitt.dbmi.nlp.noble.ontology.IInstance;
+import edu.pitt.dbmi.nlp.noble.ontology.ILogicExpression;
+import edu.pitt.dbmi.nlp.noble.ontology.IOntology;
+import edu.pitt.dbmi.nlp.noble.ontology.IProperty;
+import edu.pitt.dbmi.nlp.noble.ontology.IRestriction;
+import edu.pitt.dbmi.nlp.noble.ontology.IResourceIterator;
+
+/**
+ * compiled index of class hierarchy of a domain ontology. Every class gets an integer id
+ * and a bitset of all of its superclasses, so that subsumption checks that are done for
+ * every mention are bit tests instead of reasoner queries. Anchor, compound anchor and modifier
+ * classes, as well as arguments of compound anchors are also precomputed.
+ * The index is built once and is not modified after, so it can be shared by several threads.
+ * Classes that were added to ontology after the index was built are not in the index.
+ *
+ * @author tseytlin
+ */
+public class TypeIndex {
+	private final Map<String,Integer> classIds, instanceTypes;
+	private final List<IClass> classes;
+	private final List<BitSet> ancestors;
+	private final BitSet anchors, compoundAnchors, modifiers;
+	private final Map<Integer,BitSet> compoundArguments;
+	private final Map<IClass,Set<IClass>> compoundAnchorMap;
+
+	/**
+	 * build type index for a given domain ontology.
+	 *
+	 * @param ontology the ontology
+	 */
+	public TypeIndex(IOntology ontology){
+		classIds = new HashMap<String, Integer>();
+		instanceTypes = new HashMap<String, Integer>();
+		classes = new ArrayList<IClass>();
+		ancestors = new ArrayList<BitSet>();
+
+		// assign ids to all classes
+		for(IResourceIterator it = ontology.getAllClasses();it.hasNext();){
+			Object o = it.next();
+			if(o instanceof IClass)
+				add((IClass) o);
+		}
+
+		// compute transitive closure of superclasses once
+		for(int i=0;i<classes.size();i++){
+			BitSet bits = ancestors.get(i);
+			for(IClass parent: classes.get(i).getSuperClasses())
+				bits.set(add(parent));
+		}
+
+		// map instances to their types
+		for(int i=0;i<classes.size();i++){
+			for(IInstance inst: classes.get(i).getDirectInstances()){
+				String uri = inst.getURI().toString();
+				if(!instanceTypes.containsKey(uri)){
+					IClass [] types = inst.getDirectTypes();
+					int id = (types.length > 0)?getId(types[0]):i;
+					instanceTypes.put(uri,(id > -1)?id:i);
+					if(!instanceTypes.containsKey(inst.getName()))
+						instanceTypes.put(inst.getName(),instanceTypes.get(uri));
+				}
+			}
+		}
+
+		// precompute types
+		anchors = getDescendants(ontology.getClass(DomainOntology.ANCHOR),false);
+		compoundAnchors = getDescendants(ontology.getClass(DomainOntology.COMPOUND_ANCHOR),false);
+		anchors.or(compoundAnchors);
+		modifiers = getDescendants(ontology.getClass(DomainOntology.MODIFIER),true);
+
+		// compound anchors and their arguments
+		compoundArguments = new HashMap<Integer, BitSet>();
+		compoundAnchorMap = new LinkedHashMap<IClass, Set<IClass>>();
+		IProperty hasCompoundArgument = ontology.getProperty(DomainOntology.HAS_COMPOUND_ARGUMENT);
+		if(hasCompoundArgument != null){
+			for(int i = compoundAnchors.nextSetBit(0);i >= 0; i = compoundAnchors.nextSetBit(i+1)){
+				IClass cls = classes.get(i);
+				Set<IClass> possibleComponents = new LinkedHashSet<IClass>();
+				BitSet args = new BitSet();
+				for(IRestriction r: cls.getRestrictions(hasCompoundArgument))
+					addContainedClasses(r.getParameter(),possibleComponents);
+				for(IClass c: possibleComponents)
+					args.set(add(c));
+				compoundArguments.put(i,args);
+				compoundAnchorMap.put(cls,Collections.unmodifiableSet(possibleComponents));
+			}
+		}
+	}
+
+	/**
+	 * add all classes contained in a given expression
+	 */
+	private void addContainedClasses(ILogicExpression exp, Set<IClass> classes){
+		for(Object o: exp){
+			if(o instanceof IClass)
+				classes.add((IClass)o);
+			else if(o instanceof ILogicExpression)
+				addContainedClasses((ILogicExpression)o,classes);
+		}
+	}
+
+	/**
+	 * add class to the index if it is not there.
+	 *
+	 * @param cls the cls
+	 * @return the id
+	 */
+	private int add(IClass cls){
+		String uri = cls.getURI().toString();
+		Integer id = classIds.get(uri);
+		if(id == null){
+			id = classes.size();
+			classes.add(cls);
+			ancestors.add(new BitSet());
+			classIds.put(uri,id);
+			if(!classIds.containsKey(cls.getName()))
+				classIds.put(cls.getName(),id);
+		}
+		return id;
+	}
+
+	/**
+	 * get all classes that have a given parent.
+	 *
+	 * @param parent the parent
+	 * @param inclusive include parent itself
+	 * @return the descendants
+	 */
+	private BitSet getDescendants(IClass parent, boolean inclusive){
+		BitSet bits = new BitSet();
+		int p = getId(parent);
+		if(p < 0)
+			return bits;
+		for(int i=0;i<ancestors.size();i++){
+			if(ancestors.get(i).get(p))
+				bits.set(i);
+		}
+		if(inclusive)
+			bits.set(p);
+		return bits;
+	}
+
+	/**
+	 * get id of a class.
+	 *
+	 * @param cls the cls
+	 * @return the id or -1, if class is not in the index
+	 */
+	public int getId(IClass cls){
+		if(cls == null)
+			return -1;
+		Integer id = classIds.get(cls.getURI().toString());
+		return (id != null)?id:-1;
+	}
+
+	/**
+	 * get id of a class.
+	 *
+	 * @param name the class URI or name
+	 * @return the id or -1, if class is not in the index
+	 */
+	public int getId(String name){
+		Integer id = classIds.get(name);
+		return (id != null)?id:-1;
+	}
+
+	/**
+	 * get class for a given id.
+	 *
+	 * @param id the id
+	 * @return the class
+	 */
+	public IClass getClass(int id){
+		return (id > -1 && id < classes.size())?classes.get(id):null;
+	}
+
+	/**
+	 * get class for a class URI or name, or a type of instance for an instance URI or name
+	 *
+	 * @param name the URI or name of class or instance
+	 * @return the class or null, if resource is not in the index
+	 */
+	public IClass getConceptClass(String name){
+		Integer id = classIds.get(name);
+		if(id == null)
+			id = instanceTypes.get(name);
+		return (id != null)?classes.get(id):null;
+	}
+
+	/**
+	 * was instance defined in ontology at the time the index was built.
+	 *
+	 * @param name the URI or name of instance
+	 * @return true, if instance is in the index
+	 */
+	public boolean isInstance(String name){
+		return instanceTypes.containsKey(name);
+	}
+
+	/**
+	 * number of indexed classes.
+	 *
+	 * @return the int
+	 */
+	public int size(){
+		return classes.size();
+	}
+
+	/**
+	 * is class indexed.
+	 *
+	 * @param cls the cls
+	 * @return true, if successful
+	 */
+	public boolean contains(IClass cls){
+		return getId(cls) > -1;
+	}
+
+	/**
+	 * does class have a given parent, same as cls.hasSuperClass(parent).
+	 *
+	 * @param cls the cls
+	 * @param parent the parent
+	 * @return true, if successful
+	 */
+	public boolean hasSuperClass(IClass cls, IClass parent){
+		int c = getId(cls), p = getId(parent);
+		if(c < 0 || p < 0)
+			return false;
+		return ancestors.get(c).get(p);
+	}
+
+	/**
+	 * does class have a given child, same as cls.hasSubClass(child).
+	 *
+	 * @param cls the cls
+	 * @param child the child
+	 * @return true, if successful
+	 */
+	public boolean hasSubClass(IClass cls, IClass child){
+		return hasSuperClass(child,cls);
+	}
+
+	/**
+	 * is class the same as a given type or more specific.
+	 *
+	 * @param cls the cls
+	 * @param type the type
+	 * @return true, if is type of
+	 */
+	public boolean isTypeOf(IClass cls, String type){
+		int c = getId(cls), t = getId(type);
+		if(c < 0 || t < 0)
+			return false;
+		return c == t || ancestors.get(c).get(t);
+	}
+
+	/**
+	 * is class a subclass of anchor or compound anchor.
+	 *
+	 * @param cls the cls
+	 * @return true, if is anchor
+	 */
+	public boolean isAnchor(IClass cls){
+		int c = getId(cls);
+		return c > -1 && anchors.get(c);
+	}
+
+	/**
+	 * is class a subclass of compound anchor.
+	 *
+	 * @param cls the cls
+	 * @return true, if is compound anchor
+	 */
+	public boolean isCompoundAnchor(IClass cls){
+		int c = getId(cls);
+		return c > -1 && compoundAnchors.get(c);
+	}
+
+	/**
+	 * is class a modifier or its subclass.
+	 *
+	 * @param cls the cls
+	 * @return true, if is modifier
+	 */
+	public boolean isModifier(IClass cls){
+		int c = getId(cls);
+		return c > -1 && modifiers.get(c);
+	}
+
+	/**
+	 * get mapping between compound anchors and their possible arguments.
+	 *
+	 * @return the compound anchor map
+	 */
+	public Map<IClass,Set<IClass>> getCompoundAnchorMap(){
+		return Collections.unmodifiableMap(compoundAnchorMap);
+	}
+
+	/**
+	 * can class be an argument of a compound anchor, that is it is the same or
+	 * more specific then one of the arguments.
+	 *
+	 * @param compoundCls the compound anchor class
+	 * @param cls the cls
+	 * @return true, if is compound anchor argument
+	 */
+	public boolean isCompoundAnchorArgument(IClass compoundCls, IClass cls){
+		int c = getId(cls);
+		BitSet args = compoundArguments.get(getId(compoundCls));
+		if(c < 0 || args == null)
+			return false;
+		return args.get(c) || args.intersects(ancestors.get(c));
+	}
+}
@@ -0,0 +1,523 @@
+package edu.pitt.dbmi.nlp.noble.servlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import edu.pitt.dbmi.nlp.noble.coder.NobleCoder;
+import edu.pitt.dbmi.nlp.noble.coder.model.Document;
+import edu.pitt.dbmi.nlp.noble.coder.model.Mention;
+import edu.pitt.dbmi.nlp.noble.terminology.SemanticType;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TerminologyRegistry;
+import edu.pitt.dbmi.nlp.noble.tools.ConText;
+import edu.pitt.dbmi.nlp.noble.util.JSONUtils;
+
+/**
+ * Servlet that codes batches of documents and returns mentions as compact JSON.
+ * Documents of all requests are coded on a single worker pool against terminologies
+ * that are opened once through TerminologyRegistry. Search options are request parameters
+ * (same keys as in search.properties), they never change the shared terminology.
+ * <p>
+ * POST body can be:
+ * <ul>
+ * <li>application/json - an array of documents or an object with documents array, where a document is either
+ * a text string or an object with text and optional id: {"documents":[{"id":"1","text":"..."}]}</li>
+ * <li>text/plain - one or more documents separated by form feed character</li>
+ * </ul>
+ * GET request codes a single document passed in text parameter.
+ * Requests with more then max.documents documents or with a body larger then max.request.size
+ * characters are rejected with 400 status.
+ * Coded documents are streamed back in input order as they are done:
+ * {"terminology":"..","documents":[{"id":"1","time":5,"mentions":[..]}],"count":1,"time":7}
+ *
+ * @author tseytlin
+ */
+public class CodingServlet extends HttpServlet {
+	public static final String DOCUMENT_SEPARATOR = "\f";
+	public static final String CONTENT_TYPE_JSON = "application/json";
+	private static final long TERMINATION_TIMEOUT = 60;
+	private File terminologyLocation;
+	private String defaultTerminology;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private int maxDocuments = 1000;
+	private long maxRequestSize = 64L*1024*1024;
+	private ExecutorService pool;
+	private ConText conText;
+	private Map<String,TerminologyRegistry.Handle> handles;
+	private ThreadLocal<Map<String,NobleCoder>> coders;
+	private List<NobleCoder> createdCoders = new ArrayList<NobleCoder>();
+
+	/**
+	 * init servlet.
+	 *
+	 * @param config the config
+	 * @throws ServletException the servlet exception
+	 */
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		String location = config.getInitParameter("terminology.location");
+		String threads = config.getInitParameter("coder.threads");
+		String documents = config.getInitParameter("max.documents");
+		String size = config.getInitParameter("max.request.size");
+
+		terminologyLocation = (location != null)?new File(location):NobleCoderTerminology.getPersistenceDirectory();
+		defaultTerminology = config.getInitParameter("default.terminology");
+		if(threads != null)
+			threadCount = Math.max(1,Integer.parseInt(threads));
+		if(documents != null)
+			maxDocuments = Integer.parseInt(documents);
+		if(size != null)
+			maxRequestSize = Long.parseLong(size);
+
+		handles = new HashMap<String,TerminologyRegistry.Handle>();
+		coders = new ThreadLocal<Map<String,NobleCoder>>(){
+			protected Map<String, NobleCoder> initialValue() {
+				return new HashMap<String,NobleCoder>();
+			}
+		};
+		final AtomicInteger count = new AtomicInteger();
+		pool = Executors.newFixedThreadPool(threadCount,new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r,"CodingServlet-worker-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * cleanup after. Coders and terminologies are released only after
+	 * worker pool is done, so that running requests never use disposed terminologies.
+	 */
+	public void destroy(){
+		if(pool != null && !awaitTermination(pool))
+			return;
+		synchronized(createdCoders){
+			for(NobleCoder coder: createdCoders)
+				coder.dispose();
+			createdCoders.clear();
+		}
+		synchronized(this){
+			if(handles != null){
+				for(TerminologyRegistry.Handle h: handles.values())
+					h.close();
+				handles.clear();
+			}
+		}
+	}
+
+	/**
+	 * stop worker pool and wait for running workers to finish.
+	 *
+	 * @param pool the pool
+	 * @return true, if all workers are done
+	 */
+	private static boolean awaitTermination(ExecutorService pool){
+		pool.shutdownNow();
+		try{
+			return pool.awaitTermination(TERMINATION_TIMEOUT,TimeUnit.SECONDS);
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * get a shared terminology by name, it is opened on first use.
+	 *
+	 * @param name the name, if null default terminology is used
+	 * @return the terminology
+	 * @throws TerminologyException the terminology exception
+	 */
+	private synchronized NobleCoderTerminology getTerminology(String name) throws TerminologyException {
+		if(name == null || name.length() == 0)
+			name = defaultTerminology;
+		if(name == null)
+			throw new TerminologyException("Terminology was not specified");
+		// don't let terminology name point outside of terminology location
+		if(name.contains("/") || name.contains("\\") || name.contains(".."))
+			throw new TerminologyException("Invalid terminology name "+name);
+		TerminologyRegistry.Handle handle = handles.get(name);
+		if(handle == null){
+			try{
+				handle = TerminologyRegistry.open(new File(terminologyLocation,name+NobleCoderTerminology.TERM_SUFFIX));
+			}catch(IOException ex){
+				throw new TerminologyException("Unknown terminology "+name,ex);
+			}
+			handles.put(name,handle);
+		}
+		return handle.getTerminology();
+	}
+
+	/**
+	 * get ConText instance whose modifier terminology is shared by all workers,
+	 * default modifier terminology is loaded when it is first needed
+	 *
+	 * @return the con text
+	 */
+	public synchronized ConText getConText() {
+		if(conText == null)
+			conText = new ConText();
+		return conText;
+	}
+
+	/**
+	 * set ConText instance whose modifier terminology is shared by all workers
+	 *
+	 * @param conText the new con text
+	 */
+	public synchronized void setConText(ConText conText) {
+		this.conText = conText;
+	}
+
+	/**
+	 * get coder that is confined to a worker thread.
+	 *
+	 * @param terminology the terminology
+	 * @param contextDetection the context detection
+	 * @return the coder
+	 */
+	private NobleCoder getCoder(NobleCoderTerminology terminology, boolean contextDetection){
+		Map<String,NobleCoder> map = coders.get();
+		String key = terminology.getName()+":"+contextDetection;
+		NobleCoder coder = map.get(key);
+		if(coder == null){
+			coder = new NobleCoder(terminology);
+			coder.setContextDetection(contextDetection);
+			if(contextDetection){
+				ConText ct = new ConText(getConText().getLexicon());
+				ct.setModifierResolver(getConText().getModifierResolver());
+				coder.setConText(ct);
+			}
+			map.put(key,coder);
+			synchronized(createdCoders){
+				createdCoders.add(coder);
+			}
+		}
+		return coder;
+	}
+
+	/**
+	 * Get requests code a single document in text parameter.
+	 *
+	 * @param req the req
+	 * @param res the res
+	 * @throws ServletException the servlet exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+		String text = req.getParameter("text");
+		process(req,res,"text/plain",new StringReader((text != null)?text:""));
+	}
+
+	/**
+	 * Post requests code a batch of documents in request body.
+	 *
+	 * @param req the req
+	 * @param res the res
+	 * @throws ServletException the servlet exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void doPost(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+		if(req.getCharacterEncoding() == null)
+			req.setCharacterEncoding("UTF-8");
+		if(req.getContentLength() > maxRequestSize){
+			res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			res.setContentType(CONTENT_TYPE_JSON);
+			res.getWriter().write(getError("Request body is larger then "+maxRequestSize+" bytes"));
+			return;
+		}
+		process(req,res,req.getContentType(),req.getReader());
+	}
+
+	/**
+	 * code request content and write response.
+	 */
+	private void process(HttpServletRequest req, HttpServletResponse res, String contentType, Reader body) throws IOException {
+		Map<String,String> parameters = new HashMap<String,String>();
+		for(Object name: req.getParameterMap().keySet())
+			parameters.put(""+name,req.getParameter(""+name));
+		res.setContentType(CONTENT_TYPE_JSON);
+		res.setCharacterEncoding("UTF-8");
+		try{
+			code(parameters,contentType,body,res.getWriter());
+		}catch(TerminologyException ex){
+			res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			res.getWriter().write(getError(ex.getMessage()));
+		}
+	}
+
+	/**
+	 * code documents in request body and stream results in input order.
+	 *
+	 * @param parameters the request parameters: term, context.detection, acronym.expansion and search options
+	 * @param contentType the content type of request body
+	 * @param body the body
+	 * @param out the output
+	 * @throws TerminologyException if request can't be coded, nothing is written in that case
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void code(Map<String,String> parameters, String contentType, Reader body, Writer out) throws TerminologyException, IOException {
+		long time = System.currentTimeMillis();
+		final NobleCoderTerminology terminology = getTerminology(parameters.get("term"));
+		final SearchOptions options = getSearchOptions(terminology,parameters);
+		final boolean contextDetection = !"false".equals(parameters.get("context.detection"));
+		final boolean acronymExpansion = !"false".equals(parameters.get("acronym.expansion"));
+		List<Document> documents = getDocuments(contentType,body,maxRequestSize);
+		if(documents.size() > maxDocuments)
+			throw new TerminologyException("Too many documents in a single request: "+documents.size()+" > "+maxDocuments);
+
+		// submit entire batch, workers serialize their own documents
+		LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+		for(final Document doc: documents){
+			pending.add(pool.submit(new Callable<String>() {
+				public String call() throws Exception {
+					NobleCoder coder = getCoder(terminology,contextDetection);
+					coder.setSearchOptions(options);
+					coder.setAcronymExpansion(acronymExpansion);
+					long t = System.currentTimeMillis();
+					try{
+						coder.process(doc);
+					}catch(Exception ex){
+						return getError(doc,ex);
+					}
+					return toJSON(doc,System.currentTimeMillis()-t);
+				}
+			}));
+		}
+
+		// stream results back in input order
+		try{
+			out.write("{\"terminology\":"+JSONUtils.quote(terminology.getName())+",\"documents\":[");
+			boolean first = true;
+			while(!pending.isEmpty()){
+				if(!first)
+					out.write(",");
+				out.write(pending.removeFirst().get());
+				out.flush();
+				first = false;
+			}
+			out.write("],\"count\":"+documents.size()+",\"time\":"+(System.currentTimeMillis()-time)+"}");
+			out.flush();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new IOException("Coding was interrupted",ex);
+		}catch(ExecutionException ex){
+			throw new IOException("Coding failed",ex.getCause());
+		}finally{
+			// client went away, don't code the rest
+			for(Future<String> f: pending)
+				f.cancel(true);
+		}
+	}
+
+	/**
+	 * get search options for a request, best candidate is selected unless requested otherwise.
+	 *
+	 * @param terminology the terminology
+	 * @param parameters the parameters
+	 * @return the search options
+	 */
+	private SearchOptions getSearchOptions(NobleCoderTerminology terminology, Map<String,String> parameters){
+		Properties p = new Properties();
+		p.setProperty("select.best.candidate","true");
+		p.putAll(parameters);
+		return terminology.getSearchOptions(p);
+	}
+
+	/**
+	 * request body that is larger then a limit, content length can't be trusted, so it is counted while body is read.
+	 */
+	private static class BodySizeException extends IOException {
+		public BodySizeException(long limit){
+			super("Request body is larger then "+limit+" characters");
+		}
+	}
+
+	/**
+	 * reader that fails once more then a given number of characters is read.
+	 */
+	private static class LimitedReader extends FilterReader {
+		private long limit, count;
+		public LimitedReader(Reader in, long limit){
+			super(in);
+			this.limit = limit;
+		}
+		public int read() throws IOException {
+			int c = super.read();
+			if(c > -1)
+				count(1);
+			return c;
+		}
+		public int read(char[] b, int off, int len) throws IOException {
+			int n = super.read(b,off,len);
+			if(n > 0)
+				count(n);
+			return n;
+		}
+		private void count(int n) throws BodySizeException {
+			count += n;
+			if(count > limit)
+				throw new BodySizeException(limit);
+		}
+	}
+
+	/**
+	 * parse documents from request body.
+	 *
+	 * @param contentType the content type
+	 * @param body the body
+	 * @param maxSize the maximum number of characters in the body
+	 * @return the documents
+	 * @throws TerminologyException if body could not be parsed or is too large
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static List<Document> getDocuments(String contentType, Reader body, long maxSize) throws TerminologyException, IOException {
+		try{
+			return getDocuments(contentType,new LimitedReader(body,maxSize));
+		}catch(BodySizeException ex){
+			throw new TerminologyException(ex.getMessage(),ex);
+		}
+	}
+
+	/**
+	 * parse documents from request body.
+	 *
+	 * @param contentType the content type
+	 * @param body the body
+	 * @return the documents
+	 * @throws TerminologyException if body could not be parsed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static List<Document> getDocuments(String contentType, Reader body) throws TerminologyException, IOException {
+		List<Document> documents = new ArrayList<Document>();
+		if(contentType != null && contentType.startsWith(CONTENT_TYPE_JSON)){
+			Object json = null;
+			try{
+				json = JSONUtils.parse(body);
+			}catch(BodySizeException ex){
+				throw ex;
+			}catch(IOException ex){
+				throw new TerminologyException(ex.getMessage(),ex);
+			}
+			if(json instanceof Map)
+				json = ((Map) json).get("documents");
+			if(!(json instanceof List))
+				throw new TerminologyException("Expected an array of documents");
+			for(Object o: (List) json){
+				String id = ""+documents.size(), text = null;
+				if(o instanceof Map){
+					Map m = (Map) o;
+					if(m.get("id") != null)
+						id = ""+m.get("id");
+					text = (m.get("text") != null)?""+m.get("text"):null;
+				}else if(o instanceof String){
+					text = (String) o;
+				}
+				if(text == null)
+					throw new TerminologyException("Document "+id+" has no text");
+				documents.add(createDocument(id,text));
+			}
+		}else{
+			StringBuilder text = new StringBuilder();
+			BufferedReader reader = new BufferedReader(body);
+			char [] buffer = new char [8192];
+			for(int n = reader.read(buffer);n > -1; n = reader.read(buffer))
+				text.append(buffer,0,n);
+			for(String s: text.toString().split(DOCUMENT_SEPARATOR)){
+				if(s.trim().length() > 0)
+					documents.add(createDocument(""+documents.size(),s));
+			}
+		}
+		return documents;
+	}
+
+	private static Document createDocument(String id, String text){
+		Document doc = new Document(text.replaceAll("\r\n","\n"));
+		doc.setTitle(id);
+		return doc;
+	}
+
+	/**
+	 * convert coded document into compact JSON.
+	 *
+	 * @param doc the doc
+	 * @param time the time it took to code it
+	 * @return the string
+	 */
+	static String toJSON(Document doc, long time){
+		StringBuilder b = new StringBuilder();
+		b.append("{\"id\":");
+		JSONUtils.quote(doc.getTitle(),b);
+		b.append(",\"time\":").append(time).append(",\"mentions\":[");
+		boolean first = true;
+		for(Mention m: doc.getMentions()){
+			if(!first)
+				b.append(',');
+			b.append("{\"code\":");
+			JSONUtils.quote(m.getCode(),b);
+			b.append(",\"name\":");
+			JSONUtils.quote(m.getName(),b);
+			b.append(",\"text\":");
+			JSONUtils.quote(m.getText(),b);
+			b.append(",\"start\":").append(m.getStartPosition());
+			b.append(",\"end\":").append(m.getEndPosition());
+			b.append(",\"types\":[");
+			SemanticType [] types = m.getConcept().getSemanticTypes();
+			for(int i=0;i<types.length;i++){
+				if(i > 0)
+					b.append(',');
+				JSONUtils.quote(types[i].getName(),b);
+			}
+			b.append("],\"modifiers\":{");
+			boolean firstModifier = true;
+			for(String type: m.getModifierTypes()){
+				if(!firstModifier)
+					b.append(',');
+				JSONUtils.quote(type,b);
+				b.append(':');
+				JSONUtils.append(m.getModifierValue(type),b);
+				firstModifier = false;
+			}
+			b.append("}}");
+			first = false;
+		}
+		b.append("]}");
+		return b.toString();
+	}
+
+	private static String getError(Document doc, Exception ex){
+		return "{\"id\":"+JSONUtils.quote(doc.getTitle())+",\"error\":"+JSONUtils.quote(""+ex.getMessage())+"}";
+	}
+
+	private static String getError(String message){
+		return "{\"error\":"+JSONUtils.quote(""+message)+"}";
+	}
+}
@@ -13,6 +13,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -170,11 +171,12 @@ public class TerminologyServlet extends HttpServlet {
 			}else if ( action.equals("code")){
 				String text = req.getParameter("text");
 				//check if in fact we want to lookup concept
-				boolean best = ((NobleCoderTerminology)terminology).isSelectBestCandidate();
-				((NobleCoderTerminology)terminology).setSelectBestCandidate(true);
+				// select best candidate for this request only, shared terminology is not changed
+				Properties p = new Properties();
+				p.setProperty("select.best.candidate","true");
 				NobleCoder coder = new NobleCoder(terminology);
+				coder.setSearchOptions(((NobleCoderTerminology)terminology).getSearchOptions(p));
 				Document doc = coder.process(new Document(text.replaceAll("\r\n","\n")));
-				((NobleCoderTerminology)terminology).setSelectBestCandidate(best);
 				String showReport = req.getParameter("show.report");
 				String showConcepts = req.getParameter("show.concepts");
 				if(showReport != null)
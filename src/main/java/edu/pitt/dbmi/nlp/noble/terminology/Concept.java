@@ -63,6 +63,40 @@ public class Concept implements  Serializable, Comparable<Concept> {
 		public Map<String,String> codeMap;
 		public Map<String,Set<String>> relationMap;
 		public Properties properties;
+		
+		/**
+		 * copy content, so that concepts that are created from cached content do not
+		 * share relations, properties or lists with each other.
+		 *
+		 * @return the content
+		 */
+		public Content copy(){
+			Content c = new Content();
+			c.code = code;
+			c.name = name;
+			if(definitions != null)
+				c.definitions = new ArrayList<Definition>(definitions);
+			if(sources != null)
+				c.sources = new ArrayList<Source>(sources);
+			if(semanticTypes != null)
+				c.semanticTypes = new ArrayList<SemanticType>(semanticTypes);
+			if(synonyms != null)
+				c.synonyms = new ArrayList<String>(synonyms);
+			if(terms != null)
+				c.terms = new ArrayList<Term>(terms);
+			if(codeMap != null)
+				c.codeMap = new HashMap<String,String>(codeMap);
+			if(relationMap != null){
+				c.relationMap = new HashMap<String,Set<String>>();
+				for(String key: relationMap.keySet())
+					c.relationMap.put(key,new LinkedHashSet<String>(relationMap.get(key)));
+			}
+			if(properties != null){
+				c.properties = new Properties();
+				c.properties.putAll(properties);
+			}
+			return c;
+		}
 	}
 	
 	/**
@@ -0,0 +1,434 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.pitt.dbmi.nlp.noble.terminology.Concept;
+import edu.pitt.dbmi.nlp.noble.terminology.Relation;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TermIndex.PostingTable;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TermIndex.StringTable;
+
+/**
+ * read-only index of concept hierarchy of NobleCoderTerminology. Every concept code gets an int id,
+ * and every concept keeps a sorted list of its parents and a sorted list of all of its ancestors
+ * together with the shortest distance to each of them. The ancestor closure is computed once by
+ * visiting concepts in topological order (parents before children) and merging closures of parents,
+ * concepts that are part of a cycle are resolved by a breadth first search.
+ *
+ * Ancestors are the same as ones returned by PathHelper.findAncestors(): search stops at root concepts,
+ * and ancestors that are further then depth limit are not included.
+ *
+ * The index uses the same flat layout as TermIndex and is memory mapped when loaded from file,
+ * so asking for ancestors, checking ancestry or finding a common ancestor does not deserialize anything.
+ *
+ * @author tseytlin
+ */
+public class HierarchyIndex {
+	public static final String HIERARCHY_INDEX_FILE = "table_hierarchyIndex.idx";
+	private static final int MAGIC = 0x4E434849; // NCHI
+	private static final int VERSION = 1;
+	private static final int SECTIONS = 4;
+	private static final int HEADER = 16+SECTIONS*16;
+
+	private final StringTable codes;
+	private final PostingTable parents, ancestors, distances;
+	private final int depthLimit;
+	private final boolean mapped;
+
+	/**
+	 * Instantiates a new hierarchy index.
+	 */
+	private HierarchyIndex(ByteBuffer [] sections, int depthLimit, boolean mapped){
+		this.codes = new StringTable(sections[0]);
+		this.parents = new PostingTable(sections[1]);
+		this.ancestors = new PostingTable(sections[2]);
+		this.distances = new PostingTable(sections[3]);
+		this.depthLimit = depthLimit;
+		this.mapped = mapped;
+	}
+
+	/**
+	 * build hierarchy index from concept and root tables of terminology.
+	 *
+	 * @param conceptMap the concept map
+	 * @param roots the root concept codes
+	 * @param depthLimit maximum distance to ancestor, -1 for no limit
+	 * @return the hierarchy index
+	 */
+	public static HierarchyIndex build(Map<String,Concept.Content> conceptMap, Collection<String> roots, int depthLimit){
+		Set<String> codeSet = new TreeSet<String>(TermIndex.CODE_POINT_ORDER);
+		codeSet.addAll(conceptMap.keySet());
+		String [] codes = codeSet.toArray(new String [codeSet.size()]);
+		codeSet = null;
+		int n = codes.length;
+		int limit = (depthLimit < 0)?Integer.MAX_VALUE:depthLimit;
+
+		// parents of every concept, search does not go above roots
+		String broader = Relation.BROADER.getName();
+		int [][] parents = new int [n][];
+		boolean [] goal = new boolean [n];
+		for(int i=0;i<n;i++){
+			Concept.Content c = conceptMap.get(codes[i]);
+			Set<String> p = (c != null && c.relationMap != null)?c.relationMap.get(broader):null;
+			parents[i] = (p != null)?toIds(codes,p,i):new int [0];
+			goal[i] = parents[i].length == 0;
+		}
+		for(String r: roots){
+			int i = Arrays.binarySearch(codes,r,TermIndex.CODE_POINT_ORDER);
+			if(i >= 0)
+				goal[i] = true;
+		}
+
+		// children that expand to a given parent
+		int [] pending = new int [n];
+		int [] childCount = new int [n];
+		for(int i=0;i<n;i++){
+			if(!goal[i]){
+				pending[i] = parents[i].length;
+				for(int p: parents[i])
+					childCount[p]++;
+			}
+		}
+		int [][] children = new int [n][];
+		for(int i=0;i<n;i++)
+			children[i] = new int [childCount[i]];
+		Arrays.fill(childCount,0);
+		for(int i=0;i<n;i++){
+			if(!goal[i]){
+				for(int p: parents[i])
+					children[p][childCount[p]++] = i;
+			}
+		}
+		childCount = null;
+
+		// visit concepts in topological order and merge closures of parents
+		int [][] ancestors = new int [n][];
+		int [][] distances = new int [n][];
+		int [] dist = new int [n];
+		int [] touched = new int [n];
+		int [] queue = new int [n];
+		int head = 0, tail = 0;
+		for(int i=0;i<n;i++){
+			if(pending[i] == 0)
+				queue[tail++] = i;
+		}
+		while(head < tail){
+			int c = queue[head++];
+			int t = 0;
+			if(!goal[c] && limit > 0){
+				for(int p: parents[c]){
+					if(dist[p] == 0)
+						touched[t++] = p;
+					dist[p] = 1;
+					if(limit > 1){
+						for(int j=0;j<ancestors[p].length;j++){
+							int a = ancestors[p][j], d = distances[p][j]+1;
+							if(d > limit)
+								continue;
+							if(dist[a] == 0)
+								touched[t++] = a;
+							if(dist[a] == 0 || d < dist[a])
+								dist[a] = d;
+						}
+					}
+				}
+			}
+			store(c,touched,t,dist,ancestors,distances);
+			for(int ch: children[c]){
+				if(--pending[ch] == 0)
+					queue[tail++] = ch;
+			}
+		}
+
+		// concepts in cycles were never visited, do breadth first search
+		if(tail < n){
+			for(int c=0;c<n;c++){
+				if(ancestors[c] != null)
+					continue;
+				Queue<Integer> bfs = new LinkedList<Integer>();
+				int t = 0;
+				dist[c] = -1;
+				touched[t++] = c;
+				bfs.add(c);
+				while(!bfs.isEmpty()){
+					int x = bfs.poll();
+					int d = (x == c)?0:dist[x];
+					if(goal[x] || d >= limit)
+						continue;
+					for(int p: parents[x]){
+						if(dist[p] == 0){
+							dist[p] = d+1;
+							touched[t++] = p;
+							bfs.add(p);
+						}
+					}
+				}
+				// remove concept itself from its ancestors
+				dist[c] = 0;
+				System.arraycopy(touched,1,touched,0,--t);
+				store(c,touched,t,dist,ancestors,distances);
+			}
+		}
+
+		ByteBuffer [] sections = new ByteBuffer [] {
+			StringTable.create(codes),PostingTable.create(parents),
+			PostingTable.create(ancestors),PostingTable.create(distances)};
+		return new HierarchyIndex(sections,depthLimit,false);
+	}
+
+	/**
+	 * save closure of a concept that was collected in scratch arrays and reset them.
+	 */
+	private static void store(int c, int [] touched, int t, int [] dist, int [][] ancestors, int [][] distances){
+		int [] anc = Arrays.copyOf(touched,t);
+		Arrays.sort(anc);
+		int [] ds = new int [t];
+		for(int j=0;j<t;j++){
+			ds[j] = dist[anc[j]];
+			dist[anc[j]] = 0;
+		}
+		ancestors[c] = anc;
+		distances[c] = ds;
+	}
+
+	private static int [] toIds(String [] table, Collection<String> values, int self){
+		int [] ids = new int [values.size()];
+		int n = 0;
+		for(String v: values){
+			int i = Arrays.binarySearch(table,v,TermIndex.CODE_POINT_ORDER);
+			if(i >= 0 && i != self)
+				ids[n++] = i;
+		}
+		ids = Arrays.copyOf(ids,n);
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * open hierarchy index file by memory mapping it in read-only mode.
+	 *
+	 * @param file the file
+	 * @return the hierarchy index
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static HierarchyIndex load(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file,"r");
+		try{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,0,HEADER);
+			if(header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != SECTIONS)
+				throw new IOException("Hierarchy index "+file+" was generated by a different version of NobleCoder");
+			int depthLimit = header.getInt();
+			ByteBuffer [] sections = new ByteBuffer [SECTIONS];
+			for(int i=0;i<SECTIONS;i++){
+				long offset = header.getLong();
+				long length = header.getLong();
+				sections[i] = channel.map(FileChannel.MapMode.READ_ONLY,offset,length);
+			}
+			return new HierarchyIndex(sections,depthLimit,true);
+		}finally{
+			raf.close();
+		}
+	}
+
+	/**
+	 * save hierarchy index to file.
+	 *
+	 * @param file the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void save(File file) throws IOException{
+		ByteBuffer [] sections = new ByteBuffer [] {codes.buffer,parents.buffer,ancestors.buffer,distances.buffer};
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).putInt(VERSION).putInt(SECTIONS).putInt(depthLimit);
+		long offset = header.capacity();
+		for(ByteBuffer b: sections){
+			header.putLong(offset).putLong(b.limit());
+			offset += b.limit();
+		}
+		header.flip();
+
+		FileOutputStream out = new FileOutputStream(file);
+		try{
+			FileChannel channel = out.getChannel();
+			for(ByteBuffer b: new ByteBuffer [] {header,sections[0],sections[1],sections[2],sections[3]}){
+				b = b.duplicate();
+				b.rewind();
+				while(b.hasRemaining())
+					channel.write(b);
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * is this index memory mapped from a file.
+	 *
+	 * @return true, if is mapped
+	 */
+	public boolean isMapped(){
+		return mapped;
+	}
+
+	/**
+	 * maximum distance to ancestor that was used to build this index.
+	 *
+	 * @return the depth limit, -1 if there is no limit
+	 */
+	public int getDepthLimit(){
+		return depthLimit;
+	}
+
+	/**
+	 * number of concepts in the index.
+	 *
+	 * @return the int
+	 */
+	public int size(){
+		return codes.size();
+	}
+
+	/**
+	 * does index contain a given concept.
+	 *
+	 * @param code the code
+	 * @return true, if successful
+	 */
+	public boolean contains(String code){
+		return code != null && codes.find(code) > -1;
+	}
+
+	/**
+	 * get codes of parent concepts.
+	 *
+	 * @param code the code
+	 * @return the parents
+	 */
+	public List<String> getParents(String code){
+		int i = (code != null)?codes.find(code):-1;
+		List<String> list = new ArrayList<String>();
+		if(i > -1){
+			for(int j=0;j<parents.length(i);j++)
+				list.add(codes.get(parents.get(i,j)));
+		}
+		return list;
+	}
+
+	/**
+	 * get shortest distance from concept to its ancestor.
+	 *
+	 * @param code the code
+	 * @param ancestor the ancestor
+	 * @return the distance, 0 if it is the same concept and -1 if it is not an ancestor
+	 */
+	public int getDistance(String code, String ancestor){
+		if(code == null || ancestor == null)
+			return -1;
+		if(code.equals(ancestor))
+			return 0;
+		int a = codes.find(code), b = codes.find(ancestor);
+		if(a < 0 || b < 0)
+			return -1;
+		int j = ancestors.indexOf(a,b);
+		return (j > -1)?distances.get(a,j):-1;
+	}
+
+	/**
+	 * does concept have a given ancestor.
+	 *
+	 * @param code the code
+	 * @param ancestor the ancestor
+	 * @return true, if successful
+	 */
+	public boolean hasAncestor(String code, String ancestor){
+		return getDistance(code,ancestor) > 0;
+	}
+
+	/**
+	 * get all ancestors of a concept ordered by their distance.
+	 *
+	 * @param code the code
+	 * @param depthLimit only include ancestors that are not further then limit, -1 for all
+	 * @return map of ancestor codes and distances
+	 */
+	public Map<String,Integer> getAncestors(String code, int depthLimit){
+		int i = (code != null)?codes.find(code):-1;
+		if(i < 0)
+			return new LinkedHashMap<String, Integer>();
+		int len = ancestors.length(i);
+		long [] order = new long [len];
+		int n = 0;
+		for(int j=0;j<len;j++){
+			int d = distances.get(i,j);
+			if(depthLimit < 0 || d <= depthLimit)
+				order[n++] = (((long) d) << 32) | ancestors.get(i,j);
+		}
+		Arrays.sort(order,0,n);
+		Map<String,Integer> map = new LinkedHashMap<String, Integer>();
+		for(int j=0;j<n;j++)
+			map.put(codes.get((int) order[j]),(int)(order[j] >>> 32));
+		return map;
+	}
+
+	/**
+	 * find lowest common ancestor of two concepts, that is an ancestor with the shortest
+	 * combined distance to both of them. A concept is its own ancestor with distance 0.
+	 *
+	 * @param code1 the first code
+	 * @param code2 the second code
+	 * @return the code of common ancestor or null if there isn't one
+	 */
+	public String getLowestCommonAncestor(String code1, String code2){
+		int a = (code1 != null)?codes.find(code1):-1;
+		int b = (code2 != null)?codes.find(code2):-1;
+		if(a < 0 || b < 0)
+			return null;
+		if(a == b)
+			return code1;
+		int ja = ancestors.indexOf(a,b);
+		int jb = ancestors.indexOf(b,a);
+		int best = -1, bestDistance = Integer.MAX_VALUE;
+		if(ja > -1){
+			best = b;
+			bestDistance = distances.get(a,ja);
+		}
+		if(jb > -1 && distances.get(b,jb) < bestDistance){
+			best = a;
+			bestDistance = distances.get(b,jb);
+		}
+		// walk two sorted ancestor lists
+		int la = ancestors.length(a), lb = ancestors.length(b);
+		for(int i=0,j=0;i < la && j < lb;){
+			int x = ancestors.get(a,i), y = ancestors.get(b,j);
+			if(x < y)
+				i++;
+			else if(x > y)
+				j++;
+			else{
+				int d = distances.get(a,i)+distances.get(b,j);
+				if(d < bestDistance){
+					best = x;
+					bestDistance = d;
+				}
+				i++;
+				j++;
+			}
+		}
+		return (best > -1)?codes.get(best):null;
+	}
+}
@@ -0,0 +1,72 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.pitt.dbmi.nlp.noble.util.JDBMMap;
+
+/**
+ * default storage provider that keeps every table in a JDBM HTree file.
+ * In-memory tables are plain hash maps.
+ *
+ * @author tseytlin
+ */
+public class JDBMStorageProvider implements StorageProvider {
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#getName()
+	 */
+	public String getName() {
+		return JDBM;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#createMap(java.io.File, java.lang.String, boolean)
+	 */
+	public <K extends Comparable, V> Map<K, V> createMap(File location, String tablename, boolean readonly) throws IOException {
+		if(location == null)
+			return new HashMap<K,V>();
+		return new JDBMMap<K,V>(location.getAbsolutePath()+File.separator+"table",tablename,readonly);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#tableExists(java.io.File, java.lang.String)
+	 */
+	public boolean tableExists(File location, String tablename) {
+		String f = location.getAbsolutePath()+File.separator+"table"+"_"+tablename;
+		return new File(f+JDBMMap.JDBM_SUFFIX).exists();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#isReadOnly(java.util.Map)
+	 */
+	public boolean isReadOnly(Map map) {
+		return map instanceof JDBMMap && ((JDBMMap)map).isReadOnly();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#commit(java.util.Map)
+	 */
+	public void commit(Map map) {
+		if(map instanceof JDBMMap)
+			((JDBMMap)map).commit();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#compact(java.util.Map)
+	 */
+	public void compact(Map map) {
+		if(map instanceof JDBMMap)
+			((JDBMMap)map).compact();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#dispose(java.util.Map)
+	 */
+	public void dispose(Map map) {
+		if(map instanceof JDBMMap)
+			((JDBMMap)map).dispose();
+	}
+}
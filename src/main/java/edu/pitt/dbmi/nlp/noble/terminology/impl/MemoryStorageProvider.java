@@ -0,0 +1,220 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyError;
+
+/**
+ * storage provider that keeps every table on the heap. Persisted tables are
+ * read into memory in full when terminology is loaded and are written back as serialized
+ * objects on commit, so lookups cost the same as for in-memory terminology,
+ * but the whole terminology has to fit in memory.
+ *
+ * @author tseytlin
+ */
+public class MemoryStorageProvider implements StorageProvider {
+	public static final String HEAP_SUFFIX = ".heap";
+
+	/**
+	 * hash map that remembers the file it was loaded from.
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 */
+	public static class HeapMap<K,V> extends HashMap<K,V> {
+		private transient File file;
+		private transient boolean readonly, modified;
+
+		/**
+		 * Instantiates a new heap map.
+		 *
+		 * @param file the file
+		 * @param readonly the readonly
+		 */
+		public HeapMap(File file, boolean readonly){
+			this.file = file;
+			this.readonly = readonly;
+		}
+
+		/**
+		 * Gets the file.
+		 *
+		 * @return the file
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Checks if is read only.
+		 *
+		 * @return true, if is read only
+		 */
+		public boolean isReadOnly() {
+			return readonly;
+		}
+
+		/**
+		 * Checks if is modified since it was loaded or saved.
+		 *
+		 * @return true, if is modified
+		 */
+		public boolean isModified() {
+			return modified;
+		}
+
+		/**
+		 * mark table as modified, read-only tables can't be modified.
+		 */
+		private void modify() {
+			if(readonly)
+				throw new UnsupportedOperationException("Table "+((file != null)?file.getName():"")+" is opened in read-only mode");
+			modified = true;
+		}
+
+		public V put(K key, V value) {
+			modify();
+			return super.put(key, value);
+		}
+
+		public void putAll(Map<? extends K, ? extends V> m) {
+			modify();
+			super.putAll(m);
+		}
+
+		public V remove(Object key) {
+			modify();
+			return super.remove(key);
+		}
+
+		public void clear() {
+			modify();
+			super.clear();
+		}
+
+		/**
+		 * read table content from its file.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public void load() throws IOException{
+			ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try{
+				super.putAll((Map<K,V>) in.readObject());
+			}catch(ClassNotFoundException ex){
+				throw new IOException("Unable to read table "+file,ex);
+			}finally{
+				in.close();
+			}
+			modified = false;
+		}
+
+		/**
+		 * write table content to its file. Content is written to a temporary
+		 * file first, so that an interrupted save doesn't destroy the previous copy.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public synchronized void save() throws IOException{
+			if(readonly || !modified)
+				return;
+			File temp = new File(file.getAbsolutePath()+".tmp");
+			ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try{
+				out.writeObject(new HashMap<K,V>(this));
+			}finally{
+				out.close();
+			}
+			if(file.exists() && !file.delete())
+				throw new IOException("Unable to replace table "+file);
+			if(!temp.renameTo(file))
+				throw new IOException("Unable to rename table "+temp+" to "+file);
+			modified = false;
+		}
+	}
+
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#getName()
+	 */
+	public String getName() {
+		return MEMORY;
+	}
+
+	/**
+	 * Gets the file of a given table.
+	 *
+	 * @param location the location
+	 * @param tablename the tablename
+	 * @return the file
+	 */
+	private File getFile(File location, String tablename){
+		return new File(location,"table_"+tablename+HEAP_SUFFIX);
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#createMap(java.io.File, java.lang.String, boolean)
+	 */
+	public <K extends Comparable, V> Map<K, V> createMap(File location, String tablename, boolean readonly) throws IOException {
+		if(location == null)
+			return new HashMap<K,V>();
+		if(!location.exists())
+			throw new IOException("Location "+location.getAbsolutePath()+" does not exist!");
+		File file = getFile(location,tablename);
+		HeapMap<K,V> map = new HeapMap<K,V>(file,readonly && file.exists());
+		if(file.exists())
+			map.load();
+		return map;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#tableExists(java.io.File, java.lang.String)
+	 */
+	public boolean tableExists(File location, String tablename) {
+		return getFile(location,tablename).exists();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#isReadOnly(java.util.Map)
+	 */
+	public boolean isReadOnly(Map map) {
+		return map instanceof HeapMap && ((HeapMap)map).isReadOnly();
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#commit(java.util.Map)
+	 */
+	public void commit(Map map) {
+		if(map instanceof HeapMap){
+			try{
+				((HeapMap) map).save();
+			}catch(IOException ex){
+				throw new TerminologyError("Unable to save table "+((HeapMap) map).getFile(),ex);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#compact(java.util.Map)
+	 */
+	public void compact(Map map) {
+		// serialized tables are always compact
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider#dispose(java.util.Map)
+	 */
+	public void dispose(Map map) {
+		// same as JDBM tables, changes are not lost on close
+		commit(map);
+	}
+}
@@ -17,6 +17,8 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -24,6 +26,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
@@ -32,6 +35,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -54,12 +58,14 @@ import edu.pitt.dbmi.nlp.noble.terminology.SemanticType;
 import edu.pitt.dbmi.nlp.noble.terminology.Source;
 import edu.pitt.dbmi.nlp.noble.terminology.Term;
 import edu.pitt.dbmi.nlp.noble.terminology.Terminology;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyError;
 import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.NormalizedWordsContainer;
+import edu.pitt.dbmi.nlp.noble.tools.NormalizationCache;
 import edu.pitt.dbmi.nlp.noble.tools.TextTools;
 import edu.pitt.dbmi.nlp.noble.tools.TextTools.StringStats;
 import edu.pitt.dbmi.nlp.noble.util.ConceptImporter;
-import edu.pitt.dbmi.nlp.noble.util.JDBMMap;
+import edu.pitt.dbmi.nlp.noble.util.ConcurrentCache;
 import edu.pitt.dbmi.nlp.noble.util.XMLUtils;
 
 
@@ -72,6 +78,7 @@ import edu.pitt.dbmi.nlp.noble.util.XMLUtils;
 public class NobleCoderTerminology extends AbstractTerminology implements Processor<Sentence>{
 	// names of property events to monitor progress
 	//public static final int CACHE_LIMIT = 10000;
+	public static final int CONCEPT_CACHE_SIZE = 10000;
 	public static final String LOADING_MESSAGE  = ConceptImporter.LOADING_MESSAGE;
 	public static final String LOADING_PROGRESS = ConceptImporter.LOADING_PROGRESS;
 	public static final String LOADING_TOTAL    = ConceptImporter.LOADING_TOTAL;
@@ -82,6 +89,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	public static final String PARTIAL_MATCH= "partial-match";
 	public static final String NONOVERLAP_MATCH = "nonoverlap-match";
 	public static final String CUSTOM_MATCH = "custom-match";
+	public static final String TRIE_MATCH = "trie-match";
 	
 	public static final String TERM_SUFFIX = ".term";
 	//public static final String MEM_FILE = "terminology.mem";
@@ -89,12 +97,18 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	public static final String CONCEPT_FILE = "concepts";
 	public static final String INFO_FILE = "info.txt";
 	public static final String SEARCH_PROPERTIES = "search.properties";
+	public static final String STORAGE_BACKEND = "storage.backend";
 	public static final String TEMP_WORD_DIR = "tempWordTable";
+	public static final String TERM_TRIE_FILE = "table_termTrie.trie";
+	public static final String TERM_INDEX_FILE = "table_termIndex.idx";
 	
 	private File location;
 	private String name;
 	private Storage storage;
 	//private CacheMap<String,Concept []> cache;
+	private int conceptCacheSize = CONCEPT_CACHE_SIZE;
+	private String storageBackend;
+	private NormalizationCache normalizationCache = NormalizationCache.getInstance();
 	
 	// print rough size and time
 	//private final boolean DEBUG = false;
@@ -138,7 +152,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	private Set<String> filteredLanguages;
 	private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 	//private boolean cachingEnabled = false,truncateURI = false;
-	private long processTime;
+	private volatile long processTime;
 	
 	/**
 	 * isolated storage object that deals with all of the MAPS.
@@ -147,7 +161,6 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 */
 	public static class Storage implements Serializable{
 		public int maxTermsPerWord,totalTermsPerWord;
-		public boolean useTempWordFolder;
 		private File location;
 		private Map<String,Set<String>> wordMap,blacklist;
 		private Map<String,WordStat> wordStatMap;
@@ -158,7 +171,132 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		private Map<String,Source> sourceMap;
 		private Map<String,String> rootMap;
 		private Map<String,String> codeMap;
+		private transient volatile RegExpIndex regexIndex;
+		private transient volatile TermTrie termTrie;
+		private transient volatile TermIndex termIndex;
+		private transient volatile boolean termIndexModified;
+		private transient StorageProvider provider;
+		private transient ConcurrentCache<String,Concept.Content> conceptCache;
+		private transient ConceptMap conceptView;
 		
+		/**
+		 * view of the concept table that keeps recently used content in a concept cache.
+		 * Every write goes through the view, so cached content is invalidated no matter who
+		 * writes to the table. Content is copied on the way out, since it is not immutable.
+		 */
+		private class ConceptMap extends AbstractMap<String,Concept.Content> {
+			private static final int STRIPES = 64;
+			private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+			
+			private int stripe(Object key){
+				return (key.hashCode() & 0x7FFFFFFF) % STRIPES;
+			}
+			
+			private void invalidate(Object key){
+				versions.incrementAndGet(stripe(key));
+				conceptCache.remove((String) key);
+			}
+			
+			public Concept.Content get(Object key) {
+				if(!(key instanceof String))
+					return null;
+				Concept.Content c = conceptCache.get((String) key);
+				if(c == null){
+					// a write can race with a miss, so content is dropped if key was modified in the meantime
+					int i = stripe(key);
+					long version = versions.get(i);
+					c = conceptMap.get(key);
+					if(c == null)
+						return null;
+					conceptCache.put((String) key,c);
+					if(versions.get(i) != version)
+						conceptCache.remove((String) key);
+				}
+				return c.copy();
+			}
+			public Concept.Content put(String key, Concept.Content value) {
+				try{
+					return conceptMap.put(key,value);
+				}finally{
+					invalidate(key);
+				}
+			}
+			public Concept.Content remove(Object key) {
+				try{
+					return conceptMap.remove(key);
+				}finally{
+					invalidate(key);
+				}
+			}
+			public boolean containsKey(Object key) {
+				return conceptMap.containsKey(key);
+			}
+			public int size() {
+				return conceptMap.size();
+			}
+			public void clear() {
+				try{
+					conceptMap.clear();
+				}finally{
+					for(int i=0;i<STRIPES;i++)
+						versions.incrementAndGet(i);
+					conceptCache.clear();
+				}
+			}
+			public Set<String> keySet() {
+				return new AbstractSet<String>() {
+					public Iterator<String> iterator() {
+						final Iterator<String> it = conceptMap.keySet().iterator();
+						return new Iterator<String>() {
+							private String key;
+							public boolean hasNext() {
+								return it.hasNext();
+							}
+							public String next() {
+								return key = it.next();
+							}
+							public void remove() {
+								it.remove();
+								invalidate(key);
+							}
+						};
+					}
+					public int size() {
+						return conceptMap.size();
+					}
+					public boolean contains(Object key){
+						return conceptMap.containsKey(key);
+					}
+				};
+			}
+			public Set<Map.Entry<String,Concept.Content>> entrySet() {
+				return new AbstractSet<Map.Entry<String,Concept.Content>>() {
+					public Iterator<Map.Entry<String,Concept.Content>> iterator() {
+						final Iterator<String> it = keySet().iterator();
+						return new Iterator<Map.Entry<String,Concept.Content>>() {
+							public boolean hasNext() {
+								return it.hasNext();
+							}
+							public Map.Entry<String,Concept.Content> next() {
+								final String key = it.next();
+								return new AbstractMap.SimpleEntry<String,Concept.Content>(key,get(key)){
+									public Concept.Content setValue(Concept.Content value) {
+										put(key,value);
+										return super.setValue(value);
+									}
+								};
+							}
+							public void remove() {
+								it.remove();
+							}
+						};
+					}
+					public int size() {
+						return conceptMap.size();
+					}
+				};
+			}
+		}
 		
 		/**
 		 * Instantiates a new storage.
@@ -167,6 +305,16 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 			init();
 		}
 		
+		/**
+		 * Instantiates a new storage with a given storage provider.
+		 *
+		 * @param provider the provider
+		 */
+		public Storage(StorageProvider provider){
+			this.provider = provider;
+			init();
+		}
+		
 		/**
 		 * Instantiates a new storage.
 		 *
@@ -177,6 +325,58 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 			load(file);
 		}
 		
+		/**
+		 * get storage provider by its name, name can be one of the predefined
+		 * providers: jdbm, memory or log or a fully qualified name of a class that
+		 * implements StorageProvider.
+		 *
+		 * @param name the name
+		 * @return the storage provider
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public static StorageProvider getStorageProvider(String name) throws IOException {
+			if(name == null || StorageProvider.JDBM.equalsIgnoreCase(name.trim()))
+				return new JDBMStorageProvider();
+			if(StorageProvider.MEMORY.equalsIgnoreCase(name.trim()))
+				return new MemoryStorageProvider();
+			if(StorageProvider.LOG.equalsIgnoreCase(name.trim()))
+				return new LogStorageProvider();
+			try{
+				return (StorageProvider) Class.forName(name.trim()).newInstance();
+			}catch(Exception ex){
+				throw new IOException("Unknown storage backend "+name,ex);
+			}
+		}
+		
+		/**
+		 * Gets the storage provider, JDBM provider is used by default.
+		 *
+		 * @return the provider
+		 */
+		public StorageProvider getProvider() {
+			if(provider == null)
+				provider = new JDBMStorageProvider();
+			return provider;
+		}
+		
+		/**
+		 * Sets the storage provider, it will be used next time tables are loaded.
+		 *
+		 * @param provider the new provider
+		 */
+		public void setProvider(StorageProvider provider) {
+			this.provider = provider;
+		}
+		
+		/**
+		 * Gets all data tables.
+		 *
+		 * @return the tables
+		 */
+		private List<Map> getTables(){
+			return Arrays.asList(new Map [] {wordMap,blacklist,wordStatMap,termMap,conceptMap,regexMap,infoMap,sourceMap,rootMap,codeMap});
+		}
+		
 		/**
 		 * Gets the info map.
 		 *
@@ -232,12 +432,178 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		}
 		
 		/**
-		 * Gets the concept map.
+		 * get compiled index of regex map, it is built on first
+		 * use and is reset when regex map is committed or cleared.
+		 *
+		 * @return the regex index
+		 */
+		public RegExpIndex getRegexIndex() {
+			RegExpIndex index = regexIndex;
+			if(index == null){
+				synchronized(this){
+					index = regexIndex;
+					if(index == null){
+						index = new RegExpIndex(regexMap);
+						regexIndex = index;
+					}
+				}
+			}
+			return index;
+		}
+		
+		/**
+		 * reset compiled regex index after regex map was modified.
+		 */
+		public void resetRegexIndex(){
+			regexIndex = null;
+		}
+		
+		/**
+		 * get token trie of all terms in term map. The trie is loaded from
+		 * a file that was saved next to the data tables, or is built from term map
+		 * if this file doesn't exist or term map was modified since.
+		 *
+		 * @return the term trie
+		 */
+		public TermTrie getTermTrie() {
+			TermTrie trie = termTrie;
+			if(trie == null){
+				synchronized(this){
+					trie = termTrie;
+					if(trie == null){
+						File file = (location != null)?new File(location,TERM_TRIE_FILE):null;
+						if(file != null && file.exists() && !termIndexModified){
+							try{
+								trie = TermTrie.load(file);
+							}catch(IOException ex){
+								trie = null;
+							}
+						}
+						if(trie == null)
+							trie = TermTrie.build(termMap.keySet());
+						termTrie = trie;
+					}
+				}
+			}
+			return trie;
+		}
+		
+		/**
+		 * get interned index of word, blacklist and term maps. For persisted terminology it is
+		 * memory mapped from a file that was saved next to the data tables, for in-memory
+		 * terminology it is built on first use.
+		 *
+		 * @return the term index, or null if index is not available or is out of date,
+		 * in which case data tables should be used directly
+		 */
+		public TermIndex getTermIndex() {
+			TermIndex index = termIndex;
+			if(index == null){
+				synchronized(this){
+					index = termIndex;
+					if(index == null){
+						if(location == null){
+							try{
+								index = TermIndex.build(wordMap,blacklist,termMap);
+							}catch(IllegalArgumentException ex){
+								// tables are too large to be indexed
+								return null;
+							}
+						}else{
+							File file = new File(location,TERM_INDEX_FILE);
+							if(!file.exists() || termIndexModified)
+								return null;
+							try{
+								index = TermIndex.load(file);
+							}catch(IOException ex){
+								termIndexModified = true;
+								return null;
+							}
+						}
+						termIndex = index;
+					}
+				}
+			}
+			return index;
+		}
+		
+		/**
+		 * reset term trie and term index after word or term maps were modified.
+		 * Saved index files are removed on first modification, so that tables that are committed
+		 * without saving terminology are never read through an index that describes older tables.
+		 */
+		public void resetTermIndex(){
+			termTrie = null;
+			termIndex = null;
+			if(!termIndexModified){
+				termIndexModified = true;
+				if(location != null){
+					new File(location,TERM_INDEX_FILE).delete();
+					new File(location,TERM_TRIE_FILE).delete();
+				}
+			}
+		}
+		
+		/**
+		 * build term trie and term index from data tables and save them next to data tables.
+		 *
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public void saveTermIndex() throws IOException {
+			if(location == null)
+				return;
+			TermTrie trie = TermTrie.build(termMap.keySet());
+			trie.save(new File(location,TERM_TRIE_FILE));
+			TermIndex index = null;
+			try{
+				index = TermIndex.build(wordMap,blacklist,termMap);
+			}catch(IllegalArgumentException ex){
+				throw new IOException(ex.getMessage(),ex);
+			}
+			index.save(new File(location,TERM_INDEX_FILE));
+			termTrie = trie;
+			termIndex = index;
+			termIndexModified = false;
+		}
+		
+		/**
+		 * Gets the concept map. If concept cache is set, the map is a view of the concept table
+		 * that goes through the cache.
 		 *
 		 * @return the concept map
 		 */
 		public Map<String, Concept.Content> getConceptMap() {
-			return conceptMap;
+			ConceptMap view = conceptView;
+			return (view != null)?view:conceptMap;
+		}
+		
+		/**
+		 * Gets the concept cache that is kept in front of concept table.
+		 *
+		 * @return the concept cache or null, if content is not cached
+		 */
+		public ConcurrentCache<String, Concept.Content> getConceptCache() {
+			return conceptCache;
+		}
+		
+		/**
+		 * Sets the concept cache that is kept in front of concept table, null disables the cache.
+		 *
+		 * @param cache the new concept cache
+		 */
+		public void setConceptCache(ConcurrentCache<String, Concept.Content> cache) {
+			this.conceptCache = cache;
+			this.conceptView = (cache != null)?new ConceptMap():null;
+		}
+		
+		/**
+		 * Gets the table behind a map that was returned by storage.
+		 *
+		 * @param map the map
+		 * @return the table
+		 */
+		private Map getTable(Map map){
+			return (map != null && map == conceptView)?conceptMap:map;
 		}
 		
 		/**
@@ -280,16 +646,34 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		 * Inits the.
 		 */
 		public void init(){
-			wordMap = new HashMap<String,Set<String>>();
-			blacklist = new HashMap<String,Set<String>>();
-			wordStatMap = new HashMap<String, WordStat>();
-			termMap = new HashMap<String,Set<String>>();
-			regexMap = new HashMap<String,Set<String>>();
-			conceptMap = new HashMap<String,Concept.Content>();
-			infoMap = new HashMap<String,String>();
-			sourceMap = new HashMap<String,Source>();
-			rootMap = new HashMap<String,String>();
-			codeMap = new HashMap<String,String>();
+			try{
+				open(null,false);
+			}catch(IOException ex){
+				throw new TerminologyError("Unable to create in-memory tables",ex);
+			}
+		}
+		
+		/**
+		 * create or open all data tables with current storage provider.
+		 *
+		 * @param location the location, null for in-memory tables
+		 * @param readonly the readonly
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		private void open(File location, boolean readonly) throws IOException{
+			StorageProvider p = getProvider();
+			wordMap = p.createMap(location,"wordMap",readonly);
+			termMap = p.createMap(location,"termMap",readonly);
+			regexMap = p.createMap(location,"regexMap",readonly);
+			wordStatMap = p.createMap(location,"wordStatMap",readonly);
+			blacklist = p.createMap(location,"blacklist",readonly);
+			conceptMap = p.createMap(location,"conceptMap",readonly);
+			if(conceptCache != null)
+				conceptCache.clear();
+			infoMap = p.createMap(location,"infoMap",readonly);
+			sourceMap = p.createMap(location,"sourceMap",readonly);
+			rootMap = p.createMap(location,"rootMap",readonly);
+			codeMap = p.createMap(location,"codeMap",readonly);
 		}
 		
 		/**
@@ -311,18 +695,11 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		 */
 		public void load(File location,boolean readonly) throws IOException{
 			this.location = location;
-			String prefix = location.getAbsolutePath()+File.separator+"table";
-			
-			wordMap = new JDBMMap<String,Set<String>>(prefix,"wordMap",readonly);
-			termMap = new JDBMMap<String,Set<String>>(prefix,"termMap",readonly);
-			regexMap = new JDBMMap<String,Set<String>>(prefix,"regexMap",readonly);
-			wordStatMap = new JDBMMap<String,WordStat>(prefix,"wordStatMap",readonly);
-			blacklist = new JDBMMap<String,Set<String>>(prefix,"blacklist",readonly);
-			conceptMap = new JDBMMap<String,Concept.Content>(prefix,"conceptMap",readonly);
-			infoMap = new JDBMMap<String,String>(prefix,"infoMap",readonly);
-			sourceMap = new JDBMMap<String,Source>(prefix,"sourceMap",readonly);
-			rootMap = new JDBMMap<String,String>(prefix,"rootMap",readonly);
-			codeMap = new JDBMMap<String,String>(prefix,"codeMap",readonly);
+			open(location,readonly);
+			regexIndex = null;
+			termTrie = null;
+			termIndex = null;
+			termIndexModified = false;
 
 			// check if regexMap is kosher since we just changed the contract
 			if(readonly && !regexMap.isEmpty()) {
@@ -342,8 +719,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		 * @return true, if successful
 		 */
 		public boolean tableExists(String tablename){
-			String f = location.getAbsolutePath()+File.separator+"table"+"_"+tablename;
-			return new File(f+JDBMMap.JDBM_SUFFIX ).exists();
+			return getProvider().tableExists(location,tablename);
 		}
 		
 		/**
@@ -373,7 +749,9 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 			wordStatMap.clear();
 			termMap.clear();
 			regexMap.clear();
-			conceptMap.clear();
+			regexIndex = null;
+			resetTermIndex();
+			getConceptMap().clear();
 			infoMap.clear();
 			sourceMap.clear();
 			rootMap.clear();
@@ -389,7 +767,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		 * @return true, if is read only
 		 */
 		public boolean isReadOnly(Map map){
-			return map instanceof JDBMMap && ((JDBMMap)map).isReadOnly();
+			return getProvider().isReadOnly(getTable(map));
 		}
 		
 		/**
@@ -398,47 +776,31 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		 * @param map the map
 		 */
 		public void commit(Map map){
-			if(map instanceof JDBMMap){
-				((JDBMMap) map).commit();
-			}
+			if(map == regexMap)
+				regexIndex = null;
+			if(map == termMap || map == wordMap || map == blacklist)
+				resetTermIndex();
+			getProvider().commit(getTable(map));
 		}
 		
 		/**
 		 * Commit.
 		 */
 		public void commit(){
-			if(wordMap instanceof JDBMMap){
-				//commit
-				((JDBMMap) wordMap).commit();
-				((JDBMMap) blacklist).commit();
-				((JDBMMap) wordStatMap).commit();
-				((JDBMMap) termMap).commit();
-				((JDBMMap) conceptMap).commit();
-				((JDBMMap) regexMap).commit();
-				((JDBMMap) infoMap).commit();
-				((JDBMMap) sourceMap).commit();
-				((JDBMMap) rootMap).commit();
-				((JDBMMap) codeMap).commit();
-			}
+			regexIndex = null;
+			// tables could have been written directly, so saved term index can no longer be trusted
+			if(!isReadOnly(termMap))
+				resetTermIndex();
+			for(Map map: getTables())
+				getProvider().commit(map);
 		}
 		
 		/**
 		 * Defrag.
 		 */
 		public void defrag(){
-			if(wordMap instanceof JDBMMap){
-				//defrag
-				((JDBMMap) wordMap).compact();
-				((JDBMMap) blacklist).compact();
-				((JDBMMap) wordStatMap).compact();
-				((JDBMMap) termMap).compact();
-				((JDBMMap) conceptMap).compact();
-				((JDBMMap) regexMap).compact();
-				((JDBMMap) infoMap).compact();
-				((JDBMMap) sourceMap).compact();
-				((JDBMMap) rootMap).compact();
-				((JDBMMap) codeMap).compact();
-			}
+			for(Map map: getTables())
+				getProvider().compact(map);
 		}
 		
 		/**
@@ -453,18 +815,8 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		 * Dispose.
 		 */
 		public void dispose(){
-			if(wordMap instanceof JDBMMap){
-				((JDBMMap) wordMap).dispose();
-				((JDBMMap) blacklist).dispose();
-				((JDBMMap) wordStatMap).dispose();
-				((JDBMMap) termMap).dispose();
-				((JDBMMap) conceptMap).dispose();
-				((JDBMMap) regexMap).dispose();
-				((JDBMMap) infoMap).dispose();
-				((JDBMMap) sourceMap).dispose();
-				((JDBMMap) rootMap).dispose();
-				((JDBMMap) codeMap).dispose();
-			}
+			for(Map map: getTables())
+				getProvider().dispose(map);
 		}
 		
 		/**
@@ -755,7 +1107,23 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		if(!location.exists())
 			location.mkdirs();
 		
-		storage = new Storage();
+		// load optional search options
+		Properties p = null;
+		File sp = new File(location,SEARCH_PROPERTIES);
+		if(sp.exists()){
+			// pull this file
+			p = new Properties();
+			FileReader r = new FileReader(sp);
+			p.load(r);
+			r.close();
+		}
+		
+		// pick storage backend, recorded backend wins over the one that was set for new terminologies
+		String backend = (p != null)?p.getProperty(STORAGE_BACKEND):null;
+		if(backend == null && storageBackend != null && !new JDBMStorageProvider().tableExists(location,"infoMap"))
+			backend = storageBackend;
+		storage = new Storage(Storage.getStorageProvider(backend));
+		storage.setConceptCache((conceptCacheSize > 0)?new ConcurrentCache<String,Concept.Content>(conceptCacheSize):null);
 		storage.load(location,readonly);
 		
 		// split into two seperate 
@@ -793,18 +1161,9 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		//if(storage.getInfoMap().containsKey("handle.possible.acronyms"))
 		//	handleProblemTerms = Boolean.parseBoolean(storage.getInfoMap().get("handle.possible.acronyms"));
 		
-		// load optional search options
-		File sp = new File(location,SEARCH_PROPERTIES);
-		if(sp.exists()){
-			// pull this file
-			Properties p = new Properties();
-			FileReader r = new FileReader(sp);
-			p.load(r);
-			r.close();
-			
-			// lookup default search method
+		// lookup default search method
+		if(p != null)
 			setSearchProperties(this,p);
-		}
 		
 		// load info file for better meta-info
 		File ip = new File(location,INFO_FILE);
@@ -1045,15 +1404,98 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 */
 	public void clear(){
 		storage.clear();
+		clearCache();
 	}
 	
 	/**
-	 * clear cache
-	 *
+	 * clear concept cache.
+	 */
 	public void clearCache(){
-		cache.clear();
+		ConcurrentCache<String,Concept.Content> cache = getConceptCache();
+		if(cache != null)
+			cache.clear();
+	}
+	
+	/**
+	 * get cache of concept content that is kept in front of persisted concept table.
+	 * Cache statistics can be used to tune its size.
+	 *
+	 * @return the concept cache, or null if terminology is not persisted or caching is disabled
+	 */
+	public ConcurrentCache<String,Concept.Content> getConceptCache(){
+		return (storage != null)?storage.getConceptCache():null;
+	}
+	
+	/**
+	 * get cache of normalized words, terms and stems. By default
+	 * a single cache is shared by all terminologies.
+	 *
+	 * @return the normalization cache, or null if normalization is not cached
+	 */
+	public NormalizationCache getNormalizationCache() {
+		return normalizationCache;
+	}
+	
+	/**
+	 * set cache of normalized words, terms and stems, null disables caching.
+	 *
+	 * @param cache the new normalization cache
+	 */
+	public void setNormalizationCache(NormalizationCache cache) {
+		this.normalizationCache = cache;
+	}
+	
+	/**
+	 * Gets the concept cache size.
+	 *
+	 * @return the concept cache size
+	 */
+	public int getConceptCacheSize() {
+		return conceptCacheSize;
+	}
+	
+	/**
+	 * set maximum number of concepts that are cached in front of persisted concept table,
+	 * 0 disables the cache. Takes effect next time terminology is loaded.
+	 *
+	 * @param size the new concept cache size
+	 */
+	public void setConceptCacheSize(int size) {
+		this.conceptCacheSize = size;
+	}
+	
+	/**
+	 * Gets the storage backend that is used for new terminologies.
+	 *
+	 * @return the storage backend or null, if default JDBM backend is used
+	 */
+	public String getStorageBackend() {
+		return storageBackend;
+	}
+	
+	/**
+	 * set storage backend that is used when a new terminology is created: jdbm, memory, log or a
+	 * fully qualified name of a class that implements StorageProvider. Existing terminologies keep
+	 * the backend that was recorded in their search properties. Takes effect next time terminology is loaded.
+	 *
+	 * @param backend the new storage backend
+	 */
+	public void setStorageBackend(String backend) {
+		this.storageBackend = backend;
+	}
+	
+	/**
+	 * get concept content by its code. Persisted concept table deserializes content
+	 * on every lookup, so recently used content is kept in a concept cache of the storage.
+	 *
+	 * @param code the code
+	 * @return the concept content
+	 */
+	private Concept.Content getConceptContent(String code){
+		if(code == null)
+			return null;
+		return storage.getConceptMap().get(code);
 	}
-	*/
 	/**
 	 * save all information to disc
 	 */
@@ -1062,12 +1504,18 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		saveMetaInfo(this,new File(location,INFO_FILE));
 		saveSearchProperteis(this);
 		storage.save();
+		try {
+			storage.saveTermIndex();
+		} catch (IOException e) {
+			pcs.firePropertyChange(LOADING_MESSAGE,null,"Warning: failed to save term index : "+e.getMessage());
+		}
 	}
 	
 	/**
 	 * Dispose.
 	 */
 	public void dispose(){
+		clearCache();
 		storage.dispose();
 	}
 	
@@ -1176,6 +1624,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 						codeList.addAll(storage.getRegexMap().get(regex));
 					}
 					storage.getRegexMap().put(regex, codeList);
+					storage.resetRegexIndex();
 					//storage.getRegexMap().put(regex, c.getCode());
 				} catch (PatternSyntaxException ex) {
 					pcs.firePropertyChange(LOADING_MESSAGE, null, "Warning: failed to add regex /" + regex
@@ -1191,6 +1640,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 				}
 				// insert the set
 				storage.getTermMap().put(term, codeList);
+				storage.resetTermIndex();
 
 				// insert words
 				for (String word : TextTools.getWords(term)) {
@@ -1235,8 +1685,9 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	public boolean removeConcept(Concept c) throws TerminologyException {
 		// find concept terms
 		if(storage.getConceptMap().containsKey(c.getCode()))
-			c = convertConcept(storage.getConceptMap().get(c.getCode()));
+			c = convertConcept(getConceptContent(c.getCode()));
 		Set<String> terms = getNormalizedTerms(this,c);
+		storage.resetTermIndex();
 		// remove all terms and words
 		for(String term: terms){
 			storage.getTermMap().remove(term);
@@ -1273,11 +1724,12 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 * nonoverlap-match: subsumption of concepts
 	 * partial-match: partial term match, overlap of concepts
 	 * custom-match: use flags to tweak search.
+	 * trie-match: ordered match of terms using a token trie, subsumption and overlap of concepts
 	 *
 	 * @return the search methods
 	 */
 	public String[] getSearchMethods() {
-		return new String [] {BEST_MATCH,ALL_MATCH,PRECISE_MATCH,PARTIAL_MATCH,CUSTOM_MATCH};
+		return new String [] {BEST_MATCH,ALL_MATCH,PRECISE_MATCH,PARTIAL_MATCH,CUSTOM_MATCH,TRIE_MATCH};
 	}
 	
 	/**
@@ -1292,56 +1744,36 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	}
 	
 	/**
-	 * setup search method.
+	 * get search options for default search method that reflect current terminology settings.
+	 * Returned object is immutable and can be shared by multiple threads.
 	 *
-	 * @param method the new up search
+	 * @return the search options
 	 */
-	private void setupSearch(String method){
-		if(method == null)
-			method = defaultSearchMethod;
-		
-		if(BEST_MATCH.equals(method)){
-			subsumptionMode = true;
-			overlapMode = true;
-			contiguousMode = true;
-			orderedMode = false;
-			partialMode = false;
-			maxWordGap = 1;
-		}else if(ALL_MATCH.equals(method)){
-			subsumptionMode = false;
-			overlapMode = true;
-			contiguousMode = false;
-			orderedMode = false;
-			partialMode = false;
-			ignoreUsedWords = false;
-		}else if(PRECISE_MATCH.equals(method)){
-			subsumptionMode = true;
-			overlapMode = true;
-			contiguousMode = true;
-			orderedMode = true;
-			partialMode = false;
-			maxWordGap = 0;
-		}else if(NONOVERLAP_MATCH.equals(method)){
-			subsumptionMode = true;
-			overlapMode = false;
-			contiguousMode = false;
-			orderedMode = false;
-			partialMode = false;
-		}else if(PARTIAL_MATCH.equals(method)){
-			subsumptionMode = false;
-			overlapMode = false;
-			contiguousMode = false;
-			orderedMode = false;
-			partialMode = true;
-		}
-		
-		// if compacted, you want to disable ignore used words
-		if(compacted){
-			ignoreUsedWords = false;
-			//ignoreSmallWords = false;
-			ignoreCommonWords = false;
-		}
-		
+	public SearchOptions getSearchOptions(){
+		return new SearchOptions(this);
+	}
+	
+	/**
+	 * get search options for given search method that reflect current terminology settings.
+	 * Returned object is immutable and can be shared by multiple threads.
+	 *
+	 * @param method the search method
+	 * @return the search options
+	 */
+	public SearchOptions getSearchOptions(String method){
+		return new SearchOptions(this,method);
+	}
+	
+	/**
+	 * get search options that reflect current terminology settings overwritten by 
+	 * search properties (same keys as in search.properties)
+	 * Returned object is immutable and can be shared by multiple threads.
+	 *
+	 * @param p the search properties
+	 * @return the search options
+	 */
+	public SearchOptions getSearchOptions(Properties p){
+		return new SearchOptions(this,null,p);
 	}
 	
 	
@@ -1380,6 +1812,19 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 * @throws TerminologyException the terminology exception
 	 */
 	public Concept[] search(String text,String method) throws TerminologyException {
+		return search(text,getSearchOptions(method));
+	}
+
+	/**
+	 * try to find the best possible match for given query using given search options.
+	 * This method does not modify terminology state and can be called from multiple threads.
+	 *
+	 * @param text the text
+	 * @param options the search options
+	 * @return the concept[]
+	 * @throws TerminologyException the terminology exception
+	 */
+	public Concept[] search(String text,SearchOptions options) throws TerminologyException {
 		Map<Concept,Concept> result = new TreeMap<Concept,Concept>(new Comparator<Concept>() {
 			public int compare(Concept o1, Concept o2) {
 				if(o2.getCode().equals(o1.getCode()))
@@ -1390,16 +1835,9 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 				return n;
 			}
 		});
-		// replace default search for the druation of this query
-		String ds = defaultSearchMethod;
-		defaultSearchMethod = method;
-		
 		// process sentences with mentions
-		List<Mention> mentions  = process(new Sentence(text)).getMentions();
-		
-		// switch back the search
-		defaultSearchMethod = ds;
-		
+		List<Mention> mentions  = process(new Sentence(text),options).getMentions();
+
 		// now add concepts from mentions back into results
 		for(Mention m: mentions){
 			Concept c = m.getConcept();
@@ -1451,17 +1889,18 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 * get best candidates for all concepts that match a single term.
 	 *
 	 * @param concepts the concepts
+	 * @param options the search options
 	 * @return the best candidates
 	 */
-	private List<Concept> getBestCandidates(List<Concept> concepts){
+	private List<Concept> getBestCandidates(List<Concept> concepts, SearchOptions options){
 		final double THRESHOLD = 0.0;
 		// do default return original list
 		// if concepts were not scored or list is empty
-		if(concepts.isEmpty() || !scoreConcepts)
+		if(concepts.isEmpty() || !options.isScoreConcepts())
 			return concepts;
 	
 		// if selecting one best candidate
-		if(selectBestCandidate){
+		if(options.isSelectBestCandidate()){
 			// now find best scoring concept in a list
 			Concept best = null;
 			for(Concept c: concepts){
@@ -1470,7 +1909,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 			}
 			return best.getScore() >= THRESHOLD?Collections.singletonList(best):Collections.EMPTY_LIST;
 		// else we have scored concepts, but not best candidate
-		}else if(scoreConcepts){
+		}else if(options.isScoreConcepts()){
 			// filter out concepts that FAIL basic scoring
 			// independent of how they compare to to other candidates
 			for(ListIterator<Concept> i=concepts.listIterator();i.hasNext();){
@@ -1502,17 +1941,21 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 */
 	private Collection<Concept> searchRegExp(String term){
 		List<Concept> result = null;
-		term = new String(term);
+		RegExpIndex index = storage.getRegexIndex();
+		
+		// single pass check if anything can match at all
+		if(!index.matches(term))
+			return Collections.EMPTY_LIST;
+		
 		// iterate over expression
-		for(String re: storage.getRegexMap().keySet()){
+		for(RegExpIndex.Entry re: index.getEntries()){
 			// match regexp from file to
-			Pattern p = Pattern.compile(re,Pattern.CASE_INSENSITIVE);
-			Matcher m = p.matcher( term );
+			Matcher m = re.getPattern().matcher( term );
 			while ( m.find() ){
 				if(result == null)
 					result = new ArrayList<Concept>();
 				
-				for(String cls_str : storage.getRegexMap().get(re)) {
+				for(String cls_str : re.getCodes()) {
 					String txt = m.group(1);    // THIS BETTER BE THERE,
 
 					// well, we don't care about empty space right???
@@ -1522,7 +1965,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 
 					//System.out.println(cls_str+" "+txt+" for re: "+re);
 					// create concept from class
-					Concept c = convertConcept(storage.getConceptMap().get(cls_str));
+					Concept c = convertConcept(getConceptContent(cls_str));
 					c = c.clone();
 					c.setTerminology(this);
 					c.setSearchString(term);
@@ -1566,6 +2009,117 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		return (result != null)?result:Collections.EMPTY_LIST;
 	}
 	
+	/**
+	 * sort words of a sentence, so that words that belong to fewest terms are looked up first.
+	 *
+	 * @param words the words
+	 * @return the sorted words
+	 */
+	private Set<String> getRarestWordsFirst(List<String> words){
+		Set<String> swords = new TreeSet<String>(new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				if(storage.getWordStatMap().containsKey(o1) && storage.getWordStatMap().containsKey(o2)){
+					if( storage.getWordStatMap().get(o1).termCount == storage.getWordStatMap().get(o2).termCount){
+						return o1.compareTo(o2);
+					}
+					return storage.getWordStatMap().get(o1).termCount-storage.getWordStatMap().get(o2).termCount;
+				}
+				if(storage.getWordStatMap().containsKey(o1))
+					return -1;
+				return 1;
+			}
+		});
+		swords.addAll(words);
+		return swords;
+	}
+	
+	/**
+	 * select terms matched by the term trie the same way word by word lookup selects them,
+	 * when it does not lookup on a word that is already part of another matched term.
+	 * Words are visited rarest first and every matched term that is listed under a word
+	 * that was not used yet is kept, so contained terms that are reachable from an unused word survive.
+	 *
+	 * Word postings are read from the term index when it is available and from
+	 * blacklist and word tables otherwise.
+	 *
+	 * @param words the normalized words of the sentence
+	 * @param terms the terms matched by the trie
+	 * @param options the search options
+	 * @return the selected terms
+	 */
+	private Collection<String> getUnusedTerms(List<String> words, Collection<String> terms, SearchOptions options){
+		if(terms.isEmpty())
+			return terms;
+		TermIndex index = storage.getTermIndex();
+		List<String> termList = new ArrayList<String>(terms);
+		int [] termIds = null;
+		if(index != null){
+			termIds = new int [termList.size()];
+			for(int i=0;i<termIds.length;i++)
+				termIds[i] = index.getTermId(termList.get(i));
+		}
+		Set<String> usedWords = new HashSet<String>();
+		Set<String> result = new LinkedHashSet<String>();
+		for(String word: getRarestWordsFirst(words)){
+			if(options.isIgnoreSmallWords() && word.length() <= 1)
+				continue;
+			if(options.isIgnoreCommonWords() && TextTools.isCommonWord(word))
+				continue;
+			if(usedWords.contains(word))
+				continue;
+			boolean [] listed = (index != null)?getListedTerms(index,word,termIds):getListedTerms(word,termList);
+			if(listed == null)
+				continue;
+			for(int i=0;i<listed.length;i++){
+				if(listed[i]){
+					result.add(termList.get(i));
+					usedWords.addAll(getUsedWords(options,words,termList.get(i)));
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * check which terms are listed under a given word in term index postings.
+	 * Blacklisted words use their reduced postings.
+	 *
+	 * @param index the term index
+	 * @param word the word
+	 * @param termIds the term ids to check
+	 * @return flags for listed terms, or null if word has no terms
+	 */
+	private boolean [] getListedTerms(TermIndex index, String word, int [] termIds){
+		int wordId = index.getWordId(word);
+		int [] postings = (wordId > -1)?index.getWordTerms(wordId):null;
+		if(postings == null)
+			return null;
+		Arrays.sort(postings);
+		boolean [] listed = new boolean [termIds.length];
+		for(int i=0;i<termIds.length;i++)
+			listed[i] = termIds[i] > -1 && Arrays.binarySearch(postings,termIds[i]) > -1;
+		return listed;
+	}
+	
+	/**
+	 * check which terms are listed under a given word in blacklist or word tables.
+	 *
+	 * @param word the word
+	 * @param terms the terms to check
+	 * @return flags for listed terms, or null if word has no terms
+	 */
+	private boolean [] getListedTerms(String word, List<String> terms){
+		Set<String> wordTerms = storage.getBlacklist().get(word);
+		if(wordTerms == null)
+			wordTerms = getWordTerms(word);
+		if(wordTerms == null)
+			return null;
+		boolean [] listed = new boolean [terms.size()];
+		for(int i=0;i<listed.length;i++)
+			listed[i] = wordTerms.contains(terms.get(i));
+		return listed;
+	}
+	
 	/**
 	 * get best term that spans most words.
 	 *
@@ -1573,9 +2127,10 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 * @param swords the swords
 	 * @param usedWords the used words
 	 * @param word in question
+	 * @param options the search options
 	 * @return the best terms
 	 */
-	private Collection<String> getBestTerms(List<String> words, Set<String> swords,Set<String> usedWords, String word){
+	private Collection<String> getBestTerms(List<String> words, Set<String> swords,Set<String> usedWords, String word, SearchOptions options){
 		// get list of terms that have a given word associated with it
 		Set<String> terms = storage.getBlacklist().containsKey(word)?storage.getBlacklist().get(word):getWordTerms(word);
 		if(terms == null || words.isEmpty())
@@ -1599,15 +2154,15 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 				// if term word doesn't occur in text, then NO match
 				if(!swords.contains(tword)){
 					all = false;
-					if(!partialMode)
+					if(!options.isPartialMode())
 						break;
 				}else{
 					// if not in overlap mode,then make sure that this term word is not used already
-					if(!overlapMode){
+					if(!options.isOverlapMode()){
 						if(usedWords.contains(tword)){
 							all = false;
 							hits --;
-							if(!partialMode)
+							if(!options.isPartialMode())
 								break;
 						}
 					}
@@ -1616,20 +2171,20 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 			}
 			
 			// do partial match
-			if(partialMode && !all && hits > 0){
+			if(options.isPartialMode() && !all && hits > 0){
 				//all = hits >= twords.length/2.0;
-				all = ((double)hits/twords.size()) >= partialMatchThreshold;
+				all = ((double)hits/twords.size()) >= options.getPartialMatchThreshold();
 			}
 			
 			// optionally inforce term contiguity in text
-			if(all && contiguousMode && twords.size() > 1){
+			if(all && options.isContiguousMode() && twords.size() > 1){
 				// go over every word in a sentence
-				all = checkContiguity(words, twords,maxWordGap);
+				all = checkContiguity(words, twords,options.getMaximumWordGap());
 			}
 			
 			
 			// optionally inforce term order in text
-			if(all && orderedMode && twords.size() > 1){
+			if(all && options.isOrderedMode() && twords.size() > 1){
 				// if we are here, lets find the original synonym that matched this normalized term
 				// reset all variable, if not ordered
 				all = checkWordOrder(words, twords, term);
@@ -1639,7 +2194,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 			// if all words match
 			if(all){
 				// if best-match mode, then keep the best term only
-				if(subsumptionMode){
+				if(options.isSubsumptionMode()){
 					// select the narrowest best
 					if(twords.size() > bestCount){
 						best = new ArrayList<String>();
@@ -1659,14 +2214,181 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	
 	
 	
+	/**
+	 * normalized words of a sentence mapped to word ids of a term index.
+	 * Words that are not in the index get id -1 in the sequence.
+	 */
+	private static class WordIds {
+		private final int [] sequence, ids;
+		private final boolean [] used;
+		
+		/**
+		 * Instantiates word ids for a list of words.
+		 *
+		 * @param index the term index
+		 * @param words the normalized words
+		 */
+		public WordIds(TermIndex index, List<String> words){
+			sequence = new int [words.size()];
+			for(int i=0;i<sequence.length;i++)
+				sequence[i] = index.getWordId(words.get(i));
+			int [] sorted = sequence.clone();
+			Arrays.sort(sorted);
+			int n = 0;
+			for(int id: sorted){
+				if(id > -1 && (n == 0 || sorted[n-1] != id))
+					sorted[n++] = id;
+			}
+			ids = Arrays.copyOf(sorted,n);
+			used = new boolean [n];
+		}
+		
+		/**
+		 * Gets the word ids in sentence order.
+		 *
+		 * @return the sequence
+		 */
+		public int [] getSequence(){
+			return sequence;
+		}
+		
+		/**
+		 * get position of a word id in this sentence.
+		 *
+		 * @param id the word id
+		 * @return the position, or negative value if word is not in sentence
+		 */
+		public int indexOf(int id){
+			return Arrays.binarySearch(ids,id);
+		}
+		
+		/**
+		 * Checks if word at a given position is used.
+		 *
+		 * @param i the position
+		 * @return true, if is used
+		 */
+		public boolean isUsed(int i){
+			return used[i];
+		}
+		
+		/**
+		 * mark words as used.
+		 *
+		 * @param index the term index
+		 * @param words the words
+		 */
+		public void setUsed(TermIndex index, Collection<String> words){
+			for(String w: words){
+				int id = index.getWordId(w);
+				int i = (id > -1)?indexOf(id):-1;
+				if(i > -1)
+					used[i] = true;
+			}
+		}
+	}
+	
+	/**
+	 * get best term that spans most words using interned term index.
+	 * This does exactly the same thing as the table based version, but works on
+	 * term and word ids, so terms are only looked up as strings once they are selected.
+	 *
+	 * @param index the term index
+	 * @param swords the sentence word ids
+	 * @param word in question
+	 * @param options the search options
+	 * @return the best terms
+	 */
+	private Collection<String> getBestTerms(TermIndex index, WordIds swords, String word, SearchOptions options){
+		// get list of terms that have a given word associated with it
+		int wordId = index.getWordId(word);
+		int [] terms = (wordId > -1)?index.getWordTerms(wordId):null;
+		if(terms == null || swords.getSequence().length == 0)
+			return Collections.EMPTY_LIST;
+		
+		// best-match vs all-match
+		// in best-match terms that are subsumed by others are excluded 
+		int [] best = new int [terms.length];
+		int bestSize = 0, bestCount = 0;
+		for(int term: terms){
+			boolean all = true;
+			int hits = 0;
+			int [] twords  = index.getTermWords(term);
+			
+			// if at least one word not in list of words, don't have a match
+			for(int tw : twords ){
+				int i = swords.indexOf(tw);
+				// if term word doesn't occur in text, then NO match
+				if(i < 0){
+					all = false;
+					if(!options.isPartialMode())
+						break;
+				}else{
+					// if not in overlap mode,then make sure that this term word is not used already
+					if(!options.isOverlapMode()){
+						if(swords.isUsed(i)){
+							all = false;
+							hits --;
+							if(!options.isPartialMode())
+								break;
+						}
+					}
+					hits++;	
+				}
+			}
+			
+			// do partial match
+			if(options.isPartialMode() && !all && hits > 0){
+				all = ((double)hits/twords.length) >= options.getPartialMatchThreshold();
+			}
+			
+			// optionally inforce term contiguity and order in text
+			if(all && twords.length > 1){
+				if(options.isContiguousMode())
+					all = checkContiguity(swords.getSequence(),twords,options.getMaximumWordGap());
+				if(all && options.isOrderedMode())
+					all = checkWordOrder(swords.getSequence(),twords);
+			}
+			
+			// if all words match
+			if(all){
+				// if best-match mode, then keep the best term only
+				if(options.isSubsumptionMode()){
+					// select the narrowest best
+					if(twords.length > bestCount){
+						bestSize = 0;
+						best[bestSize++] = term;
+						bestCount = twords.length;
+					}else if(twords.length == bestCount){
+						best[bestSize++] = term;
+					}
+				// else use all-matches mode and keep all of them
+				}else{
+					best[bestSize++] = term;
+				}
+			}	
+		}
+		
+		// only now turn selected term ids into strings
+		List<String> result = new ArrayList<String>(bestSize);
+		for(int i=0;i<bestSize;i++)
+			result.add(index.getTerm(best[i]));
+		return result;
+	}
+	
+	
+	
 	/**
 	 * should the concept be filtered out based on some filtering technique.
 	 *
 	 * @param c the c
+	 * @param options the search options
 	 * @return true, if is filtered out
 	 */
-	private boolean isFilteredOut(Concept c) {
+	private boolean isFilteredOut(Concept c, SearchOptions options) {
 		boolean filteredOut = false;
+		Set<Source> filteredSources = options.getSourceFilter();
+		Set<SemanticType> filteredSemanticTypes = options.getSemanticTypeFilter();
 		
 		// do not filter anything if filtered sources are not set
 		if(filteredSources != null && !filteredSources.isEmpty()){
@@ -1825,10 +2547,10 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 * @see edu.pitt.dbmi.nlp.noble.terminology.AbstractTerminology#lookupConcept(java.lang.String)
 	 */
 	public Concept lookupConcept(String cui) throws TerminologyException {
-		Concept c =  convertConcept(storage.getConceptMap().get(cui));
+		Concept c =  convertConcept(getConceptContent(cui));
 		// try other code mappings
 		if(c == null && storage.getCodeMap().containsKey(cui)){
-			c =  convertConcept(storage.getConceptMap().get(storage.getCodeMap().get(cui)));
+			c =  convertConcept(getConceptContent(storage.getCodeMap().get(cui)));
 		}
 		
 		if(c != null){
@@ -2358,16 +3080,26 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 */
 	
 	public Sentence process(Sentence sentence) throws TerminologyException {
-		processTime = System.currentTimeMillis();
-		
-		// setup flags
-		setupSearch(getDefaultSearchMethod());
-		
+		return process(sentence,getSearchOptions());
+	}
+	
+	/**
+	 * process sentence and add Mentions to it using given search options.
+	 * This method is re-entrant: it does not modify terminology state, so
+	 * a single loaded terminology can process sentences from multiple threads.
+	 *
+	 * @param sentence the sentence
+	 * @param options the search options
+	 * @return the sentence
+	 * @throws TerminologyException the terminology exception
+	 */
+	public Sentence process(Sentence sentence, SearchOptions options) throws TerminologyException {
+		long time = System.currentTimeMillis();
 		String text = sentence.getText();
 		
 		
 		// split text into words (don't strip digits)
-		NormalizedWordsContainer nwc = getNormalizedWordMap(this,text);
+		NormalizedWordsContainer nwc = getNormalizedWordMap(this,text,options.isStemWords(),options.isIgnoreDigits());
 		List<String> words = nwc.normalizedWordsList;
 		Map<String,String> normWords = nwc.normalizedWordsMap;
 		Set<String> resultTerms = new LinkedHashSet<String>();
@@ -2376,21 +3108,11 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		// sort if possible
 		
 		Set<String> swords = null; //words
-		if(ignoreUsedWords){
-			swords = new TreeSet<String>(new Comparator<String>() {
-				public int compare(String o1, String o2) {
-					if(storage.getWordStatMap().containsKey(o1) && storage.getWordStatMap().containsKey(o2)){
-						if( storage.getWordStatMap().get(o1).termCount == storage.getWordStatMap().get(o2).termCount){
-							return o1.compareTo(o2);
-						}
-						return storage.getWordStatMap().get(o1).termCount-storage.getWordStatMap().get(o2).termCount;
-					}
-					if(storage.getWordStatMap().containsKey(o1))
-						return -1;
-					return 1;
-				}
-			});
-			swords.addAll(words);
+		boolean trieMatch = TRIE_MATCH.equals(options.getSearchMethod());
+		if(trieMatch){
+			swords = Collections.EMPTY_SET;
+		}else if(options.isIgnoreUsedWords()){
+			swords = getRarestWordsFirst(words);
 		}else{
 			swords = new LinkedHashSet<String>(words);
 		}
@@ -2398,52 +3120,73 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 
 		// search regexp
 		for(Concept c: searchRegExp(text)){
-			if(!isFilteredOut(c)){
+			if(!isFilteredOut(c,options)){
 				c.setScore(1.0);
 				result.addAll(Mention.getMentions(c));
 			}
 		}
 		
 		
+		// match all terms in a single pass over the term trie
+		if(trieMatch){
+			Collection<String> terms = storage.getTermTrie().match(words,options);
+			if(options.isIgnoreUsedWords())
+				terms = getUnusedTerms(words,terms,options);
+			resultTerms.addAll(terms);
+		}
+		
 		// for each word
+		TermIndex index = storage.getTermIndex();
 		Set<String> usedWords = new HashSet<String>();
 		Set<String> hashWords = new HashSet<String>(words); // for faster term matching
+		WordIds wordIds = (index != null && !trieMatch)?new WordIds(index,words):null;
 		int count = 0;
 		for(String word : swords){
 			count ++;
 			
 			// filter out junk
-			if(ignoreSmallWords && word.length() <= 1)
+			if(options.isIgnoreSmallWords() && word.length() <= 1)
 				continue;
 			
 			// filter out common words
-			if(ignoreCommonWords && TextTools.isCommonWord(word))
+			if(options.isIgnoreCommonWords() && TextTools.isCommonWord(word))
 				continue;
 				
 			// if word is already in list of used words
 			// save time and go on this time, but re-added for
 			// later use in case the word is repeated later on
-			if(ignoreUsedWords && usedWords.contains(word)){
+			if(options.isIgnoreUsedWords() && usedWords.contains(word)){
 				continue;
 			}
 			
-			List<String> textWords = getTextWords(this,words,count);
+			List<String> textWords = getTextWords(options,words,count);
 			// if textWords is not the same size, regenerate the hash set
-			if(words.size() != textWords.size())
-				hashWords = new HashSet<String>(textWords);
+			if(words.size() != textWords.size()){
+				if(wordIds != null){
+					wordIds = new WordIds(index,textWords);
+					wordIds.setUsed(index,usedWords);
+				}else{
+					hashWords = new HashSet<String>(textWords);
+				}
+			}
 			
 			// select matched terms for a given word
-			for(String term: getBestTerms(textWords,hashWords,usedWords,word)){
+			Collection<String> terms = (wordIds != null)?getBestTerms(index,wordIds,word,options):getBestTerms(textWords,hashWords,usedWords,word,options);
+			for(String term: terms){
 				resultTerms.add(term);
-				if(ignoreUsedWords)
-					usedWords.addAll(getUsedWords(this,textWords,term));
+				if(options.isIgnoreUsedWords()){
+					List<String> used = getUsedWords(options,textWords,term);
+					usedWords.addAll(used);
+					if(wordIds != null)
+						wordIds.setUsed(index,used);
+				}
 			}
 			
 		}
 		
 		
 		// now lets remove subsumed terms
-		if(subsumptionMode){
+		if(options.isSubsumptionMode()){
 			List<String> torem = new ArrayList<String>();
 			for(String a: resultTerms){
 				for(String b: resultTerms){
@@ -2464,7 +3207,7 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		//time = System.currentTimeMillis();
 		Set<String> seenOriginalTerms = new HashSet<String>();
 		for(String term: resultTerms){
-			Set<String> codes = storage.getTermMap().get(term);
+			Collection<String> codes = (index != null)?index.getTermCodes(term):storage.getTermMap().get(term);
 			if(codes == null){
 				continue;
 			}
@@ -2492,19 +3235,19 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 				c.addMatchedTerm(oterm);
 				c.setSearchString(text);
 				
-				if(ignoreAcronyms && isAcronym(c))
+				if(options.isIgnoreAcronyms() && isAcronym(c))
 					continue;
 			
 				// score concepts, based on several parameters
-				scoreConcept(c,term,resultTerms);
+				scoreConcept(c,term,resultTerms,options);
 				
 				// filter out really bad ones
 				//if(!scoreConcepts || c.getScore() >= 0.5)
 				termConcepts.add(c);
 			}
 			// add to results
-			for(Concept c: getBestCandidates(termConcepts)){
-				if(!isFilteredOut(c)){
+			for(Concept c: getBestCandidates(termConcepts,options)){
+				if(!isFilteredOut(c,options)){
 					// if we have multiple annotations, deal with it better
 					result.addAll(Mention.getMentions(c,getAnnotations(c,nwc.originalWordsList)));
 				}
@@ -2512,13 +3255,16 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 		}
 		// add mentions to Sentence
 		sentence.setMentions(result);
-		processTime = System.currentTimeMillis() - processTime;
+		processTime = System.currentTimeMillis() - time;
 		sentence.getProcessTime().put(getClass().getSimpleName(),processTime);
 		return sentence;
 	}
 	
-	/* (non-Javadoc)
-	 * @see edu.pitt.dbmi.nlp.noble.terminology.AbstractTerminology#getProcessTime()
+	/**
+	 * get running time in milis for the last completed process() call.
+	 * When terminology is shared between threads, use Sentence.getProcessTime() instead.
+	 *
+	 * @return the process time
 	 */
 	public long getProcessTime() {
 		return processTime;
@@ -2532,11 +3278,14 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 	 * @param c the c
 	 * @param normalizedTerm the normalized term
 	 * @param resultTerms the result terms
+	 * @param options the search options
 	 */
 	
-	private void scoreConcept(Concept c, String normalizedTerm, Set<String> resultTerms){
-		if(!scoreConcepts)
+	private void scoreConcept(Concept c, String normalizedTerm, Set<String> resultTerms, SearchOptions options){
+		if(!options.isScoreConcepts())
 			return;
+		Set<Source> filteredSources = options.getSourceFilter();
+		Set<SemanticType> filteredSemanticTypes = options.getSemanticTypeFilter();
 		
 		// get original text
 		String originalTerm = c.getMatchedTerm();
@@ -2581,7 +3330,8 @@ public class NobleCoderTerminology extends AbstractTerminology implements Proces
 			// check if there is a stemmed match only
 			if( synonymTerm == null){
 				for(String s: synonyms){
-					if(normalizedTerm.equalsIgnoreCase(TextTools.stem(s))){
+					String stem = (normalizationCache != null)?normalizationCache.stem(s):TextTools.stem(s);
+					if(normalizedTerm.equalsIgnoreCase(stem)){
 						stemmedMatch = true;
 						synonymTerm = s;
 						break;
@@ -2,14 +2,10 @@ package edu.pitt.dbmi.nlp.noble.terminology.impl;
 
 import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.saveWordTermsInStorage;
 
-import java.beans.PropertyChangeSupport;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -31,8 +27,8 @@ import edu.pitt.dbmi.nlp.noble.terminology.Source;
 import edu.pitt.dbmi.nlp.noble.terminology.Term;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology.Storage;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology.WordStat;
+import edu.pitt.dbmi.nlp.noble.tools.NormalizationCache;
 import edu.pitt.dbmi.nlp.noble.tools.TextTools;
-import edu.pitt.dbmi.nlp.noble.util.ConceptImporter;
 
 
 /**
@@ -164,119 +160,6 @@ public class NobleCoderUtils {
 		return rarest;
 	}
 	
-	/**
-	 * Save temporary term file.
-	 *
-	 * @param tempLocation the temp location
-	 * @param word the word
-	 * @param termList the term list
-	 * @throws IOException Signals that an I/O exception has occurred.
-	 */
-	public static void saveTemporaryTermFile(File tempLocation, String word, Collection<String> termList) throws IOException{
-		if(word == null)
-			return;
-		// if windows OS, check for some speccial files
-		if(System.getProperty("os.name").toLowerCase().startsWith("win")){
-			if(Arrays.asList("con","prn").contains(word))
-				return;
-		}
-		
-		if(!tempLocation.exists())
-			tempLocation.mkdirs();
-		File f = new File(tempLocation,word);
-		BufferedWriter w = new BufferedWriter(new FileWriter(f,true));
-		for(String t: termList){
-			w.write(t+"\n");
-		}
-		w.close();
-	}
-	
-
-	/**
-	 * Removes the temporary term files.
-	 *
-	 * @param pcs the pcs
-	 * @param tempDir the temp dir
-	 */
-	public static void removeTemporaryTermFiles(PropertyChangeSupport pcs, File tempDir){
-		// remove temp word files 
-		if(tempDir.exists()){
-			pcs.firePropertyChange(ConceptImporter.LOADING_MESSAGE,null,"Deleting Temporary Files ...");
-			File [] files = tempDir.listFiles();
-			pcs.firePropertyChange(ConceptImporter.LOADING_TOTAL,null,files.length);
-			int i=0;
-			for(File f: files){
-				pcs.firePropertyChange(ConceptImporter.LOADING_PROGRESS,null,i++);
-				f.delete();
-			}
-			tempDir.delete();
-		}
-	}
-	
-	
-	/**
-	 * load temporary term files.
-	 *
-	 * @param pcs the pcs
-	 * @param storage the storage
-	 * @param tempDir the temp dir
-	 * @param useRarestWord the use rarest word
-	 * @throws IOException Signals that an I/O exception has occurred.
-	 */
-	public static void loadTemporaryTermFiles(PropertyChangeSupport pcs,NobleCoderTerminology.Storage storage, File tempDir, boolean useRarestWord) throws IOException{
-		if(tempDir == null)
-			return;
-		if(!tempDir.exists())
-			tempDir.mkdir();
-		pcs.firePropertyChange(ConceptImporter.LOADING_MESSAGE,null,"Loading terms into datastructure ...");
-		storage.useTempWordFolder = false;
-		File [] fileList = tempDir.listFiles();
-		if(fileList != null){
-			
-			pcs.firePropertyChange(ConceptImporter.LOADING_TOTAL,null,fileList.length);
-			int i = 0;
-			for(File f: fileList){
-					
-				//load file content
-				String word = f.getName();
-				Set<String> terms = new HashSet<String>();
-				BufferedReader rd = new BufferedReader(new FileReader(f));
-				for(String l = rd.readLine();l != null; l = rd.readLine()){
-					terms.add(l.trim());
-				}
-				rd.close();
-				
-				// set words
-				saveWordTermsInStorage(storage,word,(useRarestWord)?getTermsByRarestWord(storage,word, terms):terms);
-				
-				// progress bar
-				pcs.firePropertyChange(ConceptImporter.LOADING_PROGRESS,null,i++);
-			}
-		}
-	}
-	
-	
-	/**
-	 * Gets the terms by rarest word.
-	 *
-	 * @param storage the storage
-	 * @param word the word
-	 * @param terms the terms
-	 * @return the terms by rarest word
-	 */
-	private static Set<String> getTermsByRarestWord(Storage storage, String word,Set<String> terms){
-		// sort by longest string first
-		Set<String> rarestTerms = new HashSet<String>();
-		for(String term: terms){
-			String rareWord = getRarestWord(storage,term);
-			if(word.equals(rareWord)){
-				rarestTerms.add(term);
-			}
-		}
-		return rarestTerms;
-	}
-	
-
 	/**
 	 * get list of normalized terms from from the class.
 	 *
@@ -315,8 +198,13 @@ public class NobleCoderUtils {
 				if(term.getMaximumWordsInTerm() > -1 && term.getMaximumWordsInTerm() < TextTools.charCount(str,' ')){
 					addTerm = false;
 				}
-				if(addTerm)
-					terms.add(TextTools.normalize(str,stem,term.isIgnoreDigits(),term.isStripStopWords(),true,false));
+				if(addTerm){
+					NormalizationCache cache = term.getNormalizationCache();
+					if(cache != null)
+						terms.add(cache.normalize(str,stem,term.isIgnoreDigits(),term.isStripStopWords(),true,false));
+					else
+						terms.add(TextTools.normalize(str,stem,term.isIgnoreDigits(),term.isStripStopWords(),true,false));
+				}
 			}
 		}
 		return terms;
@@ -400,6 +288,69 @@ public class NobleCoderUtils {
 	}
 	
 	
+	/**
+	 * check that the term is contigous within the limits allowed using word ids.
+	 *
+	 * @param words the word ids of a sentence in text order
+	 * @param twords the word ids of a term
+	 * @param maxWordGap the max word gap
+	 * @return true, if successful
+	 */
+	public static boolean checkContiguity(int [] words,int [] twords, int maxWordGap){
+		for(int i=0;i<words.length;i++){
+			if(indexOf(twords,words[i],0,twords.length) > -1){
+				int n = i+((maxWordGap+1)*(twords.length-1))+1;
+				if(n > words.length)
+					n = words.length;
+				boolean all = true;
+				for(int tw: twords){
+					if(indexOf(words,tw,i,n) < 0){
+						all = false;
+						break;
+					}
+				}
+				if(all)
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * check word order using word ids.
+	 *
+	 * @param words the word ids of a sentence in text order
+	 * @param twords the word ids of a term
+	 * @return true, if successful
+	 */
+	public static boolean checkWordOrder(int [] words,int [] twords){
+		int lastI = 0;
+		for(int tw: twords){
+			int i = indexOf(words,tw,lastI,words.length);
+			if(i < lastI)
+				return false;
+			lastI = i;	
+		}
+		return true;
+	}
+	
+	/**
+	 * Index of.
+	 *
+	 * @param list the list
+	 * @param w the w
+	 * @param n the start offset
+	 * @param end the end offset
+	 * @return the int
+	 */
+	private static int indexOf(int [] list,int w, int n, int end){
+		for(int i=n;i<end;i++){
+			if(list[i] == w)
+				return i;
+		}
+		return -1;
+	}
+	
 	/**
 	 * Index of.
 	 *
@@ -450,14 +401,26 @@ public class NobleCoderUtils {
 	 * @return the used words
 	 */
 	public static List<String> getUsedWords(NobleCoderTerminology terminology,List<String> words, String term){
+		return getUsedWords(terminology.getSearchOptions(),words,term);
+	}
+	
+	/**
+	 * get all used words from this term.
+	 *
+	 * @param options the search options
+	 * @param words the words
+	 * @param term the term
+	 * @return the used words
+	 */
+	public static List<String> getUsedWords(SearchOptions options,List<String> words, String term){
 		// if not ignore used words and in overlap mode, return
-		if(!terminology.isIgnoreUsedWords() && terminology.isOverlapMode())
+		if(!options.isIgnoreUsedWords() && options.isOverlapMode())
 			return Collections.EMPTY_LIST;
 				
 		List<String> termWords = TextTools.getWords(term);
 		List<String> usedWords = new ArrayList<String>();
 		// remove words that are involved in term
-		if(terminology.isOverlapMode()){
+		if(options.isOverlapMode()){
 			for(String w: termWords){
 				usedWords.add(w);
 			}
@@ -526,14 +489,29 @@ public class NobleCoderUtils {
 	 * @return NormalizedWordsContainer - normalized word for its original form
 	 */
 	public static NormalizedWordsContainer getNormalizedWordMap(NobleCoderTerminology term, String text){
+		return getNormalizedWordMap(term,text,term.isStemWords(),term.isIgnoreDigits());
+	}
+	
+	/**
+	 * perform normalization of a string @see normalize, but return unsorted list of words .
+	 *
+	 * @param term the term
+	 * @param text the text
+	 * @param stem stem words
+	 * @param stripDigits strip digits
+	 * @return NormalizedWordsContainer - normalized word for its original form
+	 */
+	public static NormalizedWordsContainer getNormalizedWordMap(NobleCoderTerminology term, String text, boolean stem, boolean stripDigits){
 		NormalizedWordsContainer c = new NormalizedWordsContainer();
 		c.normalizedWordsMap = new LinkedHashMap<String, String>();
 		c.normalizedWordsList = new ArrayList<String>();
 		c.originalWordsList = TextTools.getWords(text);
 		//boolean skipAbbr = false;
+		NormalizationCache cache = term.getNormalizationCache();
 		
 		for(String w: c.originalWordsList){
-			List<String> ws = TextTools.normalizeWords(w, term.isStemWords(),term.isIgnoreDigits(),term.isStripStopWords());
+			List<String> ws = (cache != null)?cache.normalizeWords(w,stem,stripDigits,term.isStripStopWords()):
+				TextTools.normalizeWords(w,stem,stripDigits,term.isStripStopWords());
 			if(!ws.isEmpty() && !c.normalizedWordsMap.containsKey(ws.get(0)))
 				c.normalizedWordsMap.put(ws.get(0),w);
 			c.normalizedWordsList.addAll(ws);
@@ -603,6 +581,8 @@ public class NobleCoderUtils {
 		p.setProperty("handle.possible.acronyms",""+term.isHandlePossibleAcronyms());
 		p.setProperty("partial.match.theshold",""+term.getPartialMatchThreshold());
 		p.setProperty("max.words.in.term",""+term.getMaximumWordsInTerm());
+		if(term.getStorage() != null && term.getStorage().getLocation() != null)
+			p.setProperty(NobleCoderTerminology.STORAGE_BACKEND,term.getStorage().getProvider().getName());
 		return p;
 	}
 	
@@ -828,12 +808,24 @@ public class NobleCoderUtils {
 	 * @return the text words
 	 */
 	public static List<String> getTextWords(NobleCoderTerminology term, List<String> words,int count) {
+		return getTextWords(term.getSearchOptions(),words,count);
+	}
+	
+	/**
+	 * optionally limit to a sublist of words.
+	 *
+	 * @param options the search options
+	 * @param words the words
+	 * @param count the count
+	 * @return the text words
+	 */
+	public static List<String> getTextWords(SearchOptions options, List<String> words,int count) {
 		// currently there is a bug, so can't use window size with used words
-		if(term.isIgnoreUsedWords())
+		if(options.isIgnoreUsedWords())
 			return words;
 		// decrement to compensate
 		count --;
-		int windowSize = term.getWindowSize();
+		int windowSize = options.getWindowSize();
 		if(windowSize > 0 && words.size() > windowSize && count < words.size()){
 			int end = (count+windowSize)<words.size()?count+windowSize:words.size();
 			return words.subList(count,end);
@@ -0,0 +1,164 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * in-memory index of regular expression synonyms that is built once from
+ * NobleCoderTerminology regex table. Every expression is compiled only once and
+ * concept codes are copied out of the (possibly JDBM backed) table, so searching a sentence
+ * does not touch persistent storage.
+ *
+ * All expressions are also combined into a single alternation that is used
+ * as a one pass filter: if it does not find anything in a sentence, none of the individual
+ * expressions can match and the sentence is skipped. Individual expressions are still run
+ * one by one on sentences that pass the filter, because different expressions are allowed to
+ * produce overlapping matches (Ex: \d vs \d.\d) which a single alternation would hide.
+ *
+ * The index is immutable and can be shared between threads.
+ *
+ * @author tseytlin
+ */
+public class RegExpIndex {
+	private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]");
+	private final List<Entry> entries;
+	private final Pattern filter;
+
+	/**
+	 * compiled regular expression with concept codes that it maps to
+	 */
+	public static class Entry {
+		private final String expression;
+		private final Pattern pattern;
+		private final String [] codes;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param expression the expression
+		 * @param pattern the pattern
+		 * @param codes the codes
+		 */
+		private Entry(String expression, Pattern pattern, String [] codes){
+			this.expression = expression;
+			this.pattern = pattern;
+			this.codes = codes;
+		}
+
+		/**
+		 * Gets the expression.
+		 *
+		 * @return the expression
+		 */
+		public String getExpression() {
+			return expression;
+		}
+
+		/**
+		 * Gets the pattern.
+		 *
+		 * @return the pattern
+		 */
+		public Pattern getPattern() {
+			return pattern;
+		}
+
+		/**
+		 * Gets the concept codes.
+		 *
+		 * @return the codes
+		 */
+		public String [] getCodes() {
+			return codes;
+		}
+	}
+
+
+	/**
+	 * build regular expression index from regex table
+	 * preserving the iteration order of this table
+	 *
+	 * @param regexMap - map of regular expression to concept codes
+	 */
+	public RegExpIndex(Map<String,Set<String>> regexMap){
+		List<Entry> list = new ArrayList<Entry>();
+		StringBuffer combined = new StringBuffer();
+		boolean combine = true;
+		for(String re: regexMap.keySet()){
+			Pattern pt = null;
+			try{
+				pt = Pattern.compile(re,Pattern.CASE_INSENSITIVE);
+			}catch(PatternSyntaxException ex){
+				// this expression was validated during import, but skip it just in case
+				continue;
+			}
+			Set<String> codes = regexMap.get(re);
+			if(codes == null || codes.isEmpty())
+				continue;
+			list.add(new Entry(re,pt,codes.toArray(new String [codes.size()])));
+
+			// group references and named groups will break once expressions are combined
+			if(BACK_REFERENCE.matcher(re).find())
+				combine = false;
+			if(combined.length() > 0)
+				combined.append("|");
+			combined.append("(?:"+re+")");
+		}
+		Pattern p = null;
+		if(combine && list.size() > 1){
+			try{
+				p = Pattern.compile(combined.toString(),Pattern.CASE_INSENSITIVE);
+			}catch(PatternSyntaxException ex){
+				p = null;
+			}
+		}
+		this.filter = p;
+		this.entries = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Gets the entries.
+	 *
+	 * @return the entries
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * number of expressions in the index.
+	 *
+	 * @return the number of expressions
+	 */
+	public int size(){
+		return entries.size();
+	}
+
+	/**
+	 * Checks if is empty.
+	 *
+	 * @return true, if is empty
+	 */
+	public boolean isEmpty(){
+		return entries.isEmpty();
+	}
+
+	/**
+	 * check in a single pass if any of the expressions can match a given text.
+	 *
+	 * @param text the text
+	 * @return false if none of the expressions match this text
+	 */
+	public boolean matches(CharSequence text){
+		if(entries.isEmpty())
+			return false;
+		if(filter == null)
+			return true;
+		return filter.matcher(text).find();
+	}
+}
@@ -0,0 +1,439 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import edu.pitt.dbmi.nlp.noble.terminology.SemanticType;
+import edu.pitt.dbmi.nlp.noble.terminology.Source;
+
+/**
+ * immutable snapshot of search flags that is used by NobleCoderTerminology
+ * for a single process() or search() call. Since nothing in this object
+ * can change after it was created, the same instance can be passed from
+ * multiple threads that share one loaded terminology.
+ *
+ * Options are created from terminology defaults for a given search method
+ * and can optionally be overwritten by the same properties that are used in search.properties
+ *
+ * @author tseytlin
+ */
+public class SearchOptions {
+	private final String searchMethod;
+	private final boolean ignoreSmallWords,ignoreCommonWords,ignoreAcronyms,ignoreUsedWords;
+	private final boolean selectBestCandidate,scoreConcepts;
+	private final boolean subsumptionMode,overlapMode,orderedMode,contiguousMode,partialMode;
+	private final boolean stemWords,ignoreDigits;
+	private final int windowSize, maxWordGap;
+	private final double partialMatchThreshold;
+	private final Set<Source> sourceFilter;
+	private final Set<SemanticType> semanticTypeFilter;
+	private final Set<String> languageFilter;
+
+	/**
+	 * create search options from current terminology settings
+	 * using its default search method.
+	 *
+	 * @param term the terminology
+	 */
+	public SearchOptions(NobleCoderTerminology term){
+		this(term,term.getDefaultSearchMethod(),null);
+	}
+
+	/**
+	 * create search options from current terminology settings
+	 * for a given search method.
+	 *
+	 * @param term the terminology
+	 * @param method the search method, if null default search method is used
+	 */
+	public SearchOptions(NobleCoderTerminology term, String method){
+		this(term,method,null);
+	}
+
+	/**
+	 * create search options from current terminology settings
+	 * for a given search method and overwrite them with given search properties.
+	 *
+	 * @param term the terminology
+	 * @param method the search method, if null default search method (or default.search.method property) is used
+	 * @param p the search properties to overwrite terminology defaults, can be null
+	 */
+	public SearchOptions(NobleCoderTerminology term, String method, Properties p){
+		if(p == null)
+			p = new Properties();
+
+		// figure out search method
+		if(method == null)
+			method = p.getProperty("default.search.method",term.getDefaultSearchMethod());
+
+		// pull defaults from terminology and overwrite them with properties
+		boolean ignoreUsedWords = getBoolean(p,"ignore.used.words",term.isIgnoreUsedWords());
+		boolean ignoreCommonWords = getBoolean(p,"ignore.common.words",term.isIgnoreCommonWords());
+		boolean subsumptionMode = getBoolean(p,"subsumption.mode",term.isSubsumptionMode());
+		boolean overlapMode = getBoolean(p,"overlap.mode",term.isOverlapMode());
+		boolean contiguousMode = getBoolean(p,"contiguous.mode",term.isContiguousMode());
+		boolean orderedMode = getBoolean(p,"ordered.mode",term.isOrderedMode());
+		boolean partialMode = getBoolean(p,"partial.mode",term.isPartialMode());
+		boolean scoreConcepts = getBoolean(p,"score.concepts",term.isScoreConcepts());
+		boolean selectBestCandidate = getBoolean(p,"select.best.candidate",term.isSelectBestCandidate());
+		int maxWordGap = getInteger(p,"maximum.word.gap",term.getMaximumWordGap());
+
+		// setup search method
+		if(NobleCoderTerminology.BEST_MATCH.equals(method)){
+			subsumptionMode = true;
+			overlapMode = true;
+			contiguousMode = true;
+			orderedMode = false;
+			partialMode = false;
+			maxWordGap = 1;
+		}else if(NobleCoderTerminology.ALL_MATCH.equals(method)){
+			subsumptionMode = false;
+			overlapMode = true;
+			contiguousMode = false;
+			orderedMode = false;
+			partialMode = false;
+			ignoreUsedWords = false;
+		}else if(NobleCoderTerminology.PRECISE_MATCH.equals(method)){
+			subsumptionMode = true;
+			overlapMode = true;
+			contiguousMode = true;
+			orderedMode = true;
+			partialMode = false;
+			maxWordGap = 0;
+		}else if(NobleCoderTerminology.NONOVERLAP_MATCH.equals(method)){
+			subsumptionMode = true;
+			overlapMode = false;
+			contiguousMode = false;
+			orderedMode = false;
+			partialMode = false;
+		}else if(NobleCoderTerminology.PARTIAL_MATCH.equals(method)){
+			subsumptionMode = false;
+			overlapMode = false;
+			contiguousMode = false;
+			orderedMode = false;
+			partialMode = true;
+		}else if(NobleCoderTerminology.TRIE_MATCH.equals(method)){
+			// subsumption mode is left as is to pick best-match vs all-match behavior
+			overlapMode = true;
+			contiguousMode = true;
+			orderedMode = true;
+			partialMode = false;
+			// trie visits every word, skipping used words has to be asked for explicitly
+			ignoreUsedWords = getBoolean(p,"ignore.used.words",false);
+		}
+
+		// if compacted, you want to disable ignore used words
+		if(term.isCompacted()){
+			ignoreUsedWords = false;
+			ignoreCommonWords = false;
+		}
+
+		// selecting best candidate implies scoring
+		if(selectBestCandidate)
+			scoreConcepts = true;
+
+		this.searchMethod = method;
+		this.ignoreSmallWords = getBoolean(p,"ignore.small.words",term.isIgnoreSmallWords());
+		this.ignoreAcronyms = getBoolean(p,"ignore.acronyms",term.isIgnoreAcronyms());
+		this.ignoreCommonWords = ignoreCommonWords;
+		this.ignoreUsedWords = ignoreUsedWords;
+		this.selectBestCandidate = selectBestCandidate;
+		this.scoreConcepts = scoreConcepts;
+		this.subsumptionMode = subsumptionMode;
+		this.overlapMode = overlapMode;
+		this.orderedMode = orderedMode;
+		this.contiguousMode = contiguousMode;
+		this.partialMode = partialMode;
+		this.maxWordGap = maxWordGap;
+		this.windowSize = getInteger(p,"window.size",term.getWindowSize());
+		this.partialMatchThreshold = getDouble(p,"partial.match.theshold",term.getPartialMatchThreshold());
+		this.stemWords = getBoolean(p,"stem.words",term.isStemWords());
+		this.ignoreDigits = getBoolean(p,"ignore.digits",term.isIgnoreDigits());
+
+		// copy filters
+		Set<Source> sources = new LinkedHashSet<Source>();
+		String v = p.getProperty("source.filter");
+		if(v != null){
+			for(String s: split(v))
+				sources.add(Source.getSource(s));
+		}else{
+			Collections.addAll(sources,term.getSourceFilter());
+		}
+		Set<SemanticType> semanticTypes = new LinkedHashSet<SemanticType>();
+		v = p.getProperty("semantic.type.filter");
+		if(v != null){
+			for(String s: split(v))
+				semanticTypes.add(SemanticType.getSemanticType(s));
+		}else{
+			Collections.addAll(semanticTypes,term.getSemanticTypeFilter());
+		}
+		Set<String> languages = new LinkedHashSet<String>();
+		v = p.getProperty("language.filter");
+		if(v != null){
+			for(String s: split(v))
+				languages.add(s);
+		}else{
+			Collections.addAll(languages,term.getLanguageFilter());
+		}
+		this.sourceFilter = sources.isEmpty()?null:Collections.unmodifiableSet(sources);
+		this.semanticTypeFilter = semanticTypes.isEmpty()?null:Collections.unmodifiableSet(semanticTypes);
+		this.languageFilter = languages.isEmpty()?null:Collections.unmodifiableSet(languages);
+	}
+
+	/**
+	 * create a copy of search options with different source and semantic type filters.
+	 * Unlike filter properties, names of semantic types are not parsed, so names
+	 * that contain commas, s.a. "Amino Acid, Peptide, or Protein" are kept intact.
+	 *
+	 * @param options the search options to copy
+	 * @param sources the source filter, null keeps source filter of given options, empty array removes it
+	 * @param semanticTypes the semantic type filter, null keeps semantic type filter of given options, empty array removes it
+	 */
+	public SearchOptions(SearchOptions options, Source [] sources, SemanticType [] semanticTypes){
+		this.searchMethod = options.searchMethod;
+		this.ignoreSmallWords = options.ignoreSmallWords;
+		this.ignoreCommonWords = options.ignoreCommonWords;
+		this.ignoreAcronyms = options.ignoreAcronyms;
+		this.ignoreUsedWords = options.ignoreUsedWords;
+		this.selectBestCandidate = options.selectBestCandidate;
+		this.scoreConcepts = options.scoreConcepts;
+		this.subsumptionMode = options.subsumptionMode;
+		this.overlapMode = options.overlapMode;
+		this.orderedMode = options.orderedMode;
+		this.contiguousMode = options.contiguousMode;
+		this.partialMode = options.partialMode;
+		this.stemWords = options.stemWords;
+		this.ignoreDigits = options.ignoreDigits;
+		this.windowSize = options.windowSize;
+		this.maxWordGap = options.maxWordGap;
+		this.partialMatchThreshold = options.partialMatchThreshold;
+		this.languageFilter = options.languageFilter;
+		this.sourceFilter = (sources != null)?toSet(sources):options.sourceFilter;
+		this.semanticTypeFilter = (semanticTypes != null)?toSet(semanticTypes):options.semanticTypeFilter;
+	}
+
+	private static <T> Set<T> toSet(T [] values){
+		Set<T> set = new LinkedHashSet<T>();
+		Collections.addAll(set,values);
+		return set.isEmpty()?null:Collections.unmodifiableSet(set);
+	}
+
+
+	private static boolean getBoolean(Properties p, String key, boolean def){
+		return p.containsKey(key)?Boolean.parseBoolean(p.getProperty(key)):def;
+	}
+
+	private static int getInteger(Properties p, String key, int def){
+		try{
+			return p.containsKey(key)?Integer.parseInt(p.getProperty(key).trim()):def;
+		}catch(NumberFormatException ex){
+			return def;
+		}
+	}
+
+	private static double getDouble(Properties p, String key, double def){
+		try{
+			return p.containsKey(key)?Double.parseDouble(p.getProperty(key).trim()):def;
+		}catch(NumberFormatException ex){
+			return def;
+		}
+	}
+
+	private static String [] split(String v){
+		if(v.trim().length() == 0)
+			return new String [0];
+		String [] s = v.split((v.indexOf(';') > -1)?";":",");
+		for(int i=0;i<s.length;i++)
+			s[i] = s[i].trim();
+		return s;
+	}
+
+	/**
+	 * Checks if words in search text are stemmed.
+	 *
+	 * @return true, if is stem words
+	 */
+	public boolean isStemWords() {
+		return stemWords;
+	}
+
+	/**
+	 * Checks if digits in search text are ignored.
+	 *
+	 * @return true, if is ignore digits
+	 */
+	public boolean isIgnoreDigits() {
+		return ignoreDigits;
+	}
+
+	/**
+	 * Gets the language filter.
+	 *
+	 * @return the language filter or null, if languages are not filtered
+	 */
+	public Set<String> getLanguageFilter() {
+		return languageFilter;
+	}
+
+	/**
+	 * Gets the search method.
+	 *
+	 * @return the search method
+	 */
+	public String getSearchMethod() {
+		return searchMethod;
+	}
+
+	/**
+	 * Checks if is ignore small words.
+	 *
+	 * @return true, if is ignore small words
+	 */
+	public boolean isIgnoreSmallWords() {
+		return ignoreSmallWords;
+	}
+
+	/**
+	 * Checks if is ignore common words.
+	 *
+	 * @return true, if is ignore common words
+	 */
+	public boolean isIgnoreCommonWords() {
+		return ignoreCommonWords;
+	}
+
+	/**
+	 * Checks if is ignore acronyms.
+	 *
+	 * @return true, if is ignore acronyms
+	 */
+	public boolean isIgnoreAcronyms() {
+		return ignoreAcronyms;
+	}
+
+	/**
+	 * Checks if is ignore used words.
+	 *
+	 * @return true, if is ignore used words
+	 */
+	public boolean isIgnoreUsedWords() {
+		return ignoreUsedWords;
+	}
+
+	/**
+	 * Checks if is select best candidate.
+	 *
+	 * @return true, if is select best candidate
+	 */
+	public boolean isSelectBestCandidate() {
+		return selectBestCandidate;
+	}
+
+	/**
+	 * Checks if is score concepts.
+	 *
+	 * @return true, if is score concepts
+	 */
+	public boolean isScoreConcepts() {
+		return scoreConcepts;
+	}
+
+	/**
+	 * Checks if is subsumption mode.
+	 *
+	 * @return true, if is subsumption mode
+	 */
+	public boolean isSubsumptionMode() {
+		return subsumptionMode;
+	}
+
+	/**
+	 * Checks if is overlap mode.
+	 *
+	 * @return true, if is overlap mode
+	 */
+	public boolean isOverlapMode() {
+		return overlapMode;
+	}
+
+	/**
+	 * Checks if is ordered mode.
+	 *
+	 * @return true, if is ordered mode
+	 */
+	public boolean isOrderedMode() {
+		return orderedMode;
+	}
+
+	/**
+	 * Checks if is contiguous mode.
+	 *
+	 * @return true, if is contiguous mode
+	 */
+	public boolean isContiguousMode() {
+		return contiguousMode;
+	}
+
+	/**
+	 * Checks if is partial mode.
+	 *
+	 * @return true, if is partial mode
+	 */
+	public boolean isPartialMode() {
+		return partialMode;
+	}
+
+	/**
+	 * Gets the window size.
+	 *
+	 * @return the window size
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Gets the maximum word gap.
+	 *
+	 * @return the maximum word gap
+	 */
+	public int getMaximumWordGap() {
+		return maxWordGap;
+	}
+
+	/**
+	 * Gets the partial match threshold.
+	 *
+	 * @return the partial match threshold
+	 */
+	public double getPartialMatchThreshold() {
+		return partialMatchThreshold;
+	}
+
+	/**
+	 * Gets the source filter.
+	 *
+	 * @return the source filter, or null if not set
+	 */
+	public Set<Source> getSourceFilter() {
+		return sourceFilter;
+	}
+
+	/**
+	 * Gets the semantic type filter.
+	 *
+	 * @return the semantic type filter, or null if not set
+	 */
+	public Set<SemanticType> getSemanticTypeFilter() {
+		return semanticTypeFilter;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return searchMethod;
+	}
+}
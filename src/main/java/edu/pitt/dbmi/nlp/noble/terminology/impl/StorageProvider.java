@@ -0,0 +1,78 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * storage provider creates and manages data tables that back NobleCoderTerminology.Storage.
+ * Every table is a Map that is identified by a location (terminology directory) and a table name.
+ * In-memory terminologies are created with a null location.
+ * A provider is selected by its name with storage.backend property in search.properties
+ * of a terminology.
+ *
+ * @author tseytlin
+ */
+public interface StorageProvider {
+	public static final String JDBM = "jdbm";
+	public static final String MEMORY = "memory";
+	public static final String LOG = "log";
+
+	/**
+	 * Gets the name of this provider.
+	 *
+	 * @return the name
+	 */
+	public String getName();
+
+	/**
+	 * create or open a data table.
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 * @param location the terminology location, or null for an in-memory table
+	 * @param tablename the tablename
+	 * @param readonly the readonly
+	 * @return the map
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public <K extends Comparable, V> Map<K,V> createMap(File location, String tablename, boolean readonly) throws IOException;
+
+	/**
+	 * check if a data table was persisted in a given location.
+	 *
+	 * @param location the location
+	 * @param tablename the tablename
+	 * @return true, if successful
+	 */
+	public boolean tableExists(File location, String tablename);
+
+	/**
+	 * Checks if table is read only.
+	 *
+	 * @param map the map
+	 * @return true, if is read only
+	 */
+	public boolean isReadOnly(Map map);
+
+	/**
+	 * commit changes in a table to disk.
+	 *
+	 * @param map the map
+	 */
+	public void commit(Map map);
+
+	/**
+	 * compact a table on disk.
+	 *
+	 * @param map the map
+	 */
+	public void compact(Map map);
+
+	/**
+	 * release resources held by a table.
+	 *
+	 * @param map the map
+	 */
+	public void dispose(Map map);
+}
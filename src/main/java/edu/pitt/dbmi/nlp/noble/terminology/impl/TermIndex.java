@@ -0,0 +1,509 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.pitt.dbmi.nlp.noble.tools.TextTools;
+
+/**
+ * interned, read-only copy of word, blacklist and term tables of NobleCoderTerminology.
+ * Words, terms and concept codes are stored once in sorted string tables and referred to
+ * by int ids everywhere else: word postings are lists of term ids, every term keeps
+ * a list of its word ids and a list of its concept code ids. Looking up a word does not
+ * deserialize or allocate any sets, and term words don't have to be re-tokenized.
+ *
+ * Postings keep the iteration order of original tables, so search results
+ * come out in exactly the same order as when tables are used directly.
+ *
+ * The index is kept in a flat binary layout (string tables with offsets and int postings with offsets)
+ * that is identical in memory and on disk. It is built from data tables when terminology is saved
+ * and is written next to JDBM tables. When it is loaded, the file is memory mapped read-only via
+ * FileChannel.map, so lookups read directly from the page cache, startup does not depend on
+ * terminology size and several JVMs can share the same pages.
+ *
+ * @author tseytlin
+ */
+public class TermIndex {
+	private static final int MAGIC = 0x4E435449; // NCTI
+	private static final int VERSION = 2;
+	private static final int SECTIONS = 7;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * sort strings by code point, which is the same as UTF-8 byte order
+	 */
+	static final Comparator<String> CODE_POINT_ORDER = new Comparator<String>() {
+		public int compare(String a, String b) {
+			int i = 0, j = 0;
+			while(i < a.length() && j < b.length()){
+				int ca = a.codePointAt(i);
+				int cb = b.codePointAt(j);
+				if(ca != cb)
+					return (ca < cb)?-1:1;
+				i += Character.charCount(ca);
+				j += Character.charCount(cb);
+			}
+			return (a.length()-i) - (b.length()-j);
+		}
+	};
+
+	private final StringTable words, terms, codes;
+	private final PostingTable wordTerms, blacklistTerms;
+	private final PostingTable termWords, termCodes;
+	private final boolean mapped;
+
+	/**
+	 * sorted table of strings: int count, int [count+1] offsets and UTF-8 bytes
+	 */
+	static class StringTable {
+		final ByteBuffer buffer;
+		private final int count, data;
+
+		public StringTable(ByteBuffer buffer){
+			this.buffer = buffer;
+			this.count = buffer.getInt(0);
+			this.data = 4+(count+1)*4;
+		}
+
+		public static ByteBuffer create(String [] values){
+			List<byte []> bytes = new ArrayList<byte[]>(values.length);
+			long size = 0;
+			for(String v: values){
+				byte [] b = v.getBytes(UTF8);
+				bytes.add(b);
+				size += b.length;
+			}
+			ByteBuffer bb = ByteBuffer.allocate(getCapacity(4+(values.length+1)*4L+size));
+			bb.putInt(values.length);
+			int offset = 0;
+			for(byte [] b: bytes){
+				bb.putInt(offset);
+				offset += b.length;
+			}
+			bb.putInt(offset);
+			for(byte [] b: bytes)
+				bb.put(b);
+			bb.flip();
+			return bb;
+		}
+
+		public int size(){
+			return count;
+		}
+
+		public String get(int i){
+			int st = buffer.getInt(4+i*4);
+			int en = buffer.getInt(8+i*4);
+			byte [] b = new byte [en-st];
+			for(int j=0;j<b.length;j++)
+				b[j] = buffer.get(data+st+j);
+			return new String(b,UTF8);
+		}
+
+		public int find(String value){
+			byte [] key = value.getBytes(UTF8);
+			int lo = 0, hi = count-1;
+			while(lo <= hi){
+				int mid = (lo+hi) >>> 1;
+				int c = compare(mid,key);
+				if(c < 0)
+					lo = mid+1;
+				else if(c > 0)
+					hi = mid-1;
+				else
+					return mid;
+			}
+			return -1;
+		}
+
+		private int compare(int i, byte [] key){
+			int st = data+buffer.getInt(4+i*4);
+			int len = buffer.getInt(8+i*4)-buffer.getInt(4+i*4);
+			for(int j=0;j<len && j<key.length;j++){
+				int a = buffer.get(st+j) & 0xFF;
+				int b = key[j] & 0xFF;
+				if(a != b)
+					return a-b;
+			}
+			return len - key.length;
+		}
+	}
+
+	/**
+	 * int lists: int count, int [count] starts, int [count] lengths (-1 for null) and int data
+	 */
+	static class PostingTable {
+		final ByteBuffer buffer;
+		private final int count, data;
+
+		public PostingTable(ByteBuffer buffer){
+			this.buffer = buffer;
+			this.count = buffer.getInt(0);
+			this.data = 4+count*8;
+		}
+
+		public static ByteBuffer create(int [][] values){
+			long size = 0;
+			for(int [] v: values){
+				if(v != null)
+					size += v.length;
+			}
+			ByteBuffer bb = ByteBuffer.allocate(getCapacity(4+values.length*8L+size*4));
+			bb.putInt(values.length);
+			int offset = 0;
+			for(int [] v: values){
+				bb.putInt(offset);
+				if(v != null)
+					offset += v.length;
+			}
+			for(int [] v: values)
+				bb.putInt((v != null)?v.length:-1);
+			for(int [] v: values){
+				if(v != null){
+					for(int i: v)
+						bb.putInt(i);
+				}
+			}
+			bb.flip();
+			return bb;
+		}
+
+		public int size(){
+			return count;
+		}
+
+		public int length(int i){
+			return buffer.getInt(4+count*4+i*4);
+		}
+
+		public int get(int i, int j){
+			return buffer.getInt(data+(buffer.getInt(4+i*4)+j)*4);
+		}
+
+		/**
+		 * binary search for a value in a sorted list
+		 */
+		public int indexOf(int i, int value){
+			int lo = 0, hi = length(i)-1;
+			int st = data+buffer.getInt(4+i*4)*4;
+			while(lo <= hi){
+				int mid = (lo+hi) >>> 1;
+				int v = buffer.getInt(st+mid*4);
+				if(v < value)
+					lo = mid+1;
+				else if(v > value)
+					hi = mid-1;
+				else
+					return mid;
+			}
+			return -1;
+		}
+
+		public int [] get(int i){
+			int len = buffer.getInt(4+count*4+i*4);
+			if(len < 0)
+				return null;
+			int st = data+buffer.getInt(4+i*4)*4;
+			int [] v = new int [len];
+			for(int j=0;j<len;j++)
+				v[j] = buffer.getInt(st+j*4);
+			return v;
+		}
+	}
+
+	/**
+	 * Instantiates a new term index.
+	 */
+	private TermIndex(ByteBuffer [] sections, boolean mapped){
+		this.words = new StringTable(sections[0]);
+		this.terms = new StringTable(sections[1]);
+		this.codes = new StringTable(sections[2]);
+		this.wordTerms = new PostingTable(sections[3]);
+		this.blacklistTerms = new PostingTable(sections[4]);
+		this.termWords = new PostingTable(sections[5]);
+		this.termCodes = new PostingTable(sections[6]);
+		this.mapped = mapped;
+	}
+
+	/**
+	 * build term index from terminology data tables.
+	 *
+	 * @param wordMap the word map
+	 * @param blacklist the blacklist
+	 * @param termMap the term map
+	 * @return the term index
+	 */
+	public static TermIndex build(Map<String,Set<String>> wordMap, Map<String,Set<String>> blacklist, Map<String,Set<String>> termMap){
+		// collect string tables
+		Set<String> termSet = new TreeSet<String>(CODE_POINT_ORDER);
+		termSet.addAll(termMap.keySet());
+		Set<String> codeSet = new TreeSet<String>(CODE_POINT_ORDER);
+		for(String term: termMap.keySet())
+			codeSet.addAll(termMap.get(term));
+		for(String word: wordMap.keySet())
+			termSet.addAll(wordMap.get(word));
+		for(String word: blacklist.keySet())
+			termSet.addAll(blacklist.get(word));
+		Set<String> wordSet = new TreeSet<String>(CODE_POINT_ORDER);
+		wordSet.addAll(wordMap.keySet());
+		wordSet.addAll(blacklist.keySet());
+		for(String term: termSet)
+			wordSet.addAll(TextTools.getWords(term));
+
+		String [] terms = termSet.toArray(new String [termSet.size()]);
+		String [] words = wordSet.toArray(new String [wordSet.size()]);
+		String [] codes = codeSet.toArray(new String [codeSet.size()]);
+		termSet = wordSet = codeSet = null;
+
+		// term words and codes
+		int [][] termWords = new int [terms.length][];
+		int [][] termCodes = new int [terms.length][];
+		for(int i=0;i<terms.length;i++){
+			termWords[i] = toIds(words,TextTools.getWords(terms[i]));
+			Set<String> c = termMap.get(terms[i]);
+			if(c != null)
+				termCodes[i] = toIds(codes,c);
+		}
+
+		// word postings
+		int [][] wordTerms = new int [words.length][];
+		int [][] blacklistTerms = new int [words.length][];
+		for(String word: wordMap.keySet())
+			wordTerms[Arrays.binarySearch(words,word,CODE_POINT_ORDER)] = toIds(terms,wordMap.get(word));
+		for(String word: blacklist.keySet())
+			blacklistTerms[Arrays.binarySearch(words,word,CODE_POINT_ORDER)] = toIds(terms,blacklist.get(word));
+
+		ByteBuffer [] sections = new ByteBuffer [] {
+			StringTable.create(words),StringTable.create(terms),StringTable.create(codes),
+			PostingTable.create(wordTerms),PostingTable.create(blacklistTerms),
+			PostingTable.create(termWords),PostingTable.create(termCodes)};
+		return new TermIndex(sections,false);
+	}
+
+	/**
+	 * Gets the capacity of a section, sections are addressed by int offsets.
+	 *
+	 * @param size the size in bytes
+	 * @return the capacity
+	 * @throws IllegalArgumentException if section does not fit into 2GB
+	 */
+	static int getCapacity(long size){
+		if(size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Term index section of "+size+" bytes exceeds maximum size of "+Integer.MAX_VALUE+" bytes");
+		return (int) size;
+	}
+
+	private static int [] toIds(String [] table, Collection<String> values){
+		int [] ids = new int [values.size()];
+		int n = 0;
+		for(String v: values){
+			int i = Arrays.binarySearch(table,v,CODE_POINT_ORDER);
+			if(i >= 0)
+				ids[n++] = i;
+		}
+		return (n < ids.length)?Arrays.copyOf(ids,n):ids;
+	}
+
+	/**
+	 * open term index file by memory mapping it in read-only mode.
+	 *
+	 * @param file the file
+	 * @return the term index
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static TermIndex load(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file,"r");
+		try{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,0,12+SECTIONS*16);
+			if(header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != SECTIONS)
+				throw new IOException("Term index "+file+" was generated by a different version of NobleCoder");
+			ByteBuffer [] sections = new ByteBuffer [SECTIONS];
+			for(int i=0;i<SECTIONS;i++){
+				long offset = header.getLong();
+				long length = header.getLong();
+				sections[i] = channel.map(FileChannel.MapMode.READ_ONLY,offset,length);
+			}
+			// mapping stays valid after the channel is closed
+			return new TermIndex(sections,true);
+		}finally{
+			raf.close();
+		}
+	}
+
+	/**
+	 * save term index to file.
+	 *
+	 * @param file the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void save(File file) throws IOException{
+		ByteBuffer [] sections = new ByteBuffer [] {
+			words.buffer,terms.buffer,codes.buffer,
+			wordTerms.buffer,blacklistTerms.buffer,
+			termWords.buffer,termCodes.buffer};
+		ByteBuffer header = ByteBuffer.allocate(12+SECTIONS*16);
+		header.putInt(MAGIC).putInt(VERSION).putInt(SECTIONS);
+		long offset = header.capacity();
+		for(ByteBuffer b: sections){
+			header.putLong(offset).putLong(b.limit());
+			offset += b.limit();
+		}
+		header.flip();
+
+		FileOutputStream out = new FileOutputStream(file);
+		try{
+			FileChannel channel = out.getChannel();
+			write(channel,header);
+			for(ByteBuffer b: sections)
+				write(channel,b.duplicate());
+		}finally{
+			out.close();
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer b) throws IOException{
+		b.rewind();
+		while(b.hasRemaining())
+			channel.write(b);
+	}
+
+	/**
+	 * is this index memory mapped from a file.
+	 *
+	 * @return true, if is mapped
+	 */
+	public boolean isMapped(){
+		return mapped;
+	}
+
+	/**
+	 * Gets the word id.
+	 *
+	 * @param word the word
+	 * @return the word id, or -1 if word is not in the index
+	 */
+	public int getWordId(String word){
+		return words.find(word);
+	}
+
+	/**
+	 * Gets the word.
+	 *
+	 * @param id the word id
+	 * @return the word
+	 */
+	public String getWord(int id){
+		return words.get(id);
+	}
+
+	/**
+	 * Gets the term id.
+	 *
+	 * @param term the term
+	 * @return the term id, or -1 if term is not in the index
+	 */
+	public int getTermId(String term){
+		return terms.find(term);
+	}
+
+	/**
+	 * Gets the term.
+	 *
+	 * @param id the term id
+	 * @return the term
+	 */
+	public String getTerm(int id){
+		return terms.get(id);
+	}
+
+	/**
+	 * Gets the code.
+	 *
+	 * @param id the code id
+	 * @return the code
+	 */
+	public String getCode(int id){
+		return codes.get(id);
+	}
+
+	/**
+	 * get ids of terms that should be looked at for a given word.
+	 * If a word is blacklisted, the reduced blacklist postings are returned.
+	 *
+	 * @param wordId the word id
+	 * @return the term ids, or null if word has no terms
+	 */
+	public int [] getWordTerms(int wordId){
+		int [] t = blacklistTerms.get(wordId);
+		return (t != null)?t:wordTerms.get(wordId);
+	}
+
+	/**
+	 * Gets the word ids of a term.
+	 *
+	 * @param termId the term id
+	 * @return the term words
+	 */
+	public int [] getTermWords(int termId){
+		return termWords.get(termId);
+	}
+
+	/**
+	 * Gets the code ids of a term.
+	 *
+	 * @param termId the term id
+	 * @return the code ids or null, if term is not in term map
+	 */
+	public int [] getTermCodes(int termId){
+		return termCodes.get(termId);
+	}
+
+	/**
+	 * Gets the concept codes of a term.
+	 *
+	 * @param term the term
+	 * @return the codes or null, if term is not in term map
+	 */
+	public List<String> getTermCodes(String term){
+		int id = getTermId(term);
+		int [] ids = (id > -1)?termCodes.get(id):null;
+		if(ids == null)
+			return null;
+		String [] c = new String [ids.length];
+		for(int i=0;i<c.length;i++)
+			c[i] = codes.get(ids[i]);
+		return Arrays.asList(c);
+	}
+
+	/**
+	 * number of words in this index.
+	 *
+	 * @return the word count
+	 */
+	public int getWordCount(){
+		return words.size();
+	}
+
+	/**
+	 * number of terms in this index.
+	 *
+	 * @return the term count
+	 */
+	public int getTermCount(){
+		return terms.size();
+	}
+}
@@ -0,0 +1,369 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.pitt.dbmi.nlp.noble.tools.TextTools;
+
+/**
+ * token level trie of normalized terms that is used by trie-match search method.
+ * Each path from the root spells out words of a normalized term (as it is stored in termMap)
+ * and every node that completes a term is marked as terminal. A sentence is matched by
+ * walking the trie from every word position, so the cost depends on sentence length and term
+ * depth, and not on how many terms share a common word.
+ *
+ * The trie is stored in a few flat arrays (vocabulary, child offsets and edges), so it is
+ * compact, immutable and can be shared between threads. It is built from termMap
+ * when terminology is saved and persisted next to JDBM tables.
+ *
+ * @author tseytlin
+ */
+public class TermTrie {
+	private static final int VERSION = 1;
+	private final String [] vocabulary;
+	private final int [] childOffset;
+	private final int [] edgeWord, edgeNode;
+	private final BitSet terminal;
+	private final int termCount;
+
+	/**
+	 * Instantiates a new term trie.
+	 */
+	private TermTrie(String [] vocabulary, int [] childOffset, int [] edgeWord, int [] edgeNode, BitSet terminal, int termCount){
+		this.vocabulary = vocabulary;
+		this.childOffset = childOffset;
+		this.edgeWord = edgeWord;
+		this.edgeNode = edgeNode;
+		this.terminal = terminal;
+		this.termCount = termCount;
+	}
+
+	/**
+	 * build trie from a collection of normalized terms.
+	 * Terms are only iterated, so a persistent key set can be passed in.
+	 *
+	 * @param terms the normalized terms
+	 * @return the term trie
+	 */
+	public static TermTrie build(Collection<String> terms){
+		// collect vocabulary
+		Set<String> words = new TreeSet<String>();
+		for(String term: terms){
+			for(String w: split(term))
+				words.add(w);
+		}
+		String [] vocabulary = words.toArray(new String [words.size()]);
+		words = null;
+
+		// convert terms to word id sequences and sort them
+		List<int []> sequences = new ArrayList<int []>();
+		for(String term: terms){
+			String [] w = split(term);
+			if(w.length == 0)
+				continue;
+			int [] s = new int [w.length];
+			for(int i=0;i<w.length;i++)
+				s[i] = Arrays.binarySearch(vocabulary,w[i]);
+			sequences.add(s);
+		}
+		sequences.sort(new Comparator<int []>() {
+			public int compare(int[] a, int[] b) {
+				for(int i=0;i<a.length && i<b.length;i++){
+					if(a[i] != b[i])
+						return (a[i] < b[i])?-1:1;
+				}
+				return a.length - b.length;
+			}
+		});
+
+		// insert sorted sequences, children are created in increasing word order
+		int [] parents = new int [16], eword = new int [16], enode = new int [16];
+		BitSet terminal = new BitSet();
+		int edges = 0, nodes = 1, count = 0;
+		int [] path = new int [16];
+		int [] last = null;
+		for(int [] s: sequences){
+			// find common prefix with previous sequence
+			int prefix = 0;
+			if(last != null){
+				while(prefix < last.length && prefix < s.length && last[prefix] == s[prefix])
+					prefix++;
+				if(prefix == s.length && prefix == last.length)
+					continue;
+			}
+			if(path.length <= s.length)
+				path = Arrays.copyOf(path,s.length*2);
+			for(int i=prefix;i<s.length;i++){
+				if(edges == parents.length){
+					parents = Arrays.copyOf(parents,edges*2);
+					eword = Arrays.copyOf(eword,edges*2);
+					enode = Arrays.copyOf(enode,edges*2);
+				}
+				parents[edges] = path[i];
+				eword[edges] = s[i];
+				enode[edges] = nodes;
+				path[i+1] = nodes;
+				edges ++;
+				nodes ++;
+			}
+			terminal.set(path[s.length]);
+			count ++;
+			last = s;
+		}
+
+		// convert edge list to node offsets
+		int [] offset = new int [nodes+1];
+		for(int i=0;i<edges;i++)
+			offset[parents[i]+1]++;
+		for(int i=0;i<nodes;i++)
+			offset[i+1] += offset[i];
+		int [] next = Arrays.copyOf(offset,nodes);
+		int [] edgeWord = new int [edges];
+		int [] edgeNode = new int [edges];
+		for(int i=0;i<edges;i++){
+			int j = next[parents[i]]++;
+			edgeWord[j] = eword[i];
+			edgeNode[j] = enode[i];
+		}
+		return new TermTrie(vocabulary,offset,edgeWord,edgeNode,terminal,count);
+	}
+
+	/**
+	 * load trie from file.
+	 *
+	 * @param file the file
+	 * @return the term trie
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static TermTrie load(File file) throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			if(in.readInt() != VERSION)
+				throw new IOException("Term trie "+file+" was generated by a different version of NobleCoder");
+			int termCount = in.readInt();
+			String [] vocabulary = new String [in.readInt()];
+			for(int i=0;i<vocabulary.length;i++)
+				vocabulary[i] = in.readUTF();
+			int [] offset = readInts(in);
+			int [] edgeWord = readInts(in);
+			int [] edgeNode = readInts(in);
+			long [] bits = new long [in.readInt()];
+			for(int i=0;i<bits.length;i++)
+				bits[i] = in.readLong();
+			return new TermTrie(vocabulary,offset,edgeWord,edgeNode,BitSet.valueOf(bits),termCount);
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * save trie to file.
+	 *
+	 * @param file the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void save(File file) throws IOException{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try{
+			out.writeInt(VERSION);
+			out.writeInt(termCount);
+			out.writeInt(vocabulary.length);
+			for(String w: vocabulary)
+				out.writeUTF(w);
+			writeInts(out,childOffset);
+			writeInts(out,edgeWord);
+			writeInts(out,edgeNode);
+			long [] bits = terminal.toLongArray();
+			out.writeInt(bits.length);
+			for(long b: bits)
+				out.writeLong(b);
+		}finally{
+			out.close();
+		}
+	}
+
+	private static int [] readInts(DataInputStream in) throws IOException{
+		int [] a = new int [in.readInt()];
+		for(int i=0;i<a.length;i++)
+			a[i] = in.readInt();
+		return a;
+	}
+
+	private static void writeInts(DataOutputStream out, int [] a) throws IOException{
+		out.writeInt(a.length);
+		for(int i: a)
+			out.writeInt(i);
+	}
+
+	private static String [] split(String term){
+		term = term.trim();
+		return (term.length() == 0)?new String [0]:term.split(" ");
+	}
+
+	/**
+	 * number of terms in this trie.
+	 *
+	 * @return the number of terms
+	 */
+	public int size(){
+		return termCount;
+	}
+
+	/**
+	 * number of distinct words in this trie.
+	 *
+	 * @return the vocabulary size
+	 */
+	public int getVocabularySize(){
+		return vocabulary.length;
+	}
+
+	/**
+	 * check if a given normalized term is in the trie.
+	 *
+	 * @param term the term
+	 * @return true, if successful
+	 */
+	public boolean contains(String term){
+		int node = 0;
+		for(String w: split(term)){
+			int id = Arrays.binarySearch(vocabulary,w);
+			if(id < 0)
+				return false;
+			node = getChild(node,id);
+			if(node < 0)
+				return false;
+		}
+		return node > 0 && terminal.get(node);
+	}
+
+	/**
+	 * get child node reachable from a given node via a given word.
+	 */
+	private int getChild(int node, int word){
+		int i = Arrays.binarySearch(edgeWord,childOffset[node],childOffset[node+1],word);
+		return (i < 0)?-1:edgeNode[i];
+	}
+
+	/**
+	 * find all normalized terms that occur in a list of normalized words.
+	 * Term words have to occur in the same order as in a term and can be at most
+	 * maximum word gap apart. In subsumption mode, for every word only the longest
+	 * terms that contain it are kept, the same way best-match selects terms for each word.
+	 *
+	 * @param words the normalized words of the sentence
+	 * @param options the search options
+	 * @return the matched terms in the order they were found
+	 */
+	public Collection<String> match(List<String> words, SearchOptions options){
+		int [] ids = new int [words.size()];
+		for(int i=0;i<ids.length;i++)
+			ids[i] = Arrays.binarySearch(vocabulary,words.get(i));
+		int gap = Math.max(0,options.getMaximumWordGap());
+
+		Set<String> result = new LinkedHashSet<String>();
+		int [] path = new int [16];
+		for(int i=0;i<ids.length;i++){
+			if(ids[i] < 0)
+				continue;
+			int node = getChild(0,ids[i]);
+			if(node > 0)
+				match(ids,i,node,1,path,gap,result,options);
+		}
+
+		// emulate per-word selection of the narrowest terms
+		if(options.isSubsumptionMode() && result.size() > 1){
+			Map<String,Integer> longest = new HashMap<String, Integer>();
+			for(String term: result){
+				String [] tw = split(term);
+				for(String w: tw){
+					Integer n = longest.get(w);
+					if(n == null || n < tw.length)
+						longest.put(w,tw.length);
+				}
+			}
+			for(Iterator<String> it = result.iterator();it.hasNext();){
+				String [] tw = split(it.next());
+				boolean keep = false;
+				for(String w: tw){
+					if(longest.get(w) == tw.length){
+						keep = true;
+						break;
+					}
+				}
+				if(!keep)
+					it.remove();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * continue matching from a given node and position.
+	 */
+	private void match(int [] ids, int pos, int node, int depth, int [] path, int gap, Set<String> result, SearchOptions options){
+		if(path.length <= depth)
+			path = Arrays.copyOf(path,depth*2);
+		path[depth-1] = ids[pos];
+		if(terminal.get(node)){
+			String term = toTerm(path,depth);
+			if(isSearchable(path,depth,options))
+				result.add(term);
+		}
+		if(childOffset[node] == childOffset[node+1])
+			return;
+		for(int p=pos+1;p<ids.length && p <= pos+1+gap;p++){
+			if(ids[p] < 0)
+				continue;
+			int child = getChild(node,ids[p]);
+			if(child > 0)
+				match(ids,p,child,depth+1,path,gap,result,options);
+		}
+	}
+
+	/**
+	 * regular search never looks up terms through small or common words,
+	 * so a term is only matched if at least one of its words is searchable.
+	 */
+	private boolean isSearchable(int [] path, int depth, SearchOptions options){
+		if(!options.isIgnoreSmallWords() && !options.isIgnoreCommonWords())
+			return true;
+		for(int i=0;i<depth;i++){
+			String w = vocabulary[path[i]];
+			if(options.isIgnoreSmallWords() && w.length() <= 1)
+				continue;
+			if(options.isIgnoreCommonWords() && TextTools.isCommonWord(w))
+				continue;
+			return true;
+		}
+		return false;
+	}
+
+	private String toTerm(int [] path, int depth){
+		StringBuilder b = new StringBuilder();
+		for(int i=0;i<depth;i++){
+			if(i > 0)
+				b.append(' ');
+			b.append(vocabulary[path[i]]);
+		}
+		return b.toString();
+	}
+}
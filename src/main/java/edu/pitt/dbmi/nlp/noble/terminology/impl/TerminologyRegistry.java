@@ -0,0 +1,252 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+import edu.pitt.dbmi.nlp.noble.terminology.Concept;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+
+/**
+ * process wide registry of persisted NobleCoder terminologies. A terminology is loaded from disk
+ * the first time it is opened, and every caller that opens the same location gets a handle to the same
+ * instance. Terminology is disposed of when the last handle is closed. This lets several annotators
+ * (UIMA, GATE, threads of a pipeline) share a single copy of terminology tables.
+ * Handles don't change settings of a shared terminology, instead each handle has its own immutable search options.
+ *
+ * @author tseytlin
+ */
+public class TerminologyRegistry {
+	private static final Map<String,Entry> terminologies = new HashMap<String,Entry>();
+
+	/**
+	 * shared terminology and the number of open handles. Terminology is loaded while holding
+	 * a lock on its entry, so only callers that open the same location wait for it.
+	 */
+	private static class Entry {
+		private volatile NobleCoderTerminology terminology;
+		private int references;
+	}
+
+	/**
+	 * handle to a shared terminology with its own search options.
+	 * Handle can be used by several threads.
+	 */
+	public static class Handle {
+		private final String key;
+		private final NobleCoderTerminology terminology;
+		private volatile SearchOptions searchOptions;
+		private boolean closed;
+
+		private Handle(String key, NobleCoderTerminology terminology){
+			this.key = key;
+			this.terminology = terminology;
+			this.searchOptions = terminology.getSearchOptions();
+		}
+
+		/**
+		 * Gets the shared terminology. It should be treated as read-only,
+		 * since it is used by other handles.
+		 *
+		 * @return the terminology
+		 */
+		public NobleCoderTerminology getTerminology() {
+			return terminology;
+		}
+
+		/**
+		 * Gets the location of shared terminology.
+		 *
+		 * @return the location
+		 */
+		public File getLocation(){
+			return new File(key);
+		}
+
+		/**
+		 * Gets the search options of this handle.
+		 *
+		 * @return the search options
+		 */
+		public SearchOptions getSearchOptions() {
+			return searchOptions;
+		}
+
+		/**
+		 * Sets the search options of this handle.
+		 *
+		 * @param searchOptions the new search options
+		 */
+		public void setSearchOptions(SearchOptions searchOptions) {
+			this.searchOptions = searchOptions;
+		}
+
+		/**
+		 * set search options from search properties (same keys as in search.properties)
+		 * that overwrite default settings of shared terminology.
+		 *
+		 * @param p the search properties
+		 */
+		public void setSearchProperties(Properties p){
+			setSearchOptions(terminology.getSearchOptions(p));
+		}
+
+		/**
+		 * search terminology with search options of this handle.
+		 *
+		 * @param text the text
+		 * @return the concepts
+		 * @throws TerminologyException the terminology exception
+		 */
+		public Concept [] search(String text) throws TerminologyException {
+			return terminology.search(text,searchOptions);
+		}
+
+		/**
+		 * find mentions in a sentence with search options of this handle.
+		 *
+		 * @param sentence the sentence
+		 * @return the sentence
+		 * @throws TerminologyException the terminology exception
+		 */
+		public Sentence process(Sentence sentence) throws TerminologyException {
+			return terminology.process(sentence,searchOptions);
+		}
+
+		/**
+		 * Checks if handle was closed.
+		 *
+		 * @return true, if is closed
+		 */
+		public synchronized boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * release this handle. Terminology is disposed of when the last handle is released.
+		 * Closing handle more then once has no effect.
+		 */
+		public void close(){
+			synchronized(this){
+				if(closed)
+					return;
+				closed = true;
+			}
+			release(key);
+		}
+	}
+
+	/**
+	 * open a persisted terminology by name or location. Name is resolved the same way
+	 * as NobleCoderTerminology(String) does.
+	 *
+	 * @param name the name or location of terminology
+	 * @return the handle
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static Handle open(String name) throws IOException {
+		return open(getLocation(name));
+	}
+
+	/**
+	 * open a persisted terminology at a given .term directory.
+	 *
+	 * @param location the location of terminology
+	 * @return the handle
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static Handle open(File location) throws IOException {
+		String key = getKey(location);
+		Entry entry = reference(key);
+		synchronized(entry){
+			if(entry.terminology == null){
+				try{
+					entry.terminology = new NobleCoderTerminology(key);
+				}catch(IOException ex){
+					release(key);
+					throw ex;
+				}catch(RuntimeException ex){
+					release(key);
+					throw ex;
+				}
+			}
+			return new Handle(key,entry.terminology);
+		}
+	}
+
+	/**
+	 * add a single reference to a terminology entry, entry is created if it is not registered yet.
+	 *
+	 * @param key the key
+	 * @return the entry
+	 */
+	private static synchronized Entry reference(String key){
+		Entry entry = terminologies.get(key);
+		if(entry == null){
+			entry = new Entry();
+			terminologies.put(key,entry);
+		}
+		entry.references ++;
+		return entry;
+	}
+
+	/**
+	 * get the number of open handles to a terminology.
+	 *
+	 * @param location the location of terminology
+	 * @return the reference count
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static synchronized int getReferenceCount(File location) throws IOException {
+		Entry entry = terminologies.get(getKey(location));
+		return (entry != null)?entry.references:0;
+	}
+
+	/**
+	 * release a single reference to a terminology.
+	 *
+	 * @param key the key
+	 */
+	private static synchronized void release(String key){
+		Entry entry = terminologies.get(key);
+		if(entry == null)
+			return;
+		entry.references --;
+		if(entry.references <= 0){
+			terminologies.remove(key);
+			// terminology is null, if it failed to load
+			if(entry.terminology != null)
+				entry.terminology.dispose();
+		}
+	}
+
+	/**
+	 * resolve terminology name to its location.
+	 *
+	 * @param name the name
+	 * @return the location
+	 */
+	private static File getLocation(String name){
+		if(name.endsWith(NobleCoderTerminology.TERM_SUFFIX))
+			name = name.substring(0,name.length()-NobleCoderTerminology.TERM_SUFFIX.length());
+		if(name.contains(File.separator))
+			return new File(name+NobleCoderTerminology.TERM_SUFFIX);
+		return new File(NobleCoderTerminology.getPersistenceDirectory(),name+NobleCoderTerminology.TERM_SUFFIX);
+	}
+
+	/**
+	 * canonical location of terminology, so that different paths to the same directory share terminology.
+	 *
+	 * @param location the location
+	 * @return the key
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String getKey(File location) throws IOException {
+		if(!location.getName().endsWith(NobleCoderTerminology.TERM_SUFFIX))
+			location = new File(location.getParentFile(),location.getName()+NobleCoderTerminology.TERM_SUFFIX);
+		return location.getCanonicalPath();
+	}
+}
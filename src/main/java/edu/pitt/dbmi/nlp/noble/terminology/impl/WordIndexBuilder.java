@@ -0,0 +1,398 @@
+package edu.pitt.dbmi.nlp.noble.terminology.impl;
+
+import java.beans.PropertyChangeSupport;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology.Storage;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology.WordStat;
+import edu.pitt.dbmi.nlp.noble.util.ConceptImporter;
+
+/**
+ * builds word to term inverted index of NobleCoderTerminology during import.
+ * (word, term) pairs are buffered in memory, sorted and spilled to numbered run files once
+ * the buffer is full. When import is done, runs are k-way merged, so every word is seen once
+ * with all of its terms, and wordStatMap and wordMap tables are filled in bulk.
+ * Run files are named by their number, so words never have to be valid file names.
+ *
+ * @author tseytlin
+ */
+public class WordIndexBuilder {
+	public static final int DEFAULT_BUFFER_SIZE = 500000;
+	private static final String RUN_PREFIX = "words", RUN_SUFFIX = ".run";
+	private File directory;
+	private List<Pair> buffer = new ArrayList<Pair>();
+	private int bufferSize = DEFAULT_BUFFER_SIZE, runCount;
+	private long pairCount;
+
+	/**
+	 * word and term pair, repeated pairs are counted rather then stored again.
+	 */
+	private static class Pair implements Comparable<Pair> {
+		private String word, term;
+		private int count = 1;
+
+		public Pair(String word, String term){
+			this.word = word;
+			this.term = term;
+		}
+
+		public int compareTo(Pair p) {
+			int c = word.compareTo(p.word);
+			return (c != 0)?c:term.compareTo(p.term);
+		}
+	}
+
+	/**
+	 * reads pairs from a single sorted run.
+	 */
+	private static class RunReader implements Comparable<RunReader> {
+		private DataInputStream in;
+		private int remaining;
+		private Pair current;
+
+		public RunReader(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),1<<16));
+			remaining = in.readInt();
+		}
+
+		public boolean next() throws IOException {
+			if(remaining <= 0){
+				current = null;
+				in.close();
+				return false;
+			}
+			remaining --;
+			current = new Pair(readString(in),readString(in));
+			current.count = in.readInt();
+			return true;
+		}
+
+		public void close() throws IOException {
+			in.close();
+		}
+
+		public int compareTo(RunReader r) {
+			return current.compareTo(r.current);
+		}
+	}
+
+	/**
+	 * merges runs and returns all terms of one word at a time.
+	 */
+	private class Merger {
+		private PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+		private String word;
+		private Set<String> terms;
+		private int count;
+
+		public Merger() throws IOException {
+			for(int i=1;i<=runCount;i++){
+				RunReader reader = new RunReader(getRun(i));
+				if(reader.next())
+					queue.add(reader);
+			}
+		}
+
+		public boolean next() throws IOException {
+			if(queue.isEmpty()){
+				word = null;
+				return false;
+			}
+			word = queue.peek().current.word;
+			terms = new HashSet<String>();
+			count = 0;
+			while(!queue.isEmpty() && word.equals(queue.peek().current.word)){
+				RunReader reader = queue.poll();
+				terms.add(reader.current.term);
+				count += reader.current.count;
+				if(reader.next())
+					queue.add(reader);
+			}
+			return true;
+		}
+
+		public void close() throws IOException {
+			for(RunReader reader: queue)
+				reader.close();
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Instantiates a new word index builder that starts from scratch.
+	 *
+	 * @param directory the directory where runs are kept
+	 */
+	public WordIndexBuilder(File directory){
+		this(directory,0);
+	}
+
+	/**
+	 * Instantiates a new word index builder that continues from runs that were saved before.
+	 *
+	 * @param directory the directory where runs are kept
+	 * @param runCount the number of runs to keep, runs that were spilled after them are removed
+	 */
+	public WordIndexBuilder(File directory, int runCount){
+		this.directory = directory;
+		this.runCount = runCount;
+		File [] files = directory.listFiles();
+		if(files != null){
+			for(File f: files){
+				if(!isRun(f) || getRunNumber(f) > runCount)
+					f.delete();
+			}
+		}
+		for(int i=1;i<=runCount;i++){
+			if(!getRun(i).exists()){
+				this.runCount = i-1;
+				break;
+			}
+			pairCount += getPairCount(getRun(i));
+		}
+	}
+
+	/**
+	 * Gets the buffer size.
+	 *
+	 * @return the number of pairs that are kept in memory before they are spilled to disk
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Sets the buffer size.
+	 *
+	 * @param bufferSize the number of pairs that are kept in memory before they are spilled to disk
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = Math.max(1,bufferSize);
+	}
+
+	/**
+	 * Gets the number of runs that were spilled to disk.
+	 *
+	 * @return the run count
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * add term to a word.
+	 *
+	 * @param word the word
+	 * @param term the term
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void add(String word, String term) throws IOException {
+		if(word == null)
+			return;
+		buffer.add(new Pair(word,term));
+		if(buffer.size() >= bufferSize)
+			flush();
+	}
+
+	/**
+	 * add terms to a word.
+	 *
+	 * @param word the word
+	 * @param terms the terms
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void add(String word, Collection<String> terms) throws IOException {
+		for(String term: terms)
+			add(word,term);
+	}
+
+	/**
+	 * sort buffered pairs and spill them to a new run.
+	 *
+	 * @return the number of runs
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public int flush() throws IOException {
+		if(buffer.isEmpty())
+			return runCount;
+		Collections.sort(buffer);
+
+		// count repeated pairs
+		List<Pair> pairs = new ArrayList<Pair>();
+		for(Pair p: buffer){
+			Pair last = pairs.isEmpty()?null:pairs.get(pairs.size()-1);
+			if(last != null && last.compareTo(p) == 0)
+				last.count += p.count;
+			else
+				pairs.add(p);
+		}
+		buffer = new ArrayList<Pair>();
+
+		if(!directory.exists())
+			directory.mkdirs();
+		File run = getRun(runCount+1);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),1<<16));
+		try{
+			out.writeInt(pairs.size());
+			for(Pair p: pairs){
+				writeString(out,p.word);
+				writeString(out,p.term);
+				out.writeInt(p.count);
+			}
+		}finally{
+			out.close();
+		}
+		runCount ++;
+		pairCount += pairs.size();
+		return runCount;
+	}
+
+	/**
+	 * merge all runs into word tables.
+	 *
+	 * @param pcs the property change support to report progress to
+	 * @param storage the storage
+	 * @param useRarestWord if true, only add terms to their rarest word
+	 * @param saveWordStats if true, word statistics are computed from added pairs
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void load(PropertyChangeSupport pcs, Storage storage, boolean useRarestWord, boolean saveWordStats) throws IOException {
+		flush();
+
+		// word statistics have to be complete before rarest words can be picked
+		if(saveWordStats){
+			pcs.firePropertyChange(ConceptImporter.LOADING_MESSAGE,null,"Saving word statistics ...");
+			Merger merger = new Merger();
+			try{
+				while(merger.next()){
+					int termCount = merger.count;
+					WordStat old = storage.getWordStatMap().get(merger.word);
+					if(old != null){
+						storage.totalTermsPerWord -= old.termCount;
+						termCount += old.termCount;
+					}
+					WordStat ws = new WordStat();
+					ws.termCount = termCount;
+					ws.isTerm = merger.terms.contains(merger.word) || (old != null && old.isTerm);
+					storage.getWordStatMap().put(merger.word,ws);
+					storage.totalTermsPerWord += termCount;
+					if(termCount > storage.maxTermsPerWord)
+						storage.maxTermsPerWord = termCount;
+				}
+			}finally{
+				merger.close();
+			}
+			storage.commit(storage.getWordStatMap());
+		}
+
+		// now fill out word table
+		pcs.firePropertyChange(ConceptImporter.LOADING_MESSAGE,null,"Loading terms into datastructure ...");
+		pcs.firePropertyChange(ConceptImporter.LOADING_TOTAL,null,(int)Math.min(pairCount,Integer.MAX_VALUE));
+		Merger merger = new Merger();
+		try{
+			long count = 0, step = Math.max(1,pairCount/100);
+			while(merger.next()){
+				Set<String> terms = merger.terms;
+				int size = terms.size();
+				if(useRarestWord){
+					Set<String> rarestTerms = new HashSet<String>();
+					for(String term: terms){
+						if(merger.word.equals(NobleCoderUtils.getRarestWord(storage,term)))
+							rarestTerms.add(term);
+					}
+					terms = rarestTerms;
+				}
+				if(!terms.isEmpty()){
+					Set<String> old = storage.getWordMap().get(merger.word);
+					if(old != null)
+						terms.addAll(old);
+					try{
+						storage.getWordMap().put(merger.word,terms);
+					}catch(IllegalArgumentException e ){
+						// this is the case where the termList is too big to insert into hashtabe, there is nothing we can do frankly
+						storage.getWordMap().put(merger.word,new HashSet<String>(Collections.singleton(merger.word)));
+					}
+				}
+
+				// progress bar
+				long n = count+size;
+				if(n/step > count/step)
+					pcs.firePropertyChange(ConceptImporter.LOADING_PROGRESS,null,(int)Math.min(n,Integer.MAX_VALUE));
+				count = n;
+			}
+		}finally{
+			merger.close();
+		}
+		storage.commit(storage.getWordMap());
+	}
+
+	/**
+	 * remove all runs and their directory.
+	 */
+	public void dispose(){
+		buffer.clear();
+		File [] files = directory.listFiles();
+		if(files != null){
+			for(File f: files){
+				if(isRun(f))
+					f.delete();
+			}
+		}
+		directory.delete();
+		runCount = 0;
+		pairCount = 0;
+	}
+
+	private File getRun(int n){
+		return new File(directory,RUN_PREFIX+n+RUN_SUFFIX);
+	}
+
+	private static boolean isRun(File f){
+		return f.getName().matches(RUN_PREFIX+"\\d+"+RUN_SUFFIX.replace(".","\\."));
+	}
+
+	private static int getRunNumber(File f){
+		String name = f.getName();
+		return Integer.parseInt(name.substring(RUN_PREFIX.length(),name.length()-RUN_SUFFIX.length()));
+	}
+
+	private static int getPairCount(File run){
+		try{
+			DataInputStream in = new DataInputStream(new FileInputStream(run));
+			try{
+				return in.readInt();
+			}finally{
+				in.close();
+			}
+		}catch(IOException ex){
+			return 0;
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte [] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte [] b = new byte [in.readInt()];
+		in.readFully(b);
+		return new String(b,StandardCharsets.UTF_8);
+	}
+}
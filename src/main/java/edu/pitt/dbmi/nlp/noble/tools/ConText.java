@@ -15,6 +15,7 @@ import edu.pitt.dbmi.nlp.noble.coder.model.Modifier;
 import edu.pitt.dbmi.nlp.noble.coder.model.Paragraph;
 import edu.pitt.dbmi.nlp.noble.coder.model.Processor;
 import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+import edu.pitt.dbmi.nlp.noble.coder.model.SpanIndex;
 import edu.pitt.dbmi.nlp.noble.coder.model.Spannable;
 import edu.pitt.dbmi.nlp.noble.ontology.IClass;
 import edu.pitt.dbmi.nlp.noble.ontology.IInstance;
@@ -108,6 +109,7 @@ public class ConText implements Processor<Sentence> {
 	private long time;
 	private Terminology terminology;
 	private Map<String,String> defaultValues;
+	private volatile ConTextLexicon lexicon;
 	
 	/**
 	 * a possible way for an outside code to validate if modifier can be linked to a target
@@ -175,6 +177,16 @@ public class ConText implements Processor<Sentence> {
 		this.terminology = terminology;
 	}
 	
+	/**
+	 * initialize context with a compiled lexicon of modifier terminology, 
+	 * so that several ConText instances can share the same lexicon
+	 * @param lexicon - the lexicon
+	 */
+	public ConText(ConTextLexicon lexicon){
+		this.terminology = lexicon.getTerminology();
+		this.lexicon = lexicon;
+	}
+	
 	
 	/**
 	 * load ConText ontology from a given ontology object.
@@ -290,6 +302,23 @@ public class ConText implements Processor<Sentence> {
 		return terminology;
 	}
 
+	/**
+	 * get compiled lexicon of modifier terminology.
+	 *
+	 * @return the lexicon
+	 */
+	public ConTextLexicon getLexicon() {
+		ConTextLexicon lex = lexicon;
+		if(lex == null){
+			synchronized(this){
+				if(lexicon == null)
+					lexicon = new ConTextLexicon(terminology);
+				lex = lexicon;
+			}
+		}
+		return lex;
+	}
+
 
 	/**
 	 * get default values map.
@@ -349,42 +378,54 @@ public class ConText implements Processor<Sentence> {
 		}
 		
 		
-		// get mentions for this sentence, make a copy of since we don't add mentions
+		// get modifier mentions for this sentence, make a copy of since we don't add mentions
 		// to the original sentence
-		Sentence text = terminology.process(newSentence);
+		ConTextLexicon lexicon = getLexicon();
+		Sentence text = lexicon.match(newSentence);
 		
+		// get relevant modifiers and terminators from parsed text once, takes care of pseudo stuff too
+		List<Mention> relevantModifiers = getRelevantModifiers(text);
+		List<Mention> terminators = getTerminators(text);
+		SpanIndex textIndex = null;
 		
 		// assign qualifiers to modifiers: Ex: Units to Quality or Laterality to BodySite
-		for(Mention m:  getRelevantModifiers(text)){
+		for(Mention m:  relevantModifiers){
 			// check if mention is qualifier, otherwise don't bother
-			if(isTypeOf(m,QUALIFIER)){
+			if(lexicon.getEntry(m.getConcept()).isQualifier()){
+				if(textIndex == null)
+					textIndex = new SpanIndex(text);
 				// add modifiers to modifiers if relevant
-				for(Mention target: getTargetMentions(m,text,getTerminators(m,text))){
+				for(Mention target: getTargetMentions(m,textIndex,terminators)){
 					target.addModifiers(getModifiers(m));
 				}
 			}
 		}
 		// process numeric modifiers (this will upgrade some of them based on equivalence classes)
-		if(getModifierResolver() != null)
+		if(getModifierResolver() != null){
+			int count = text.getMentions().size();
 			getModifierResolver().processNumericModifiers(text);
-		
-		
-		// get relevant modifiers from parsed text, takes care of pseudo stuff too
-		List<Mention> relevantModifiers = getRelevantModifiers(text);
+			// only re-compute if resolver changed the list of mentions
+			if(count != text.getMentions().size()){
+				relevantModifiers = getRelevantModifiers(text);
+				terminators = getTerminators(text);
+			}
+		}
 		
 		//add defaults for stuff that was not picked up
+		Map<String,String> defaults = getDefaultValues();
 		for(Mention m: sentence.getMentions()){
-			for(String type: getDefaultValues().keySet()){
-				m.addModifier(getModifier(type,getDefaultValues().get(type)));
+			for(Map.Entry<String,String> e: defaults.entrySet()){
+				m.addModifier(getModifier(e.getKey(),e.getValue()));
 			}
 		}
 		
 		// go over all modifier mentions
+		SpanIndex sentenceIndex = new SpanIndex(sentence);
 		for(Mention m: relevantModifiers){
 			// don't bother with modifiers of modifiers, they don't connect to targets anyhow
-			if(!isTypeOf(m,QUALIFIER)){
+			if(!lexicon.getEntry(m.getConcept()).isQualifier()){
 				// add relevant modifiers to target mentions
-				for(Mention target: getTargetMentions(m,sentence,getTerminators(m,text))){
+				for(Mention target: getTargetMentions(m,sentenceIndex,terminators)){
 					target.addModifiers(getModifiers(m));
 				}
 			}
@@ -402,11 +443,10 @@ public class ConText implements Processor<Sentence> {
 	 * @param mentions
 	 * @return
 	 */
-	private List<Mention> getGlobalModifierMentions(List<Mention> mentions){
+	private List<Mention> getGlobalModifierMentions(List<Mention> mentions) throws TerminologyException{
 		List<Mention> list = new ArrayList<Mention>();
 		for(Mention m: mentions){
-			Map map = m.getConcept().getProperties();
-			if(map.containsKey(HAS_PARAGRAPH_ACTION) || map.containsKey(HAS_SECTION_ACTION)){
+			if(getLexicon().getEntry(m.getConcept()).isGlobal()){
 				list.add(m);
 			}
 		}
@@ -448,77 +488,40 @@ public class ConText implements Processor<Sentence> {
 	 * Gets the target mentions.
 	 *
 	 * @param modifier the modifier
-	 * @param targetText the target text
-	 * @param terminators the terminators
+	 * @param targetIndex the index of target text
+	 * @param terminators all terminators in modifier text
 	 * @return the target mentions
 	 * @throws TerminologyException the terminology exception
 	 */
-	private List<Mention> getTargetMentions(Mention modifier, Sentence targetText, List<Mention> terminators) throws TerminologyException {
-		List<Mention> list = new ArrayList<Mention>();
-
-		List<String> acts = getAction(modifier.getConcept());
-		boolean forward =  acts.contains(ACTION_FORWARD) || acts.contains(ACTION_BIDIRECTIONAL);
-		boolean backward = acts.contains(ACTION_BACKWARD) || acts.contains(ACTION_BIDIRECTIONAL);
-
-		// this is no good, but if we got no actions defined, can we assume some default?
-		if(forward == false && backward == false){
-			forward = backward = true;
-		}
-		
-		
-		
-		// figure out termination offset
-		int start = getWordWindowIndex(modifier,targetText,false);
-		int end   = getWordWindowIndex(modifier,targetText,true);
-		
-		//System.out.println(modifier+" st: "+start+"\tend: "+end+"\tsubs: "+targetText.getText().substring(start,end));
+	private List<Mention> getTargetMentions(Mention modifier, SpanIndex targetIndex, List<Mention> terminators) throws TerminologyException {
+		ConTextLexicon.Entry entry = getLexicon().getEntry(modifier.getConcept());
 		
-		// figure out terminator offset
+		// only keep terminators that apply to this modifier
+		List<Mention> modifierTerminators = new ArrayList<Mention>();
 		for(Mention m: terminators){
-			// if going forward, make sure that the terminator is after modifier
-			if(forward && modifier.before(m) && m.getStartPosition() < end){
-				end = m.getStartPosition();
-			}
-			// if looking backward, make sure that the terminator is before modifier
-			if(backward && modifier.after(m) && m.getStartPosition() > start)
-				start = m.getStartPosition();
+			if(getLexicon().getEntry(m.getConcept()).isTerminatorOf(entry))
+				modifierTerminators.add(m);
 		}
 		
-
-		// go over mentions in a sentence
-		for(Mention target: targetText.getMentions()){
-			boolean add = false;
-
-			// skip itself
-			if(target.equals(modifier))
-				continue;
-			
-			// looking forward, if modifier is before target and target is before termination point
-			if(forward && (modifier.getStartPosition() <= target.getStartPosition() ||  modifier.getEndPosition() < target.getEndPosition()) && target.getStartPosition() <= end){
-				add = true;
-			}
-			// looking backward, if modifier is after target and target is after termination point
-			if(backward &&  modifier.getStartPosition() >= target.getStartPosition() && start <= target.getStartPosition()){
-				add = true;
-			}
-
-			if(add && isModifierApplicable(modifier, target))
+		List<Mention> list = new ArrayList<Mention>();
+		for(Mention target: getTargetMentionsInRange(modifier,targetIndex,entry.getActions(),entry.getWindowSize(),modifierTerminators)){
+			if(isModifierApplicable(modifier, entry, target))
 				list.add(target);
 		}
-
 		return list;
 	}
 
 	
 	/**
 	 * is a given modifier applicable for a given target
-	 * @param target
 	 * @param modifier
+	 * @param entry - compiled modifier entry
+	 * @param target
 	 * @return true if it is applicable
 	 */
-	private boolean isModifierApplicable(Mention modifier,Mention target){
+	private boolean isModifierApplicable(Mention modifier, ConTextLexicon.Entry entry, Mention target){
 		//linguistic modifiers are applicable to everything
-		if(isTypeOf(modifier, LINGUISTIC_MODIFIER) && !isTypeOf(target, MODIFIER))
+		if(entry.isLinguisticModifier() && !isTypeOf(target, MODIFIER))
 			return true;
 		
 		// if we have an outside validator supplied, check with that
@@ -542,65 +545,6 @@ public class ConText implements Processor<Sentence> {
 		return false;
 	}
 
-    /**
-     * Gets the word window index.
-     *
-     * @param modifier the modifier
-     * @param targetText the target text
-     * @param beforeModifier the before modifier
-     * @return the word window index
-     * @throws TerminologyException the terminology exception
-     */
-    private static int getWordWindowIndex(Mention modifier, Sentence targetText, boolean beforeModifier) throws TerminologyException {
-        return getWordWindowIndex(modifier,targetText,beforeModifier,getWindowSize(modifier.getConcept()));
-    }
-
-	/**
-	 * Gets the word window index.
-	 *
-	 * @param modifier the modifier
-	 * @param targetText the target text
-	 * @param beforeModifier the before modifier
-     * @param windowSize the window size of a given modifier
-	 * @return the word window index
-	 */
-	private static int getWordWindowIndex(Mention modifier, Sentence targetText, boolean beforeModifier,int windowSize){
-		int offs;
-		//int windowSize = getWindowSize(modifier.getConcept());
-		String txt = targetText.getText();
-		int offset = targetText.getOffset();
-		
-		// if windows size after modifier
-		if(beforeModifier){
-			offs = targetText.getLength();
-			for(int i = modifier.getEndPosition()-offset,j=0,k=i;i>=0 && i<txt.length();i = txt.indexOf(' ',i+1)){ //j++
-				// to avoid multiple consecutive spaces only increment word count if the delta is more then 1
-				if(i > k +1)
-					j++;
-				if(j >= windowSize){
-					offs = i;
-					break;
-				}
-				k = i;
-			}
-		// if windows size before modifier	
-		}else{
-			offs = 0;
-			for(int i = modifier.getStartPosition()-offset,j=0,k=i;i>=0;i = txt.lastIndexOf(' ',i-1)){ //,j++
-				// to avoid multiple consecutive spaces only increment word count if the delta is more then 1
-				if(i < k -1)
-					j++;
-				if(j >= windowSize){
-					offs = i;
-					break;
-				}
-				k=i;
-			}
-		}
-		return offs+offset;
-	}
-
-
 
 	/**
 	 * Gets the terminators.
@@ -627,6 +571,22 @@ public class ConText implements Processor<Sentence> {
 	}
 
 	
+	/**
+	 * get all mentions in modifier text that terminate the scope of some modifiers.
+	 *
+	 * @param text the text
+	 * @return the terminators
+	 * @throws TerminologyException the terminology exception
+	 */
+	private List<Mention> getTerminators(Sentence text) throws TerminologyException{
+		List<Mention> list = new ArrayList<Mention>();
+		for(Mention m: text.getMentions()){
+			if(getLexicon().getEntry(m.getConcept()).isTerminator())
+				list.add(m);
+		}
+		return list;
+	}
+	
 	/**
 	 * get a list of linguistic modifiers that are not pseudo modifiers.
 	 *
@@ -638,7 +598,7 @@ public class ConText implements Processor<Sentence> {
 		List<Mention> list = new ArrayList<Mention>();
 		List<Mention> pseudo = getPseudoModifiers(text);
 		for(Mention m: text.getMentions()){
-			if(isTypeOf(m,MODIFIER) && !isPseudo(m,pseudo)){
+			if(getLexicon().getEntry(m.getConcept()).isModifier() && !isPseudo(m,pseudo)){
 				list.add(m);
 			}
 		}
@@ -656,7 +616,7 @@ public class ConText implements Processor<Sentence> {
 	private List<Mention> getPseudoModifiers(Sentence text) throws TerminologyException{
 		List<Mention> list = new ArrayList<Mention>();
 		for(Mention m: text.getMentions()){
-			if(isTypeOf(m,PSEUDO)){	
+			if(getLexicon().getEntry(m.getConcept()).isPseudo()){	
 				list.add(m);
 			}
 		}
@@ -677,22 +637,15 @@ public class ConText implements Processor<Sentence> {
 			return false;
 		
 		// get a list of valid pseudo categories for this modifier
-		List<String> actions = getPseudo(m.getConcept());
+		ConTextLexicon.Entry entry = getLexicon().getEntry(m.getConcept());
 		
 		// if we do have possible pseudo actions
-		if(!actions.isEmpty()){
+		if(!entry.getPseudos().isEmpty()){
 			for(Mention p: pseudo){
-				// if this modifier intesects with this pseudo
-				if(m.intersects(p)){
-					// make sure that this pseudo is a pseudo for this modifier
-					for(String a: actions){
-						for(Concept pp : p.getConcept().getParentConcepts()){
-							// if this is a valid group, then cancel this modifier
-							if(a.equals(pp.getCode()))
-								return true;
-						}
-					}
-				}
+				// if this modifier intesects with this pseudo and this pseudo is a pseudo for this modifier
+				// then cancel this modifier
+				if(m.intersects(p) && getLexicon().getEntry(p.getConcept()).isPseudoOf(entry))
+					return true;
 			}
 		}
 		return false;
@@ -706,7 +659,7 @@ public class ConText implements Processor<Sentence> {
 	 * @return the action
 	 * @throws TerminologyException the terminology exception
 	 */
-	private static List<String> getAction(Concept c) throws TerminologyException {
+	static List<String> getAction(Concept c) throws TerminologyException {
 		List<String> list = new ArrayList<String>();
 		list.add(c.getProperty(HAS_SENTENCE_ACTION));
 		return list;
@@ -720,7 +673,7 @@ public class ConText implements Processor<Sentence> {
 	 * @return the window size
 	 * @throws TerminologyException the terminology exception
 	 */
-	private static int getWindowSize(Concept c) throws TerminologyException {
+	static int getWindowSize(Concept c) throws TerminologyException {
 		if(c.getProperties().containsKey(PROP_WINDOW_SIZE))
 			return Integer.parseInt(""+c.getProperty(PROP_WINDOW_SIZE));
 		for(Concept p: c.getParentConcepts()){
@@ -773,7 +726,7 @@ public class ConText implements Processor<Sentence> {
 	 * @return the termination
 	 * @throws TerminologyException the terminology exception
 	 */
-	private static List<String> getTermination(Concept c) throws TerminologyException {
+	static List<String> getTermination(Concept c) throws TerminologyException {
 		List<String> list = new ArrayList<String>();
 		for(Concept p: c.getParentConcepts()){
 			for(Concept t: p.getRelatedConcepts(Relation.getRelation(HAS_TERMINATION))){
@@ -790,7 +743,7 @@ public class ConText implements Processor<Sentence> {
 	 * @return the pseudo
 	 * @throws TerminologyException the terminology exception
 	 */
-	private List<String> getPseudo(Concept c) throws TerminologyException {
+	static List<String> getPseudo(Concept c) throws TerminologyException {
 		List<String> list = new ArrayList<String>();
 		for(Concept p: c.getParentConcepts()){
 			for(Concept t: p.getRelatedConcepts(Relation.getRelation(HAS_PSEUDO))){
@@ -835,9 +788,23 @@ public class ConText implements Processor<Sentence> {
 	 * @return list of modifiers that can be applied
 	 */
 	public List<Modifier> getMatchingModifiers(List<Mention> globalModifiers, Mention target) {
+		if(getModifierResolver() == null || globalModifiers.isEmpty() || target == null)
+			return Collections.EMPTY_LIST;
+		return getMatchingModifiers(new SpanIndex(globalModifiers),target);
+	}
+	
+	/**
+	 * find semantically matching modifiers from an index of global modifiers given a target mention,
+	 * only modifiers that start in the section of target mention are checked. 
+	 * Create the index once per document and use it for all target mentions in that document.
+	 * @param globalModifiers - index of global modifiers of a document
+	 * @param target - target mention
+	 * @return list of modifiers that can be applied
+	 */
+	public List<Modifier> getMatchingModifiers(SpanIndex globalModifiers, Mention target) {
 		
 		// if modifier validator is not defined, no point in going further
-		if(getModifierResolver() == null || globalModifiers.isEmpty() || target == null)
+		if(getModifierResolver() == null || globalModifiers.size() == 0 || target == null)
 			return Collections.EMPTY_LIST;
 		
 		// allocate best modifiers
@@ -863,7 +830,7 @@ public class ConText implements Processor<Sentence> {
 		
 		// create a mapping of candidate modifiers for each type
 		Map<String,Map<String,List<Modifier>>> candidateModifiers = new HashMap<String,Map<String,List<Modifier>>>();
-		for(Mention modifier: globalModifiers){
+		for(Mention modifier: globalModifiers.getMentionsStartingIn(section.getStartPosition(),section.getEndPosition())){
 			// lets see if this modifier fits the variable semantically
 			if(section.contains(modifier)){
 				Spannable span = section;
@@ -943,15 +910,28 @@ public class ConText implements Processor<Sentence> {
      * @return the target mentions
      */
     public static List<Mention> getTargetMentionsInRange(Mention modifier, Sentence targetText,List<String> actions, int windowSize){
-        List<Mention> list = new ArrayList<Mention>();
-
-        List<String> acts = actions; // getAction(modifier.getConcept());
         List<Mention> terminators = Collections.EMPTY_LIST;
         try{
             terminators = getTerminators(modifier,modifier.getSentence());
         }catch (TerminologyException ex){
             throw new TerminologyError("Oops",ex);
         }
+        return getTargetMentionsInRange(modifier,new SpanIndex(targetText),actions,windowSize,terminators);
+    }
+
+    /**
+     * Gets the target mentions in range, only mentions that start inside of the word window,
+     * or that span over the modifier are checked.
+     *
+     * @param modifier the modifier
+     * @param targetIndex the index of target text
+     * @param acts the modifier actions
+     * @param windowSize the modifier window size
+     * @param terminators the terminators of this modifier
+     * @return the target mentions
+     */
+    private static List<Mention> getTargetMentionsInRange(Mention modifier, SpanIndex targetIndex, List<String> acts, int windowSize, List<Mention> terminators){
+        List<Mention> list = new ArrayList<Mention>();
 
         boolean forward =  acts.contains(ACTION_FORWARD) || acts.contains(ACTION_BIDIRECTIONAL);
         boolean backward = acts.contains(ACTION_BACKWARD) || acts.contains(ACTION_BIDIRECTIONAL);
@@ -962,10 +942,8 @@ public class ConText implements Processor<Sentence> {
         }
 
         // figure out termination offset
-        int start = getWordWindowIndex(modifier,targetText,false,windowSize);
-        int end   = getWordWindowIndex(modifier,targetText,true,windowSize);
-
-        //System.out.println(modifier+" st: "+start+"\tend: "+end+"\tsubs: "+targetText.getText().substring(start,end));
+        int start = targetIndex.getWordWindowIndex(modifier,false,windowSize);
+        int end   = targetIndex.getWordWindowIndex(modifier,true,windowSize);
 
         // figure out terminator offset
         for(Mention m: terminators){
@@ -978,9 +956,19 @@ public class ConText implements Processor<Sentence> {
                 start = m.getStartPosition();
         }
 
+        // candidate targets start inside of the range, or start before it and go over the modifier
+        int from = forward?modifier.getStartPosition():Integer.MAX_VALUE;
+        int to = forward?end:Integer.MIN_VALUE;
+        if(backward){
+            from = Math.min(from,start);
+            to = Math.max(to,modifier.getStartPosition());
+        }
+        List<Mention> candidates = new ArrayList<Mention>(targetIndex.getMentionsStartingIn(from,to));
+        if(forward)
+            candidates.addAll(targetIndex.getMentionsSpanning(from,modifier.getEndPosition()));
 
-        // go over mentions in a sentence
-        for(Mention target: targetText.getMentions()){
+        // go over candidate mentions in a sentence
+        for(Mention target: candidates){
             boolean add = false;
 
             // skip itself
@@ -0,0 +1,276 @@
+package edu.pitt.dbmi.nlp.noble.tools;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+import edu.pitt.dbmi.nlp.noble.terminology.Concept;
+import edu.pitt.dbmi.nlp.noble.terminology.SemanticType;
+import edu.pitt.dbmi.nlp.noble.terminology.Terminology;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+
+/**
+ * compiled lexicon of ConText modifiers. Modifier phrases of a modifier terminology are matched
+ * in a single pass over the term trie of the terminology, instead of running the general purpose
+ * dictionary lookup, and actions, window sizes, terminations and pseudo modifiers of every modifier
+ * concept are resolved once and memoized, instead of walking concept parents for every mention.
+ * Entries are kept in a concurrent map, so a lexicon can be used by several threads.
+ *
+ * @author tseytlin
+ */
+public class ConTextLexicon {
+	private final Terminology terminology;
+	private final SearchOptions searchOptions;
+	private final Map<String,Entry> entries;
+
+	/**
+	 * compiled properties of a single modifier concept.
+	 */
+	public static class Entry {
+		private List<String> actions;
+		private int windowSize;
+		private Set<String> parents, terminations, pseudos;
+		private boolean modifier, pseudo, qualifier, linguisticModifier, quantity, terminator, global;
+
+		/**
+		 * compile modifier concept.
+		 *
+		 * @param c the concept
+		 * @throws TerminologyException the terminology exception
+		 */
+		private Entry(Concept c) throws TerminologyException{
+			actions = Collections.unmodifiableList(ConText.getAction(c));
+			windowSize = ConText.getWindowSize(c);
+			terminations = Collections.unmodifiableSet(new HashSet<String>(ConText.getTermination(c)));
+			pseudos = Collections.unmodifiableSet(new HashSet<String>(ConText.getPseudo(c)));
+			parents = new HashSet<String>();
+			for(Concept p: c.getParentConcepts())
+				parents.add(p.getCode());
+			parents = Collections.unmodifiableSet(parents);
+			for(SemanticType st: c.getSemanticTypes()){
+				String name = st.getName();
+				modifier |= ConText.MODIFIER.equals(name);
+				pseudo |= ConText.PSEUDO.equals(name);
+				qualifier |= ConText.QUALIFIER.equals(name);
+				linguisticModifier |= ConText.LINGUISTIC_MODIFIER.equals(name);
+				quantity |= ConText.QUANTITY.equals(name);
+			}
+			terminator = actions.contains(ConText.ACTION_TERMINATE);
+			global = c.getProperties().containsKey(ConText.HAS_PARAGRAPH_ACTION) || c.getProperties().containsKey(ConText.HAS_SECTION_ACTION);
+		}
+
+		/**
+		 * Gets the sentence actions.
+		 *
+		 * @return the actions
+		 */
+		public List<String> getActions() {
+			return actions;
+		}
+
+		/**
+		 * Gets the window size.
+		 *
+		 * @return the window size
+		 */
+		public int getWindowSize() {
+			return windowSize;
+		}
+
+		/**
+		 * Gets the codes of parent concepts.
+		 *
+		 * @return the parents
+		 */
+		public Set<String> getParents() {
+			return parents;
+		}
+
+		/**
+		 * Gets the codes of termination concepts.
+		 *
+		 * @return the terminations
+		 */
+		public Set<String> getTerminations() {
+			return terminations;
+		}
+
+		/**
+		 * Gets the codes of pseudo concepts.
+		 *
+		 * @return the pseudos
+		 */
+		public Set<String> getPseudos() {
+			return pseudos;
+		}
+
+		/**
+		 * Checks if is modifier.
+		 *
+		 * @return true, if is modifier
+		 */
+		public boolean isModifier() {
+			return modifier;
+		}
+
+		/**
+		 * Checks if is pseudo modifier.
+		 *
+		 * @return true, if is pseudo
+		 */
+		public boolean isPseudo() {
+			return pseudo;
+		}
+
+		/**
+		 * Checks if is qualifier.
+		 *
+		 * @return true, if is qualifier
+		 */
+		public boolean isQualifier() {
+			return qualifier;
+		}
+
+		/**
+		 * Checks if is linguistic modifier.
+		 *
+		 * @return true, if is linguistic modifier
+		 */
+		public boolean isLinguisticModifier() {
+			return linguisticModifier;
+		}
+
+		/**
+		 * Checks if is quantity.
+		 *
+		 * @return true, if is quantity
+		 */
+		public boolean isQuantity() {
+			return quantity;
+		}
+
+		/**
+		 * Checks if is terminator.
+		 *
+		 * @return true, if it terminates the scope of other modifiers
+		 */
+		public boolean isTerminator() {
+			return terminator;
+		}
+
+		/**
+		 * Checks if modifier has paragraph or section action.
+		 *
+		 * @return true, if is global
+		 */
+		public boolean isGlobal() {
+			return global;
+		}
+
+		/**
+		 * does this terminator end the scope of a given modifier.
+		 *
+		 * @param modifier the modifier
+		 * @return true, if successful
+		 */
+		public boolean isTerminatorOf(Entry modifier){
+			return terminator && !Collections.disjoint(parents,modifier.getTerminations());
+		}
+
+		/**
+		 * does this pseudo modifier cancel a given modifier.
+		 *
+		 * @param modifier the modifier
+		 * @return true, if successful
+		 */
+		public boolean isPseudoOf(Entry modifier){
+			return !Collections.disjoint(parents,modifier.getPseudos());
+		}
+	}
+
+
+	/**
+	 * compile lexicon for a given modifier terminology.
+	 *
+	 * @param terminology the terminology
+	 */
+	public ConTextLexicon(Terminology terminology){
+		this.terminology = terminology;
+		this.entries = new ConcurrentHashMap<String, Entry>();
+		this.searchOptions = (terminology instanceof NobleCoderTerminology)?createSearchOptions((NobleCoderTerminology)terminology):null;
+	}
+
+	/**
+	 * pick search options for modifier phrases. ConText terminology matches whole phrases in order
+	 * and without gaps, which is exactly what a term trie does, so in that case use a single trie pass.
+	 * Trie matches are selected the same way as dictionary lookup selects them when it skips used words.
+	 *
+	 * @param term the term
+	 * @return the search options
+	 */
+	private static SearchOptions createSearchOptions(NobleCoderTerminology term){
+		SearchOptions options = term.getSearchOptions();
+		if(options.isContiguousMode() && options.isOrderedMode() && options.isOverlapMode() &&
+			!options.isPartialMode() && options.getMaximumWordGap() == 0){
+			Properties p = new Properties();
+			p.setProperty("ignore.used.words",""+options.isIgnoreUsedWords());
+			return new SearchOptions(term,NobleCoderTerminology.TRIE_MATCH,p);
+		}
+		return options;
+	}
+
+	/**
+	 * Gets the terminology.
+	 *
+	 * @return the terminology
+	 */
+	public Terminology getTerminology() {
+		return terminology;
+	}
+
+	/**
+	 * Gets the search options that are used to match modifier phrases.
+	 *
+	 * @return the search options or null, if terminology is not a NobleCoder terminology
+	 */
+	public SearchOptions getSearchOptions() {
+		return searchOptions;
+	}
+
+	/**
+	 * find modifier mentions in a given sentence.
+	 *
+	 * @param sentence the sentence
+	 * @return the sentence
+	 * @throws TerminologyException the terminology exception
+	 */
+	public Sentence match(Sentence sentence) throws TerminologyException {
+		if(searchOptions == null)
+			return terminology.process(sentence);
+		return ((NobleCoderTerminology)terminology).process(sentence,searchOptions);
+	}
+
+	/**
+	 * get compiled entry for a modifier concept.
+	 *
+	 * @param c the concept
+	 * @return the entry
+	 * @throws TerminologyException the terminology exception
+	 */
+	public Entry getEntry(Concept c) throws TerminologyException {
+		Entry entry = entries.get(c.getCode());
+		if(entry == null){
+			entry = new Entry(c);
+			entries.put(c.getCode(),entry);
+		}
+		return entry;
+	}
+
+}
@@ -0,0 +1,244 @@
+package edu.pitt.dbmi.nlp.noble.tools;
+
+import java.util.regex.Pattern;
+
+import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+
+/**
+ * classifies lines of a report as bullets, prose, headers, worksheet lines or dividers.
+ * All patterns are compiled once and shared, they are immutable, so they can be used by several threads.
+ * Every line is classified once: the first and the last non-whitespace characters of a line are looked at
+ * in a single scan, and a pattern is only run when those characters allow it to match.
+ *
+ * @author tseytlin
+ */
+public class LineClassifier {
+	public static final Pattern BULLET_PATTERN = Pattern.compile("^(\\s*(?:[A-Z][0-9]?|[0-9]{1,2}|[\\*\\-])(?:[\\.:\\)]\\s+|\\s{2,}))\\w.*");
+	public static final Pattern BULLET_BLOCK_PATTERN = Pattern.compile(BULLET_PATTERN.pattern(),Pattern.DOTALL|Pattern.MULTILINE);
+	public static final Pattern DIVIDER_PATTERN = Pattern.compile("(\\-{5,}|_{5,}|={5,})");
+	public static final Pattern PROPERTIES_PATTERN = Pattern.compile("([A-Z][A-Za-z /]{3,25})(?:\\.{2,}|\\:)(.{2,25})");
+	public static final Pattern HEADER_PATTERN = Pattern.compile("([A-Z][A-Z/\\- ]{5,40}:)(\\s.*)?");
+	private static final Pattern PROSE_PATTERN = Pattern.compile(".*\\b[a-z]+(\\.|\\?|!)\\s+[A-Z][a-z]+\\b.*");
+	private static final Pattern PROSE_SENTENCE_BREAK = Pattern.compile("\\b[a-z]+(\\.|\\?|!)\\s+[A-Z][a-z]+\\b");
+	private static final Pattern PROSE_SENTENCE_END = Pattern.compile(".+\\s([A-Z]?[a-z]+|\\d+),?\\s*");
+	private static final Pattern PROSE_SENTENCE_START = Pattern.compile("\\s*([a-z]+|\\d+)\\b.+");
+	private static final Pattern BULLET_SENTENCE_START = Pattern.compile("\\s*([A-Z]{2,}|\\d+)\\b.+");
+	private static final Pattern BULLET_SENTENCE_END = Pattern.compile(".+\\s([A-Z]{2,}|\\d+),?\\s*");
+
+	/**
+	 * classified line of text.
+	 */
+	public static class Line {
+		private String text;
+		private boolean blank, bullet, prose, header, worksheet, divider;
+		private boolean proseStart, proseEnd, bulletStart, bulletEnd;
+
+		private Line(String text){
+			this.text = text;
+		}
+
+		/**
+		 * Gets the text.
+		 *
+		 * @return the text
+		 */
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * Checks if line has nothing but whitespace.
+		 *
+		 * @return true, if is blank
+		 */
+		public boolean isBlank() {
+			return blank;
+		}
+
+		/**
+		 * Checks if line starts with a bullet.
+		 *
+		 * @return true, if is bullet
+		 */
+		public boolean isBullet() {
+			return bullet;
+		}
+
+		/**
+		 * Checks if line has a sentence break in the middle of English prose.
+		 *
+		 * @return true, if is prose
+		 */
+		public boolean isProse() {
+			return prose;
+		}
+
+		/**
+		 * Checks if line starts with an upper case section heading.
+		 *
+		 * @return true, if is header
+		 */
+		public boolean isHeader() {
+			return header;
+		}
+
+		/**
+		 * Checks if line looks like a part of synoptic worksheet.
+		 *
+		 * @return true, if is worksheet
+		 */
+		public boolean isWorksheet() {
+			return worksheet;
+		}
+
+		/**
+		 * Checks if line is a divider s.a. -----.
+		 *
+		 * @return true, if is divider
+		 */
+		public boolean isDivider() {
+			return divider;
+		}
+
+		/**
+		 * Checks if line starts with a lower case word or a number, so it could continue previous prose line.
+		 *
+		 * @return true, if is prose start
+		 */
+		public boolean isProseStart() {
+			return proseStart;
+		}
+
+		/**
+		 * Checks if line ends with a lower case word, a number or a comma, so it could be continued by the next line.
+		 *
+		 * @return true, if is prose end
+		 */
+		public boolean isProseEnd() {
+			return proseEnd;
+		}
+
+		/**
+		 * Checks if line starts with an upper case word or a number, so it could continue previous bullet.
+		 *
+		 * @return true, if is bullet start
+		 */
+		public boolean isBulletStart() {
+			return bulletStart;
+		}
+
+		/**
+		 * Checks if line ends with an upper case word, a number or a comma, so it could be continued by the next line.
+		 *
+		 * @return true, if is bullet end
+		 */
+		public boolean isBulletEnd() {
+			return bulletEnd;
+		}
+
+		/**
+		 * get sentence type that this line would have on its own.
+		 *
+		 * @return the type
+		 */
+		public String getType(){
+			if(worksheet)
+				return Sentence.TYPE_WORKSHEET;
+			if(divider)
+				return Sentence.TYPE_DIVIDER;
+			if(bullet)
+				return Sentence.TYPE_BULLET;
+			if(header)
+				return Sentence.TYPE_HEADER;
+			if(prose)
+				return Sentence.TYPE_PROSE;
+			return Sentence.TYPE_LINE;
+		}
+
+		public String toString(){
+			return getType()+": "+text;
+		}
+	}
+
+	/**
+	 * classify a single line of text.
+	 *
+	 * @param text the line without new line character
+	 * @return the line
+	 */
+	public static Line classify(String text){
+		Line line = new Line(text);
+
+		// find first and last non-whitespace characters
+		int st = 0, en = text.length()-1;
+		while(st <= en && isSpace(text.charAt(st)))
+			st++;
+		while(en >= st && isSpace(text.charAt(en)))
+			en--;
+		String trimmed = text.trim();
+		line.blank = trimmed.length() == 0;
+		if(line.blank)
+			return line;
+
+		char first = text.charAt(st), last = text.charAt(en);
+		boolean upper = first >= 'A' && first <= 'Z';
+		boolean digit = first >= '0' && first <= '9';
+		boolean lower = first >= 'a' && first <= 'z';
+
+		line.bullet = (upper || digit || first == '*' || first == '-') && BULLET_PATTERN.matcher(text).matches();
+		line.proseStart = (lower || digit) && PROSE_SENTENCE_START.matcher(text).matches();
+		line.bulletStart = (upper || digit) && BULLET_SENTENCE_START.matcher(text).matches();
+		line.proseEnd = (isLowerOrDigit(last) || last == ',') && PROSE_SENTENCE_END.matcher(text).matches();
+		line.bulletEnd = (isUpperOrDigit(last) || last == ',') && BULLET_SENTENCE_END.matcher(text).matches();
+		line.header = st == 0 && upper && HEADER_PATTERN.matcher(text).matches();
+		char c = trimmed.charAt(0);
+		line.divider = (c == '-' || c == '_' || c == '=') && DIVIDER_PATTERN.matcher(trimmed).matches();
+		line.prose = isProse(trimmed);
+		line.worksheet = SynopticReportDetector.detect(text);
+		return line;
+	}
+
+	/**
+	 * does text have a sentence break between two English words.
+	 * This is the same as matching the whole text against a pattern that is surrounded by .*,
+	 * but when text has no line terminators, looking for the sentence break is enough and it does not backtrack over the whole text.
+	 *
+	 * @param text the text
+	 * @return true, if is prose
+	 */
+	public static boolean isProse(String text){
+		if(hasLineTerminator(text))
+			return PROSE_PATTERN.matcher(text).matches();
+		return PROSE_SENTENCE_BREAK.matcher(text).find();
+	}
+
+	/**
+	 * does text have characters that dot in a regular expression does not match.
+	 *
+	 * @param text the text
+	 * @return true, if successful
+	 */
+	private static boolean hasLineTerminator(CharSequence text){
+		for(int i=0;i<text.length();i++){
+			char c = text.charAt(i);
+			if(c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * is character matched by \s in a regular expression.
+	 */
+	private static boolean isSpace(char c){
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isLowerOrDigit(char c){
+		return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+	}
+
+	private static boolean isUpperOrDigit(char c){
+		return (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+}
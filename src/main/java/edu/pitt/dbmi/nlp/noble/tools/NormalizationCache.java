@@ -0,0 +1,160 @@
+package edu.pitt.dbmi.nlp.noble.tools;
+
+import java.util.Collections;
+import java.util.List;
+
+import edu.pitt.dbmi.nlp.noble.util.ConcurrentCache;
+
+/**
+ * bounded memo of normalized and stemmed forms of surface tokens and terms.
+ * Clinical text reuses a small vocabulary, so most words are normalized only once.
+ * Cache keys include normalization flags (stem words, strip digits, strip stop words),
+ * so the same cache can be shared by terminologies with different settings.
+ * The cache is safe to use from multiple threads.
+ *
+ * @author tseytlin
+ */
+public class NormalizationCache {
+	public static final int DEFAULT_SIZE = 50000;
+	private static final int MAX_KEY_LENGTH = 256;
+	private static NormalizationCache instance;
+	private final ConcurrentCache<String,List<String>> wordCache;
+	private final ConcurrentCache<String,String> termCache, stemCache;
+
+	/**
+	 * create a new normalization cache.
+	 *
+	 * @param size the maximum number of entries of each kind (words, terms and stems)
+	 */
+	public NormalizationCache(int size){
+		wordCache = new ConcurrentCache<String, List<String>>(size);
+		termCache = new ConcurrentCache<String, String>(size);
+		stemCache = new ConcurrentCache<String, String>(size);
+	}
+
+	/**
+	 * get shared instance of normalization cache.
+	 *
+	 * @return the instance
+	 */
+	public static synchronized NormalizationCache getInstance(){
+		if(instance == null)
+			instance = new NormalizationCache(DEFAULT_SIZE);
+		return instance;
+	}
+
+	/**
+	 * create cache key from normalization flags and text.
+	 */
+	private static String getKey(String text, boolean stem, boolean stripDigits, boolean stripStopWords, boolean uniqueWords, boolean sort){
+		int flags = (stem?1:0) | (stripDigits?2:0) | (stripStopWords?4:0) | (uniqueWords?8:0) | (sort?16:0);
+		return ((char)('A'+flags))+text;
+	}
+
+	/**
+	 * perform normalization of a word @see TextTools.normalizeWords().
+	 * Returned list is shared and can't be modified.
+	 *
+	 * @param text the word or text
+	 * @param stem the stem
+	 * @param stripDigits the strip digits
+	 * @param stripStopWords the strip stop words
+	 * @return list of normalized words
+	 */
+	public List<String> normalizeWords(String text, boolean stem, boolean stripDigits, boolean stripStopWords){
+		if(text.length() > MAX_KEY_LENGTH)
+			return TextTools.normalizeWords(text, stem, stripDigits, stripStopWords);
+		String key = getKey(text, stem, stripDigits, stripStopWords, false, false);
+		List<String> words = wordCache.get(key);
+		if(words == null){
+			words = Collections.unmodifiableList(TextTools.normalizeWords(text, stem, stripDigits, stripStopWords));
+			wordCache.put(key,words);
+		}
+		return words;
+	}
+
+	/**
+	 * perform normalization of a term @see TextTools.normalize().
+	 *
+	 * @param text the text
+	 * @param stem the stem
+	 * @param stripDigits the strip digits
+	 * @param stripStopWords the strip stop words
+	 * @param uniqueWords the unique words
+	 * @param sort the sort
+	 * @return normalized string
+	 */
+	public String normalize(String text, boolean stem, boolean stripDigits, boolean stripStopWords, boolean uniqueWords, boolean sort){
+		if(text.length() > MAX_KEY_LENGTH)
+			return TextTools.normalize(text, stem, stripDigits, stripStopWords, uniqueWords, sort);
+		String key = getKey(text, stem, stripDigits, stripStopWords, uniqueWords, sort);
+		String term = termCache.get(key);
+		if(term == null){
+			term = TextTools.normalize(text, stem, stripDigits, stripStopWords, uniqueWords, sort);
+			termCache.put(key,term);
+		}
+		return term;
+	}
+
+	/**
+	 * stem a word @see TextTools.stem().
+	 *
+	 * @param word the word
+	 * @return the stemmed word
+	 */
+	public String stem(String word){
+		if(word == null || word.length() > MAX_KEY_LENGTH)
+			return TextTools.stem(word);
+		String s = stemCache.get(word);
+		if(s == null){
+			s = TextTools.stem(word);
+			stemCache.put(word,s);
+		}
+		return s;
+	}
+
+	/**
+	 * Gets the combined hit count.
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount(){
+		return wordCache.getHitCount()+termCache.getHitCount()+stemCache.getHitCount();
+	}
+
+	/**
+	 * Gets the combined miss count.
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount(){
+		return wordCache.getMissCount()+termCache.getMissCount()+stemCache.getMissCount();
+	}
+
+	/**
+	 * Gets the combined hit rate.
+	 *
+	 * @return the hit rate, between 0 and 1
+	 */
+	public double getHitRate(){
+		long h = getHitCount(), n = h+getMissCount();
+		return (n == 0)?0:((double) h)/n;
+	}
+
+	/**
+	 * clear all cached values and statistics.
+	 */
+	public void clear(){
+		for(ConcurrentCache c: new ConcurrentCache [] {wordCache,termCache,stemCache}){
+			c.clear();
+			c.resetStatistics();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return "words: ["+wordCache+"] terms: ["+termCache+"] stems: ["+stemCache+"]";
+	}
+}
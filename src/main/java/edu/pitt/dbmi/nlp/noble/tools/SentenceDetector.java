@@ -1,6 +1,7 @@
 package edu.pitt.dbmi.nlp.noble.tools;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
 import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
 
@@ -13,12 +14,18 @@ import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
 
 public class SentenceDetector {
 	private static final List<String> exceptionList = new ArrayList<String>();
+	private static final Pattern exceptionPattern;
 	// list of known exceptions where period is allowed 
 	static {
-		exceptionList.add(".*\\W(vs|Fig|al|etc)\\."); // vs. Fig. al.
-		exceptionList.add(".*\\W[A-Z][a-z]?\\."); // A.B. Dr. Mr. etc...
-		exceptionList.add(".*\\W[a-z]\\."); // single letter lower case abbreviation s.a. q.d. 
-
+		exceptionList.add("vs|Fig|al|etc"); // vs. Fig. al.
+		exceptionList.add("[A-Z][a-z]?"); // A.B. Dr. Mr. etc...
+		exceptionList.add("[a-z]"); // single letter lower case abbreviation s.a. q.d. 
+		
+		// all exceptions are compiled into a single pattern
+		StringBuilder b = new StringBuilder();
+		for(String ex: exceptionList)
+			b.append((b.length() > 0?"|":"")+ex);
+		exceptionPattern = Pattern.compile(".*\\W(?:"+b+")\\.");
 	}
 
 	
@@ -28,12 +35,9 @@ public class SentenceDetector {
 	 * @param s the s
 	 * @return true, if is exception
 	 */
-	private static boolean isException(String s){
+	private static boolean isException(CharSequence s){
 		// check if this period is some known abreviation
-		for(String ex: exceptionList)
-			if(s.matches(ex))
-				return true;
-		return false;
+		return exceptionPattern.matcher(s).matches();
 	}
 
 	
@@ -71,7 +75,7 @@ public class SentenceDetector {
 					continue;
 				
 				// check if this period is some known abreviation
-				if(isException(s.toString()))
+				if(tc[i] == '.' && isException(s))
 					continue;
 				
 				
@@ -128,7 +132,7 @@ public class SentenceDetector {
 					continue;
 				
 				// check if this period is some known abreviation
-				if(isException(s.toString()))
+				if(tc[i] == '.' && isException(s))
 					continue;
 				
 				
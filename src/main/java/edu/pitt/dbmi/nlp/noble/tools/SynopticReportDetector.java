@@ -12,7 +12,21 @@ import java.util.regex.Pattern;
  * The Class SynopticReportDetector.
  */
 public class SynopticReportDetector {
-	private static List<Detector> synopticDetectors,falseDetectors;
+	private static final Pattern GAP_PATTERN = Pattern.compile("[^\\s][\\._]{4,}[^\\s]");
+	private static final Pattern EMPTY_CELL_PATTERN = Pattern.compile("\\(\\s*\\)");
+	private static final Pattern TAB_PATTERN = Pattern.compile("[^\\s][\\t]{1,}[^\\s]");
+	private static final Pattern SYNOPTIC_PATTERN = Pattern.compile("^\\s*synoptic\\b");
+	private static final Pattern CHECKBOX_PATTERN = Pattern.compile("^_[xX_]_");
+	private static final Pattern NUMBERED_VALUE_PATTERN = Pattern.compile("^[A-Z0-9]\\.\\s*.*:\\s*(\\d|#)$");
+	private static final Pattern COLUMN_PATTERN = Pattern.compile("^[A-Za-z ,'\\(\\)]+:\\s{4,}.*$");
+	private static final Pattern COLUMN_EXCEPTION_PATTERN = Pattern.compile("^(PROCEDURE|POST-OP).*");
+	private static final Pattern BULLET_PATTERN = Pattern.compile("[a-z0A-Z0-9]{1,2}\\.?[\\s-]+(.*)");
+	private static final Pattern SPACE_GAP_PATTERN = Pattern.compile("[^\\s][\\s]{4,}[^\\s]");
+	private static final Pattern DIVIDER_PATTERN = Pattern.compile("[_\\-=]+");
+	private static final Pattern BRACKET_HEADING_PATTERN = Pattern.compile("^\\[[\\w ]+\\]$");
+	private static final Pattern HEADING_PATTERN = Pattern.compile("^[A-Z\\- ]{4,20}:$");
+	private static final List<Detector> synopticDetectors = createSynopticDetectors();
+	private static final List<Detector> falseDetectors = createFalseDetectors();
 	private List<String> emptyFiles  = new ArrayList<String>();
 	private int total,empty,gross,prostate;
 	
@@ -31,103 +45,116 @@ public class SynopticReportDetector {
 	}
 	
 	/**
-	 * get a list of synoptic line detectors.
+	 * create a list of synoptic line detectors. Patterns that look for a gap between two words
+	 * only need a single character on each side of the gap, that is the same as looking for
+	 * whole words, but without backtracking over every word.
 	 *
 	 * @return the synoptic detectors
 	 */
-	private static List<Detector> getSynopticDetectors(){
-		if(synopticDetectors == null){
-			synopticDetectors = new ArrayList<SynopticReportDetector.Detector>();
-			synopticDetectors.add(new Detector(){
-				public boolean detect(String line){
-					// if line starts with letter and space and line, then take the latter portion
-					//Matcher mt =  Pattern.compile("[a-z0A-Z0-9]{1,2}\\.?[\\s-]+(.*)").matcher(line);
-					//if(mt.matches())
-					//	line = mt.group(1);
-					// detect white _ or . gaps >=4 between words
-					Matcher mt = Pattern.compile("[^\\s]+[\\._]{4,}[^\\s]+").matcher(line);
-					return mt.find();
-				}
-			});
-			synopticDetectors.add(new Detector(){
-				public boolean detect(String line){
-					// detect empty click cells s.a. ( )
-					Matcher mt = Pattern.compile("\\(\\s*\\)").matcher(line);
-					return mt.find();
-				}
-			});
-			synopticDetectors.add(new Detector(){
-				public boolean detect(String line){
-					// detect tabs 
-					Matcher mt = Pattern.compile("[^\\s]+[\\t]{1,}[^\\s]+").matcher(line);
-					return mt.find();
-				}
-			});
-			synopticDetectors.add(new Detector(){
-				public boolean detect(String line){
-					// does the line start with a word synoptic
-					Matcher mt = Pattern.compile("^\\s*synoptic\\b").matcher(line.toLowerCase());
-					return mt.find();
-				}
-			});
-			synopticDetectors.add(new Detector(){
-				public boolean detect(String line){
-					// do we have ___ or _X_ lines representing worksheets?
-					Matcher mt = Pattern.compile("^_[xX_]_").matcher(line);
-					return mt.find();
-				}
-			});
-			synopticDetectors.add(new Detector(){
-				public boolean detect(String line){
-					// do we have lines that start with a single letter or number end end with digits or hash
-					return line.matches("^[A-Z0-9]\\.\\s*.*:\\s*(\\d|#)$");
-				}
-			});
-			synopticDetectors.add(new Detector(){
-				public boolean detect(String line){
-					// do we have a line that has a set of upper case words, followed by column and at least 4 spaces and then other characters
-					if(line.matches("^[A-Za-z ,'\\(\\)]+:\\s{4,}.*$")){
-						// skip known false positives
-						return !line.matches("^(PROCEDURE|POST-OP).*");
-					}
-					return false;
+	private static List<Detector> createSynopticDetectors(){
+		List<Detector> synopticDetectors = new ArrayList<SynopticReportDetector.Detector>();
+		synopticDetectors.add(new Detector(){
+			public boolean detect(String line){
+				// if line starts with letter and space and line, then take the latter portion
+				//Matcher mt =  Pattern.compile("[a-z0A-Z0-9]{1,2}\\.?[\\s-]+(.*)").matcher(line);
+				//if(mt.matches())
+				//	line = mt.group(1);
+				// detect white _ or . gaps >=4 between words
+				Matcher mt = GAP_PATTERN.matcher(line);
+				return mt.find();
+			}
+		});
+		synopticDetectors.add(new Detector(){
+			public boolean detect(String line){
+				// detect empty click cells s.a. ( )
+				Matcher mt = EMPTY_CELL_PATTERN.matcher(line);
+				return mt.find();
+			}
+		});
+		synopticDetectors.add(new Detector(){
+			public boolean detect(String line){
+				// detect tabs 
+				Matcher mt = TAB_PATTERN.matcher(line);
+				return mt.find();
+			}
+		});
+		synopticDetectors.add(new Detector(){
+			public boolean detect(String line){
+				// does the line start with a word synoptic
+				Matcher mt = SYNOPTIC_PATTERN.matcher(line.toLowerCase());
+				return mt.find();
+			}
+		});
+		synopticDetectors.add(new Detector(){
+			public boolean detect(String line){
+				// do we have ___ or _X_ lines representing worksheets?
+				Matcher mt = CHECKBOX_PATTERN.matcher(line);
+				return mt.find();
+			}
+		});
+		synopticDetectors.add(new Detector(){
+			public boolean detect(String line){
+				// do we have lines that start with a single letter or number end end with digits or hash
+				return NUMBERED_VALUE_PATTERN.matcher(line).matches();
+			}
+		});
+		synopticDetectors.add(new Detector(){
+			public boolean detect(String line){
+				// do we have a line that has a set of upper case words, followed by column and at least 4 spaces and then other characters
+				if(COLUMN_PATTERN.matcher(line).matches()){
+					// skip known false positives
+					return !COLUMN_EXCEPTION_PATTERN.matcher(line).matches();
 				}
-			});
-			synopticDetectors.add(new Detector(){
-				public boolean detect(String line){
-					// if line starts with letter and space and line, then take the latter portion
-					Matcher mt =  Pattern.compile("[a-z0A-Z0-9]{1,2}\\.?[\\s-]+(.*)").matcher(line);
-					if(mt.matches())
-						line = mt.group(1);
-					// detect white space or . gaps >=4 between words
-					mt = Pattern.compile("[^\\s]+[\\s]{4,}[^\\s]+").matcher(line);
-					if(mt.find()){
-						// if alphabetical characters are less then 60% of the total, then we are good and not a false positive
-						return (double)line.replaceAll("[^A-Za-z]","").length()/line.length() < 0.6;
-					}
-					return false;
+				return false;
+			}
+		});
+		synopticDetectors.add(new Detector(){
+			public boolean detect(String line){
+				// if line starts with letter and space and line, then take the latter portion
+				Matcher mt =  BULLET_PATTERN.matcher(line);
+				if(mt.matches())
+					line = mt.group(1);
+				// detect white space or . gaps >=4 between words
+				mt = SPACE_GAP_PATTERN.matcher(line);
+				if(mt.find()){
+					// if alphabetical characters are less then 60% of the total, then we are good and not a false positive
+					return (double)getLetterCount(line)/line.length() < 0.6;
 				}
-			});
-			
-		}
+				return false;
+			}
+		});
 		return synopticDetectors;
 	}
 	
 	/**
-	 * get a list of synoptic line detectors.
+	 * count latin letters in a line.
 	 *
-	 * @return the false detectors
+	 * @param line the line
+	 * @return the letter count
 	 */
-	private static List<Detector> getFalseDetectors(){
-		if(falseDetectors == null){
-			falseDetectors = new ArrayList<SynopticReportDetector.Detector>();
-			falseDetectors.add(new Detector(){
-				// skip line dividers 
-				public boolean detect(String line){
-					return line.trim().matches("[_\\-=]+");
-				}
-			});
+	private static int getLetterCount(String line){
+		int n = 0;
+		for(int i=0;i<line.length();i++){
+			char c = line.charAt(i);
+			if((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))
+				n++;
 		}
+		return n;
+	}
+	
+	/**
+	 * create a list of detectors of known false positives.
+	 *
+	 * @return the false detectors
+	 */
+	private static List<Detector> createFalseDetectors(){
+		List<Detector> falseDetectors = new ArrayList<SynopticReportDetector.Detector>();
+		falseDetectors.add(new Detector(){
+			// skip line dividers 
+			public boolean detect(String line){
+				return DIVIDER_PATTERN.matcher(line.trim()).matches();
+			}
+		});
 		return falseDetectors;
 	}
 	
@@ -140,9 +167,9 @@ public class SynopticReportDetector {
 	 */
 	public static boolean detect(String line){
 		// if synoptic detector fired
-		if(detect(line,getSynopticDetectors())){
+		if(detect(line,synopticDetectors)){
 			// check known false positives
-			return (detect(line,getFalseDetectors()))?false:true;
+			return (detect(line,falseDetectors))?false:true;
 			//return true;
 		}
 		return false;
@@ -239,7 +266,7 @@ public class SynopticReportDetector {
 				
 				// if we get into another section heading
 				// we overshot it, so quit
-				if(st > -1 && (l.matches("^\\[[\\w ]+\\]$") || l.matches("^[A-Z\\- ]{4,20}:$"))){
+				if(st > -1 && (BRACKET_HEADING_PATTERN.matcher(l).matches() || HEADING_PATTERN.matcher(l).matches())){
 					break;
 				}
 				
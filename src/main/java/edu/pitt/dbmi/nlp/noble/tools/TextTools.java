@@ -47,6 +47,13 @@ public class TextTools {
 	private static Map<Character,String> xmlEscapeCodeMap;
 	private static Map<String,String> stopWords,prepostionWords,commonWords;
 	private static Map<String,String> timePatterns;
+	private static final Pattern ABBREVIATION_CHARS = Pattern.compile("[\\(\\)\\[\\]+,0-9]");
+	private static final Pattern LETTERS = Pattern.compile("[A-Za-z]");
+	private static final ThreadLocal<WordNormalizer> normalizer = new ThreadLocal<WordNormalizer>(){
+		protected WordNormalizer initialValue() {
+			return new WordNormalizer();
+		}
+	};
 	private Sender sender;
 	public static final String NUMBER_PATTERN = "(\\d*\\.\\d+|\\d{1,3}(?:,\\d{3})+|\\d+)";
 	
@@ -67,6 +74,154 @@ public class TextTools {
 		}
 	}
 	
+	/**
+	 * single pass normalizer of ascii text that reuses its character buffer
+	 * and stemmer. Every step gives the same result as the corresponding regular expression
+	 * in normalizeWordsRegex(), so the output is identical.
+	 * There is one instance per thread.
+	 */
+	private static class WordNormalizer {
+		private char [] buffer = new char [256];
+		private final Stemmer stemmer = new Stemmer();
+		
+		private static boolean isLetter(char c){
+			return c >= 'a' && c <= 'z';
+		}
+		
+		private static boolean isDigit(char c){
+			return c >= '0' && c <= '9';
+		}
+		
+		private static boolean isWordChar(char c){
+			return isLetter(c) || isDigit(c) || c == '_';
+		}
+		
+		private static char toLowerCase(char c){
+			return (c >= 'A' && c <= 'Z')?(char)(c+32):c;
+		}
+		
+		/**
+		 * length of parenthetic plural form (s), (es), (is) or (ies) at a given offset
+		 */
+		private static int getPluralLength(char [] c, int i, int len){
+			int j = i+1;
+			if(j < len && c[j] == 'i')
+				j++;
+			if(j < len && c[j] == 'e')
+				j++;
+			if(j+1 < len && c[j] == 's' && c[j+1] == ')')
+				return j+2-i;
+			return 0;
+		}
+		
+		/**
+		 * a character is a word separator, unless it is a word character or a period in a floating point number
+		 */
+		private static boolean isSeparator(char [] c, int i, int len){
+			return !(isWordChar(c[i]) || (c[i] == '.' && i+1 < len && isDigit(c[i+1])));
+		}
+		
+		/**
+		 * normalize trimmed ascii text.
+		 */
+		public List<String> normalizeWords(String text, boolean stem, boolean stripDigits, boolean stripStopWords){
+			int n = text.length();
+			if(buffer.length < n)
+				buffer = new char [n*2];
+			char [] c = buffer;
+			
+			// lowercase and remove genitives ('s and s') after a word that starts at a word boundary
+			int len = 0, lastEnd = 0;
+			for(int i=0;i<n;i++){
+				char ch = toLowerCase(text.charAt(i));
+				if(ch == '\''){
+					int k = i;
+					while(k > 0 && isLetter(toLowerCase(text.charAt(k-1))))
+						k--;
+					if(k < i && k >= lastEnd && (k == 0 || !isWordChar(toLowerCase(text.charAt(k-1))))){
+						if(i+1 < n && toLowerCase(text.charAt(i+1)) == 's')
+							i++;
+						lastEnd = i+1;
+						continue;
+					}
+				}
+				c[len++] = ch;
+			}
+			
+			// remove parenthetic plural forms
+			int w = 0;
+			for(int r=0;r<len;r++){
+				if(c[r] == '('){
+					int p = getPluralLength(c,r,len);
+					if(p > 0){
+						r += p-1;
+						continue;
+					}
+				}
+				c[w++] = c[r];
+			}
+			len = w;
+			
+			// split into words on punctuation, but keep periods in floating point numbers
+			// text that starts with a separator has an empty first word, same as String.split()
+			List<String> words = new ArrayList<String>();
+			if(len == 0 || isSeparator(c,0,len))
+				addWord(words,c,0,0,false,false,stem,stripDigits,stripStopWords);
+			int start = -1, count = 0;
+			boolean letters = false, digits = false;
+			for(int i=0;i<=len;i++){
+				if(i < len && !isSeparator(c,i,len)){
+					if(start < 0){
+						start = i;
+						letters = digits = false;
+					}
+					if(c[i] == '_' && i+1 < len && isDigit(c[i+1]))
+						c[i] = '.';
+					letters |= isLetter(c[i]);
+					digits |= isDigit(c[i]);
+				}else if(start >= 0){
+					addWord(words,c,start,i,letters,digits,stem,stripDigits,stripStopWords);
+					start = -1;
+					count ++;
+				}
+			}
+			// text that only had separators has no words
+			if(len > 0 && count == 0)
+				words.clear();
+			return words;
+		}
+		
+		/**
+		 * filter and stem a word.
+		 */
+		private void addWord(List<String> words, char [] c, int start, int end, boolean letters, boolean digits, 
+				boolean stem, boolean stripDigits, boolean stripStopWords){
+			String word = new String(c,start,end-start);
+			
+			// then remove stop words and numbers
+			if(stripStopWords && (isStopWord(word) || (stripDigits && digits && !letters && isNumber(c,start,end))))
+				return;
+			
+			// and stem words, unless they look like an abbreviation (lowercase word with letters and digits)
+			if(stem && !(letters && digits)){
+				for(int i=start;i<end;i++)
+					stemmer.add(c[i]);
+				stemmer.stem();
+				word = stemmer.toString();
+			}
+			words.add(word);
+		}
+		
+		private static boolean isNumber(char [] c, int start, int end){
+			for(int i=start;i<end;i++){
+				if(!isDigit(c[i]))
+					return false;
+			}
+			return true;
+		}
+	}
+	
+	
 	//	 load values into map
 	/*
 	static {
@@ -339,12 +494,21 @@ public class TextTools {
 	public static String stem(String word){
 		if(word == null || word.length() == 0)
 			return "";
-		Stemmer s = new Stemmer();
+		Stemmer s = getNormalizer().stemmer;
 		s.add(word.toLowerCase());
 		s.stem();
 		return s.getResultString();
 	}
 	
+	/**
+	 * get normalizer that belongs to current thread.
+	 *
+	 * @return the normalizer
+	 */
+	private static WordNormalizer getNormalizer(){
+		return normalizer.get();
+	}
+	
 	/**
 	 * split text into words.
 	 * replace all non-word characters and possesives from query w/ single space
@@ -767,6 +931,27 @@ public class TextTools {
 	 * @return list of normalized words
 	 */
 	public static List<String> normalizeWords(String text, boolean stem, boolean stripDigits, boolean stripStopWords){
+		String t = text.trim();
+		
+		// non-ascii text needs unicode normalization and lowercasing, use regular expressions 
+		for(int i=0;i<t.length();i++){
+			if(t.charAt(i) >= 128)
+				return normalizeWordsRegex(text, stem, stripDigits, stripStopWords);
+		}
+		return getNormalizer().normalizeWords(t, stem, stripDigits, stripStopWords);
+	}
+	
+	/**
+	 * perform normalization of a string @see normalize with a chain of regular expressions.
+	 * This is a reference implementation for normalizeWords(), that is also used for non-ascii text.
+	 * 
+	 * @param text 			- input text
+	 * @param stem 			- stem words using porder stemmer
+	 * @param stripDigits 	- strip single digits from the string
+	 * @param stripStopWords - strip known stop words from the string
+	 * @return list of normalized words
+	 */
+	static List<String> normalizeWordsRegex(String text, boolean stem, boolean stripDigits, boolean stripStopWords){
 		text = text.trim();
 		
 		// map to ascii (unicode nomralization)
@@ -847,7 +1032,7 @@ public class TextTools {
 			return false;
 		
 		// if string contains junk s.a. +()-/ or digit, it might be some protein or whatever
-		if(Pattern.compile("[\\(\\)\\[\\]+,0-9]").matcher(text).find() && Pattern.compile("[A-Za-z]").matcher(text).find())
+		if(ABBREVIATION_CHARS.matcher(text).find() && LETTERS.matcher(text).find())
 			return true;
 		
 		// if text is all uppercase and 5 letters or less
@@ -67,6 +67,7 @@ import javax.swing.border.LineBorder;
 import javax.swing.border.TitledBorder;
 
 import edu.pitt.dbmi.nlp.noble.coder.NobleCoder;
+import edu.pitt.dbmi.nlp.noble.coder.ParallelNobleCoder;
 import edu.pitt.dbmi.nlp.noble.coder.model.Document;
 import edu.pitt.dbmi.nlp.noble.ontology.DefaultRepository;
 import edu.pitt.dbmi.nlp.noble.terminology.Concept;
@@ -179,7 +180,7 @@ public class NobleCoderTool implements ActionListener{
 		out.println("\t-terminology - terminology to use. All terminolgies are located in <user.home>/.terminologies directory.");
 		out.println("\t-input\t- input directory containing a set of text files with (.txt) extension");
 		out.println("\t-output\t- output directory where "+RESULT_CSV+" output will be stored along with output HTML files");
-		out.println("\t-search\t- search strategy: <best-match|precise-match|all-match|nonoverlap-match|partial-match|custom-match>");
+		out.println("\t-search\t- search strategy: <best-match|precise-match|all-match|nonoverlap-match|partial-match|custom-match|trie-match>");
 		out.println("\t-stripDigits\t- don't try to match stand-alone digits");
 		out.println("\t-stripSmallWords\t- don't try to match one letter words");
 		out.println("\t-stripCommonWords\t- don't try to match most common English words");
@@ -196,6 +197,7 @@ public class NobleCoderTool implements ActionListener{
 		out.println("\t-partialMode\t- match a term if more then 50% of its words are found in text");
 		out.println("\t-acronymExpansion\t- if acronym is found in its expanded form, use its meaning to tag all other mentions of it");
 		out.println("\t-negationDetection\t- invoke ConText algorithm to detect negated concepts and other modifiers");
+		out.println("\t-threads\t- <N> number of documents to process in parallel, default is 1");
 		out.println("\n\n");
 	}
 
@@ -754,6 +756,23 @@ public class NobleCoderTool implements ActionListener{
 			scoreConcepts.setSelected(false);
 			selectBestCandidates.setSelected(false);
 			ignoreUsedWords.setSelected(true);
+		}else if(NobleCoderTerminology.TRIE_MATCH.equals(strategy)){
+			tip.setText("Matches terms that appear in text in the same word order as in controlled terminology " +
+					"using a precomputed term trie. Similar to best match, but much faster on large terminologies.");
+			subsumptionMode.setSelected(true);
+			overlapMode.setSelected(true);
+			orderedMode.setSelected(true);
+			contiguousMode.setSelected(true);
+			wordWindow.setText("1");
+			partialMode.setSelected(false);
+			
+			stripCommonWords.setSelected(false);
+			stripCommonWords.doClick();
+			//stripDigits.setSelected(false);
+			stripSmallWords.setSelected(true);
+			scoreConcepts.setSelected(true);
+			selectBestCandidates.setSelected(true);
+			ignoreUsedWords.setSelected(false);
 		}
 		
 		
@@ -1589,11 +1608,19 @@ public class NobleCoderTool implements ActionListener{
 			outputDir.mkdirs();
 		
 		// reset stat counters
-		int processCount = 0;
-		long processTime = 0;
+		final int [] processCount = new int [1];
+		final long [] processTime = new long [1];
+		
+		// number of documents to code in parallel
+		int threads = 1;
+		x = args.indexOf("-threads");
+		if(x > -1)
+			threads = Integer.parseInt(args.get(x+1));
 		
 		// now create NobleCoder instance and run it
-		NobleCoder coder = new NobleCoder(terminology);
+		ParallelNobleCoder coder = new ParallelNobleCoder(terminology);
+		coder.setThreadCount(threads);
+		coder.setOrdered(true);
 		coder.setAcronymExpansion(handleAcronyms);
 		coder.setContextDetection(handleNegation);
 		//coder.setProcessFilter(NobleCoder.FILTER_DEID|NobleCoder.FILTER_HEADER);
@@ -1602,27 +1629,27 @@ public class NobleCoderTool implements ActionListener{
 		htmlExporter = new HTMLExporter(outputDir);
 		csvExporter = new CSVExporter(outputDir);
 		
-		for(int i=0;i<files.size();i++){
-			progress("processing report ("+(processCount+1)+") "+files.get(i).getName()+" ... ");
-			Document doc = coder.process(files.get(i));
-			processTime += coder.getProcessTime();
-			progress(coder.getProcessTime()+" ms\n");
-			
-			// now output HTML for this report
-			htmlExporter.export(doc);
-			csvExporter.export(doc);
-			
-			//processReport(files.get(i), outputDir);
-			if(progress != null){
-				final int n = i+1;
-				SwingUtilities.invokeLater(new Runnable(){
-					public void run(){
-						progress.setValue(n);
-					}
-				});
+		coder.process(new File(in),new ParallelNobleCoder.DocumentHandler() {
+			public void documentProcessed(Document doc) throws Exception {
+				Long time = doc.getProcessTime().get(NobleCoder.class.getSimpleName());
+				processTime[0] += (time != null)?time:0;
+				progress("processed report ("+(processCount[0]+1)+") "+doc.getTitle()+" ... "+time+" ms\n");
+				
+				// now output HTML for this report
+				htmlExporter.export(doc);
+				csvExporter.export(doc);
+				
+				processCount[0]++;
+				if(progress != null){
+					final int n = processCount[0];
+					SwingUtilities.invokeLater(new Runnable(){
+						public void run(){
+							progress.setValue(n);
+						}
+					});
+				}
 			}
-			processCount++;
-		}
+		});
 		
 		// save search properties
 		FileOutputStream os = new FileOutputStream(new File(outputDir,"search.properties"));
@@ -1639,9 +1666,11 @@ public class NobleCoderTool implements ActionListener{
 		}
 		
 		// summary
-		double ave = (processCount > 0)?processTime/processCount:0;
-		progress("\nTotal process time for all reports:\t"+processTime+" ms\n");
+		double ave = (processCount[0] > 0)?processTime[0]/processCount[0]:0;
+		progress("\nTotal process time for all reports:\t"+processTime[0]+" ms\n");
 		progress("Average process time per report:\t"+ave+" ms\n");
+		if(threads > 1)
+			progress("Wall clock time using "+threads+" threads:\t"+coder.getProcessTime()+" ms\n");
 	}
 
 
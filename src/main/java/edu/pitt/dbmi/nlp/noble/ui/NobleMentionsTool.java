@@ -4,6 +4,7 @@ import edu.pitt.dbmi.nlp.noble.coder.model.Document;
 import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
 import edu.pitt.dbmi.nlp.noble.eval.AnnotationEvaluation;
 import edu.pitt.dbmi.nlp.noble.mentions.NobleMentions;
+import edu.pitt.dbmi.nlp.noble.mentions.ParallelNobleMentions;
 import edu.pitt.dbmi.nlp.noble.mentions.model.Composition;
 import edu.pitt.dbmi.nlp.noble.mentions.model.DomainOntology;
 import edu.pitt.dbmi.nlp.noble.ontology.DefaultRepository;
@@ -52,12 +53,14 @@ public class NobleMentionsTool implements ActionListener{
 	private JButton run;
 	private File lastFile;
 	private long totalTime;
-	private long processCount;
+	private long processCount, failCount;
 	private HTMLExporter htmlExporter;
 	private CSVExporter csvExporter;
+	private RDFExporter rdfExporter;
 	private static boolean statandlone = false;
 	private DefaultRepository repository = new DefaultRepository();
 	private boolean cancelRun;
+	private int threadCount = 1;
 	private Map<String,Long> processTime,processTimeCount;
 	
 	
@@ -68,6 +71,7 @@ public class NobleMentionsTool implements ActionListener{
 	private JCheckBox normalizeAnchors ;
 	private JCheckBox scoreAnchors;
 	private JCheckBox ignoreLabels;
+	private JCheckBox streamInstances;
 	private JRadioButton sectionScope,paragraphScope; 
 	
 	
@@ -89,6 +93,9 @@ public class NobleMentionsTool implements ActionListener{
 			File input = new File("/input");
 			File output = new File("/output");
 			File properties = null;
+			
+			// use all available cores, unless properties file says otherwise
+			nc.threadCount = Runtime.getRuntime().availableProcessors();
 
 			//check if inputs exist
 			for(File a: Arrays.asList(ontology,input,output)){
@@ -147,13 +154,14 @@ public class NobleMentionsTool implements ActionListener{
 		out.println("\t<ontology file> - domain ontology OWL file");
 		out.println("\t<input directory> - directory full of input text files that need to be processed");
 		out.println("\t<output directory> - directory where output will be saved");
-		out.println("\t<properties file> - key=value pair file that sets runtime options");
+		out.println("\t<properties file> - key=value pair file that sets runtime options, threads=<N> sets number of reports to process in parallel");
 		out.println("Usage: java -jar NobleMentions-1.1.jar -docker");
 		out.println("\tInvoke NobleMentions assuming that it is running within a docker container");
 		out.println("\t/ontology - domain ontology OWL file and its dependencies needs to be located here");
 		out.println("\t/input - directory full of input text files that need to be processed should be located here");
 		out.println("\t/output - directory where output will be saved");
 		out.println("\t/ontology - key=value pair file that sets runtime options will be located at the same location as ontology");
+		out.println("\tReports are processed in parallel using all available processors");
 		out.println("\n\n");
 	}
 
@@ -317,6 +325,7 @@ public class NobleMentionsTool implements ActionListener{
 			p.setProperty("normalize.anchors",""+normalizeAnchors.isSelected());
 			p.setProperty("score.anchors",""+scoreAnchors.isSelected());
 			p.setProperty("ignore.labels",""+ignoreLabels.isSelected());
+			p.setProperty("stream.instances",""+streamInstances.isSelected());
 		return p;
 	}
 	
@@ -344,6 +353,9 @@ public class NobleMentionsTool implements ActionListener{
 			normalizeAnchors.setSelected(Boolean.parseBoolean(p.getProperty("normalize.anchors")));
 			scoreAnchors.setSelected(Boolean.parseBoolean(p.getProperty("score.anchors")));
 			ignoreLabels.setSelected(Boolean.parseBoolean(p.getProperty("ignore.labels")));
+			streamInstances.setSelected(Boolean.parseBoolean(p.getProperty("stream.instances")));
+			if(p.getProperty("threads") != null)
+				threadCount = Integer.parseInt(p.getProperty("threads").trim());
 		}
 
 	
@@ -534,6 +546,9 @@ public class NobleMentionsTool implements ActionListener{
 			panel1.add(processHeaderAnchor,c);c.gridx++;
 			panel1.add(processHeaderModifier,c);c.gridy++;c.gridx = 0;
 			
+			streamInstances = new JCheckBox("Write instances of each report as N-Triples instead of OWL");
+			panel1.add(streamInstances,c);c.gridy++;
+			
 			// set dictionary options
 			normalizeAnchors = new JCheckBox("Normalize anchor terms");
 			scoreAnchors = new JCheckBox("Score matched anchor terms");
@@ -952,8 +967,15 @@ public class NobleMentionsTool implements ActionListener{
 			Object val = p.get(key);
 			progress("  "+key+" = "+val+"\n");
 		}
+		progress("  threads = "+threadCount+"\n");
 		progress("\n");
-
+		
+		// worker threads get their own copy of noble mentions with the same options
+		final ParallelNobleMentions mentions = new ParallelNobleMentions(ontology);
+		mentions.setThreadCount(threadCount);
+		mentions.setProcessAnchorsInHeader(noble.isProcessAnchorsInHeader());
+		mentions.setProcessModifiersInHeader(noble.isProcessModifiersInHeader());
+		mentions.setRemoveSubsumedVariables(noble.isRemoveSubsumedVariables());
 
 		// process lastFile
 		List<File> files = FileTools.getFilesInDirectory(new File(in),".txt");
@@ -976,39 +998,59 @@ public class NobleMentionsTool implements ActionListener{
 		// initialize writers
 		htmlExporter = new HTMLExporter(outputDir);
 		csvExporter = new CSVExporter(outputDir);
+		rdfExporter = streamInstances.isSelected()?new RDFExporter(outputDir):null;
 		
 		// reset stat counters
 		processCount = 0;
+		failCount = 0;
 		totalTime = 0;
 		
-		
-	
-		
-		for(int i=0;i<files.size();i++){
-			try {
-				process(noble,files.get(i));
-				
-				// cancel processing
-				if(cancelRun)
-					break;
-				
-			} catch (Exception e) {
-				progress("Error: "+e.getMessage());
-				e.printStackTrace();
-			}
-			if(progress != null){
-				final int n = i+1;
-				SwingUtilities.invokeLater(new Runnable(){
-					public void run(){
-						progress.setValue(n);
+		try {
+			mentions.process(new File(in),new ParallelNobleMentions.CompositionHandler() {
+				public void compositionProcessed(Composition doc) throws Exception {
+					long count = processCount;
+					try{
+						process(doc);
+					}catch(Exception ex){
+						processCount = count;
+						compositionFailed(doc.getTitle(),ex);
+						return;
 					}
-				});
-			}
+					update();
+				}
+				public void compositionFailed(String name, Exception ex) throws Exception {
+					// keep going with the rest of reports
+					failCount ++;
+					progress("Error: failed to process report "+name+": "+ex.getMessage()+"\n");
+					ex.printStackTrace();
+					update();
+				}
+				private void update(){
+					// cancel processing
+					if(cancelRun)
+						mentions.cancel();
+					
+					if(progress != null){
+						final int n = (int) (processCount+failCount);
+						SwingUtilities.invokeLater(new Runnable(){
+							public void run(){
+								progress.setValue(n);
+							}
+						});
+					}
+				}
+			});
+		} catch (Exception e) {
+			progress("Error: "+e.getMessage());
+			e.printStackTrace();
 		}
 		
 		// wrap up
 		try {
-			ontology.write(new File(outputDir,ontology.getName()+".owl"));
+			if(rdfExporter != null)
+				rdfExporter.flush();
+			else
+				ontology.write(new File(outputDir,ontology.getName()+".owl"));
 			htmlExporter.flush();
 			csvExporter.flush();
 		} catch (Exception e) {
@@ -1021,6 +1063,8 @@ public class NobleMentionsTool implements ActionListener{
 		if(processCount > 0){
 			progress("\nTotal process time for all reports:\t"+totalTime+" ms\n");
 			progress("Average process time per report:\t"+((totalTime)/processCount)+" ms\n");
+			if(threadCount > 1)
+				progress("Wall clock time using "+threadCount+" threads:\t"+mentions.getProcessTime()+" ms\n");
 		}
 
 		// print detailed run time
@@ -1065,27 +1109,29 @@ public class NobleMentionsTool implements ActionListener{
 	}
 
 	/**
-	 * process report.
+	 * output processed report.
 	 *
-	 * @param templates the templates
-	 * @param reportFile the report lastFile
+	 * @param doc the processed report
 	 * @throws Exception the exception
 	 */
-	private void process(NobleMentions noble,File reportFile) throws Exception {
-		progress("processing report ("+(processCount+1)+") "+reportFile.getName()+" ... ");
-		
-		// read in the report, do first level proce
-		Composition doc = noble.process(reportFile);
-	
+	private void process(Composition doc) throws Exception {
+		Long time = doc.getProcessTime().get(NobleMentions.class.getSimpleName());
+		progress("processed report ("+(processCount+1)+") "+doc.getTitle()+" ... ");
 		processCount ++;
 			
 		// now output HTML for this report
 		htmlExporter.export(doc);
 		csvExporter.export(doc);
 		
+		// stream instances and remove them from ontology
+		if(rdfExporter != null){
+			rdfExporter.export(doc);
+			doc.dispose();
+		}
+		
 		// do progress
-		totalTime += noble.getProcessTime();
-		progress(noble.getProcessTime()+" ms\n");
+		totalTime += (time != null)?time:0;
+		progress(time+" ms\n");
 
 		// add runtime
 		addProcessTime(doc);
@@ -0,0 +1,429 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * read-only map of atom ids (AUI) to concept ids (CUI) that is kept off-heap.
+ * Pairs are collected in a buffer of each thread and appended to a temporary file in chunks
+ * while MRCONSO is parsed, once all of them are known
+ * they are sorted by AUI in runs that fit on the heap, and the runs are merged into a memory-mapped
+ * table of fixed width records, so lookups are a binary search over the mapped file and heap usage does not grow with the
+ * number of atoms.
+ *
+ * @author tseytlin
+ */
+public class AtomMap {
+	private static final String PAIR_FILE = "atoms.tmp", RUN_FILE = "atoms.run", TABLE_FILE = "atoms.map";
+	private static final int INSERTION_SORT_SIZE = 16;
+	private static final int CHUNK_SIZE = 1<<16;
+	private static final int RUN_SIZE = 1<<24;
+	private File directory;
+	private int runSize;
+	private DataOutputStream out;
+	private ThreadLocal<Chunk> chunk = new ThreadLocal<Chunk>();
+	private List<Chunk> chunks = new ArrayList<Chunk>();
+	private volatile MappedByteBuffer [] segments;
+	private int keyWidth, valueWidth, recordWidth, segmentSize;
+	private long size;
+
+	/**
+	 * Instantiates a new atom map.
+	 *
+	 * @param directory the directory where map files are kept
+	 */
+	public AtomMap(File directory){
+		this(directory,RUN_SIZE);
+	}
+
+	/**
+	 * Instantiates a new atom map.
+	 *
+	 * @param directory the directory where map files are kept
+	 * @param runSize the number of bytes of records that are sorted on the heap at a time
+	 */
+	AtomMap(File directory, int runSize){
+		this.directory = directory;
+		this.runSize = runSize;
+	}
+
+	/**
+	 * pairs added by a single thread that were not yet appended to the pair file.
+	 */
+	private static class Chunk {
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream(CHUNK_SIZE);
+		private DataOutputStream out = new DataOutputStream(bytes);
+		private int keyWidth, valueWidth;
+		private long size;
+	}
+
+	/**
+	 * sorted run of records in the run file that is read sequentially during a merge.
+	 */
+	private static class Run {
+		private DataInputStream in;
+		private byte [] record;
+		private long remaining;
+	}
+
+	/**
+	 * add atom to concept mapping, can be called from several threads without contention,
+	 * since each thread fills its own chunk. All pairs have to be added before build() is called.
+	 *
+	 * @param aui the aui
+	 * @param cui the cui
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void put(String aui, String cui) throws IOException {
+		if(segments != null)
+			throw new IllegalStateException("atom map was already built");
+		Chunk c = chunk.get();
+		if(c == null){
+			c = new Chunk();
+			synchronized(this){
+				chunks.add(c);
+			}
+			chunk.set(c);
+		}
+		byte [] key = aui.getBytes(StandardCharsets.UTF_8);
+		byte [] value = cui.getBytes(StandardCharsets.UTF_8);
+		c.out.writeShort(key.length);
+		c.out.write(key);
+		c.out.writeShort(value.length);
+		c.out.write(value);
+		c.keyWidth = Math.max(c.keyWidth,key.length);
+		c.valueWidth = Math.max(c.valueWidth,value.length);
+		c.size ++;
+		if(c.bytes.size() >= CHUNK_SIZE)
+			append(c);
+	}
+
+	/**
+	 * append pairs of a chunk to the pair file in bulk.
+	 *
+	 * @param c the chunk
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private synchronized void append(Chunk c) throws IOException {
+		if(c.size == 0)
+			return;
+		if(out == null){
+			if(!directory.exists())
+				directory.mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory,PAIR_FILE)),1<<16));
+		}
+		c.bytes.writeTo(out);
+		keyWidth = Math.max(keyWidth,c.keyWidth);
+		valueWidth = Math.max(valueWidth,c.valueWidth);
+		size += c.size;
+		c.bytes.reset();
+		c.size = 0;
+	}
+
+	/**
+	 * copy added pairs into a sorted memory-mapped table.
+	 * Threads that added pairs should be done before it is called.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void build() throws IOException {
+		if(segments != null)
+			return;
+		for(Chunk c: chunks)
+			append(c);
+		chunks.clear();
+		File pairs = new File(directory,PAIR_FILE);
+		if(out != null)
+			out.close();
+		out = null;
+
+		// map table in segments, since a single mapping can not exceed 2GB
+		recordWidth = Math.max(1,keyWidth+valueWidth);
+		segmentSize = Integer.MAX_VALUE/recordWidth;
+		MappedByteBuffer [] table = new MappedByteBuffer [(int)((size+segmentSize-1)/segmentSize)];
+		if(size > 0){
+			RandomAccessFile raf = new RandomAccessFile(new File(directory,TABLE_FILE),"rw");
+			try{
+				raf.setLength(size*recordWidth);
+				FileChannel channel = raf.getChannel();
+				for(int i=0;i<table.length;i++){
+					long start = (long) i*segmentSize;
+					long count = Math.min(segmentSize,size-start);
+					table[i] = channel.map(FileChannel.MapMode.READ_WRITE,start*recordWidth,count*recordWidth);
+				}
+			}finally{
+				// mapping stays valid after its file is closed
+				raf.close();
+			}
+
+			// sort pairs on the heap in runs, a single run goes straight into the table
+			File runs = new File(directory,RUN_FILE);
+			List<Long> counts = sort(pairs,runs,table);
+			if(counts.size() > 1)
+				merge(runs,counts,table);
+			runs.delete();
+		}
+		segments = table;
+		pairs.delete();
+	}
+
+	/**
+	 * Gets the number of atoms.
+	 *
+	 * @return the size
+	 */
+	public long size(){
+		return size;
+	}
+
+	/**
+	 * Gets the concept of an atom, safe to call from several threads once map is built.
+	 *
+	 * @param aui the aui
+	 * @return the cui or null, if atom is not known
+	 */
+	public String get(String aui){
+		if(segments == null)
+			throw new IllegalStateException("atom map was not built");
+		byte [] key = aui.getBytes(StandardCharsets.UTF_8);
+		if(key.length > keyWidth)
+			return null;
+		long low = 0, high = size-1;
+		while(low <= high){
+			long mid = (low+high) >>> 1;
+			int c = compare(mid,key);
+			if(c < 0)
+				low = mid+1;
+			else if(c > 0)
+				high = mid-1;
+			else
+				return getValue(mid);
+		}
+		return null;
+	}
+
+	/**
+	 * remove map files, the table is unmapped once it is garbage collected.
+	 */
+	public synchronized void dispose(){
+		try{
+			if(out != null)
+				out.close();
+		}catch(IOException ex){
+			// nothing to do, file is removed anyway
+		}
+		out = null;
+		chunks.clear();
+		chunk = new ThreadLocal<Chunk>();
+		segments = null;
+		size = 0;
+		keyWidth = valueWidth = 0;
+		File table = new File(directory,TABLE_FILE);
+		if(!table.delete())
+			table.deleteOnExit();
+		new File(directory,PAIR_FILE).delete();
+		new File(directory,RUN_FILE).delete();
+		directory.delete();
+	}
+
+	/**
+	 * read pairs into fixed width records padded with zeros, sort them on the heap in runs of
+	 * at most runSize bytes and write the runs to the run file. If all pairs fit into a single run,
+	 * it is written directly into the table.
+	 *
+	 * @return number of records in each run
+	 */
+	private List<Long> sort(File pairs, File runs, MappedByteBuffer [] table) throws IOException {
+		List<Long> counts = new ArrayList<Long>();
+		int capacity = (int) Math.min(size,Math.max(1,runSize/recordWidth));
+		byte [] run = new byte [capacity*recordWidth];
+		int [] order = new int [capacity];
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(pairs),1<<16));
+		OutputStream rout = null;
+		try{
+			for(long read = 0;read < size;){
+				int n = (int) Math.min(capacity,size-read);
+				Arrays.fill(run,0,n*recordWidth,(byte)0);
+				for(int i=0;i<n;i++){
+					int offset = i*recordWidth;
+					in.readFully(run,offset,in.readUnsignedShort());
+					in.readFully(run,offset+keyWidth,in.readUnsignedShort());
+					order[i] = i;
+				}
+				read += n;
+				sort(run,order,0,n-1);
+				if(counts.isEmpty() && read == size){
+					for(int i=0;i<n;i++)
+						write(table,i,run,order[i]*recordWidth);
+				}else{
+					if(rout == null)
+						rout = new BufferedOutputStream(new FileOutputStream(runs),1<<16);
+					for(int i=0;i<n;i++)
+						rout.write(run,order[i]*recordWidth,recordWidth);
+				}
+				counts.add((long) n);
+			}
+		}finally{
+			in.close();
+			if(rout != null)
+				rout.close();
+		}
+		return counts;
+	}
+
+	/**
+	 * merge sorted runs of the run file into the table.
+	 */
+	private void merge(File runs, List<Long> counts, MappedByteBuffer [] table) throws IOException {
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(counts.size(),new Comparator<Run>(){
+			public int compare(Run a, Run b){
+				return AtomMap.this.compare(a.record,0,b.record,0);
+			}
+		});
+		int buffer = Math.max(recordWidth,Math.min(1<<16,runSize/counts.size()));
+		List<Run> open = new ArrayList<Run>();
+		try{
+			long start = 0;
+			for(long count: counts){
+				FileInputStream fin = new FileInputStream(runs);
+				Run run = new Run();
+				run.in = new DataInputStream(new BufferedInputStream(fin,buffer));
+				open.add(run);
+				fin.getChannel().position(start*recordWidth);
+				run.record = new byte [recordWidth];
+				run.remaining = count;
+				start += count;
+				next(run,queue);
+			}
+			for(long i=0;!queue.isEmpty();i++){
+				Run run = queue.poll();
+				write(table,i,run.record,0);
+				next(run,queue);
+			}
+		}finally{
+			for(Run run: open)
+				run.in.close();
+		}
+	}
+
+	/**
+	 * read next record of a run and put the run back into the queue, unless it is exhausted.
+	 */
+	private void next(Run run, PriorityQueue<Run> queue) throws IOException {
+		if(run.remaining == 0)
+			return;
+		run.in.readFully(run.record);
+		run.remaining --;
+		queue.add(run);
+	}
+
+	/**
+	 * write a whole record into the table in bulk.
+	 */
+	private void write(MappedByteBuffer [] table, long record, byte [] bytes, int offset){
+		MappedByteBuffer segment = table[(int)(record/segmentSize)];
+		segment.position((int)(record%segmentSize)*recordWidth);
+		segment.put(bytes,offset,recordWidth);
+	}
+
+	private String getValue(long record){
+		MappedByteBuffer segment = segments[(int)(record/segmentSize)];
+		int offset = (int)(record%segmentSize)*recordWidth+keyWidth;
+		byte [] value = new byte [valueWidth];
+		int n = 0;
+		for(;n<valueWidth;n++){
+			value[n] = segment.get(offset+n);
+			if(value[n] == 0)
+				break;
+		}
+		return new String(value,0,n,StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * compare key of a record to a key, padded keys compare as unsigned bytes.
+	 */
+	private int compare(long record, byte [] key){
+		MappedByteBuffer segment = segments[(int)(record/segmentSize)];
+		int offset = (int)(record%segmentSize)*recordWidth;
+		for(int i=0;i<keyWidth;i++){
+			int a = segment.get(offset+i) & 0xFF;
+			int b = (i < key.length)?key[i] & 0xFF:0;
+			if(a != b)
+				return a-b;
+		}
+		return 0;
+	}
+
+	/**
+	 * compare keys of two records on the heap as unsigned bytes.
+	 */
+	private int compare(byte [] a, int x, byte [] b, int y){
+		for(int i=0;i<keyWidth;i++){
+			int c = (a[x+i] & 0xFF)-(b[y+i] & 0xFF);
+			if(c != 0)
+				return c;
+		}
+		return 0;
+	}
+
+	private void swap(int [] order, int a, int b){
+		int x = order[a];
+		order[a] = order[b];
+		order[b] = x;
+	}
+
+	/**
+	 * quicksort record indexes of a run, recursing into the smaller partition only.
+	 */
+	private void sort(byte [] run, int [] order, int low, int high){
+		while(high-low >= INSERTION_SORT_SIZE){
+			// median of three as a pivot, moved to the end
+			int mid = (low+high) >>> 1;
+			if(compare(run,order,mid,low) < 0)
+				swap(order,mid,low);
+			if(compare(run,order,high,low) < 0)
+				swap(order,high,low);
+			if(compare(run,order,high,mid) < 0)
+				swap(order,high,mid);
+			swap(order,mid,high);
+			int i = low;
+			for(int j=low;j<high;j++){
+				if(compare(run,order,j,high) < 0)
+					swap(order,i++,j);
+			}
+			swap(order,i,high);
+			if(i-low < high-i){
+				sort(run,order,low,i-1);
+				low = i+1;
+			}else{
+				sort(run,order,i+1,high);
+				high = i-1;
+			}
+		}
+		for(int i=low+1;i<=high;i++){
+			for(int j=i;j>low && compare(run,order,j,j-1) < 0;j--)
+				swap(order,j,j-1);
+		}
+	}
+
+	private int compare(byte [] run, int [] order, int a, int b){
+		return compare(run,order[a]*recordWidth,run,order[b]*recordWidth);
+	}
+}
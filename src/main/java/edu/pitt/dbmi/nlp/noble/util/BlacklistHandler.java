@@ -5,6 +5,7 @@ import java.util.*;
 
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology.WordStat;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider;
 import edu.pitt.dbmi.nlp.noble.tools.TextTools;
 
 /**
@@ -118,21 +119,21 @@ public class BlacklistHandler {
 	 */
 	
 	public boolean hasBlacklist(){
-		return new File(st.getLocation(),BLACKLIST).exists();
+		return st.getProvider().tableExists(st.getLocation(),"blacklist");
 	}
 	
 	/**
-	 * save blacklist in an appropriate location.
+	 * save blacklist in an appropriate location using storage backend of a terminology.
 	 *
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public void save() throws IOException{
-		String prefix = st.getLocation().getAbsolutePath()+File.separator+"table";
-		JDBMMap blacklist = new JDBMMap<String,Set<String>>(prefix,"blacklist",false);
+		StorageProvider provider = st.getProvider();
+		Map<String,Set<String>> blacklist = provider.createMap(st.getLocation(),"blacklist",false);
 		blacklist.putAll(getBlacklist());
-		blacklist.commit();
-		blacklist.compact();
-		blacklist.dispose();
+		provider.commit(blacklist);
+		provider.compact(blacklist);
+		provider.dispose(blacklist);
 	}
 	
 	/**
@@ -142,8 +143,7 @@ public class BlacklistHandler {
 	 */
 	public void load() throws IOException {
 		if(hasBlacklist()){
-			String prefix = st.getLocation().getAbsolutePath()+File.separator+"table";
-			blacklist = new JDBMMap<String,Set<String>>(prefix,"blacklist",true);
+			blacklist = st.getProvider().createMap(st.getLocation(),"blacklist",true);
 		}
 	}
 	
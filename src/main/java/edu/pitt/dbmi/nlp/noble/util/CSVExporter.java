@@ -28,6 +28,7 @@ import edu.pitt.dbmi.nlp.noble.tools.TextTools;
 
 /**
  * The Class CSVExporter.
+ * Export methods are synchronized, so that one exporter can be shared by several threads.
  */
 public class CSVExporter {
 	public static final String DEFAULT_RESULT_FILE = "RESULTS.tsv";
@@ -92,7 +93,7 @@ public class CSVExporter {
 	 * @param doc the doc
 	 * @throws Exception the exception
 	 */
-	public void export(TemplateDocument doc )  throws Exception{
+	public synchronized void export(TemplateDocument doc )  throws Exception{
 		String name = doc.getTitle();
 		Map<Template,List<ItemInstance>> resultMap = doc.getItemInstances();
 		BufferedWriter writer = getCSVWriter(outputFile,resultMap.keySet());
@@ -121,7 +122,7 @@ public class CSVExporter {
 	 * @param doc the doc
 	 * @throws Exception the exception
 	 */
-	public void export(Document doc)  throws Exception{
+	public synchronized void export(Document doc)  throws Exception{
 		NumberFormat nf = NumberFormat.getInstance();
 		nf.setMaximumFractionDigits(3);
 		BufferedWriter writer = getCSVWriter(outputFile);
@@ -148,7 +149,7 @@ public class CSVExporter {
 	 * @param doc - the document to be exported
 	 * @throws Exception if something goes wrong
 	 */
-	public void export(Composition doc) throws Exception {
+	public synchronized void export(Composition doc) throws Exception {
 		BufferedWriter writer = getCSVWriterForComposition(outputFile);
 		int n = 1;
 		for(AnnotationVariable var: doc.getAnnotationVariables()){
@@ -204,7 +205,7 @@ public class CSVExporter {
 	 *
 	 * @throws Exception the exception
 	 */
-	public void flush() throws Exception {
+	public synchronized void flush() throws Exception {
 		if(csvWriter != null){
 			csvWriter.close();
 		}
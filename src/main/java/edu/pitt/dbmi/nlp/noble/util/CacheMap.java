@@ -8,11 +8,14 @@ import java.util.Map;
  * This class represents a hash map that can be capped at a given
  * limit, and periodically cleaned based on frequency of use or 
  * recency of use.
- *
+ * 
+ * @deprecated every call is synchronized and compact() sweeps the entire map,
+ * use {@link ConcurrentCache} instead.
  * @author tseytlin
  * @param <K> the key type
  * @param <V> the value type
  */
+@Deprecated
 public class CacheMap<K,V> extends HashMap<K, V> {
 	public static final int FREQUENCY = 0, TIME = 1;
 	private int sizeLimit,mode,totalHits;
@@ -0,0 +1,228 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+
+/**
+ * periodic checkpoint of a long running terminology import.
+ * An import reports its position in each stage as it goes. Every so many rows all storage tables
+ * are committed and positions are written to a checkpoint file that is atomically replaced,
+ * so an import that was killed can continue right after its last checkpoint.
+ *
+ * @author tseytlin
+ */
+public class Checkpoint {
+	public static final String CHECKPOINT_FILE = "checkpoint.properties";
+	public static final int DEFAULT_INTERVAL = 50000;
+	private NobleCoderTerminology.Storage storage;
+	private Properties properties = new Properties();
+	private List<Listener> listeners = new ArrayList<Listener>();
+	private File file;
+	private int interval, rows;
+	private boolean resumed;
+
+	/**
+	 * gets notified before a checkpoint is saved, so that state that is kept outside of
+	 * storage tables can be flushed and recorded in the checkpoint.
+	 */
+	public static interface Listener {
+		/**
+		 * checkpoint is about to be saved.
+		 *
+		 * @param checkpoint the checkpoint
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public void checkpoint(Checkpoint checkpoint) throws IOException;
+	}
+
+	/**
+	 * Instantiates a new checkpoint and loads previous checkpoint of this storage if there is one.
+	 *
+	 * @param storage the storage that is being imported into
+	 * @param interval the number of rows between checkpoints, 0 disables checkpoints
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public Checkpoint(NobleCoderTerminology.Storage storage, int interval) throws IOException {
+		this.storage = storage;
+		this.interval = interval;
+		if(interval > 0 && storage.getLocation() != null){
+			file = new File(storage.getLocation(),CHECKPOINT_FILE);
+			if(file.exists()){
+				InputStream in = new FileInputStream(file);
+				try{
+					properties.load(in);
+				}finally{
+					in.close();
+				}
+				resumed = !properties.isEmpty();
+			}
+		}
+	}
+
+	/**
+	 * Adds the checkpoint listener.
+	 *
+	 * @param l the l
+	 */
+	public void addListener(Listener l){
+		listeners.add(l);
+	}
+
+	/**
+	 * Gets the property that was saved with the checkpoint.
+	 *
+	 * @param key the key
+	 * @return the property
+	 */
+	public String getProperty(String key){
+		return properties.getProperty(key);
+	}
+
+	/**
+	 * Sets the property that is saved with the next checkpoint.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void setProperty(String key, String value){
+		properties.setProperty(key,value);
+	}
+
+	/**
+	 * Gets the last saved position in a stage.
+	 *
+	 * @param stage the stage
+	 * @return the position or null, if stage was not started
+	 */
+	public String getPosition(String stage){
+		return properties.getProperty(stage+".position");
+	}
+
+	/**
+	 * Gets the number of rows that were processed in a stage.
+	 *
+	 * @param stage the stage
+	 * @return the count
+	 */
+	public long getCount(String stage){
+		return Long.parseLong(properties.getProperty(stage+".count","0"));
+	}
+
+	/**
+	 * Checks if stage was completed.
+	 *
+	 * @param stage the stage
+	 * @return true, if is done
+	 */
+	public boolean isDone(String stage){
+		return Boolean.parseBoolean(properties.getProperty(stage+".done"));
+	}
+
+	/**
+	 * Checks if import was resumed from a previous checkpoint, that is if a checkpoint
+	 * file was loaded when this checkpoint was created. Positions recorded since then don't count.
+	 *
+	 * @return true, if is resumed
+	 */
+	public boolean isResumed(){
+		return resumed;
+	}
+
+	/**
+	 * record a position after a row was fully processed, save a checkpoint when the interval is reached.
+	 *
+	 * @param stage the stage
+	 * @param position the position of the row
+	 * @param count the number of rows processed in this stage
+	 * @return true, if checkpoint was saved
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public boolean update(String stage, String position, long count) throws IOException {
+		return update(stage,position,count,1);
+	}
+
+	/**
+	 * record a position after a batch of rows was fully processed, save a checkpoint when the interval is reached.
+	 *
+	 * @param stage the stage
+	 * @param position the position of the last row in a batch
+	 * @param count the number of rows processed in this stage
+	 * @param batch the number of rows in a batch
+	 * @return true, if checkpoint was saved
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public boolean update(String stage, String position, long count, int batch) throws IOException {
+		properties.setProperty(stage+".position",position);
+		properties.setProperty(stage+".count",""+count);
+		rows += batch;
+		if(file != null && rows >= interval){
+			save();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * mark stage as completed and save a checkpoint.
+	 *
+	 * @param stage the stage
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void done(String stage) throws IOException {
+		properties.setProperty(stage+".done","true");
+		save();
+	}
+
+	/**
+	 * commit storage tables and then atomically replace the checkpoint file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void save() throws IOException {
+		rows = 0;
+		if(file == null)
+			return;
+		for(Listener l: listeners)
+			l.checkpoint(this);
+		storage.getInfoMap().put("total.terms.per.word",""+storage.totalTermsPerWord);
+		storage.getInfoMap().put("max.terms.per.word",""+storage.maxTermsPerWord);
+		storage.commit();
+
+		File temp = new File(file.getParentFile(),CHECKPOINT_FILE+".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try{
+			properties.store(out,"Import Checkpoint");
+			out.flush();
+			((FileOutputStream)out).getFD().sync();
+		}finally{
+			out.close();
+		}
+		try{
+			Files.move(temp.toPath(),file.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		}catch(AtomicMoveNotSupportedException ex){
+			Files.move(temp.toPath(),file.toPath(),StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * remove checkpoint once import is finished.
+	 */
+	public void clear(){
+		properties.clear();
+		resumed = false;
+		if(file != null)
+			file.delete();
+	}
+}
@@ -4,9 +4,6 @@ import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology.TER
 import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology.getPersistenceDirectory;
 import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.getPreferredName;
 import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.getRarestWord;
-import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.loadTemporaryTermFiles;
-import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.removeTemporaryTermFiles;
-import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.saveTemporaryTermFile;
 import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.saveWordStats;
 import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.saveWordTermsInStorage;
 import static edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils.singleton;
@@ -17,6 +14,12 @@ import java.io.*;
 import java.net.URI;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -38,6 +41,7 @@ import edu.pitt.dbmi.nlp.noble.terminology.Terminology;
 import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderUtils;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.WordIndexBuilder;
 import edu.pitt.dbmi.nlp.noble.tools.TermFilter;
 import edu.pitt.dbmi.nlp.noble.tools.TextTools;
 
@@ -54,6 +58,9 @@ public class ConceptImporter {
 	private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 	private static ConceptImporter instance;
 	private boolean inMemory, compact, filterTerms;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private int checkpointInterval = Checkpoint.DEFAULT_INTERVAL;
+	private WordIndexBuilder wordIndex;
 
 
 	private static final String MRCONSO = "MRCONSO.RRF";
@@ -64,6 +71,155 @@ public class ConceptImporter {
 	private static final String MRHIER = "MRHIER.RRF";
 	private static final String MRFILES = "MRFILES.RRF";
 	private static final List<String> RRF_FILES = Arrays.asList(MRCONSO,MRDEF,MRSTY,MRSAB,MRHIER,MRREL,MRFILES);
+	private static final String TEMP_SORT_DIR = "tempSortRuns";
+	private static final String TEMP_ATOM_DIR = "tempAtomMap";
+	private static final String CONCEPT_STAGE = "concepts", CLASS_STAGE = "classes", WORD_STAGE = "words", WORD_RUNS = "word.runs";
+	private static final int CONSO_RECORD = 0, DEF_RECORD = 1, STY_RECORD = 2, HIER_RECORD = 3, CHILD_RECORD = 4;
+	private static final long PROGRESS_INTERVAL = 1000;
+	private static final int BATCH_SIZE = 1000, TASK_SIZE = 16;
+	
+	/**
+	 * number of rows that were processed, it is fired with LOADING_PROGRESS events
+	 * and it also knows how fast the rows were processed.
+	 */
+	public static class Progress extends Number {
+		private final long rows, time;
+		
+		/**
+		 * Instantiates a new progress.
+		 *
+		 * @param rows the number of processed rows
+		 * @param time the time it took to process them in milliseconds
+		 */
+		public Progress(long rows, long time){
+			this.rows = rows;
+			this.time = time;
+		}
+		
+		/**
+		 * Gets the rows.
+		 *
+		 * @return the rows
+		 */
+		public long getRows() {
+			return rows;
+		}
+		
+		/**
+		 * Gets the rows per second.
+		 *
+		 * @return the rows per second
+		 */
+		public double getRowsPerSecond(){
+			return (time > 0)?rows*1000.0/time:rows;
+		}
+		
+		public int intValue() {
+			return (int) Math.min(rows,Integer.MAX_VALUE);
+		}
+		
+		public long longValue() {
+			return rows;
+		}
+		
+		public float floatValue() {
+			return rows;
+		}
+		
+		public double doubleValue() {
+			return rows;
+		}
+		
+		public String toString(){
+			return ""+intValue();
+		}
+	}
+	
+	/**
+	 * concept with its normalized terms, that is ready to be saved.
+	 */
+	private static class NormalizedConcept {
+		private final Concept concept;
+		private final Set<String> terms;
+		
+		public NormalizedConcept(Concept concept, Set<String> terms){
+			this.concept = concept;
+			this.terms = terms;
+		}
+	}
+	
+	/**
+	 * converts a single item of an ontology into concepts, it is called from several threads at once.
+	 *
+	 * @param <T> the type of an item
+	 */
+	private static interface ConceptConverter<T> {
+		/**
+		 * convert an item.
+		 *
+		 * @param item the item
+		 * @return the list of concepts
+		 * @throws Exception the exception
+		 */
+		public List<Concept> convert(T item) throws Exception;
+	}
+	
+	/**
+	 * gets notified on the calling thread after a batch of items was saved.
+	 *
+	 * @param <T> the type of an item
+	 */
+	private static interface BatchListener<T> {
+		/**
+		 * batch of items was saved.
+		 *
+		 * @param items the items
+		 * @param conceptCount the number of concepts that were converted from items
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		public void saved(List<T> items, int conceptCount) throws IOException;
+	}
+	
+	/**
+	 * converts items into normalized concepts, large lists are split in halves that are converted in parallel.
+	 *
+	 * @param <T> the type of an item
+	 */
+	private class ConvertTask<T> extends RecursiveTask<List<NormalizedConcept>> {
+		private final NobleCoderTerminology terminology;
+		private final List<T> items;
+		private final ConceptConverter<T> converter;
+		
+		public ConvertTask(NobleCoderTerminology terminology, List<T> items, ConceptConverter<T> converter){
+			this.terminology = terminology;
+			this.items = items;
+			this.converter = converter;
+		}
+		
+		protected List<NormalizedConcept> compute() {
+			if(items.size() > TASK_SIZE){
+				int mid = items.size()/2;
+				ConvertTask<T> head = new ConvertTask<T>(terminology,items.subList(0,mid),converter);
+				ConvertTask<T> tail = new ConvertTask<T>(terminology,items.subList(mid,items.size()),converter);
+				tail.fork();
+				List<NormalizedConcept> list = head.compute();
+				list.addAll(tail.join());
+				return list;
+			}
+			List<NormalizedConcept> list = new ArrayList<NormalizedConcept>();
+			for(T item: items){
+				try{
+					for(Concept c: converter.convert(item))
+						list.add(normalize(terminology,c));
+				}catch(RuntimeException ex){
+					throw ex;
+				}catch(Exception ex){
+					throw new CompletionException(ex);
+				}
+			}
+			return list;
+		}
+	}
 	
 	
 	/**
@@ -141,6 +297,43 @@ public class ConceptImporter {
 		return filterTerms;
 	}
 
+	/**
+	 * Gets the number of threads that are used to parse RRF files and to convert ontology classes.
+	 *
+	 * @return the thread count
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Sets the number of threads that are used to parse RRF files and to convert ontology classes.
+	 *
+	 * @param threadCount the new thread count
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1,threadCount);
+	}
+
+	/**
+	 * Gets the number of concepts that are imported between checkpoints.
+	 *
+	 * @return the checkpoint interval
+	 */
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * Sets the number of concepts that are imported between checkpoints. At each checkpoint
+	 * all tables are committed, so that an interrupted import can be resumed from it, 0 disables checkpoints.
+	 *
+	 * @param checkpointInterval the new checkpoint interval
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = Math.max(0,checkpointInterval);
+	}
+
 	/**
 	 *  Enable filtering of UMLS terms to remove bady synonymy This
 	 * implementation is based on Hettne, Kristina M., et al. "Rewriting and
@@ -152,25 +345,6 @@ public class ConceptImporter {
 		this.filterTerms = filterTerms;
 	}
 
-	/**
-	 * add concept.
-	 *
-	 * @param term the term
-	 * @param c the c
-	 * @throws TerminologyException the terminology exception
-	 */
-	private void addConceptAndRoot(NobleCoderTerminology term, Concept c) throws TerminologyException{
-		if(term == null || c == null)
-			return;
-		//pcs.firePropertyChange(LOADING_MESSAGE,null,"importing concept "+c.getName()+" ..");
-		addConcept(term,c);
-		
-		// if not relations or no breader relations, then it is root
-		if(c.getRelationMap() == null || !c.getRelationMap().containsKey(Relation.BROADER))
-			term.addRoot(c.getCode());
-	}
-
-	
 	/**
 	 * load OBO file into terminology.
 	 *
@@ -212,11 +386,22 @@ public class ConceptImporter {
 			pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading "+file.getName()+" ...");
 			Map<String,Concept> content = loadOBO(file);
 			pcs.firePropertyChange(LOADING_TOTAL,null,content.size());
-			int i = 0;
-			for(Concept c: content.values()){
-				addConceptAndRoot(terminology, c);
-				pcs.firePropertyChange(LOADING_PROGRESS,null,i++);
-			}
+			addConcepts(terminology,new ArrayList<Concept>(content.values()),new ConceptConverter<Concept>() {
+				public List<Concept> convert(Concept c) {
+					return Collections.singletonList(c);
+				}
+			},false,new BatchListener<Concept>() {
+				private int count;
+				public void saved(List<Concept> items, int conceptCount) {
+					for(Concept c: items){
+						// if not relations or no breader relations, then it is root
+						if(c.getRelationMap() == null || !c.getRelationMap().containsKey(Relation.BROADER))
+							terminology.addRoot(c.getCode());
+					}
+					count += items.size();
+					pcs.firePropertyChange(LOADING_PROGRESS,null,count);
+				}
+			});
 		}
 		
 		if(!compact){
@@ -497,15 +682,10 @@ public class ConceptImporter {
 		if("done".equals(storage.getInfoMap().get("status")))
 			return;
 		
-		// handle memory nightmare (save when you reach 90%)
-		/*
-		final NobleCoderTerminology t = term;
-		MemoryManager.setMemoryThreshold(new Runnable(){
-			public void run() {
-				t.crash();
-			}
-		},0.95);
-		*/
+		// commit ever so often, so that an interrupted import could continue
+		Checkpoint checkpoint = new Checkpoint(storage,inmemory?0:getCheckpointInterval());
+		WordIndexBuilder words = createWordIndex(storage,checkpoint);
+		long saved = checkpoint.getCount(CLASS_STAGE);
 		
 		// load classes for the very first time
 		pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading Ontology "+ontology.getName()+" from "+ontology.getLocation()+" ...");
@@ -523,40 +703,59 @@ public class ConceptImporter {
 		// get all classes
 		pcs.firePropertyChange(LOADING_MESSAGE,null,"Iterating Over Ontology Classes ...");
 		//IResourceIterator it = ontology.getAllClasses();
-		IClass [] classes = root.getSubClasses();
+		final IClass [] classes = root.getSubClasses();
+		final String [] codes = new String [classes.length];
 		pcs.firePropertyChange(LOADING_TOTAL,null,classes.length);
 		
+		List<Integer> pending = new ArrayList<Integer>();
 		for(int i=0;i<classes.length;i++){
 			IClass cls = classes[i];
 			
 			String code = cls.getName();
-			if(storage.getConceptMap().containsKey(code))
-				continue;
-			
-			// create concept object
-			Concept concept = createConcept(cls);
-					
-			// add concept
-			addConcept(term,concept,!inmemory);
+			codes[i] = code;
 			
-			if(includeInstances){
-				for(IInstance inst: cls.getDirectInstances()){
-					addConcept(term,createConcept(inst),!inmemory);
+			// classes after the last checkpoint could have been saved partially, so they are rebuilt
+			if(checkpoint.isResumed() && i >= saved){
+				storage.getConceptMap().remove(code);
+				if(includeInstances){
+					for(IInstance inst: cls.getDirectInstances())
+						storage.getConceptMap().remove(inst.getName());
 				}
 			}
-			
-			// commit ever so often
-			pcs.firePropertyChange(LOADING_PROGRESS,null,i);
-			
-			storage.getInfoMap().put("offset",""+i);
+			if(!storage.getConceptMap().containsKey(code))
+				pending.add(i);
 		}
 		
-		// load temp terms 
+		// create concept objects in parallel and add them in batches
+		addConcepts(term,pending,new ConceptConverter<Integer>() {
+			public List<Concept> convert(Integer i) {
+				List<Concept> concepts = new ArrayList<Concept>();
+				// ontology is not thread safe, so only one class is read from it at a time
+				synchronized(ontology){
+					concepts.add(createConcept(classes[i]));
+					if(includeInstances){
+						for(IInstance inst: classes[i].getDirectInstances())
+							concepts.add(createConcept(inst));
+					}
+				}
+				return concepts;
+			}
+		},!inmemory,new BatchListener<Integer>() {
+			public void saved(List<Integer> items, int conceptCount) throws IOException {
+				// commit ever so often
+				int i = items.get(items.size()-1);
+				pcs.firePropertyChange(LOADING_PROGRESS,null,i);
+				checkpoint.update(CLASS_STAGE,codes[i],i+1,items.size());
+			}
+		});
+		
+		// load word index 
 		if(!inmemory){
-			File tempDir = new File(storage.getLocation(),NobleCoderTerminology.TEMP_WORD_DIR);
-			loadTemporaryTermFiles(pcs,storage, tempDir,compact);
-			removeTemporaryTermFiles(pcs, tempDir);
+			checkpoint.done(CLASS_STAGE);
+			loadWordIndex(storage,words,checkpoint);
 		}
+		words.dispose();
+		wordIndex = null;
 		
 		// load roots		
 		for(IClass r: ontology.getRootClasses())
@@ -575,6 +774,7 @@ public class ConceptImporter {
 		if(!inmemory){
 			storage.getInfoMap().put("status","done");
 			term.save();
+			checkpoint.clear();
 			term.reload();
 		}
 		
@@ -825,16 +1025,12 @@ public class ConceptImporter {
 		if("done".equals(storage.getInfoMap().get("status")))
 			return;
 		
-		// handle memory nightmare (save when you reach 90%)
-		final NobleCoderTerminology t = terminology;
-		/*MemoryManager.setMemoryThreshold(new Runnable(){
-			public void run() {
-				t.crash();
-			}
-		},0.95);*/
+		// continue from the last checkpoint of an import that was interrupted
+		Checkpoint checkpoint = new Checkpoint(storage,inmemory?0:getCheckpointInterval());
+		if(checkpoint.isResumed())
+			pcs.firePropertyChange(LOADING_MESSAGE,null,"Resuming import from the last checkpoint ...");
 		
 		// try to extract the name from the directory
-		int i=0,offset = 0;
 		storage.getInfoMap().put("name",dir.getName());
 		Pattern pt = Pattern.compile("([a-zA-Z\\s_]+)[_\\-\\s]+([\\d_]+[A-Z]?)");
 		Matcher mt = pt.matcher(dir.getName());
@@ -885,25 +1081,13 @@ public class ConceptImporter {
 		}
 		
 		// read in source information
-		offset = 0;
-		String RRFile = "MRSAB.RRF";
-		if(storage.getInfoMap().containsKey(RRFile)){
-			offset = Integer.parseInt(storage.getInfoMap().get(RRFile));
-		}
+		String RRFile = MRSAB;
 		if(!new File(dir,RRFile).exists()){
 			pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
-			offset = Integer.MAX_VALUE;
-		}
-		// if offset is smaller then total, read file
-		if(offset < rowCount.get(RRFile)){
-			i = 0;
+		}else if(!checkpoint.isDone(RRFile)){
 			pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading "+RRFile+" file ...");
 			r = new BufferedReader(new FileReader(new File(dir,RRFile)));
 			for(String line = r.readLine(); line != null; line = r.readLine()){
-				if(i < offset){
-					i++;
-					continue;
-				}
 				//http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.source_information_file__mrsabrrf/?report=objectonly
 				String [] fields = line.split("\\|");
 				String code = fields[3].trim();
@@ -918,8 +1102,6 @@ public class ConceptImporter {
 				if(filterSources == null || filterSources.contains(src.getCode())){
 					storage.getSourceMap().put(src.getCode(),src);
 				}
-				i++;
-				storage.getInfoMap().put(RRFile,""+i);
 			}
 			r.close();
 		}else{
@@ -931,194 +1113,27 @@ public class ConceptImporter {
 		pcs.firePropertyChange(LOADING_MESSAGE,null,"Saving Meta Information ...");
 		storage.commit(storage.getInfoMap());
 		storage.commit(storage.getSourceMap());
+		checkpoint.done(MRSAB);
 		
-		// if filtering by semantic types, lets preload a list of kosher CUIs
-		Set<String> filteredCUIs = new HashSet<String>();
-		if(filterSemTypes != null && !filterSemTypes.isEmpty()){
-			boolean checkTUIs = filterSemTypes.get(0).matches("T[0-9]+");
-			// go over semantic types
-			RRFile = "MRSTY.RRF";
-			if(!new File(dir,RRFile).exists()){
-				pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
-				offset = Integer.MAX_VALUE;
-			}
-			// if offset is smaller then total, read file
-			i=0;
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading "+RRFile+" file ...");
-			pcs.firePropertyChange(LOADING_TOTAL,null,rowCount.get(RRFile));
-			r = new BufferedReader(new FileReader(new File(dir,RRFile)));
-			for(String line = r.readLine(); line != null; line = r.readLine()){
-				// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.definitions_file__mrdefrrf/?report=objectonly
-				String [] fields = line.split("\\|");
-				if(fields.length >= 2 ){
-					String cui = fields[0].trim();
-					String tui = fields[1].trim();
-					String text = (fields.length>2)?fields[3].trim():"";
-					
-					// get concept from map
-					SemanticType st = SemanticType.getSemanticType(text,tui);
-					if(filterSemTypes.contains(checkTUIs?st.getCode():st.getName()))
-						filteredCUIs.add(cui);
-				}
-			}
-			r.close();
-			if(filteredCUIs.isEmpty()){
-				pcs.firePropertyChange(LOADING_MESSAGE,null,"Error: Could not find any concepts matching semantic type filter");
-				return;
-			}
-		}
-		
-		// lets first build a map of concepts using existing concept map
-		//Set<String> rootCUIs = new LinkedHashSet<String>();
-		Map<String,String> aui2cui = new HashMap<>();
-		int rowcount = 0,step;
-		storage.useTempWordFolder = true;
-		offset = 0;
-		RRFile = "MRCONSO.RRF";
-		if(!new File(dir,RRFile).exists())
-			throw new TerminologyException("RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist!"));
-		
-		if(storage.getInfoMap().containsKey(RRFile)){
-			offset = Integer.parseInt(storage.getInfoMap().get(RRFile));
-		}
-		// if offset is smaller then total, read file
-		if(offset < rowCount.get(RRFile)){
-			i = 0;
-			rowcount = rowCount.get(RRFile);
-			step = rowcount/100;
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading "+RRFile+" file ...");
-			pcs.firePropertyChange(LOADING_TOTAL,null,rowcount);
-			r = new BufferedReader(new FileReader(new File(dir,RRFile)));
-			Concept previousConcept = null;
-			//boolean crash = false;
-			for(String line = r.readLine(); line != null; line = r.readLine()){
-				if(i < offset){
-					i++;
-					continue;
-				}
-				// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.concept_names_and_sources_file__m/?report=objectonly
-				String [] fields = line.split("\\|");
-				if(fields.length >= 14 ){
-					String cui = fields[0].trim();
-					String ts =  fields[2].trim();
-					String src  = fields[11].trim();
-					String text = fields[14].trim();
-					String lang = fields[1].trim();
-					String form = fields[12].trim();
-					String code = fields[13].trim();
-					String pref = fields[6].trim();
-					String sup  = fields[16].trim();
-
-					String aui  = fields[7].trim();
-
-
-					// add atom to cui mapping
-					aui2cui.put(aui,cui);
-
-					// display progress bar
-					if((i % step) == 0) {
-						pcs.firePropertyChange(LOADING_PROGRESS, null, i);
-					}
-
-					Source source = Source.getSource(src);
-					
-
-					i++;
-					
-					// filter out by language
-					if(!isIncluded(filterLang,lang))
-						continue;
-					
-					// add a root candidate
-					//if("SRC".equals(src) && code.startsWith("V-"))
-					//	rootCUIs.add(cui);
-					
-					// filter out by source
-					if(!isIncluded(filterSources,src)){
-						if(!(code.startsWith("V-") && isIncluded(filterSources,code.substring(2)))){
-							continue;
-						}
-					}
-					
-					// filter out by semantic types (except if it is a root)
-					if(filterSemTypes != null && !filteredCUIs.contains(cui)){
-						if(!(code.startsWith("V-") && isIncluded(filterSources,code.substring(2)))){
-							continue;
-						}
-					}
-					
-					// honor suppress flag
-					if(supressObsoleteTerms && "O".equals(sup))
-						continue;
-					
-					// get concept from map
-					Concept c = terminology.convertConcept(storage.getConceptMap().get(cui));
-					if(c == null){
-						// if concept is not in map, see if previous is it
-						if(previousConcept != null && previousConcept.getCode().equals(cui)){
-							c = previousConcept;
-						}else{
-							c = new Concept(cui,text);
-						}
-					}
-
-					// if term is preferred in some source
-					if("PT".equals(form) || "PN".equals(form))
-						c.setName(text);
-
-					// create a term
-					Term term = new Term(text);
-					term.setForm(form);
-					term.setLanguage(lang);
-					term.setSource(source);
-					if("y".equalsIgnoreCase(pref) && "P".equalsIgnoreCase(ts))
-						term.setPreferred(true);
-					
-					// add to concept
-					c.addSynonym(text);
-					c.addSource(source);
-					c.addTerm(term);
-					c.addCode(code, source);
-
-					
-					// now see if we pretty much got the entire concept and should put it in
-					if(previousConcept != null && !previousConcept.getCode().equals(cui)){
-						// figure out the best preferred term
-						previousConcept.setName(getPreferredName(previousConcept));
-						// add concept
-						addConcept(terminology,previousConcept,true);
-						storage.getInfoMap().put("max.terms.per.word",""+storage.maxTermsPerWord);
-						storage.getInfoMap().put("total.terms.per.word",""+storage.totalTermsPerWord);
-						/*if(crash)
-							crash();*/
-					}
-					previousConcept = c;
-				}
-				storage.getInfoMap().put(RRFile,""+i);
-			
-			}
-			// save last one
-			if(previousConcept != null){
-				// figure out the best preferred term
-				previousConcept.setName(getPreferredName(previousConcept));
-				addConcept(terminology,previousConcept,true);
-			}
-			r.close();
-		}else{
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Skipping "+RRFile+" file ...");
+		// parse concepts unless they were all saved before the last checkpoint
+		WordIndexBuilder words = createWordIndex(storage,checkpoint);
+		if(checkpoint.isDone(CONCEPT_STAGE)){
+			pcs.firePropertyChange(LOADING_MESSAGE,null,"Skipping Concepts ...");
+		}else if(!loadRRFConcepts(terminology,dir,rowCount,filterLang,filterSources,filterSemTypes,relationSources,supressObsoleteTerms,checkpoint)){
+			return;
 		}
 		
 		// commit info terms and regex
 		pcs.firePropertyChange(LOADING_MESSAGE,null,"Saving Term Information ...");
+		storage.getInfoMap().put("total.terms.per.word",""+storage.totalTermsPerWord);
+		storage.getInfoMap().put("max.terms.per.word",""+storage.maxTermsPerWord);
 		storage.commit(storage.getInfoMap());
 		storage.commit(storage.getTermMap());
 		storage.commit(storage.getRegexMap());
 		storage.commit(storage.getConceptMap());
 
-		// now do temp word dir
-		File tempDir = new File(storage.getLocation(),NobleCoderTerminology.TEMP_WORD_DIR);
-		loadTemporaryTermFiles(pcs,storage, tempDir,compact);
-		
+		// now build word index
+		loadWordIndex(storage,words,checkpoint);
 		
 		// save some meta information
 		storage.getInfoMap().put("word.count",""+storage.getWordMap().size());
@@ -1134,27 +1149,28 @@ public class ConceptImporter {
 		storage.commit(storage.getInfoMap());
 		storage.commit(storage.getWordMap());
 		storage.commit(storage.getWordStatMap());
-		
-		// lets go over definitions
+
+		//process relationships?
+			/*
 		offset = 0;
-		RRFile = "MRDEF.RRF";
+		RRFile = "MRREL.RRF";
 		if(storage.getInfoMap().containsKey(RRFile)){
 			offset = Integer.parseInt(storage.getInfoMap().get(RRFile));
 		}
-		
 		if(!new File(dir,RRFile).exists()){
 			pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
 			offset = Integer.MAX_VALUE;
 		}
-			
 		// if offset is smaller then total, read file
 		if(offset < rowCount.get(RRFile)){
-			i = 0;
+			i=0;
 			rowcount = rowCount.get(RRFile);
 			step = rowcount/100;
 			pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading "+RRFile+" file ...");
 			pcs.firePropertyChange(LOADING_TOTAL,null,rowcount);
 			r = new BufferedReader(new FileReader(new File(dir,RRFile)));
+			List<String> filterRelations = Arrays.asList("RB","RN","PAR","CHD");
+			//Concept previousConcept = null;
 			for(String line = r.readLine(); line != null; line = r.readLine()){
 				if(i < offset){
 					i++;
@@ -1163,23 +1179,50 @@ public class ConceptImporter {
 				// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.definitions_file__mrdefrrf/?report=objectonly
 				String [] fields = line.split("\\|");
 				if(fields.length >= 5 ){
-					String cui = fields[0].trim();
-					String src = fields[4].trim();
-					String text = fields[5].trim();
+					String cui1 = fields[0].trim();
+					String cui2 = fields[4].trim();
+					String rel = fields[3].trim();
+					String src = fields[10].trim();
 					
-					Definition d = Definition.getDefinition(text);
-					d.setSource(Source.getSource(src));
+					// filter by known source if
+					if(!isIncluded(relationSources,src,true) && !"SRC".equals(src))
+						continue;
 					
-					// get concept from map
-					Concept c = terminology.convertConcept(storage.getConceptMap().get(cui));
-					if(c != null){
-						c.addDefinition(d);
-						// replace with new concept
-						storage.getConceptMap().put(cui,c.getContent());
-					}
-					//if((i % step) == 0)
-					pcs.firePropertyChange(LOADING_PROGRESS,null,i);
+					// filter by known relationship
+					if(filterRelations.contains(rel) && !cui1.equals(cui2)){
+						Relation re = null;
+						Relation ire = null;
+						if("RB".equals(rel) || "PAR".equals(rel)){
+							re = Relation.BROADER;
+							ire = Relation.NARROWER;
+						}else if("RN".equals(rel) || "CHD".equals(rel)){
+							re = Relation.NARROWER;
+							ire = Relation.BROADER;
+						}
+						
+						// get concept from map
+						Concept c1 = terminology.convertConcept(storage.getConceptMap().get(cui1));
+						if(c1 != null && re != null){
+							Concept c2 = terminology.convertConcept(storage.getConceptMap().get(cui2));
+							if(c2 != null){
+								// if there is SRC to SRC mapping, skip it
+								boolean s1 = c1.getSources().length == 1 && "SRC".equals(c1.getSources()[0].getCode());
+								boolean s2 = c2.getSources().length == 1 && "SRC".equals(c2.getSources()[0].getCode());
+								// skip mappings between SRC and SRC, since they are useless
+								if(!(s1 && s2)){
+									// replace with new concept on the source
+									c1.addRelatedConcept(re,cui2);
+									storage.getConceptMap().put(cui1,c1.getContent());
+									// replace with new concept on destination
+									c2.addRelatedConcept(ire, cui1);
+									storage.getConceptMap().put(cui2,c2.getContent());
+								}
+							}
+						}
+					}	
 				}
+				//if((i % step) == 0)
+				pcs.firePropertyChange(LOADING_PROGRESS,null,i);
 				i++;
 				storage.getInfoMap().put(RRFile,""+i);
 			}
@@ -1188,236 +1231,8 @@ public class ConceptImporter {
 			pcs.firePropertyChange(LOADING_MESSAGE,null,"Skipping "+RRFile+" file ...");
 		}
 		
-		// go over semantic types
-		offset = 0;
-		RRFile = "MRSTY.RRF";
-		if(storage.getInfoMap().containsKey(RRFile)){
-			offset = Integer.parseInt(storage.getInfoMap().get(RRFile));
-		}
-		if(!new File(dir,RRFile).exists()){
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
-			offset = Integer.MAX_VALUE;
-		}
-		// if offset is smaller then total, read file
-		if(offset < rowCount.get(RRFile)){
-			i=0;
-			rowcount = rowCount.get(RRFile);
-			step = rowcount/100;
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading "+RRFile+" file ...");
-			pcs.firePropertyChange(LOADING_TOTAL,null,rowcount);
-			r = new BufferedReader(new FileReader(new File(dir,RRFile)));
-			for(String line = r.readLine(); line != null; line = r.readLine()){
-				if(i < offset){
-					i++;
-					continue;
-				}
-				// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.definitions_file__mrdefrrf/?report=objectonly
-				String [] fields = line.split("\\|");
-				if(fields.length >= 2 ){
-					String cui = fields[0].trim();
-					String tui = fields[1].trim();
-					String text = (fields.length>2)?fields[3].trim():"";
-					
-					// get concept from map
-					Concept c = terminology.convertConcept(storage.getConceptMap().get(cui));
-					if(c != null){
-						c.addSemanticType(SemanticType.getSemanticType(text,tui));
-						// replace with new concept
-						storage.getConceptMap().put(cui,c.getContent());
-					}
-				}
-				//if((i % step) == 0)
-				pcs.firePropertyChange(LOADING_PROGRESS,null,i);
-				i++;
-				storage.getInfoMap().put(RRFile,""+i);
-			}
-			r.close();
-		}else{
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Skipping "+RRFile+" file ...");
-		}
-
-
-
-
-		//process hierarchy
-		offset = 0;
-
-		RRFile = MRHIER;
-		Set<String> rootCUIs = new LinkedHashSet<>();
-
-		if(storage.getInfoMap().containsKey(RRFile)){
-			offset = Integer.parseInt(storage.getInfoMap().get(RRFile));
-		}
-		if(!new File(dir,RRFile).exists()){
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
-			offset = Integer.MAX_VALUE;
-		}
-		// if offset is smaller then total, read file
-		if(offset < rowCount.get(RRFile)){
-			i=0;
-			rowcount = rowCount.get(RRFile);
-			step = rowcount/1000;
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading "+RRFile+" file ...");
-			pcs.firePropertyChange(LOADING_TOTAL,null,rowcount);
-			r = new BufferedReader(new FileReader(new File(dir,RRFile)));
-
-
-			for(String line = r.readLine(); line != null; line = r.readLine()){
-				if(i < offset){
-					i++;
-					continue;
-				}
-				// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.definitions_file__mrdefrrf/?report=objectonly
-				if((i % step) == 0)
-					pcs.firePropertyChange(LOADING_PROGRESS,null,i);
-				i++;
-				String [] fields = line.split("\\|");
-				if(fields.length >= 7 ){
-					String cui = fields[0].trim();
-					// skip if cui is blank (I think it is a different context)
-					if(cui.length() == 0)
-						continue;
-
-					String aui = fields[1].trim();
-					String cxt = fields[2].trim();
-					String src = fields[4].trim();
-					String rel = fields[5].trim();
-					String ans = fields[6].trim();
-
-
-					// filter by known source if
-					if(!isIncluded(relationSources,src,true) && !"SRC".equals(src))
-						continue;
-
-					// get concept from map
-					Concept c1 = terminology.convertConcept(storage.getConceptMap().get(cui));
-
-					if(c1 != null){
-						String [] path = ans.split("\\.");
-						if(path.length > 0){
-
-							// add root
-							if(aui2cui.containsKey(path[0]))
-								rootCUIs.add(aui2cui.get(path[0]));
-							// add parent
-							String pcui = aui2cui.get(path[path.length-1]);
-							c1.getRelationMap().computeIfAbsent(Relation.BROADER.getName(),k->new HashSet<>()).add(pcui);
-
-							// add ancestors
-							c1.getRelationMap().computeIfAbsent(Relation.ANCESTORS.getName(),k->new HashSet<>()).addAll(
-											Arrays.stream(path).map(p->aui2cui.get(p)).
-											collect(Collectors.toList()));
-
-							//save content
-							storage.getConceptMap().put(cui,c1.getContent());
-
-							// set children
-							Concept c2 =  terminology.convertConcept(storage.getConceptMap().get(pcui));
-							if(c2 != null){
-								c2.getRelationMap().computeIfAbsent(Relation.NARROWER.getName(),k->new HashSet<>()).add(cui);
-								storage.getConceptMap().put(pcui,c2.getContent());
-							}
-						}
-					}
-				}
-
-				storage.getInfoMap().put(RRFile,""+i);
-			}
-			r.close();
-		}else{
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Skipping "+RRFile+" file ...");
-		}
-
-		// save roots
-		for(String key : rootCUIs){
-			if(storage.getConceptMap().containsKey(key)){
-				storage.getRootMap().put(key,key);
-			}
-		}
-
-		//process relationships?
-			/*
-		offset = 0;
-		RRFile = "MRREL.RRF";
-		if(storage.getInfoMap().containsKey(RRFile)){
-			offset = Integer.parseInt(storage.getInfoMap().get(RRFile));
-		}
-		if(!new File(dir,RRFile).exists()){
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
-			offset = Integer.MAX_VALUE;
-		}
-		// if offset is smaller then total, read file
-		if(offset < rowCount.get(RRFile)){
-			i=0;
-			rowcount = rowCount.get(RRFile);
-			step = rowcount/100;
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Loading "+RRFile+" file ...");
-			pcs.firePropertyChange(LOADING_TOTAL,null,rowcount);
-			r = new BufferedReader(new FileReader(new File(dir,RRFile)));
-			List<String> filterRelations = Arrays.asList("RB","RN","PAR","CHD");
-			//Concept previousConcept = null;
-			for(String line = r.readLine(); line != null; line = r.readLine()){
-				if(i < offset){
-					i++;
-					continue;
-				}
-				// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.definitions_file__mrdefrrf/?report=objectonly
-				String [] fields = line.split("\\|");
-				if(fields.length >= 5 ){
-					String cui1 = fields[0].trim();
-					String cui2 = fields[4].trim();
-					String rel = fields[3].trim();
-					String src = fields[10].trim();
-					
-					// filter by known source if
-					if(!isIncluded(relationSources,src,true) && !"SRC".equals(src))
-						continue;
-					
-					// filter by known relationship
-					if(filterRelations.contains(rel) && !cui1.equals(cui2)){
-						Relation re = null;
-						Relation ire = null;
-						if("RB".equals(rel) || "PAR".equals(rel)){
-							re = Relation.BROADER;
-							ire = Relation.NARROWER;
-						}else if("RN".equals(rel) || "CHD".equals(rel)){
-							re = Relation.NARROWER;
-							ire = Relation.BROADER;
-						}
-						
-						// get concept from map
-						Concept c1 = terminology.convertConcept(storage.getConceptMap().get(cui1));
-						if(c1 != null && re != null){
-							Concept c2 = terminology.convertConcept(storage.getConceptMap().get(cui2));
-							if(c2 != null){
-								// if there is SRC to SRC mapping, skip it
-								boolean s1 = c1.getSources().length == 1 && "SRC".equals(c1.getSources()[0].getCode());
-								boolean s2 = c2.getSources().length == 1 && "SRC".equals(c2.getSources()[0].getCode());
-								// skip mappings between SRC and SRC, since they are useless
-								if(!(s1 && s2)){
-									// replace with new concept on the source
-									c1.addRelatedConcept(re,cui2);
-									storage.getConceptMap().put(cui1,c1.getContent());
-									// replace with new concept on destination
-									c2.addRelatedConcept(ire, cui1);
-									storage.getConceptMap().put(cui2,c2.getContent());
-								}
-							}
-						}
-					}	
-				}
-				//if((i % step) == 0)
-				pcs.firePropertyChange(LOADING_PROGRESS,null,i);
-				i++;
-				storage.getInfoMap().put(RRFile,""+i);
-			}
-			r.close();
-		}else{
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Skipping "+RRFile+" file ...");
-		}
-		
-		
-		// try to create root table, by going over all concepts
+		
+		// try to create root table, by going over all concepts
 		offset = 0;
 		i = 0;
 		RRFile = "ROOTS";
@@ -1461,10 +1276,11 @@ public class ConceptImporter {
 		pcs.firePropertyChange(LOADING_MESSAGE,null,"Saving Concept Information ...");
 		storage.getInfoMap().put("status","done");
 		terminology.save();
+		checkpoint.clear();
 		
-				
 		// remove temp word files 
-		removeTemporaryTermFiles(pcs, tempDir);
+		words.dispose();
+		wordIndex = null;
 		
 		// dispose of terminology and reload
 		terminology.reload();
@@ -1481,6 +1297,325 @@ public class ConceptImporter {
 	
 	
 	
+	/**
+	 * parse MRCONSO, MRDEF, MRSTY and MRHIER files in parallel, sort them by CUI and
+	 * add each concept to terminology once all of its rows are known.
+	 *
+	 * @param terminology the terminology
+	 * @param dir the RRF directory
+	 * @param rowCount the row count of RRF files
+	 * @param filterLang the languages to include
+	 * @param filterSources the sources to include
+	 * @param filterSemTypes the semantic types to include
+	 * @param relationSources the sources of hierarchy to include
+	 * @param supressObsoleteTerms the supress obsolete terms
+	 * @param checkpoint the checkpoint
+	 * @return true, if concepts were loaded
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws TerminologyException the terminology exception
+	 */
+	private boolean loadRRFConcepts(NobleCoderTerminology terminology, File dir, Map<String,Integer> rowCount, List<String> filterLang, List<String> filterSources,
+			List<String> filterSemTypes, List<String> relationSources, boolean supressObsoleteTerms, Checkpoint checkpoint) throws IOException, TerminologyException {
+		NobleCoderTerminology.Storage storage = terminology.getStorage();
+		// parse MRCONSO, MRDEF and MRSTY in parallel chunks and sort their rows by CUI
+		RRFSorter sorter = new RRFSorter(new File(storage.getLocation(),TEMP_SORT_DIR),getThreadCount());
+		final AtomMap aui2cui = new AtomMap(new File(storage.getLocation(),TEMP_ATOM_DIR));
+		try{
+			final List<String> languages = filterLang;
+			final List<String> sources = filterSources;
+			final List<String> hierarchySources = relationSources;
+			final List<String> semanticTypes = (filterSemTypes != null && !filterSemTypes.isEmpty())?filterSemTypes:null;
+			final boolean checkTUIs = semanticTypes != null && semanticTypes.get(0).matches("T[0-9]+");
+			final boolean suppress = supressObsoleteTerms;
+			final Set<String> filteredCUIs = ConcurrentHashMap.newKeySet();
+			final Set<String> includedCUIs = ConcurrentHashMap.newKeySet();
+			final Set<String> pendingCUIs = ConcurrentHashMap.newKeySet();
+			
+			// make sure that semantic type table is loaded before workers use it
+			SemanticType.isDefinedSemanticType("");
+			
+			String RRFile = MRCONSO;
+			if(!new File(dir,RRFile).exists())
+				throw new TerminologyException("RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist!"));
+			sorter.add(new File(dir,RRFile),new RRFSorter.RowHandler() {
+				public void parse(String[] fields, long position, List<RRFSorter.Record> records) {
+					// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.concept_names_and_sources_file__m/?report=objectonly
+					if(fields.length < 15)
+						return;
+					String cui = fields[0].trim();
+					String lang = fields[1].trim();
+					String ts =  fields[2].trim();
+					String pref = fields[6].trim();
+					String aui  = fields[7].trim();
+					String src  = fields[11].trim();
+					String form = fields[12].trim();
+					String code = fields[13].trim();
+					String text = fields[14].trim();
+					String sup  = (fields.length>16)?fields[16].trim():"";
+					
+					// add atom to cui mapping
+					try{
+						aui2cui.put(aui,cui);
+					}catch(IOException ex){
+						throw new UncheckedIOException(ex);
+					}
+					
+					// filter out by language
+					if(!isIncluded(languages,lang))
+						return;
+					
+					// filter out by source
+					boolean root = code.startsWith("V-") && isIncluded(sources,code.substring(2));
+					if(!isIncluded(sources,src) && !root)
+						return;
+					
+					// honor suppress flag
+					if(suppress && "O".equals(sup))
+						return;
+					
+					// filter out by semantic types (except if it is a root) once all semantic types are known
+					boolean conditional = semanticTypes != null && !root;
+					(conditional?pendingCUIs:includedCUIs).add(cui);
+					records.add(new RRFSorter.Record(cui,CONSO_RECORD,position,text,lang,src,form,code,pref,ts,conditional?"1":""));
+				}
+			});
+			
+			RRFile = MRDEF;
+			if(new File(dir,RRFile).exists()){
+				sorter.add(new File(dir,RRFile),new RRFSorter.RowHandler() {
+					public void parse(String[] fields, long position, List<RRFSorter.Record> records) {
+						// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.definitions_file__mrdefrrf/?report=objectonly
+						if(fields.length > 5)
+							records.add(new RRFSorter.Record(fields[0].trim(),DEF_RECORD,position,fields[4].trim(),fields[5].trim()));
+					}
+				});
+			}else{
+				pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
+			}
+			
+			RRFile = MRSTY;
+			if(new File(dir,RRFile).exists()){
+				sorter.add(new File(dir,RRFile),new RRFSorter.RowHandler() {
+					public void parse(String[] fields, long position, List<RRFSorter.Record> records) {
+						if(fields.length < 2)
+							return;
+						String cui = fields[0].trim();
+						String tui = fields[1].trim();
+						String text = (fields.length>3)?fields[3].trim():"";
+						
+						// if filtering by semantic types, lets make a list of kosher CUIs
+						if(semanticTypes != null){
+							SemanticType st = SemanticType.getSemanticType(text,tui);
+							if(semanticTypes.contains(checkTUIs?st.getCode():st.getName()))
+								filteredCUIs.add(cui);
+						}
+						records.add(new RRFSorter.Record(cui,STY_RECORD,position,tui,text));
+					}
+				});
+			}else{
+				pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
+			}
+			awaitRRFSorter(sorter,"Loading "+MRCONSO+", "+MRDEF+" and "+MRSTY+" files ...",getRowCount(rowCount,MRCONSO,MRDEF,MRSTY));
+			
+			if(semanticTypes != null){
+				if(filteredCUIs.isEmpty()){
+					pcs.firePropertyChange(LOADING_MESSAGE,null,"Error: Could not find any concepts matching semantic type filter");
+					return false;
+				}
+				for(String cui: pendingCUIs){
+					if(filteredCUIs.contains(cui))
+						includedCUIs.add(cui);
+				}
+				pendingCUIs.clear();
+			}
+			
+			// now that atoms are known, parse hierarchy
+			RRFile = MRHIER;
+			if(new File(dir,RRFile).exists()){
+				aui2cui.build();
+				sorter.add(new File(dir,RRFile),new RRFSorter.RowHandler() {
+					public void parse(String[] fields, long position, List<RRFSorter.Record> records) {
+						// parse each line ref: http://www.ncbi.nlm.nih.gov/books/NBK9685/table/ch03.T.computable_hierarchies_file_mrhie/?report=objectonly
+						if(fields.length < 7)
+							return;
+						String cui = fields[0].trim();
+						String src = fields[4].trim();
+						String ans = fields[6].trim();
+						
+						// skip if cui is blank (I think it is a different context) or if concept is not imported
+						if(cui.length() == 0 || !includedCUIs.contains(cui))
+							return;
+						
+						// filter by known source if
+						if(!isIncluded(hierarchySources,src,true) && !"SRC".equals(src))
+							return;
+						
+						// record root, parent and ancestors of a concept and a child of a parent
+						String [] path = ans.split("\\.");
+						List<String> values = new ArrayList<String>();
+						String root = aui2cui.get(path[0]);
+						String pcui = aui2cui.get(path[path.length-1]);
+						values.add(root != null?root:"");
+						values.add(pcui != null?pcui:"");
+						for(String p: path){
+							String acui = aui2cui.get(p);
+							if(acui != null)
+								values.add(acui);
+						}
+						records.add(new RRFSorter.Record(cui,HIER_RECORD,position,values.toArray(new String [0])));
+						if(pcui != null)
+							records.add(new RRFSorter.Record(pcui,CHILD_RECORD,position,cui));
+					}
+				});
+				awaitRRFSorter(sorter,"Loading "+RRFile+" file ...",getRowCount(rowCount,RRFile));
+			}else{
+				pcs.firePropertyChange(LOADING_MESSAGE,null,"RRF file "+(new File(dir,RRFile).getAbsolutePath()+" does not exist, sipping .."));
+			}
+			aui2cui.dispose();
+			
+			// merge sorted rows and build every concept once
+			Set<String> rootCUIs = new HashSet<>();
+			String resume = checkpoint.getPosition(CONCEPT_STAGE);
+			long concepts = checkpoint.getCount(CONCEPT_STAGE);
+			long total = sorter.getRecordCount(), count = 0, step = Math.max(1,total/100), start = System.currentTimeMillis();
+			pcs.firePropertyChange(LOADING_MESSAGE,null,"Building Concepts ...");
+			pcs.firePropertyChange(LOADING_TOTAL,null,(int)Math.min(total,Integer.MAX_VALUE));
+			for(List<RRFSorter.Record> group = sorter.next(); group != null; group = sorter.next()){
+				// skip concepts that were saved before the last checkpoint
+				String cui = group.get(0).getCui();
+				if(resume != null && cui.compareTo(resume) <= 0){
+					count += group.size();
+					continue;
+				}
+				
+				// concepts after the last checkpoint could have been saved partially, so they are rebuilt
+				if(checkpoint.isResumed())
+					storage.getConceptMap().remove(cui);
+				boolean exists = storage.getConceptMap().containsKey(cui);
+				Concept c = null;
+				for(RRFSorter.Record rec: group){
+					switch(rec.getType()){
+					case CONSO_RECORD:
+						if(exists || (rec.getValue(7).length() > 0 && !filteredCUIs.contains(cui)))
+							break;
+						String text = rec.getValue(0);
+						String form = rec.getValue(3);
+						Source source = Source.getSource(rec.getValue(2));
+						if(c == null)
+							c = new Concept(cui,text);
+						
+						// if term is preferred in some source
+						if("PT".equals(form) || "PN".equals(form))
+							c.setName(text);
+	
+						// create a term
+						Term term = new Term(text);
+						term.setForm(form);
+						term.setLanguage(rec.getValue(1));
+						term.setSource(source);
+						if("y".equalsIgnoreCase(rec.getValue(5)) && "P".equalsIgnoreCase(rec.getValue(6)))
+							term.setPreferred(true);
+						
+						// add to concept
+						c.addSynonym(text);
+						c.addSource(source);
+						c.addTerm(term);
+						c.addCode(rec.getValue(4),source);
+						break;
+					case DEF_RECORD:
+						if(c != null){
+							Definition d = Definition.getDefinition(rec.getValue(1));
+							d.setSource(Source.getSource(rec.getValue(0)));
+							c.addDefinition(d);
+						}
+						break;
+					case STY_RECORD:
+						if(c != null)
+							c.addSemanticType(SemanticType.getSemanticType(rec.getValue(1),rec.getValue(0)));
+						break;
+					case HIER_RECORD:
+						if(c != null || exists){
+							if(rec.getValue(0).length() > 0 && rootCUIs.add(rec.getValue(0)))
+								storage.getRootMap().put(rec.getValue(0),rec.getValue(0));
+						}
+						if(c != null){
+							if(rec.getValue(1).length() > 0)
+								c.getRelationMap().computeIfAbsent(Relation.BROADER.getName(),k->new HashSet<>()).add(rec.getValue(1));
+							Set<String> ancestors = c.getRelationMap().computeIfAbsent(Relation.ANCESTORS.getName(),k->new HashSet<>());
+							for(int j=2;j<rec.getValues().length;j++)
+								ancestors.add(rec.getValue(j));
+						}
+						break;
+					case CHILD_RECORD:
+						if(c != null)
+							c.getRelationMap().computeIfAbsent(Relation.NARROWER.getName(),k->new HashSet<>()).add(rec.getValue(0));
+						break;
+					}
+				}
+				
+				if(c != null){
+					// figure out the best preferred term
+					c.setName(getPreferredName(c));
+					addConcept(terminology,c,true);
+				}
+				checkpoint.update(CONCEPT_STAGE,cui,++concepts);
+				
+				// display progress bar
+				long n = count+group.size();
+				if(n/step > count/step)
+					pcs.firePropertyChange(LOADING_PROGRESS,null,new Progress(n,System.currentTimeMillis()-start));
+				count = n;
+			}
+			
+			// only keep root candidates that were imported
+			for(String key : new ArrayList<String>(storage.getRootMap().keySet())){
+				if(!storage.getConceptMap().containsKey(key)){
+					storage.getRootMap().remove(key);
+				}
+			}
+			checkpoint.done(CONCEPT_STAGE);
+		}finally{
+			sorter.dispose();
+			aui2cui.dispose();
+		}
+		return true;
+	}
+	
+	/**
+	 * wait for RRF sorter to parse scheduled files and report rows per second while waiting.
+	 *
+	 * @param sorter the sorter
+	 * @param message the message
+	 * @param total the total number of rows
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void awaitRRFSorter(RRFSorter sorter, String message, int total) throws IOException {
+		pcs.firePropertyChange(LOADING_MESSAGE,null,message);
+		pcs.firePropertyChange(LOADING_TOTAL,null,total);
+		long start = System.currentTimeMillis(), offset = sorter.getRowCount();
+		while(!sorter.await(PROGRESS_INTERVAL))
+			pcs.firePropertyChange(LOADING_PROGRESS,null,new Progress(sorter.getRowCount()-offset,System.currentTimeMillis()-start));
+		Progress progress = new Progress(sorter.getRowCount()-offset,System.currentTimeMillis()-start);
+		pcs.firePropertyChange(LOADING_PROGRESS,null,progress);
+		pcs.firePropertyChange(LOADING_MESSAGE,null,"Parsed "+progress.getRows()+" rows at "+Math.round(progress.getRowsPerSecond())+" rows per second");
+	}
+	
+	/**
+	 * Gets the total row count of several RRF files.
+	 *
+	 * @param rowCount the row count map
+	 * @param files the files
+	 * @return the row count
+	 */
+	private int getRowCount(Map<String,Integer> rowCount, String ... files){
+		long total = 0;
+		for(String f: files){
+			Integer n = rowCount.get(f);
+			total += (n != null)?n:Integer.MAX_VALUE;
+		}
+		return (int) Math.min(total,Integer.MAX_VALUE);
+	}
+	
 	/**
 	 * Checks if is included.
 	 *
@@ -1517,6 +1652,61 @@ public class ConceptImporter {
 		return false;
 	}
 
+	/**
+	 * Gets the word index that collects words of terms that are saved as files.
+	 *
+	 * @param storage the storage
+	 * @return the word index
+	 */
+	private WordIndexBuilder getWordIndex(NobleCoderTerminology.Storage storage){
+		if(wordIndex == null)
+			wordIndex = new WordIndexBuilder(storage.getTempLocation());
+		return wordIndex;
+	}
+	
+	/**
+	 * create a word index that keeps runs that were saved at the last checkpoint
+	 * and records its runs with every new checkpoint.
+	 *
+	 * @param storage the storage
+	 * @param checkpoint the checkpoint
+	 * @return the word index
+	 */
+	private WordIndexBuilder createWordIndex(NobleCoderTerminology.Storage storage, Checkpoint checkpoint){
+		String runs = checkpoint.getProperty(WORD_RUNS);
+		final WordIndexBuilder words = new WordIndexBuilder(storage.getTempLocation(),(runs != null)?Integer.parseInt(runs):0);
+		checkpoint.addListener(new Checkpoint.Listener() {
+			public void checkpoint(Checkpoint c) throws IOException {
+				c.setProperty(WORD_RUNS,""+words.flush());
+			}
+		});
+		wordIndex = words;
+		return words;
+	}
+	
+	/**
+	 * merge word index into word tables, unless it was done before the last checkpoint.
+	 *
+	 * @param storage the storage
+	 * @param words the word index
+	 * @param checkpoint the checkpoint
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void loadWordIndex(NobleCoderTerminology.Storage storage, WordIndexBuilder words, Checkpoint checkpoint) throws IOException {
+		if(checkpoint.isDone(WORD_STAGE))
+			return;
+		
+		// word tables are only filled from the index, so start over if previous attempt was interrupted
+		if(checkpoint.isResumed()){
+			storage.getWordMap().clear();
+			storage.getWordStatMap().clear();
+			storage.totalTermsPerWord = 0;
+			storage.maxTermsPerWord = 0;
+		}
+		words.load(pcs,storage,compact,true);
+		checkpoint.done(WORD_STAGE);
+	}
+	
 	/**
 	 * add concept to terminology.
 	 *
@@ -1539,12 +1729,90 @@ public class ConceptImporter {
 	 * @throws TerminologyException the terminology exception
 	 */
 	public boolean addConcept(NobleCoderTerminology terminology,Concept c, boolean saveTermsAsFiles ) throws TerminologyException {
-		NobleCoderTerminology.Storage storage = terminology.getStorage();
 		// don't go into classes that we already visited
-		if(storage.getConceptMap().containsKey(c.getCode()))
+		if(terminology.getStorage().getConceptMap().containsKey(c.getCode()))
 			return true;
-		
-		// check if read only
+		checkWriteAccess(terminology);
+		saveConcepts(terminology,Collections.singletonList(normalize(terminology,c)),saveTermsAsFiles);
+		return true;
+	}
+	
+	/**
+	 * add concepts of all items to terminology. Items are converted into concepts and their terms are normalized
+	 * on a fork-join pool one batch ahead of the calling thread, that saves batches in their original order,
+	 * so storage tables are only written by a single thread.
+	 *
+	 * @param <T> the type of an item
+	 * @param terminology the terminology
+	 * @param items the items
+	 * @param converter the converter that is called from pool threads
+	 * @param saveTermsAsFiles the save terms as files
+	 * @param listener the listener that is notified on calling thread after each batch was saved
+	 * @throws TerminologyException the terminology exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private <T> void addConcepts(NobleCoderTerminology terminology, List<T> items, ConceptConverter<T> converter, boolean saveTermsAsFiles, BatchListener<T> listener) throws TerminologyException, IOException {
+		// reloading terminology while concepts are normalized is not safe
+		checkWriteAccess(terminology);
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1,getThreadCount()));
+		try{
+			Future<List<NormalizedConcept>> next = null;
+			for(int start = 0; start < items.size(); start += BATCH_SIZE){
+				List<T> batch = items.subList(start,Math.min(start+BATCH_SIZE,items.size()));
+				if(next == null)
+					next = pool.submit(new ConvertTask<T>(terminology,batch,converter));
+				List<NormalizedConcept> concepts = getConcepts(next);
+				
+				// convert next batch, while this one is saved
+				int end = start+BATCH_SIZE;
+				next = (end < items.size())?pool.submit(new ConvertTask<T>(terminology,items.subList(end,Math.min(end+BATCH_SIZE,items.size())),converter)):null;
+				saveConcepts(terminology,concepts,saveTermsAsFiles);
+				listener.saved(batch,concepts.size());
+			}
+		}finally{
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * wait for a batch of concepts to be converted.
+	 *
+	 * @param future the future
+	 * @return the concepts
+	 * @throws TerminologyException the terminology exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private List<NormalizedConcept> getConcepts(Future<List<NormalizedConcept>> future) throws TerminologyException, IOException {
+		try{
+			return future.get();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while converting concepts");
+		}catch(ExecutionException ex){
+			// checked exceptions of a converter are wrapped by its task
+			Throwable cause = ex.getCause();
+			while((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null)
+				cause = cause.getCause();
+			if(cause instanceof TerminologyException)
+				throw (TerminologyException) cause;
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new TerminologyException("Unable to convert concepts",cause);
+		}
+	}
+	
+	/**
+	 * make sure that storage tables can be written to.
+	 *
+	 * @param terminology the terminology
+	 * @throws TerminologyException the terminology exception
+	 */
+	private void checkWriteAccess(NobleCoderTerminology terminology) throws TerminologyException {
+		NobleCoderTerminology.Storage storage = terminology.getStorage();
 		if(storage.isReadOnly(storage.getConceptMap())){
 			terminology.dispose();
 			try {
@@ -1553,87 +1821,125 @@ public class ConceptImporter {
 				throw new TerminologyException("Unable to gain write access to data tables",e);
 			}
 		}
-		
+	}
+	
+	/**
+	 * filter synonyms of a concept and normalize its terms, it is safe to call from several threads at once.
+	 *
+	 * @param terminology the terminology
+	 * @param c the concept
+	 * @return the normalized concept
+	 */
+	private NormalizedConcept normalize(NobleCoderTerminology terminology, Concept c){
 		//optionally reduce the set of terms
 		if(filterTerms){
 			Set<String> synonyms = TermFilter.filter(c.getSynonyms());
 			c.setSynonyms(synonyms.toArray(new String [0]));
 		}
 		
-		// get list of terms
-		Set<String> terms = null;
-	
 		// if we got all synonyms cleaned, we should discount name as well that will get pulled in
-		if(filterTerms && c.getSynonyms().length == 0){
-			terms = Collections.EMPTY_SET;
-		}else{
-			terms = NobleCoderUtils.getNormalizedTerms(terminology,c);
-		}
-		
-		// go over terms
-		for(String term: terms){
-			// check if term is a regular expression
-			if(NobleCoderUtils.isRegExp(term)){
-				String regex = term.substring(1,term.length()-1);
-				try{
-					Pattern.compile(regex);
-
-					// insert concept concept into a set
-					Set<String> codeList = new HashSet<String>();
-					codeList.add(c.getCode());
-					// add concept codes that were already in a set
-					if (storage.getRegexMap().containsKey(regex)) {
-						codeList.addAll(storage.getRegexMap().get(regex));
+		if(filterTerms && c.getSynonyms().length == 0)
+			return new NormalizedConcept(c,Collections.<String>emptySet());
+		return new NormalizedConcept(c,NobleCoderUtils.getNormalizedTerms(terminology,c));
+	}
+	
+	/**
+	 * save a batch of normalized concepts. Codes of all concepts in a batch are collected first,
+	 * so that every term is read and written once per batch.
+	 *
+	 * @param terminology the terminology
+	 * @param concepts the concepts
+	 * @param saveTermsAsFiles the save terms as files
+	 */
+	private void saveConcepts(NobleCoderTerminology terminology, List<NormalizedConcept> concepts, boolean saveTermsAsFiles) {
+		NobleCoderTerminology.Storage storage = terminology.getStorage();
+		Map<String,Set<String>> termCodes = new LinkedHashMap<String,Set<String>>();
+		Map<String,Set<String>> regexCodes = new LinkedHashMap<String,Set<String>>();
+		for(NormalizedConcept nc: concepts){
+			Concept c = nc.concept;
+			// don't go into classes that we already visited
+			if(storage.getConceptMap().containsKey(c.getCode()))
+				continue;
+			
+			// go over terms
+			for(String term: nc.terms){
+				// check if term is a regular expression
+				if(NobleCoderUtils.isRegExp(term)){
+					String regex = term.substring(1,term.length()-1);
+					try{
+						Pattern.compile(regex);
+						addCode(regexCodes,"\\b("+regex+")\\b",c.getCode());
+					}catch(PatternSyntaxException ex){
+						pcs.firePropertyChange(LOADING_MESSAGE,null,"Warning: failed to add regex /"+regex+"/ as synonym, because of pattern error : "+ex.getMessage());
 					}
-					storage.getRegexMap().put("\\b("+regex+")\\b",codeList);
-					//storage.getRegexMap().put("\\b("+regex+")\\b",c.getCode());
-				}catch(PatternSyntaxException ex){
-					pcs.firePropertyChange(LOADING_MESSAGE,null,"Warning: failed to add regex /"+regex+"/ as synonym, because of pattern error : "+ex.getMessage());
-				}
-			}else{
-				// insert concept concept into a set
-				Set<String> codeList = new HashSet<String>();
-				codeList.add(c.getCode());
-				// add concept codes thate were already in a set
-				if(storage.getTermMap().containsKey(term)){
-					codeList.addAll(storage.getTermMap().get(term));
-				}
-				// insert the set
-				storage.getTermMap().put(term,codeList);
-				
-				// insert words
-				for(String word: TextTools.getWords(term)){
-					// filter terms that contain this word
-					Set<String> termList = singleton(term);//filterTerms(word,terms);
+				}else{
+					addCode(termCodes,term,c.getCode());
 					
-					// if we are saving it in a temp file, then
-					if(saveTermsAsFiles){
-						// if in temp word folder mode, save in temp directory instead of map
-						try {
-							saveTemporaryTermFile(storage.getTempLocation(), word, termList);
-						} catch (IOException e) {
-							pcs.firePropertyChange(LOADING_MESSAGE,null,"Warning: failed to insert word \""+word+"\", reason: "+e.getMessage());
+					// insert words
+					for(String word: TextTools.getWords(term)){
+						// filter terms that contain this word
+						Set<String> termList = singleton(term);//filterTerms(word,terms);
+						
+						// if we are saving it in a word index, word statistics are computed when it is loaded
+						if(saveTermsAsFiles){
+							try {
+								getWordIndex(storage).add(word, term);
+							} catch (IOException e) {
+								pcs.firePropertyChange(LOADING_MESSAGE,null,"Warning: failed to insert word \""+word+"\", reason: "+e.getMessage());
+							}
+						}else{
+							saveWordTermsInStorage(storage, word, termList);
+							
+							// save word statistics
+							saveWordStats(storage, termList, word);
 						}
-					}else{
-						saveWordTermsInStorage(terminology.getStorage(), word, termList);
 					}
-
-					// save word statistics
-					saveWordStats(storage, termList, word);	
-			
 				}
 			}
+			storage.getConceptMap().put(c.getCode(),c.getContent());
 			
+			// now, why can't we insert on other valid codes :) ???? I think we can 
+			for(Object code: c.getCodes().values()){
+				if(!storage.getCodeMap().containsKey(code) && !"NOCODE".equals(code))
+					storage.getCodeMap().put(code.toString(),c.getCode());
+			}
 		}
-		storage.getConceptMap().put(c.getCode(),c.getContent());
 		
-		// now, why can't we insert on other valid codes :) ???? I think we can 
-		for(Object code: c.getCodes().values()){
-			if(!storage.getCodeMap().containsKey(code) && !"NOCODE".equals(code))
-				storage.getCodeMap().put(code.toString(),c.getCode());
+		// add concept codes that were already in a set and insert the set
+		saveCodes(storage.getTermMap(),termCodes);
+		saveCodes(storage.getRegexMap(),regexCodes);
+	}
+	
+	/**
+	 * add concept code to a term.
+	 *
+	 * @param codes the codes of terms
+	 * @param term the term
+	 * @param code the code
+	 */
+	private void addCode(Map<String,Set<String>> codes, String term, String code){
+		Set<String> codeList = codes.get(term);
+		if(codeList == null){
+			codeList = new HashSet<String>();
+			codes.put(term,codeList);
+		}
+		codeList.add(code);
+	}
+	
+	/**
+	 * merge codes of terms with codes that are already in a table.
+	 *
+	 * @param table the table
+	 * @param codes the codes of terms
+	 */
+	private void saveCodes(Map<String,Set<String>> table, Map<String,Set<String>> codes){
+		for(String term: codes.keySet()){
+			Set<String> codeList = codes.get(term);
+			Set<String> old = table.get(term);
+			if(old != null)
+				codeList.addAll(old);
+			table.put(term,codeList);
 		}
-		
-		return true;
 	}
 		
 	
@@ -1648,16 +1954,16 @@ public class ConceptImporter {
 		
 		double n =  storage.getTermMap().size();
 		
-		// first create a temporary term files
-		storage.useTempWordFolder = true;
+		// first collect terms by their rarest word
+		WordIndexBuilder words = new WordIndexBuilder(storage.getTempLocation());
 		pcs.firePropertyChange(LOADING_MESSAGE,null,"Saving terms as files ...");
-		pcs.firePropertyChange(LOADING_TOTAL,null,n);
+		pcs.firePropertyChange(LOADING_TOTAL,null,(int)n);
 		
 		int i=0;
 		for(String term:  storage.getTermMap().keySet()){
 			// get rarest word
 			String word = getRarestWord(storage, term);
-			saveTemporaryTermFile(storage.getTempLocation(), word,Arrays.asList(term));
+			words.add(word,term);
 			// progress bar
 			if((i % (n/100)) == 0){
 				pcs.firePropertyChange(LOADING_PROGRESS,null,i);
@@ -1680,21 +1986,16 @@ public class ConceptImporter {
 		
 		
 		// reload the word map file
-		File tempDir = new File(location,NobleCoderTerminology.TEMP_WORD_DIR);
-		loadTemporaryTermFiles(pcs,storage, tempDir,true);
+		words.load(pcs,storage,true,false);
 		// check the fact that it has been compacted
 		storage.getInfoMap().put("compacted", "true");
 		
 		// remove temp word files 
-		if(tempDir.exists()){
-			pcs.firePropertyChange(LOADING_MESSAGE,null,"Deleting Temporary Files ...");
-			for(File f: tempDir.listFiles()){
-				f.delete();
-			}
-			tempDir.delete();
-		}
+		pcs.firePropertyChange(LOADING_MESSAGE,null,"Deleting Temporary Files ...");
+		words.dispose();
 		
+		// word tables were rewritten, so term index has to be rebuilt as well
 		storage.save();
-	
+		storage.saveTermIndex();
 	}
 }
@@ -0,0 +1,428 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class represents a bounded cache that can be safely shared between threads.
+ * Reads never lock, entries are evicted with a CLOCK (second chance) policy, so
+ * eviction cost is amortized O(1) instead of a sweep over the whole cache.
+ * An optional TinyLFU admission policy keeps a compact frequency sketch of recently
+ * requested keys and only lets a new entry push out an older one if the new key was
+ * requested at least as often, so one-off lookups don't flush frequently used entries.
+ *
+ * Size is counted in entries by default, or in weights if a weigher is set.
+ *
+ * @author tseytlin
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ConcurrentCache<K,V> {
+	private final ConcurrentHashMap<K,Node<K,V>> map;
+	private final ConcurrentLinkedQueue<Node<K,V>> clock;
+	private final ReentrantLock evictionLock;
+	private final AtomicLong weightedSize,hits,misses,evictions;
+	private final AtomicInteger stale;
+	private final FrequencySketch sketch;
+	private final long maximumSize;
+	private Weigher<K,V> weigher;
+	private boolean admission = true;
+
+	/**
+	 * calculates the weight of a cache entry.
+	 *
+	 * @param <K> the key type
+	 * @param <V> the value type
+	 */
+	public static interface Weigher<K,V> {
+		/**
+		 * Gets the weight of an entry.
+		 *
+		 * @param key the key
+		 * @param value the value
+		 * @return the weight
+		 */
+		public int getWeight(K key, V value);
+	}
+
+	/**
+	 * cache entry.
+	 */
+	private static class Node<K,V> {
+		final K key;
+		final V value;
+		final int weight;
+		volatile boolean referenced, alive = true;
+		public Node(K key, V value, int weight){
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * count-min sketch of 4-bit counters that estimates how often a key was requested.
+	 * Counters are halved periodically, so the estimate favors recent history.
+	 */
+	private static class FrequencySketch {
+		private static final int [] SEEDS = {0x97cb3127,0xb3b5ea75,0x6e7c58a1,0x2d0a8f3b};
+		private static final long RESET_MASK = 0x7777777777777777L;
+		private final AtomicLongArray table;
+		private final AtomicInteger additions;
+		private final int mask, sampleSize;
+
+		public FrequencySketch(long size){
+			int n = Integer.highestOneBit((int) Math.max(16,Math.min(size,1<<20))-1)<<1;
+			table = new AtomicLongArray(n);
+			mask = n-1;
+			sampleSize = 10*n;
+			additions = new AtomicInteger();
+		}
+
+		private int index(int hash, int i){
+			int h = (hash ^ SEEDS[i])*0x9E3779B9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		private int offset(int hash, int i){
+			return (((hash >>> (i<<3)) & 15) << 2);
+		}
+
+		public int frequency(int hash){
+			int f = 15;
+			for(int i=0;i<SEEDS.length;i++)
+				f = Math.min(f,(int) ((table.get(index(hash,i)) >>> offset(hash,i)) & 15L));
+			return f;
+		}
+
+		public void increment(int hash){
+			boolean added = false;
+			for(int i=0;i<SEEDS.length;i++){
+				int j = index(hash,i), s = offset(hash,i);
+				while(true){
+					long v = table.get(j);
+					if(((v >>> s) & 15L) == 15L)
+						break;
+					if(table.compareAndSet(j,v,v+(1L << s))){
+						added = true;
+						break;
+					}
+				}
+			}
+			if(added && additions.incrementAndGet() == sampleSize){
+				for(int j=0;j<table.length();j++){
+					long v;
+					do{
+						v = table.get(j);
+					}while(!table.compareAndSet(j,v,(v >>> 1) & RESET_MASK));
+				}
+				additions.addAndGet(-sampleSize/2);
+			}
+		}
+	}
+
+	/**
+	 * create a new cache.
+	 *
+	 * @param maximumSize the maximum number of entries or the maximum total weight if weigher is set
+	 */
+	public ConcurrentCache(long maximumSize){
+		this.maximumSize = maximumSize;
+		map = new ConcurrentHashMap<K,Node<K,V>>();
+		clock = new ConcurrentLinkedQueue<Node<K,V>>();
+		evictionLock = new ReentrantLock();
+		weightedSize = new AtomicLong();
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+		evictions = new AtomicLong();
+		stale = new AtomicInteger();
+		sketch = new FrequencySketch(maximumSize);
+	}
+
+	/**
+	 * get the limit in size or weight that the cache is not allowed to exceed.
+	 *
+	 * @return the maximum size
+	 */
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Gets the weigher.
+	 *
+	 * @return the weigher
+	 */
+	public Weigher<K, V> getWeigher() {
+		return weigher;
+	}
+
+	/**
+	 * set weigher to limit cache by total weight of entries, instead of their number.
+	 * Should be set before cache is used.
+	 *
+	 * @param weigher the weigher
+	 */
+	public void setWeigher(Weigher<K, V> weigher) {
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Checks if admission policy is enabled.
+	 *
+	 * @return true, if is admission enabled
+	 */
+	public boolean isAdmissionEnabled() {
+		return admission;
+	}
+
+	/**
+	 * enable admission policy, if disabled every new entry is admitted
+	 * and cache behaves as plain CLOCK (approximate LRU) cache.
+	 *
+	 * @param admission the new admission enabled
+	 */
+	public void setAdmissionEnabled(boolean admission) {
+		this.admission = admission;
+	}
+
+	private static int hash(Object key){
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * get an item and mark it as recently used.
+	 *
+	 * @param key the key
+	 * @return the value or null if it is not cached
+	 */
+	public V get(K key) {
+		sketch.increment(hash(key));
+		Node<K,V> node = map.get(key);
+		if(node == null){
+			misses.incrementAndGet();
+			return null;
+		}
+		if(!node.referenced)
+			node.referenced = true;
+		hits.incrementAndGet();
+		return node.value;
+	}
+
+	/**
+	 * put an item into the cache, evicting other items if cache is full.
+	 * An item that is heavier then the whole cache is not added, but it still replaces
+	 * an older value of the same key, so that value is removed.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void put(K key, V value) {
+		int weight = (weigher != null)?weigher.getWeight(key,value):1;
+		if(weight > maximumSize){
+			remove(key);
+			return;
+		}
+		Node<K,V> node = new Node<K,V>(key,value,weight);
+		Node<K,V> old = map.put(key,node);
+		if(old != null){
+			old.alive = false;
+			weightedSize.addAndGet(-old.weight);
+			stale.incrementAndGet();
+		}
+		weightedSize.addAndGet(weight);
+		clock.offer(node);
+		if(weightedSize.get() > maximumSize)
+			evict(node);
+		else if(stale.get() > map.size()+16)
+			purge();
+	}
+
+	/**
+	 * remove an item from the cache.
+	 *
+	 * @param key the key
+	 */
+	public void remove(K key) {
+		Node<K,V> node = map.remove(key);
+		if(node != null){
+			node.alive = false;
+			weightedSize.addAndGet(-node.weight);
+			stale.incrementAndGet();
+		}
+	}
+
+	/**
+	 * clear cache.
+	 */
+	public void clear(){
+		evictionLock.lock();
+		try{
+			for(K key: map.keySet())
+				remove(key);
+			clock.clear();
+			stale.set(0);
+		}finally{
+			evictionLock.unlock();
+		}
+	}
+	
+	/**
+	 * drop replaced and removed entries from the clock, it is only done when there are
+	 * more of them then live entries, so the cost is amortized over the writes that created them.
+	 */
+	private void purge(){
+		if(!evictionLock.tryLock())
+			return;
+		try{
+			stale.set(0);
+			for(Iterator<Node<K,V>> it = clock.iterator();it.hasNext();){
+				if(!it.next().alive)
+					it.remove();
+			}
+		}finally{
+			evictionLock.unlock();
+		}
+		// writers that came in during purge did not get the lock to evict
+		if(weightedSize.get() > maximumSize)
+			evict(null);
+	}
+
+	/**
+	 * sweep the clock until cache fits its limit. Only one thread evicts at a time,
+	 * other writers don't wait for it. The limit is checked again after the lock is released,
+	 * since writers that failed to get the lock rely on the thread that had it.
+	 *
+	 * @param candidate the entry that was just added
+	 */
+	private void evict(Node<K,V> candidate){
+		while(weightedSize.get() > maximumSize && evictionLock.tryLock()){
+			try{
+				if(!sweep(candidate))
+					return;
+				candidate = null;
+			}finally{
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * sweep the clock until cache fits its limit, eviction lock should be held.
+	 *
+	 * @param candidate the entry that was just added
+	 * @return false, if clock ran out of entries
+	 */
+	private boolean sweep(Node<K,V> candidate){
+		while(weightedSize.get() > maximumSize){
+			Node<K,V> victim = clock.poll();
+			if(victim == null)
+				return false;
+			if(!victim.alive){
+				stale.decrementAndGet();
+				continue;
+			}
+			if(victim.referenced){
+				victim.referenced = false;
+				clock.offer(victim);
+				continue;
+			}
+			// admission: keep a victim that is used more often then the new entry
+			boolean rejected = false;
+			if(admission && candidate != null && candidate != victim && candidate.alive &&
+				sketch.frequency(hash(candidate.key)) < sketch.frequency(hash(victim.key))){
+				clock.offer(victim);
+				victim = candidate;
+				rejected = true;
+			}
+			if(victim == candidate)
+				candidate = null;
+			if(map.remove(victim.key,victim)){
+				victim.alive = false;
+				if(rejected)
+					stale.incrementAndGet();
+				weightedSize.addAndGet(-victim.weight);
+				evictions.incrementAndGet();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * number of cached items.
+	 *
+	 * @return the int
+	 */
+	public int size(){
+		return map.size();
+	}
+
+	/**
+	 * total weight of cached items, same as size if weigher is not set.
+	 *
+	 * @return the weighted size
+	 */
+	public long getWeightedSize(){
+		return weightedSize.get();
+	}
+
+	/**
+	 * Gets the hit count.
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount(){
+		return hits.get();
+	}
+
+	/**
+	 * Gets the miss count.
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount(){
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of entries that were evicted or not admitted.
+	 *
+	 * @return the eviction count
+	 */
+	public long getEvictionCount(){
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the hit rate.
+	 *
+	 * @return the hit rate, between 0 and 1
+	 */
+	public double getHitRate(){
+		long h = hits.get(), n = h+misses.get();
+		return (n == 0)?0:((double) h)/n;
+	}
+
+	/**
+	 * reset hit/miss/eviction statistics.
+	 */
+	public void resetStatistics(){
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString(){
+		return "size: "+size()+" weight: "+getWeightedSize()+"/"+maximumSize+" hits: "+getHitCount()+" misses: "+getMissCount()+
+				" evictions: "+getEvictionCount()+" hit rate: "+String.format("%.2f",getHitRate());
+	}
+}
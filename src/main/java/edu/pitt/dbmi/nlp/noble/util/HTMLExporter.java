@@ -26,6 +26,7 @@ import edu.pitt.dbmi.nlp.noble.tools.TextTools;
 
 /**
  * The Class HTMLExporter.
+ * Export methods are synchronized, so that one exporter can be shared by several threads.
  */
 public class HTMLExporter {
 	public static final String TERM_SERVLET = "http://slidetutor.upmc.edu/term/servlet/TerminologyServlet";
@@ -684,7 +685,7 @@ public class HTMLExporter {
 	 *
 	 * @throws Exception the exception
 	 */
-	public void flush() throws Exception {
+	public synchronized void flush() throws Exception {
 		if(htmlIndexWriter != null){
 			htmlIndexWriter.write("</div></div></td><td valign=top><iframe bgcolor=white frameborder=\"0\" scrolling=\"auto\" name=\"frame\" width=\"100%\" height=\"100%\"></iframe>\n");
 			htmlIndexWriter.write("</td></tr></table></center></body></html>\n");
@@ -700,7 +701,7 @@ public class HTMLExporter {
 	 * @param doc the doc
 	 * @throws Exception the exception
 	 */
-	public void export(Document doc) throws Exception {
+	public synchronized void export(Document doc) throws Exception {
 		String name = doc.getTitle();
 		if(name.endsWith(".txt"))
 			name = name.substring(0,name.length()-".txt".length());
@@ -715,7 +716,7 @@ public class HTMLExporter {
 	 * @param doc the doc
 	 * @throws Exception the exception
 	 */
-	public void export(Composition doc) throws Exception {
+	public synchronized void export(Composition doc) throws Exception {
 		String name = doc.getTitle();
 		if(name.endsWith(".txt"))
 			name = name.substring(0,name.length()-".txt".length());
@@ -731,7 +732,7 @@ public class HTMLExporter {
 	 * @param htmlWriter the html writer
 	 * @throws Exception the exception
 	 */
-	public void export(Document doc, Writer htmlWriter) throws Exception {
+	public synchronized void export(Document doc, Writer htmlWriter) throws Exception {
 		title = "Noble Coder";
 		// build report
 		String content = doc.getText();
@@ -803,7 +804,7 @@ public class HTMLExporter {
 	 * @param doc the doc
 	 * @throws Exception the exception
 	 */
-	public void export(TemplateDocument doc) throws Exception {
+	public synchronized void export(TemplateDocument doc) throws Exception {
 		title = "Information Extraction";
 		
 		// create cap protocol
@@ -873,7 +874,7 @@ public class HTMLExporter {
 	 * @param htmlWriter - where to write to
 	 * @throws Exception the exception
 	 */
-	public void export(Composition doc, Writer htmlWriter) throws Exception {
+	public synchronized void export(Composition doc, Writer htmlWriter) throws Exception {
 		title = "Noble Mentions";
 		// build report
 		String content = doc.getText();
@@ -1111,7 +1112,7 @@ public class HTMLExporter {
 	 * @param analysis object
 	 * @throws IOException in case something goes wrong
 	 */
-	public void export(Analysis analysis) throws IOException{
+	public synchronized void export(Analysis analysis) throws IOException{
 		File out = new File(outputDirectory,AnnotationEvaluation.ANALYSIS_HTML);
 		BufferedWriter htmlWriter = new BufferedWriter(new FileWriter(out));
 
@@ -1157,7 +1158,7 @@ public class HTMLExporter {
 	 * @param sysInst - system composition instance
 	 * @throws Exception in case something goes wrong
 	 */
-	public void export(File textFile, IInstance goldInst, IInstance sysInst) throws Exception{
+	public synchronized void export(File textFile, IInstance goldInst, IInstance sysInst) throws Exception{
 		String eval = AnnotationEvaluation.EVALUATION_HTML;
 		String name = FileTools.stripExtension(textFile.getName());
 
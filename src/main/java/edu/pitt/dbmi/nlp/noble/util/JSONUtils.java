@@ -0,0 +1,308 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * minimal JSON reader and writer that is used by services to exchange documents and mentions.
+ * Objects are parsed into LinkedHashMap, arrays into ArrayList, numbers into Long or Double.
+ * Input that nests objects and arrays deeper then MAX_DEPTH is rejected, so that untrusted
+ * input can not exhaust the stack of a parser.
+ *
+ * @author tseytlin
+ */
+public class JSONUtils {
+	public static final int MAX_DEPTH = 256;
+	private Reader reader;
+	private int next, offset, depth;
+
+	private JSONUtils(Reader reader){
+		this.reader = reader;
+	}
+
+	/**
+	 * parse JSON text.
+	 *
+	 * @param text the text
+	 * @return the object
+	 * @throws IOException if text is not valid JSON
+	 */
+	public static Object parse(String text) throws IOException {
+		return parse(new StringReader(text));
+	}
+
+	/**
+	 * parse JSON from a reader.
+	 *
+	 * @param reader the reader
+	 * @return the object
+	 * @throws IOException if input can't be read or is not valid JSON
+	 */
+	public static Object parse(Reader reader) throws IOException {
+		if(!(reader instanceof BufferedReader || reader instanceof StringReader))
+			reader = new BufferedReader(reader);
+		JSONUtils parser = new JSONUtils(reader);
+		parser.read();
+		Object value = parser.parseValue();
+		parser.skipSpace();
+		if(parser.next != -1)
+			throw parser.error("unexpected content after the end of JSON value");
+		return value;
+	}
+
+	/**
+	 * quote a string as JSON string.
+	 *
+	 * @param s the s
+	 * @return the string
+	 */
+	public static String quote(String s){
+		StringBuilder b = new StringBuilder(s.length()+2);
+		quote(s,b);
+		return b.toString();
+	}
+
+	/**
+	 * append a string as a quoted JSON string.
+	 *
+	 * @param s the s
+	 * @param b the buffer
+	 */
+	public static void quote(String s, StringBuilder b){
+		b.append('"');
+		for(int i=0;i<s.length();i++){
+			char c = s.charAt(i);
+			switch(c){
+			case '"': b.append("\\\""); break;
+			case '\\': b.append("\\\\"); break;
+			case '\n': b.append("\\n"); break;
+			case '\r': b.append("\\r"); break;
+			case '\t': b.append("\\t"); break;
+			case '\b': b.append("\\b"); break;
+			case '\f': b.append("\\f"); break;
+			default:
+				if(c < 0x20 || c == '\u2028' || c == '\u2029')
+					b.append(String.format("\\u%04x",(int)c));
+				else
+					b.append(c);
+			}
+		}
+		b.append('"');
+	}
+
+	/**
+	 * convert maps, collections, arrays, strings, numbers and booleans into compact JSON.
+	 *
+	 * @param obj the obj
+	 * @return the string
+	 */
+	public static String toString(Object obj){
+		StringBuilder b = new StringBuilder();
+		append(obj,b);
+		return b.toString();
+	}
+
+	/**
+	 * append an object as compact JSON.
+	 *
+	 * @param obj the obj
+	 * @param b the buffer
+	 */
+	public static void append(Object obj, StringBuilder b){
+		if(obj == null){
+			b.append("null");
+		}else if(obj instanceof Number || obj instanceof Boolean){
+			b.append(obj);
+		}else if(obj instanceof Map){
+			b.append('{');
+			boolean first = true;
+			for(Object o: ((Map) obj).entrySet()){
+				Map.Entry e = (Map.Entry) o;
+				if(!first)
+					b.append(',');
+				quote(""+e.getKey(),b);
+				b.append(':');
+				append(e.getValue(),b);
+				first = false;
+			}
+			b.append('}');
+		}else if(obj instanceof Collection || obj instanceof Object []){
+			b.append('[');
+			boolean first = true;
+			for(Object o: (obj instanceof Collection)?(Collection)obj:java.util.Arrays.asList((Object []) obj)){
+				if(!first)
+					b.append(',');
+				append(o,b);
+				first = false;
+			}
+			b.append(']');
+		}else{
+			quote(obj.toString(),b);
+		}
+	}
+
+	private void read() throws IOException {
+		next = reader.read();
+		offset ++;
+	}
+
+	private IOException error(String message){
+		return new IOException("Invalid JSON at character "+offset+": "+message);
+	}
+
+	private void skipSpace() throws IOException {
+		while(next == ' ' || next == '\t' || next == '\n' || next == '\r')
+			read();
+	}
+
+	/**
+	 * enter nested object or array.
+	 */
+	private void enter() throws IOException {
+		if(++depth > MAX_DEPTH)
+			throw error("objects and arrays are nested deeper then "+MAX_DEPTH+" levels");
+	}
+
+	private void expect(char c) throws IOException {
+		if(next != c)
+			throw error("expected '"+c+"'");
+		read();
+	}
+
+	private Object parseValue() throws IOException {
+		skipSpace();
+		switch(next){
+		case '{': return parseObject();
+		case '[': return parseArray();
+		case '"': return parseString();
+		case 't': parseWord("true");  return Boolean.TRUE;
+		case 'f': parseWord("false"); return Boolean.FALSE;
+		case 'n': parseWord("null");  return null;
+		case -1: throw error("unexpected end of input");
+		default:
+			if(next == '-' || (next >= '0' && next <= '9'))
+				return parseNumber();
+			throw error("unexpected character '"+(char)next+"'");
+		}
+	}
+
+	private Map<String,Object> parseObject() throws IOException {
+		Map<String,Object> map = new LinkedHashMap<String,Object>();
+		enter();
+		expect('{');
+		skipSpace();
+		if(next == '}'){
+			read();
+			depth --;
+			return map;
+		}
+		while(true){
+			skipSpace();
+			if(next != '"')
+				throw error("expected object key");
+			String key = parseString();
+			skipSpace();
+			expect(':');
+			map.put(key,parseValue());
+			skipSpace();
+			if(next == ','){
+				read();
+			}else{
+				expect('}');
+				depth --;
+				return map;
+			}
+		}
+	}
+
+	private List<Object> parseArray() throws IOException {
+		List<Object> list = new ArrayList<Object>();
+		enter();
+		expect('[');
+		skipSpace();
+		if(next == ']'){
+			read();
+			depth --;
+			return list;
+		}
+		while(true){
+			list.add(parseValue());
+			skipSpace();
+			if(next == ','){
+				read();
+			}else{
+				expect(']');
+				depth --;
+				return list;
+			}
+		}
+	}
+
+	private String parseString() throws IOException {
+		StringBuilder b = new StringBuilder();
+		expect('"');
+		while(next != '"'){
+			if(next == -1)
+				throw error("unterminated string");
+			if(next == '\\'){
+				read();
+				switch(next){
+				case 'n': b.append('\n'); break;
+				case 'r': b.append('\r'); break;
+				case 't': b.append('\t'); break;
+				case 'b': b.append('\b'); break;
+				case 'f': b.append('\f'); break;
+				case '"': case '\\': case '/': b.append((char)next); break;
+				case 'u':
+					int c = 0;
+					for(int i=0;i<4;i++){
+						read();
+						int d = Character.digit(next,16);
+						if(d < 0)
+							throw error("invalid unicode escape");
+						c = c*16+d;
+					}
+					b.append((char)c);
+					break;
+				default: throw error("invalid escape");
+				}
+			}else{
+				b.append((char)next);
+			}
+			read();
+		}
+		read();
+		return b.toString();
+	}
+
+	private Number parseNumber() throws IOException {
+		StringBuilder b = new StringBuilder();
+		boolean decimal = false;
+		while(next == '-' || next == '+' || next == '.' || next == 'e' || next == 'E' || (next >= '0' && next <= '9')){
+			if(next == '.' || next == 'e' || next == 'E')
+				decimal = true;
+			b.append((char)next);
+			read();
+		}
+		try{
+			return decimal?(Number)Double.valueOf(b.toString()):(Number)Long.valueOf(b.toString());
+		}catch(NumberFormatException ex){
+			throw error("invalid number "+b);
+		}
+	}
+
+	private void parseWord(String word) throws IOException {
+		for(int i=0;i<word.length();i++){
+			if(next != word.charAt(i))
+				throw error("expected "+word);
+			read();
+		}
+	}
+}
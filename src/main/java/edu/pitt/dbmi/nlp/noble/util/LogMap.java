@@ -0,0 +1,481 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyError;
+
+/**
+ * This class implements a simple embedded key/value store as
+ * an append only log file with an in-memory index of keys.
+ * Every put appends a record to the end of the log and a remove appends a tombstone,
+ * so writes never move existing data. Keys are read once when the table is opened,
+ * values are read from disk with a positional read when requested, so reads do not take a lock
+ * and can run in parallel with each other and with writes.
+ * Space used by overwritten records is reclaimed by compact().
+ *
+ * @author tseytlin
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LogMap<K, V> extends AbstractMap<K, V> {
+	public static final String LOG_SUFFIX = ".log";
+	private static final int FLUSH_SIZE = 1024*1024;
+	private static final int TOMBSTONE = -1;
+	private static final byte STRING = 0, OBJECT = 1, UTF8 = 2;
+	private volatile Map<K,Long> index;
+	private File file;
+	private volatile FileChannel channel;
+	private ByteArrayOutputStream buffer;
+	private DataOutputStream pending;
+	private volatile long length;
+	private int garbage;
+	private boolean readonly, disposed;
+
+	/**
+	 * create an instance of persistent hash map.
+	 *
+	 * @param filename the filename
+	 * @param tablename the tablename
+	 * @param readonly the readonly
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public LogMap(String filename, String tablename, boolean readonly) throws IOException{
+		file = new File(filename+"_"+tablename+LOG_SUFFIX);
+
+		// check parent directory
+		if(!file.getParentFile().exists())
+			throw new IOException("Location "+file.getParentFile().getAbsolutePath()+" does not exist!");
+
+		// if file doesn't exist, make it read-only
+		this.readonly = readonly && file.exists();
+		index = new ConcurrentHashMap<K, Long>();
+		buffer = new ByteArrayOutputStream();
+		pending = new DataOutputStream(buffer);
+		if(file.exists())
+			readIndex();
+		channel = openChannel();
+
+		// drop partial record at the end of the log
+		if(!this.readonly && channel.size() > length)
+			channel.truncate(length);
+	}
+
+	private FileChannel openChannel() throws IOException {
+		return new RandomAccessFile(file,readonly?"r":"rw").getChannel();
+	}
+
+	/**
+	 * Gets the file channel. A channel is closed for every thread when a thread that reads from it
+	 * is interrupted, in that case it is opened again.
+	 *
+	 * @param closed the channel that was found closed or null
+	 * @return the channel
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private FileChannel getChannel(FileChannel closed) throws IOException {
+		FileChannel ch = channel;
+		if(ch == closed){
+			synchronized(this){
+				if(disposed)
+					throw new ClosedChannelException();
+				if(channel == closed)
+					channel = openChannel();
+				ch = channel;
+			}
+		}
+		return ch;
+	}
+
+	/**
+	 * scan log file and remember the offset of the latest value of each key.
+	 */
+	private void readIndex() throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),FLUSH_SIZE));
+		long offset = 0;
+		try{
+			while(true){
+				byte [] key = new byte [in.readInt()];
+				in.readFully(key);
+				int n = in.readInt();
+				long valueOffset = offset+4+key.length;
+				if(n > 0 && in.skipBytes(n) < n)
+					break;
+				K k = (K) fromBytes(key);
+				Long old = (n == TOMBSTONE)?index.remove(k):index.put(k,valueOffset);
+				if(old != null || n == TOMBSTONE)
+					garbage ++;
+				offset = valueOffset+4+Math.max(0,n);
+			}
+		}catch(EOFException ex){
+			// end of log, possibly in the middle of an unfinished record
+		}finally{
+			in.close();
+		}
+		length = offset;
+	}
+
+	private static byte [] toBytes(Object obj) throws IOException{
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		if(obj instanceof String){
+			// record length is known, so string does not need its own length prefix
+			b.write(UTF8);
+			b.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+		}else{
+			b.write(OBJECT);
+			ObjectOutputStream out = new ObjectOutputStream(b);
+			out.writeObject(obj);
+			out.close();
+		}
+		return b.toByteArray();
+	}
+
+	private static Object fromBytes(byte [] bytes) throws IOException{
+		if(bytes.length > 0 && bytes[0] == UTF8)
+			return new String(bytes,1,bytes.length-1,StandardCharsets.UTF_8);
+		ByteArrayInputStream b = new ByteArrayInputStream(bytes);
+		// strings written by previous versions
+		if(b.read() == STRING)
+			return new DataInputStream(b).readUTF();
+		ObjectInputStream in = new ObjectInputStream(b);
+		try{
+			return in.readObject();
+		}catch(ClassNotFoundException ex){
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Checks if is read only.
+	 *
+	 * @return true, if is read only
+	 */
+	public boolean isReadOnly(){
+		return readonly;
+	}
+
+	/**
+	 * Gets the file.
+	 *
+	 * @return the file
+	 */
+	public File getFile(){
+		return file;
+	}
+
+	/**
+	 * write buffered records to the end of the log.
+	 */
+	private void flush() throws IOException{
+		if(buffer.size() == 0)
+			return;
+		ByteBuffer b = ByteBuffer.wrap(buffer.toByteArray());
+		FileChannel ch = channel;
+		while(b.hasRemaining()){
+			try{
+				ch.write(b,length+b.position());
+			}catch(ClosedChannelException ex){
+				ch = getChannel(ch);
+			}
+		}
+		length += buffer.size();
+		buffer.reset();
+	}
+
+	/**
+	 * append record to the end of the log.
+	 * @return offset of the value
+	 */
+	private long append(byte [] key, byte [] value) throws IOException{
+		if(readonly)
+			throw new UnsupportedOperationException("Table "+file.getName()+" is opened in read-only mode");
+		pending.writeInt(key.length);
+		pending.write(key);
+		long offset = length+buffer.size();
+		if(value == null){
+			pending.writeInt(TOMBSTONE);
+		}else{
+			pending.writeInt(value.length);
+			pending.write(value);
+		}
+		if(buffer.size() > FLUSH_SIZE)
+			flush();
+		return offset;
+	}
+
+	/**
+	 * read value at a given offset, only records that are still buffered need a lock.
+	 */
+	private Object read(long offset) throws IOException{
+		if(offset >= length){
+			synchronized(this){
+				if(offset >= length)
+					flush();
+			}
+		}
+		return fromBytes(readBytes(offset));
+	}
+
+	/**
+	 * read length prefixed bytes at a given offset.
+	 */
+	private byte [] readBytes(long offset) throws IOException{
+		ByteBuffer size = ByteBuffer.allocate(4);
+		readFully(size,offset);
+		ByteBuffer b = ByteBuffer.allocate(size.getInt(0));
+		readFully(b,offset+4);
+		return b.array();
+	}
+
+	private void readFully(ByteBuffer b, long position) throws IOException{
+		FileChannel ch = channel;
+		while(b.hasRemaining()){
+			int n = 0;
+			try{
+				n = ch.read(b,position+b.position());
+			}catch(ClosedChannelException ex){
+				// interrupted thread does not get to retry
+				if(Thread.currentThread().isInterrupted())
+					throw ex;
+				ch = getChannel(ch);
+			}
+			if(n < 0)
+				throw new EOFException("Unexpected end of table "+file);
+		}
+	}
+
+	/**
+	 * commit buffered records to disk.
+	 */
+	public synchronized void commit(){
+		try{
+			flush();
+		}catch(IOException ex){
+			throw new TerminologyError("Unable to write table "+file,ex);
+		}
+	}
+
+	/**
+	 * rewrite log with only the latest value of each key.
+	 * Table should not be read by other threads while it is compacted.
+	 */
+	public synchronized void compact(){
+		if(readonly || garbage == 0)
+			return;
+		try{
+			flush();
+			File temp = new File(file.getAbsolutePath()+".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp),FLUSH_SIZE));
+			Map<K,Long> offsets = new ConcurrentHashMap<K, Long>();
+			long offset = 0;
+			try{
+				for(K key: index.keySet()){
+					byte [] k = toBytes(key);
+					byte [] v = readBytes(index.get(key));
+					out.writeInt(k.length);
+					out.write(k);
+					offsets.put(key,offset+4+k.length);
+					out.writeInt(v.length);
+					out.write(v);
+					offset += 8+k.length+v.length;
+				}
+			}finally{
+				out.close();
+			}
+			channel.close();
+			if(!file.delete() || !temp.renameTo(file))
+				throw new IOException("Unable to replace table "+file+" with compacted copy");
+			channel = openChannel();
+			index = offsets;
+			length = offset;
+			garbage = 0;
+		}catch(IOException ex){
+			throw new TerminologyError("Unable to compact table "+file,ex);
+		}
+	}
+
+	/**
+	 * Dispose.
+	 */
+	public synchronized void dispose(){
+		try{
+			if(!readonly)
+				flush();
+			disposed = true;
+			channel.close();
+		}catch(IOException ex){
+			throw new TerminologyError("Unable to close table "+file,ex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#size()
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		return key != null && index.containsKey(key);
+	}
+
+	/**
+	 * get value for given key.
+	 *
+	 * @param key the key
+	 * @return the v
+	 */
+	public V get(Object key) {
+		Long offset = (key == null)?null:index.get(key);
+		if(offset == null)
+			return null;
+		try{
+			return (V) read(offset);
+		}catch(IOException ex){
+			throw new TerminologyError("Unable to read table "+file,ex);
+		}
+	}
+
+	/**
+	 * put values into the table.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @return the previous value or null, if there was no value for this key
+	 */
+	public synchronized V put(K key, V value) {
+		try{
+			Long previous = index.get(key);
+			V old = (previous != null)?(V) read(previous):null;
+			index.put(key,append(toBytes(key),toBytes(value)));
+			if(previous != null)
+				garbage ++;
+			return old;
+		}catch(IOException ex){
+			throw new TerminologyError("Unable to write table "+file,ex);
+		}
+	}
+
+	/**
+	 * remove entry from table.
+	 *
+	 * @param key the key
+	 * @return the v
+	 */
+	public synchronized V remove(Object key) {
+		if(!containsKey(key))
+			return null;
+		V old = get(key);
+		try{
+			append(toBytes(key),null);
+		}catch(IOException ex){
+			throw new TerminologyError("Unable to write table "+file,ex);
+		}
+		index.remove(key);
+		garbage += 2;
+		return old;
+	}
+
+	/**
+	 * remove all records at once.
+	 */
+	public synchronized void clear() {
+		if(readonly)
+			throw new UnsupportedOperationException("Table "+file.getName()+" is opened in read-only mode");
+		try{
+			buffer.reset();
+			channel.truncate(0);
+		}catch(IOException ex){
+			throw new TerminologyError("Unable to clear table "+file,ex);
+		}
+		index.clear();
+		length = 0;
+		garbage = 0;
+	}
+
+	/**
+	 * this is a very expensive call to get all of the entry set,
+	 * values are read from disk as entries are iterated.
+	 *
+	 * @return the sets the
+	 */
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K,V>>() {
+			public Iterator<Map.Entry<K, V>> iterator() {
+				final Iterator<K> it = index.keySet().iterator();
+				return new Iterator<Map.Entry<K,V>>() {
+					private K last;
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+					public Map.Entry<K, V> next() {
+						last = it.next();
+						return new SimpleEntry<K,V>(last,get(last));
+					}
+					public void remove() {
+						LogMap.this.remove(last);
+					}
+				};
+			}
+			public int size() {
+				return index.size();
+			}
+		};
+	}
+
+	/**
+	 * get all of the keys, keys are kept in memory, so this call is cheap.
+	 *
+	 * @return the sets the
+	 */
+	public Set<K> keySet() {
+		return new AbstractSet<K>() {
+			public Iterator<K> iterator() {
+				final Iterator<K> it = index.keySet().iterator();
+				return new Iterator<K>() {
+					private K last;
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+					public K next() {
+						return last = it.next();
+					}
+					public void remove() {
+						LogMap.this.remove(last);
+					}
+				};
+			}
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+			public int size() {
+				return index.size();
+			}
+		};
+	}
+}
@@ -21,7 +21,9 @@ import edu.pitt.dbmi.nlp.noble.terminology.ConceptPath;
 import edu.pitt.dbmi.nlp.noble.terminology.Terminology;
 import edu.pitt.dbmi.nlp.noble.terminology.TerminologyError;
 import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.HierarchyIndex;
 import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider;
 
 
 /**
@@ -33,6 +35,8 @@ public class PathHelper {
 	private int num;
 	private Map<String,List<List<String>>> pathMap;
 	private Map<String,Map<String,Integer>> ancestryMap;
+	private HierarchyIndex hierarchyIndex;
+	private boolean hierarchyIndexChecked;
 	private Terminology terminology;
 	
 	/**
@@ -48,13 +52,28 @@ public class PathHelper {
 	 * @see java.lang.Object#finalize()
 	 */
 	protected void finalize() throws Throwable {
-		if(ancestryMap != null && ancestryMap instanceof JDBMMap){
-			((JDBMMap) ancestryMap).dispose();
+		StorageProvider provider = getStorageProvider();
+		if(ancestryMap != null && provider != null){
+			provider.dispose(ancestryMap);
 		}
-		if(pathMap != null && pathMap instanceof JDBMMap){
-			((JDBMMap) pathMap).dispose();
+		if(pathMap != null && provider != null){
+			provider.dispose(pathMap);
 		}
 	}
+	
+	/**
+	 * Gets the storage provider of a terminology, so that cache tables use the same backend as the terminology.
+	 *
+	 * @return the storage provider or null, if terminology is not persisted
+	 */
+	private StorageProvider getStorageProvider(){
+		if(terminology instanceof NobleCoderTerminology){
+			NobleCoderTerminology.Storage storage = ((NobleCoderTerminology)terminology).getStorage();
+			if(storage != null && storage.getLocation() != null)
+				return storage.getProvider();
+		}
+		return null;
+	}
 
 	
 
@@ -170,10 +189,11 @@ public class PathHelper {
 	 */
 	private Map<String,List<List<String>>> getPathMap() throws IOException{
 		if(pathMap == null){
-			if(terminology instanceof NobleCoderTerminology){
-				File f = new File(terminology.getLocation(),"table_pathMap.d.0");
-				if(!readOnly || f.exists()){
-					pathMap = new JDBMMap<String, List<List<String>>>(terminology.getLocation()+File.separator+"table","pathMap",readOnly);
+			StorageProvider provider = getStorageProvider();
+			if(provider != null){
+				File location = ((NobleCoderTerminology)terminology).getStorage().getLocation();
+				if(!readOnly || provider.tableExists(location,"pathMap")){
+					pathMap = provider.createMap(location,"pathMap",readOnly);
 				}
 			}
 		}
@@ -193,10 +213,11 @@ public class PathHelper {
 	 */
 	private Map<String,Map<String,Integer>> getAncesteryMap() throws IOException{
 		if(ancestryMap == null){
-			if(terminology instanceof NobleCoderTerminology){
-				File f = new File(terminology.getLocation(),"table_ancestorMap.d.0");
-				if(!readOnly || f.exists()){
-					ancestryMap = new JDBMMap<String, Map<String,Integer>>(terminology.getLocation()+File.separator+"table","ancestorMap",readOnly);
+			StorageProvider provider = getStorageProvider();
+			if(provider != null){
+				File location = ((NobleCoderTerminology)terminology).getStorage().getLocation();
+				if(!readOnly || provider.tableExists(location,"ancestorMap")){
+					ancestryMap = provider.createMap(location,"ancestorMap",readOnly);
 				}
 			}
 		}
@@ -266,6 +287,9 @@ public class PathHelper {
 	public Map<Concept,Integer> getAncestors(Concept c){
 		//return getAncestors(getPaths(c));
 		if(c != null){
+			HierarchyIndex index = getHierarchyIndex();
+			if(index != null)
+				return toAncestors(terminology,index.getAncestors(c.getCode(),getPathDepthLimit()));
 			try {
 				// if visited return values
 				if(getAncesteryMap().containsKey(c.getCode()))
@@ -294,28 +318,76 @@ public class PathHelper {
 		return n;
 	}
 
+	/**
+	 * get hierarchy index of terminology if it was created and it covers current path depth limit.
+	 *
+	 * @return the hierarchy index or null if it is not available
+	 */
+	public HierarchyIndex getHierarchyIndex(){
+		if(!hierarchyIndexChecked){
+			hierarchyIndexChecked = true;
+			if(hierarchyIndex == null && terminology instanceof NobleCoderTerminology){
+				File location = ((NobleCoderTerminology)terminology).getStorage().getLocation();
+				File f = new File(location,HierarchyIndex.HIERARCHY_INDEX_FILE);
+				if(location != null && f.exists()){
+					try{
+						hierarchyIndex = HierarchyIndex.load(f);
+					}catch(IOException ex){
+						ex.printStackTrace();
+					}
+				}
+			}
+		}
+		// index built with smaller limit can't answer the question
+		HierarchyIndex index = hierarchyIndex;
+		if(index != null && index.getDepthLimit() > -1 && (getPathDepthLimit() < 0 || getPathDepthLimit() > index.getDepthLimit()))
+			return null;
+		return index;
+	}
+	
+	/**
+	 * build hierarchy index for a given terminology, persisted terminology saves it next to its tables.
+	 *
+	 * @return the hierarchy index
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public HierarchyIndex createHierarchyIndex() throws IOException {
+		if(!(terminology instanceof NobleCoderTerminology))
+			throw new TerminologyError("Hierarchy index can only be created for "+NobleCoderTerminology.class.getSimpleName());
+		NobleCoderTerminology.Storage storage = ((NobleCoderTerminology)terminology).getStorage();
+		HierarchyIndex index = HierarchyIndex.build(storage.getConceptMap(),storage.getRootMap().keySet(),getPathDepthLimit());
+		if(storage.getLocation() != null)
+			index.save(new File(storage.getLocation(),HierarchyIndex.HIERARCHY_INDEX_FILE));
+		hierarchyIndex = index;
+		hierarchyIndexChecked = true;
+		return index;
+	}
+	
 	/**
 	 * pre-build ancestory cache for a given terminology for faster ancestory access .
 	 *
 	 * @throws Exception the exception
 	 */
 	public void createPathCache() throws Exception {
-		if(terminology instanceof NobleCoderTerminology){
+		StorageProvider provider = getStorageProvider();
+		if(provider != null){
 			readOnly = false;
 			//debug = true;
 			num = 0;
-			if(pathMap != null && pathMap instanceof JDBMMap){
-				((JDBMMap) pathMap).dispose();
+			if(pathMap != null){
+				provider.dispose(pathMap);
+				pathMap = null;
 			}
-			JDBMMap map = (JDBMMap) getPathMap();
+			Map<String,List<List<String>>> map = getPathMap();
 			for(String cui: ((NobleCoderTerminology)terminology).getAllConcepts()){
 				getPaths(terminology.lookupConcept(cui));
 				if(num % 1000 == 0)
-					map.commit();
+					provider.commit(map);
 			}
-			map.commit();
-			map.compact();
-			map.dispose();
+			provider.commit(map);
+			provider.compact(map);
+			provider.dispose(map);
+			pathMap = null;
 			readOnly = true;
 			//debug = false;
 			ancestryMap = null;
@@ -323,30 +395,14 @@ public class PathHelper {
 	}
 	
 	/**
-	 * pre-build ancestory cache for a given terminology for faster ancestory access .
+	 * pre-build ancestory cache for a given terminology for faster ancestory access.
+	 * The cache is a hierarchy index @see createHierarchyIndex()
 	 *
 	 * @throws Exception the exception
 	 */
 	public void createAncestryCache() throws Exception {
 		if(terminology instanceof NobleCoderTerminology){
-			readOnly = false;
-			//debug = true;
-			num = 0;
-			if(ancestryMap != null && ancestryMap instanceof JDBMMap){
-				((JDBMMap) ancestryMap).dispose();
-			}
-			JDBMMap map = (JDBMMap) getAncesteryMap();
-			for(String cui: ((NobleCoderTerminology)terminology).getAllConcepts()){
-				getAncestors(terminology.lookupConcept(cui));
-				if(num % 1000 == 0)
-					map.commit();
-			}
-			map.commit();
-			map.compact();
-			map.dispose();
-			readOnly = true;
-			//debug = false;
-			ancestryMap = null;
+			createHierarchyIndex();
 		}
 	}
 
@@ -358,6 +414,11 @@ public class PathHelper {
 	 * @return true, if successful
 	 */
 	public boolean hasAncestor(Concept a, Concept b){
+		HierarchyIndex index = getHierarchyIndex();
+		if(index != null && a != null && b != null){
+			int d = index.getDistance(a.getCode(),b.getCode());
+			return d == 0 || (d > 0 && (getPathDepthLimit() < 0 || d <= getPathDepthLimit()));
+		}
 		try {
 			return a.equals(b) || getAncestors(a).containsKey(b);
 		} catch (Exception e) {
@@ -366,6 +427,42 @@ public class PathHelper {
 		return false;
 	}
 	
+	/**
+	 * find lowest common ancestor of two concepts, that is an ancestor with the shortest
+	 * combined distance to both of them. A concept is its own ancestor.
+	 *
+	 * @param a the a
+	 * @param b the b
+	 * @return the common ancestor or null if there isn't one
+	 */
+	public Concept getLowestCommonAncestor(Concept a, Concept b){
+		if(a == null || b == null)
+			return null;
+		HierarchyIndex index = getHierarchyIndex();
+		if(index != null && getPathDepthLimit() == index.getDepthLimit()){
+			String code = index.getLowestCommonAncestor(a.getCode(),b.getCode());
+			if(code == null)
+				return null;
+			Concept c = new Concept(code);
+			c.setTerminology(terminology);
+			return c;
+		}
+		Map<Concept,Integer> ancestorsA = new HashMap<Concept, Integer>(getAncestors(a));
+		Map<Concept,Integer> ancestorsB = new HashMap<Concept, Integer>(getAncestors(b));
+		ancestorsA.put(a,0);
+		ancestorsB.put(b,0);
+		Concept best = null;
+		int bestDistance = Integer.MAX_VALUE;
+		for(Concept c: ancestorsA.keySet()){
+			Integer d = ancestorsB.get(c);
+			if(d != null && ancestorsA.get(c)+d < bestDistance){
+				best = c;
+				bestDistance = ancestorsA.get(c)+d;
+			}
+		}
+		return best;
+	}
+	
 	/**
 	 * get all parents of the node
 	 * TODO:.
@@ -0,0 +1,202 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import edu.pitt.dbmi.nlp.noble.mentions.model.Composition;
+import edu.pitt.dbmi.nlp.noble.mentions.model.DomainOntology;
+import edu.pitt.dbmi.nlp.noble.ontology.IClass;
+import edu.pitt.dbmi.nlp.noble.ontology.IInstance;
+import edu.pitt.dbmi.nlp.noble.ontology.IProperty;
+import edu.pitt.dbmi.nlp.noble.ontology.IResource;
+
+/**
+ * The Class RDFExporter writes instances of processed documents as N-Triples,
+ * one document at a time, so that a whole corpus does not have to be kept in ontology
+ * before it is saved.
+ *
+ * @author tseytlin
+ */
+public class RDFExporter {
+	public static final String DEFAULT_RESULT_FILE = "RESULTS.nt";
+	private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+	private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+	private File outputFile;
+	private BufferedWriter rdfWriter;
+	private Set<String> sharedInstances;
+
+	/**
+	 * Instantiates a new RDF exporter.
+	 *
+	 * @param file the file
+	 */
+	public RDFExporter(File file){
+		if(file.isDirectory())
+			outputFile = new File(file,DEFAULT_RESULT_FILE);
+		else
+			outputFile = file;
+		sharedInstances = new HashSet<String>();
+	}
+
+	/**
+	 * Gets the output file.
+	 *
+	 * @return the output file
+	 */
+	public File getOutputFile() {
+		return outputFile;
+	}
+
+	/**
+	 * Sets the output file.
+	 *
+	 * @param outputFile the new output file
+	 */
+	public void setOutputFile(File outputFile) {
+		this.outputFile = outputFile;
+	}
+
+	/**
+	 * write all instances that were created for a document.
+	 * Shared instances are only referenced, their types are written the first time they are seen.
+	 *
+	 * @param doc the doc
+	 * @throws Exception the exception
+	 */
+	public synchronized void export(Composition doc) throws Exception {
+		BufferedWriter writer = getRDFWriter(outputFile);
+		DomainOntology domainOntology = doc.getDomainOntology();
+		for(IInstance inst: doc.getDocumentInstances()){
+			write(inst,domainOntology,writer);
+		}
+		writer.flush();
+	}
+
+	/**
+	 * write types and property values of a single instance.
+	 *
+	 * @param inst the inst
+	 * @param domainOntology the domain ontology
+	 * @param writer the writer
+	 * @throws Exception the exception
+	 */
+	private void write(IInstance inst, DomainOntology domainOntology, Writer writer) throws Exception {
+		String subject = toURI(inst);
+		writeTypes(inst,writer);
+		Set<IProperty> props = new LinkedHashSet<IProperty>();
+		for(IProperty prop: inst.getProperties())
+			props.add(prop);
+		for(IProperty prop: props){
+			String predicate = toURI(prop);
+			for(Object value: inst.getPropertyValues(prop)){
+				if(value instanceof IInstance){
+					IInstance vi = (IInstance) value;
+					if(domainOntology.isSharedInstance(vi) && sharedInstances.add(vi.getURI().toString()))
+						writeTypes(vi,writer);
+					writer.write(subject+" "+predicate+" "+toURI(vi)+" .\n");
+				}else if(value instanceof IResource){
+					writer.write(subject+" "+predicate+" "+toURI((IResource)value)+" .\n");
+				}else if(value != null){
+					writer.write(subject+" "+predicate+" "+toLiteral(value)+" .\n");
+				}
+			}
+		}
+	}
+
+	/**
+	 * write rdf:type statements of instance.
+	 *
+	 * @param inst the inst
+	 * @param writer the writer
+	 * @throws Exception the exception
+	 */
+	private void writeTypes(IInstance inst, Writer writer) throws Exception {
+		for(IClass cls: inst.getDirectTypes()){
+			writer.write(toURI(inst)+" <"+RDF_TYPE+"> "+toURI(cls)+" .\n");
+		}
+	}
+
+	/**
+	 * convert resource to N-Triples URI reference.
+	 *
+	 * @param r the r
+	 * @return the string
+	 */
+	private String toURI(IResource r){
+		return "<"+r.getURI()+">";
+	}
+
+	/**
+	 * convert a value to N-Triples literal.
+	 *
+	 * @param value the value
+	 * @return the string
+	 */
+	private String toLiteral(Object value){
+		String type = null;
+		if(value instanceof Integer || value instanceof Long || value instanceof Short)
+			type = "integer";
+		else if(value instanceof Double)
+			type = "double";
+		else if(value instanceof Float)
+			type = "float";
+		else if(value instanceof Boolean)
+			type = "boolean";
+		String literal = "\""+escape(value.toString())+"\"";
+		return (type != null)?literal+"^^<"+XSD+type+">":literal;
+	}
+
+	/**
+	 * escape special characters in a literal.
+	 *
+	 * @param str the str
+	 * @return the string
+	 */
+	private String escape(String str){
+		StringBuilder b = new StringBuilder(str.length());
+		for(int i=0;i<str.length();i++){
+			char c = str.charAt(i);
+			switch(c){
+			case '\\': b.append("\\\\"); break;
+			case '"': b.append("\\\""); break;
+			case '\n': b.append("\\n"); break;
+			case '\r': b.append("\\r"); break;
+			case '\t': b.append("\\t"); break;
+			default: b.append(c);
+			}
+		}
+		return b.toString();
+	}
+
+	/**
+	 * flush all writers.
+	 *
+	 * @throws Exception the exception
+	 */
+	public synchronized void flush() throws Exception {
+		if(rdfWriter != null){
+			rdfWriter.close();
+		}
+		rdfWriter = null;
+	}
+
+	/**
+	 * Gets the RDF writer.
+	 *
+	 * @param out the out
+	 * @return the RDF writer
+	 * @throws Exception the exception
+	 */
+	private BufferedWriter getRDFWriter(File out) throws Exception {
+		if(rdfWriter == null){
+			rdfWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out),"UTF-8"));
+		}
+		return rdfWriter;
+	}
+}
@@ -0,0 +1,465 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * sort rows of pipe delimited RRF files by CUI with an external merge sort.
+ * Each file is split into chunks on line boundaries and chunks are parsed by a pool of workers.
+ * A worker turns rows into records, sorts them in memory and writes them to a temporary run file.
+ * Runs are then merged and returned one CUI at a time, so that every concept can be assembled
+ * from all of its rows at once.
+ *
+ * @author tseytlin
+ */
+public class RRFSorter {
+	public static final long DEFAULT_CHUNK_SIZE = 16*1024*1024;
+	private static final int PROGRESS_STEP = 1024;
+	private File tempDirectory;
+	private ExecutorService pool;
+	private long chunkSize = DEFAULT_CHUNK_SIZE;
+	private List<Future<?>> tasks = new ArrayList<Future<?>>();
+	private List<File> runs = Collections.synchronizedList(new ArrayList<File>());
+	private AtomicLong rowCount = new AtomicLong(), recordCount = new AtomicLong();
+	private AtomicInteger runCount = new AtomicInteger();
+	private PriorityQueue<RunReader> queue;
+
+	/**
+	 * parses a single row of RRF file into records that should be sorted.
+	 * Handlers are called from several worker threads at once.
+	 */
+	public static interface RowHandler {
+		/**
+		 * parse a row.
+		 *
+		 * @param fields the fields of a row
+		 * @param position the byte offset of a row in its file
+		 * @param records the list that new records are added to
+		 */
+		public void parse(String [] fields, long position, List<Record> records);
+	}
+
+	/**
+	 * sortable record that was derived from an RRF row.
+	 * Records are ordered by CUI, then by type, then by their position in a file.
+	 */
+	public static class Record implements Comparable<Record> {
+		private final String cui;
+		private final int type;
+		private final long position;
+		private final String [] values;
+
+		/**
+		 * Instantiates a new record.
+		 *
+		 * @param cui the cui
+		 * @param type the type
+		 * @param position the position
+		 * @param values the values
+		 */
+		public Record(String cui, int type, long position, String ... values){
+			this.cui = cui;
+			this.type = type;
+			this.position = position;
+			this.values = values;
+		}
+
+		/**
+		 * Gets the cui.
+		 *
+		 * @return the cui
+		 */
+		public String getCui() {
+			return cui;
+		}
+
+		/**
+		 * Gets the type.
+		 *
+		 * @return the type
+		 */
+		public int getType() {
+			return type;
+		}
+
+		/**
+		 * Gets the position.
+		 *
+		 * @return the position
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		/**
+		 * Gets the values.
+		 *
+		 * @return the values
+		 */
+		public String [] getValues() {
+			return values;
+		}
+
+		/**
+		 * Gets the value.
+		 *
+		 * @param i the index
+		 * @return the value
+		 */
+		public String getValue(int i){
+			return values[i];
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(Record r) {
+			int c = cui.compareTo(r.cui);
+			if(c == 0)
+				c = Integer.compare(type,r.type);
+			if(c == 0)
+				c = Long.compare(position,r.position);
+			return c;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString(){
+			return cui+"|"+type+"|"+position+"|"+String.join("|",values);
+		}
+	}
+
+	/**
+	 * reads records from a single sorted run.
+	 */
+	private static class RunReader implements Comparable<RunReader> {
+		private DataInputStream in;
+		private int remaining;
+		private Record current;
+
+		public RunReader(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),1<<16));
+			remaining = in.readInt();
+		}
+
+		public boolean next() throws IOException {
+			if(remaining <= 0){
+				current = null;
+				in.close();
+				return false;
+			}
+			remaining --;
+			String cui = readString(in);
+			int type = in.readInt();
+			long position = in.readLong();
+			String [] values = new String [in.readInt()];
+			for(int i=0;i<values.length;i++)
+				values[i] = readString(in);
+			current = new Record(cui,type,position,values);
+			return true;
+		}
+
+		public void close() throws IOException {
+			in.close();
+		}
+
+		public int compareTo(RunReader r) {
+			return current.compareTo(r.current);
+		}
+	}
+
+
+	/**
+	 * Instantiates a new RRF sorter.
+	 *
+	 * @param tempDirectory the directory where sorted runs are kept
+	 * @param threadCount the number of parsing threads
+	 */
+	public RRFSorter(File tempDirectory, int threadCount){
+		this.tempDirectory = tempDirectory;
+		this.pool = Executors.newFixedThreadPool(Math.max(1,threadCount),new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r,"RRFSorter-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Gets the chunk size.
+	 *
+	 * @return the chunk size in bytes
+	 */
+	public long getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the chunk size, larger chunks produce fewer runs, but use more memory per thread.
+	 *
+	 * @param chunkSize the new chunk size in bytes
+	 */
+	public void setChunkSize(long chunkSize) {
+		this.chunkSize = Math.max(1,chunkSize);
+	}
+
+	/**
+	 * Gets the number of rows that were parsed so far.
+	 *
+	 * @return the row count
+	 */
+	public long getRowCount(){
+		return rowCount.get();
+	}
+
+	/**
+	 * Gets the number of records that were sorted so far.
+	 *
+	 * @return the record count
+	 */
+	public long getRecordCount(){
+		return recordCount.get();
+	}
+
+	/**
+	 * split a file into chunks and schedule them to be parsed and sorted.
+	 * Use await() to wait for all scheduled files to be sorted.
+	 *
+	 * @param file the RRF file
+	 * @param handler the handler that converts rows into records
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void add(final File file, final RowHandler handler) throws IOException {
+		if(!tempDirectory.exists())
+			tempDirectory.mkdirs();
+
+		// find chunk boundaries, each chunk starts at the beginning of a line
+		List<Long> offsets = new ArrayList<Long>();
+		offsets.add(0L);
+		RandomAccessFile raf = new RandomAccessFile(file,"r");
+		try{
+			long length = raf.length();
+			for(long p = chunkSize; p < length; p = Math.max(p,offsets.get(offsets.size()-1))+chunkSize){
+				raf.seek(p-1);
+				for(int b = raf.read(); b != -1 && b != '\n'; b = raf.read());
+				long offset = raf.getFilePointer();
+				if(offset >= length)
+					break;
+				if(offset > offsets.get(offsets.size()-1))
+					offsets.add(offset);
+			}
+			offsets.add(length);
+		}finally{
+			raf.close();
+		}
+
+		// schedule chunks
+		for(int i=0;i<offsets.size()-1;i++){
+			final long start = offsets.get(i);
+			final long end = offsets.get(i+1);
+			tasks.add(pool.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					sort(file,start,end,handler);
+					return null;
+				}
+			}));
+		}
+	}
+
+	/**
+	 * wait for scheduled files to be sorted.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return true, if all scheduled files were sorted
+	 * @throws IOException if any of the chunks failed to be sorted
+	 */
+	public boolean await(long timeout) throws IOException {
+		long deadline = System.currentTimeMillis()+timeout;
+		for(Future<?> f: tasks){
+			try{
+				f.get(Math.max(0,deadline-System.currentTimeMillis()),TimeUnit.MILLISECONDS);
+			}catch(TimeoutException ex){
+				return false;
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while sorting RRF files");
+			}catch(ExecutionException ex){
+				Throwable cause = ex.getCause();
+				if(cause instanceof IOException)
+					throw (IOException) cause;
+				if(cause instanceof UncheckedIOException)
+					throw ((UncheckedIOException) cause).getCause();
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new IOException("Unable to sort RRF file",cause);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * parse and sort a chunk of a file into a run.
+	 *
+	 * @param file the file
+	 * @param start the start
+	 * @param end the end
+	 * @param handler the handler
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void sort(File file, long start, long end, RowHandler handler) throws IOException {
+		byte [] buffer = new byte [(int)(end-start)];
+		RandomAccessFile raf = new RandomAccessFile(file,"r");
+		try{
+			raf.seek(start);
+			raf.readFully(buffer);
+		}finally{
+			raf.close();
+		}
+
+		// parse each line
+		List<Record> records = new ArrayList<Record>();
+		int rows = 0;
+		for(int s = 0, e = 0; s < buffer.length; s = e+1){
+			for(e = s; e < buffer.length && buffer[e] != '\n'; e++);
+			int n = (e > s && buffer[e-1] == '\r')?e-s-1:e-s;
+			if(n > 0)
+				handler.parse(new String(buffer,s,n,StandardCharsets.UTF_8).split("\\|"),start+s,records);
+			if(++rows == PROGRESS_STEP){
+				rowCount.addAndGet(rows);
+				rows = 0;
+			}
+		}
+		rowCount.addAndGet(rows);
+		buffer = null;
+
+		// write sorted run
+		if(!records.isEmpty()){
+			Collections.sort(records);
+			File run = new File(tempDirectory,"run"+runCount.incrementAndGet()+".tmp");
+			runs.add(run);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),1<<16));
+			try{
+				out.writeInt(records.size());
+				for(Record r: records){
+					writeString(out,r.cui);
+					out.writeInt(r.type);
+					out.writeLong(r.position);
+					out.writeInt(r.values.length);
+					for(String v: r.values)
+						writeString(out,v);
+				}
+			}finally{
+				out.close();
+			}
+			recordCount.addAndGet(records.size());
+		}
+	}
+
+	/**
+	 * get next group of records that belong to the same CUI from the merged runs.
+	 * All scheduled files should be sorted before the first call.
+	 *
+	 * @return the list of records, or null if there are no more records
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public List<Record> next() throws IOException {
+		if(queue == null){
+			if(!await(Long.MAX_VALUE/2))
+				throw new IOException("Unable to finish sorting RRF files");
+			queue = new PriorityQueue<RunReader>();
+			for(File run: runs){
+				RunReader reader = new RunReader(run);
+				if(reader.next())
+					queue.add(reader);
+			}
+		}
+		if(queue.isEmpty())
+			return null;
+
+		List<Record> group = new ArrayList<Record>();
+		String cui = queue.peek().current.cui;
+		while(!queue.isEmpty() && cui.equals(queue.peek().current.cui)){
+			RunReader reader = queue.poll();
+			group.add(reader.current);
+			if(reader.next())
+				queue.add(reader);
+		}
+		return group;
+	}
+
+	/**
+	 * stop sorting and remove all temporary runs.
+	 */
+	public void dispose(){
+		pool.shutdownNow();
+		if(queue != null){
+			for(RunReader reader: queue){
+				try{
+					reader.close();
+				}catch(IOException ex){
+					// already closed
+				}
+			}
+			queue.clear();
+		}
+		synchronized(runs){
+			for(File run: runs)
+				run.delete();
+			runs.clear();
+		}
+		tempDirectory.delete();
+	}
+
+	/**
+	 * write a string that can be longer then writeUTF() allows.
+	 *
+	 * @param out the out
+	 * @param s the s
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte [] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * read a string that was written by writeString().
+	 *
+	 * @param in the in
+	 * @return the string
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		byte [] b = new byte [in.readInt()];
+		in.readFully(b);
+		return new String(b,StandardCharsets.UTF_8);
+	}
+}
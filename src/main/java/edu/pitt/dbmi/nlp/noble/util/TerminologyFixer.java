@@ -87,6 +87,22 @@ public class TerminologyFixer {
 		System.out.println("done");
 	}
 	
+	/**
+	 * compile term trie and memory mapped term index for a terminology that was
+	 * imported before these files were created on save.
+	 *
+	 * @param name the name
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void compileTerminology(String name) throws IOException{
+		NobleCoderTerminology term = new NobleCoderTerminology();
+		term.load(name, true);
+		System.out.println("compiling "+term.getLocation()+" ...");
+		term.getStorage().saveTermIndex();
+		term.dispose();
+		System.out.println("done");
+	}
+	
 	/**
 	 * The main method.
 	 *
@@ -96,6 +112,12 @@ public class TerminologyFixer {
 	 */
 	public static void main(String[] args) throws IOException, TerminologyException {
 		//addOtherConceptCodes("NCI_Metathesaurus");
+		if(args.length > 1 && "-compile".equals(args[0])){
+			for(int i=1;i<args.length;i++)
+				compileTerminology(args[i]);
+		}else{
+			System.out.println("Usage: java "+TerminologyFixer.class.getName()+" -compile <terminology name> ...");
+		}
 	}
 
 }
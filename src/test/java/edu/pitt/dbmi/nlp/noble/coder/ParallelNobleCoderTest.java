@@ -0,0 +1,198 @@
+package edu.pitt.dbmi.nlp.noble.coder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.pitt.dbmi.nlp.noble.coder.model.Document;
+import edu.pitt.dbmi.nlp.noble.coder.model.Mention;
+import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyHelper;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+import edu.pitt.dbmi.nlp.noble.tools.ConText;
+
+public class ParallelNobleCoderTest {
+	private static final String [] TEXT = new String [] {
+		"FINAL DIAGNOSIS:\nInvasive ductal carcinoma (IDC) of the breast is seen. The IDC is 2 cm.\n",
+		"FINAL DIAGNOSIS:\nNo lymph node metastasis.\n",
+		"COMMENT:\nDeep margin is negative for melanoma.\n",
+		"FINAL DIAGNOSIS:\nBreast carcinoma, ductal, invasive.\n"};
+
+	/**
+	 * parallel coding should produce the same mentions in the same order as sequential coding
+	 * @throws Exception
+	 */
+	public void testParallelCoding() throws Exception {
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+
+		// sequential run
+		NobleCoder coder = new NobleCoder(terminology);
+		coder.setContextDetection(false);
+		List<String> expected = new ArrayList<String>();
+		for(Document doc: createDocuments(20))
+			expected.add(toString(coder.process(doc)));
+
+		// parallel run
+		ParallelNobleCoder parallel = new ParallelNobleCoder(terminology);
+		parallel.setContextDetection(false);
+		parallel.setThreadCount(4);
+		parallel.setQueueSize(3);
+		List<String> result = new ArrayList<String>();
+		for(Document doc: parallel.process(createDocuments(20)))
+			result.add(toString(doc));
+
+		assertTrue(expected.equals(result),"parallel coding returned different results: "+result+" vs "+expected);
+	}
+
+	/**
+	 * pipelined sentences of a long document should get the same mentions, acronyms and modifiers as sequential coding
+	 * @throws Exception
+	 */
+	public void testSentencePipeline() throws Exception {
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		ConText conText = new ConText(TerminologyHelper.createModifierTerminology());
+		StringBuffer text = new StringBuffer();
+		for(int i=0;i<50;i++)
+			text.append(TEXT[i%TEXT.length]).append("No IDC in deep margin, but family history of melanoma.\n");
+
+		NobleCoder coder = new NobleCoder(terminology);
+		coder.setConText(conText);
+		String expected = toString(coder.process(new Document(text.toString())),true);
+
+		for(int threads: new int [] {2,4}){
+			coder.setSentenceThreadCount(threads);
+			String result = toString(coder.process(new Document(text.toString())),true);
+			assertTrue(expected.equals(result),"pipelined coding with "+threads+" threads returned different results: "+result+" vs "+expected);
+		}
+		coder.dispose();
+		assertTrue(expected.contains(ConText.MODIFIER_VALUE_NEGATIVE) && expected.contains(ConText.MODIFIER_VALUE_FAMILY_MEMBER),"modifiers were not assigned");
+	}
+
+	/**
+	 * disposed coder should stop its sentence threads, failed sentence should keep its original text
+	 * @throws Exception
+	 */
+	public void testDispose() throws Exception {
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		NobleCoder coder = new NobleCoder(terminology);
+		coder.setContextDetection(false);
+		coder.setSentenceThreadCount(4);
+		int threads = countSentenceThreads();
+		StringBuffer text = new StringBuffer();
+		for(int i=0;i<10;i++)
+			text.append(TEXT[i%TEXT.length]);
+		String expected = toString(coder.process(new Document(text.toString())));
+		assertTrue(countSentenceThreads() > threads,"sentence threads were not started");
+		coder.dispose();
+		for(int i=0;i<50 && countSentenceThreads() > threads;i++)
+			Thread.sleep(100);
+		assertTrue(countSentenceThreads() <= threads,"sentence threads were not stopped");
+		assertTrue(expected.equals(toString(coder.process(new Document(text.toString())))),"disposed coder can not be reused");
+		coder.dispose();
+
+		coder = new NobleCoder(terminology);
+		coder.setConText(new ConText(TerminologyHelper.createModifierTerminology()){
+			public Sentence process(Sentence sentence) throws TerminologyException {
+				throw new TerminologyException("failed");
+			}
+		});
+		String original = "**NAME[AAA] has melanoma.";
+		Sentence sentence = new Sentence(original);
+		try{
+			coder.process(sentence);
+			assertTrue(false,"failure was not reported");
+		}catch(TerminologyException ex){
+			assertTrue(original.equals(sentence.getText()),"original text was not restored: "+sentence.getText());
+		}
+	}
+
+	/**
+	 * failed sentence should not return before sentences in flight are done with a document
+	 * @throws Exception
+	 */
+	public void testFailedPipeline() throws Exception {
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		final AtomicInteger running = new AtomicInteger();
+		NobleCoderTerminology slow = new NobleCoderTerminology(){
+			public Sentence process(Sentence sentence, SearchOptions options) throws TerminologyException {
+				running.incrementAndGet();
+				try{
+					if(sentence.getText().contains("melanoma"))
+						throw new TerminologyException("failed");
+					Thread.sleep(50);
+					return super.process(sentence,options);
+				}catch(InterruptedException ex){
+					throw new TerminologyException("interrupted",ex);
+				}finally{
+					running.decrementAndGet();
+				}
+			}
+		};
+		for(String code: Arrays.asList("C1","C2","C3","C4","C5","C6","C7","C8","C9"))
+			slow.addConcept(terminology.lookupConcept(code));
+		NobleCoder coder = new NobleCoder(slow);
+		coder.setContextDetection(false);
+		coder.setSentenceThreadCount(4);
+		StringBuffer text = new StringBuffer(TEXT[2]);
+		for(int i=0;i<10;i++)
+			text.append(TEXT[i%2]);
+		try{
+			coder.process(new Document(text.toString()));
+			assertTrue(false,"failure was not reported");
+		}catch(TerminologyException ex){
+			assertTrue(running.get() == 0,running.get()+" sentences were still processed after failure");
+		}finally{
+			coder.dispose();
+		}
+	}
+
+	private static int countSentenceThreads(){
+		int n = 0;
+		for(Thread t: Thread.getAllStackTraces().keySet()){
+			if(t.getName().startsWith("NobleCoder-sentence-") && t.isAlive())
+				n++;
+		}
+		return n;
+	}
+
+	private static List<Document> createDocuments(int n){
+		List<Document> docs = new ArrayList<Document>();
+		for(int i=0;i<n;i++){
+			Document doc = new Document(TEXT[i%TEXT.length]);
+			doc.setTitle("report"+i);
+			docs.add(doc);
+		}
+		return docs;
+	}
+
+	private static String toString(Document doc){
+		return toString(doc,false);
+	}
+
+	private static String toString(Document doc, boolean modifiers){
+		StringBuffer b = new StringBuffer(doc.getTitle()+":");
+		for(Mention m: doc.getMentions()){
+			b.append(" "+m.getConcept().getCode()+"|"+m.getStartPosition());
+			if(modifiers)
+				b.append("|"+m.getModifierValue(ConText.MODIFIER_TYPE_POLARITY)+"|"+m.getModifierValue(ConText.MODIFIER_TYPE_EXPERIENCER));
+		}
+		return b.toString();
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		ParallelNobleCoderTest test = new ParallelNobleCoderTest();
+		test.testParallelCoding();
+		test.testSentencePipeline();
+		test.testDispose();
+		test.testFailedPipeline();
+		System.out.println("ok");
+	}
+}
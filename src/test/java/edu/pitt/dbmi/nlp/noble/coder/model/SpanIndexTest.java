@@ -0,0 +1,137 @@
+package edu.pitt.dbmi.nlp.noble.coder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.pitt.dbmi.nlp.noble.terminology.Annotation;
+import edu.pitt.dbmi.nlp.noble.terminology.Concept;
+
+public class SpanIndexTest {
+
+	/**
+	 * create a random sentence with some consecutive spaces
+	 * @param random - random
+	 * @return sentence with random mentions
+	 */
+	private static Sentence createSentence(Random random){
+		StringBuilder b = new StringBuilder();
+		for(int i=0,n=5+random.nextInt(40);i<n;i++){
+			for(int j=0,k=1+random.nextInt(8);j<k;j++)
+				b.append((char)('a'+random.nextInt(26)));
+			b.append(random.nextInt(5) == 0?"  ":" ");
+		}
+		Sentence sentence = new Sentence(b.toString().trim(),random.nextInt(100),Sentence.TYPE_PROSE);
+		List<Mention> mentions = new ArrayList<Mention>();
+		for(int i=0,n=random.nextInt(15);i<n;i++){
+			int st = random.nextInt(sentence.getLength());
+			int en = Math.min(sentence.getLength(),st+1+random.nextInt(20));
+			mentions.add(createMention(sentence,st,en));
+		}
+		sentence.setMentions(mentions);
+		return sentence;
+	}
+
+	private static Mention createMention(Sentence sentence, int st, int en){
+		Annotation a = new Annotation();
+		a.setText(sentence.getText().substring(st,en));
+		a.setOffset(sentence.getOffset()+st);
+		Mention m = new Mention();
+		m.setConcept(new Concept("C"+st+"_"+en));
+		m.setSentence(sentence);
+		m.getAnnotations().add(a);
+		return m;
+	}
+
+	/**
+	 * word windows should be the same as scanning the text one space at a time
+	 * @throws Exception
+	 */
+	public void testWordWindow() throws Exception {
+		Random random = new Random(42);
+		for(int n=0;n<500;n++){
+			Sentence sentence = createSentence(random);
+			SpanIndex index = new SpanIndex(sentence);
+			for(int i=0;i<20;i++){
+				int st = random.nextInt(sentence.getLength());
+				Mention m = createMention(sentence,st,Math.min(sentence.getLength(),st+1+random.nextInt(10)));
+				for(int w: new int [] {0,1,2,3,8}){
+					for(boolean after: new boolean [] {true,false}){
+						int expected = getWordWindowIndex(m,sentence,after,w);
+						int actual = index.getWordWindowIndex(m,after,w);
+						assertTrue(expected == actual,"wrong window "+actual+" vs "+expected+" for "+m.getText()+" in: "+sentence.getText());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * range queries should return the same mentions as going over all mentions
+	 * @throws Exception
+	 */
+	public void testRange() throws Exception {
+		Random random = new Random(7);
+		for(int n=0;n<500;n++){
+			Sentence sentence = createSentence(random);
+			SpanIndex index = new SpanIndex(sentence.getMentions());
+			int from = sentence.getOffset()+random.nextInt(sentence.getLength());
+			int to = from+random.nextInt(30);
+			List<Mention> starting = new ArrayList<Mention>();
+			List<Mention> spanning = new ArrayList<Mention>();
+			for(Mention m: sentence.getMentions()){
+				if(from <= m.getStartPosition() && m.getStartPosition() <= to)
+					starting.add(m);
+				if(m.getStartPosition() < from && m.getEndPosition() > to)
+					spanning.add(m);
+			}
+			assertTrue(starting.equals(index.getMentionsStartingIn(from,to)),"wrong mentions in range");
+			assertTrue(spanning.equals(index.getMentionsSpanning(from,to)),"wrong spanning mentions");
+		}
+	}
+
+	/**
+	 * reference implementation that goes one space at a time
+	 */
+	private static int getWordWindowIndex(Mention modifier, Sentence targetText, boolean beforeModifier,int windowSize){
+		int offs;
+		String txt = targetText.getText();
+		int offset = targetText.getOffset();
+		if(beforeModifier){
+			offs = targetText.getLength();
+			for(int i = modifier.getEndPosition()-offset,j=0,k=i;i>=0 && i<txt.length();i = txt.indexOf(' ',i+1)){
+				if(i > k +1)
+					j++;
+				if(j >= windowSize){
+					offs = i;
+					break;
+				}
+				k = i;
+			}
+		}else{
+			offs = 0;
+			for(int i = modifier.getStartPosition()-offset,j=0,k=i;i>=0;i = txt.lastIndexOf(' ',i-1)){
+				if(i < k -1)
+					j++;
+				if(j >= windowSize){
+					offs = i;
+					break;
+				}
+				k=i;
+			}
+		}
+		return offs+offset;
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		SpanIndexTest test = new SpanIndexTest();
+		test.testWordWindow();
+		test.testRange();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,156 @@
+package edu.pitt.dbmi.nlp.noble.coder.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.pitt.dbmi.nlp.noble.coder.model.Document;
+import edu.pitt.dbmi.nlp.noble.coder.model.Paragraph;
+import edu.pitt.dbmi.nlp.noble.coder.model.Section;
+import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+
+/**
+ * measure throughput of document structure processors (sections, sentences and paragraphs)
+ * on a synthetic corpus of pathology reports. The checksum covers offsets and types of everything
+ * that was found, so it should stay the same when the processors are optimized.
+ * Run as: java edu.pitt.dbmi.nlp.noble.coder.processor.ReportProcessorBenchmark [documents] [iterations]
+ *
+ * @author tseytlin
+ */
+public class ReportProcessorBenchmark {
+	private static final String [] SITES = {"breast","skin of back","sentinel lymph node","prostate","colon","left axilla"};
+	private static final String [] DIAGNOSES = {"INVASIVE DUCTAL CARCINOMA","MALIGNANT MELANOMA","ADENOCARCINOMA","DUCTAL CARCINOMA IN SITU","BENIGN FIBROADIPOSE TISSUE"};
+	private static final String [] PROSE = {
+			"The specimen is received in formalin and labeled with the patient's name.",
+			"It consists of an ellipse of tan skin measuring 2.3 x 1.1 cm, excised to a depth of 0.6 cm.",
+			"Sections show an atypical melanocytic proliferation, i.e. nests of cells at the junction vs. dermis.",
+			"The margins are inked blue and the specimen is serially sectioned",
+			"and entirely submitted in cassettes A1 through A4.",
+			"Dr. Smith was notified of the results on 10/12 at 2 p.m. by phone.",
+			"Immunohistochemical stains for ER and PR are positive (90%, strong); HER2 is equivocal.",
+			"No lymphovascular invasion is identified. Margins are free of tumor!"};
+	private static final String [] WORKSHEET = {
+			"Histologic type:           Infiltrating ductal carcinoma",
+			"Tumor size........2.1 cm",
+			"Margins ( ) involved (X) uninvolved",
+			"_X_ Lymph-vascular invasion not identified",
+			"Nottingham grade:	3",
+			"A. Lymph nodes examined: 12"};
+	private static int sink;
+
+	/**
+	 * create a synthetic pathology report.
+	 *
+	 * @param random the random
+	 * @return the string
+	 */
+	public static String createReport(Random random){
+		StringBuilder b = new StringBuilder();
+		b.append("SURGICAL PATHOLOGY REPORT\n\n");
+		b.append("CLINICAL HISTORY:  "+pick(random,PROSE)+"\n\n");
+		b.append("FINAL DIAGNOSIS:\n");
+		for(int i=0,n=1+random.nextInt(4);i<n;i++){
+			b.append((char)('A'+i)+".  "+pick(random,SITES).toUpperCase()+", EXCISION:\n");
+			b.append("    - "+pick(random,DIAGNOSES)+", GRADE "+(1+random.nextInt(3))+".\n");
+			b.append("    - MARGINS NEGATIVE, CLOSEST MARGIN "+random.nextInt(10)+" MM\n");
+			b.append("      FROM DEEP MARGIN.\n");
+		}
+		b.append("\n---------------------------------------\n");
+		b.append("SYNOPTIC REPORT - "+pick(random,SITES).toUpperCase()+"\n");
+		for(int i=0,n=2+random.nextInt(5);i<n;i++)
+			b.append(pick(random,WORKSHEET)+"\n");
+		b.append("\nGROSS DESCRIPTION:\n");
+		for(int i=0,n=2+random.nextInt(6);i<n;i++){
+			b.append(pick(random,PROSE)+" ");
+			if(random.nextInt(3) == 0)
+				b.append("\n");
+		}
+		b.append("\n\nMICROSCOPIC DESCRIPTION:\n");
+		for(int i=0,n=1+random.nextInt(3);i<n;i++){
+			b.append(" "+(i+1)+". "+pick(random,PROSE)+"\n");
+		}
+		b.append("\nPARTS 1 AND 2: Specimen type.....Excision\n");
+		b.append("==========\n");
+		b.append("Electronically signed out by Dr. A. Jones, M.D.\n");
+		return b.toString();
+	}
+
+	private static String pick(Random random, String [] list){
+		return list[random.nextInt(list.length)];
+	}
+
+	/**
+	 * hash everything that was found in a document.
+	 *
+	 * @param doc the doc
+	 * @return the int
+	 */
+	public static int checksum(Document doc){
+		int h = 0;
+		for(Section s: doc.getSections())
+			h = 31*h + (s.getTitle()+s.getStartPosition()+":"+s.getEndPosition()).hashCode();
+		for(Sentence s: doc.getSentences())
+			h = 31*h + (s.getSentenceType()+s.getStartPosition()+":"+s.getEndPosition()).hashCode();
+		for(Paragraph p: doc.getParagraphs())
+			h = 31*h + (p.getPart()+p.getStartPosition()+":"+p.getEndPosition()).hashCode();
+		return 31*h + doc.getProperties().hashCode();
+	}
+
+	private static long runReportProcessor(List<String> corpus, int iterations) throws Exception {
+		ReportProcessor processor = new ReportProcessor();
+		long time = System.nanoTime();
+		for(int i=0;i<iterations;i++){
+			for(String text: corpus){
+				Document doc = new Document(text);
+				sink += checksum(processor.process(doc));
+			}
+		}
+		return System.nanoTime()-time;
+	}
+
+	private static long runDocumentProcessor(List<String> corpus, int iterations) throws Exception {
+		DocumentProcessor processor = new DocumentProcessor();
+		long time = System.nanoTime();
+		for(int i=0;i<iterations;i++){
+			for(String text: corpus){
+				sink += checksum(processor.process(text));
+			}
+		}
+		return System.nanoTime()-time;
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws Exception the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int documents = (args.length > 0)?Integer.parseInt(args[0]):200;
+		int iterations = (args.length > 1)?Integer.parseInt(args[1]):20;
+
+		Random random = new Random(1);
+		List<String> corpus = new ArrayList<String>();
+		long chars = 0;
+		for(int i=0;i<documents;i++){
+			corpus.add(createReport(random));
+			chars += corpus.get(i).length();
+		}
+
+		// warm up
+		runReportProcessor(corpus,Math.max(1,iterations/4));
+		runDocumentProcessor(corpus,Math.max(1,iterations/4));
+
+		sink = 0;
+		long report = runReportProcessor(corpus,iterations);
+		int reportChecksum = sink;
+		sink = 0;
+		long document = runDocumentProcessor(corpus,iterations);
+		int documentChecksum = sink;
+
+		long total = ((long)documents)*iterations;
+		System.out.println("documents: "+documents+", iterations: "+iterations+", average size: "+(chars/documents)+" chars");
+		System.out.println("ReportProcessor:   "+String.format("%.0f",total*1e9/report)+" docs/sec (checksum "+reportChecksum+")");
+		System.out.println("DocumentProcessor: "+String.format("%.0f",total*1e9/document)+" docs/sec (checksum "+documentChecksum+")");
+	}
+}
@@ -0,0 +1,125 @@
+package edu.pitt.dbmi.nlp.noble.mentions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.pitt.dbmi.nlp.noble.mentions.model.Composition;
+import edu.pitt.dbmi.nlp.noble.mentions.model.DomainOntology;
+import edu.pitt.dbmi.nlp.noble.mentions.model.OntologyHelper;
+import edu.pitt.dbmi.nlp.noble.ontology.IOntology;
+import edu.pitt.dbmi.nlp.noble.ontology.IProperty;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+
+public class ParallelNobleMentionsTest {
+	private static final List<String> TEXT = Arrays.asList(
+			"Left ductal carcinoma of the breast.",
+			"No carcinoma.",
+			"Right breast tumor.",
+			"Ductal carcinoma, right.",
+			"Carcinoma of the left breast and tumor.");
+
+	/**
+	 * create an in-memory domain ontology
+	 * @return domain ontology
+	 * @throws Exception
+	 */
+	private static DomainOntology createDomainOntology() throws Exception {
+		IOntology ont = OntologyHelper.createOntology();
+		ont.getRoot().createSubClass(DomainOntology.COMPOSITION);
+		ont.getRoot().createSubClass(DomainOntology.DOCUMENT_SECTION);
+		ont.createProperty(DomainOntology.HAS_TITLE,IProperty.DATATYPE);
+		ont.createProperty(DomainOntology.HAS_MODIFIER,IProperty.OBJECT);
+		ont.createProperty(DomainOntology.HAS_MENTION_ANNOTATION,IProperty.OBJECT);
+		ont.createProperty(DomainOntology.HAS_DOCUMENT_ANNOTATION,IProperty.OBJECT);
+		ont.createProperty(DomainOntology.HAS_SPAN,IProperty.DATATYPE);
+		ont.createProperty(DomainOntology.HAS_ANNOTATION_TEXT,IProperty.DATATYPE);
+		ont.createProperty(DomainOntology.HAS_ANCHOR,IProperty.OBJECT);
+		ont.createProperty(DomainOntology.HAS_ANNOTATION_TYPE,IProperty.OBJECT);
+		ont.createProperty(DomainOntology.HAS_SECTION,IProperty.OBJECT);
+		ont.getRoot().createSubClass(DomainOntology.ANNOTATION_MENTION);
+		return new DomainOntology(ont);
+	}
+
+	private static List<Composition> createDocuments(){
+		List<Composition> docs = new ArrayList<Composition>();
+		for(int i=0;i<20;i++){
+			Composition doc = new Composition(TEXT.get(i%TEXT.size()));
+			doc.setTitle("report"+i+".txt");
+			docs.add(doc);
+		}
+		return docs;
+	}
+
+	private static String toString(Composition doc){
+		return doc.getTitle()+" "+doc.getMentions()+" "+doc.getAnnotationVariables();
+	}
+
+	/**
+	 * documents processed in parallel should be the same as documents processed serially
+	 * @throws Exception
+	 */
+	public void testProcess() throws Exception {
+		DomainOntology domainOntology = createDomainOntology();
+		NobleMentions noble = new NobleMentions(domainOntology);
+		List<String> expected = new ArrayList<String>();
+		for(Composition doc: createDocuments()){
+			doc.setDomainOntology(domainOntology);
+			expected.add(toString(noble.process(doc)));
+		}
+
+		ParallelNobleMentions mentions = new ParallelNobleMentions(domainOntology);
+		mentions.setThreadCount(4);
+		mentions.setQueueSize(3);
+		List<String> actual = new ArrayList<String>();
+		for(Composition doc: mentions.process(createDocuments()))
+			actual.add(toString(doc));
+		assertTrue(expected.equals(actual),"parallel output "+actual+" is different from serial "+expected);
+	}
+
+	/**
+	 * a document that fails should be reported, while the rest of documents are still processed
+	 * @throws Exception
+	 */
+	public void testFailedDocument() throws Exception {
+		List<Composition> docs = createDocuments();
+		Composition bad = new Composition(null);
+		bad.setTitle("bad.txt");
+		docs.add(7,bad);
+
+		final List<String> processed = new ArrayList<String>();
+		final List<String> failed = new ArrayList<String>();
+		ParallelNobleMentions mentions = new ParallelNobleMentions(createDomainOntology());
+		mentions.setThreadCount(4);
+		mentions.process(docs.iterator(),new ParallelNobleMentions.CompositionHandler() {
+			public void compositionProcessed(Composition doc) throws Exception {
+				processed.add(doc.getTitle());
+			}
+			public void compositionFailed(String name, Exception ex) throws Exception {
+				failed.add(name);
+			}
+		});
+		assertTrue(failed.equals(Arrays.asList("bad.txt")),"wrong failed documents "+failed);
+		assertTrue(processed.size() == docs.size()-1 && processed.get(7).equals("report7.txt"),"documents after failure were not processed "+processed);
+
+		// list processing should still fail on a bad document
+		try{
+			mentions.process(docs);
+			assertTrue(false,"failed document was not reported");
+		}catch(TerminologyException ex){
+			assertTrue(ex.getMessage().contains("bad.txt"),"wrong error message "+ex.getMessage());
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		ParallelNobleMentionsTest test = new ParallelNobleMentionsTest();
+		test.testProcess();
+		test.testFailedDocument();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,46 @@
+package edu.pitt.dbmi.nlp.noble.mentions.model;
+
+import java.net.URI;
+
+import edu.pitt.dbmi.nlp.noble.ontology.IClass;
+import edu.pitt.dbmi.nlp.noble.ontology.ILogicExpression;
+import edu.pitt.dbmi.nlp.noble.ontology.IOntology;
+import edu.pitt.dbmi.nlp.noble.ontology.IProperty;
+import edu.pitt.dbmi.nlp.noble.ontology.IRestriction;
+import edu.pitt.dbmi.nlp.noble.ontology.owl.OOntology;
+
+public class OntologyHelper {
+
+	/**
+	 * create a small ontology that follows domain ontology schema
+	 * @return ontology
+	 * @throws Exception
+	 */
+	public static IOntology createOntology() throws Exception {
+		IOntology ont = OOntology.createOntology(URI.create("http://test.org/ontologies/test.owl"));
+		IClass root = ont.getRoot();
+		IClass anchor = root.createSubClass(DomainOntology.ANCHOR);
+		IClass compound = root.createSubClass(DomainOntology.COMPOUND_ANCHOR);
+		IClass modifier = root.createSubClass(DomainOntology.MODIFIER);
+		IClass tumor = anchor.createSubClass("Tumor");
+		IClass carcinoma = tumor.createSubClass("Carcinoma");
+		carcinoma.createSubClass("DuctalCarcinoma");
+		IClass site = anchor.createSubClass("Site");
+		IClass breast = site.createSubClass("Breast");
+		IClass side = modifier.createSubClass("Laterality");
+		side.createInstance("Left");
+		side.createInstance("Right");
+		modifier.createSubClass(DomainOntology.LINGUISTIC_MODIFER).createSubClass("Negation");
+
+		// compound anchor with two arguments
+		IProperty hasArgument = ont.createProperty(DomainOntology.HAS_COMPOUND_ARGUMENT,IProperty.OBJECT);
+		IClass breastCancer = compound.createSubClass("BreastCarcinoma");
+		for(IClass arg: new IClass [] {carcinoma,breast}){
+			IRestriction r = ont.createRestriction(IRestriction.SOME_VALUES_FROM);
+			r.setProperty(hasArgument);
+			r.setParameter(ont.createLogicExpression(ILogicExpression.EMPTY,arg));
+			breastCancer.addNecessaryRestriction(r);
+		}
+		return ont;
+	}
+}
@@ -0,0 +1,70 @@
+package edu.pitt.dbmi.nlp.noble.mentions.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.pitt.dbmi.nlp.noble.ontology.IClass;
+import edu.pitt.dbmi.nlp.noble.ontology.IInstance;
+import edu.pitt.dbmi.nlp.noble.ontology.IOntology;
+import edu.pitt.dbmi.nlp.noble.ontology.IResourceIterator;
+
+public class TypeIndexTest {
+
+	/**
+	 * every subsumption check should match the reasoner
+	 * @throws Exception
+	 */
+	public void testClosure() throws Exception {
+		IOntology ont = OntologyHelper.createOntology();
+		TypeIndex index = new TypeIndex(ont);
+		List<IClass> classes = new ArrayList<IClass>();
+		for(IResourceIterator it = ont.getAllClasses();it.hasNext();)
+			classes.add((IClass) it.next());
+		assertTrue(classes.size() > 10 && index.size() >= classes.size(),"not all classes were indexed: "+index.size());
+		for(IClass a: classes){
+			assertTrue(index.contains(a),"class is not indexed "+a);
+			for(IClass b: classes){
+				assertTrue(index.hasSuperClass(a,b) == a.hasSuperClass(b),"wrong superclass check "+a+" "+b);
+				assertTrue(index.hasSubClass(a,b) == a.hasSubClass(b),"wrong subclass check "+a+" "+b);
+			}
+		}
+	}
+
+	/**
+	 * anchor, modifier and compound anchor flags
+	 * @throws Exception
+	 */
+	public void testTypes() throws Exception {
+		IOntology ont = OntologyHelper.createOntology();
+		TypeIndex index = new TypeIndex(ont);
+		assertTrue(index.isAnchor(ont.getClass("DuctalCarcinoma")) && index.isAnchor(ont.getClass("BreastCarcinoma")),"anchors not found");
+		assertTrue(!index.isAnchor(ont.getClass(DomainOntology.ANCHOR)) && !index.isAnchor(ont.getClass("Laterality")),"wrong anchors");
+		assertTrue(index.isCompoundAnchor(ont.getClass("BreastCarcinoma")) && !index.isCompoundAnchor(ont.getClass("Tumor")),"wrong compound anchors");
+		assertTrue(index.isModifier(ont.getClass("Negation")) && index.isModifier(ont.getClass(DomainOntology.MODIFIER)),"modifiers not found");
+		assertTrue(index.isTypeOf(ont.getClass("Negation"),DomainOntology.LINGUISTIC_MODIFER) && !index.isTypeOf(ont.getClass("Laterality"),DomainOntology.LINGUISTIC_MODIFER),"wrong type check");
+
+		// instances resolve to their types
+		IInstance left = ont.getInstance("Left");
+		assertTrue(ont.getClass("Laterality").equals(index.getConceptClass(left.getURI().toString())),"instance type was not indexed");
+		assertTrue(ont.getClass("Breast").equals(index.getConceptClass(ont.getClass("Breast").getURI().toString())),"class was not indexed");
+
+		// compound anchor arguments
+		IClass compound = ont.getClass("BreastCarcinoma");
+		assertTrue(index.getCompoundAnchorMap().get(compound).size() == 2,"wrong compound arguments "+index.getCompoundAnchorMap());
+		assertTrue(index.isCompoundAnchorArgument(compound,ont.getClass("DuctalCarcinoma")),"more specific argument was not accepted");
+		assertTrue(index.isCompoundAnchorArgument(compound,ont.getClass("Breast")),"argument was not accepted");
+		assertTrue(!index.isCompoundAnchorArgument(compound,ont.getClass("Tumor")),"more general argument was accepted");
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		TypeIndexTest test = new TypeIndexTest();
+		test.testClosure();
+		test.testTypes();
+		System.out.println("ok");
+	}
+}
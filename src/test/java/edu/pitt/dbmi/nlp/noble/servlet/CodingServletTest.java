@@ -0,0 +1,144 @@
+package edu.pitt.dbmi.nlp.noble.servlet;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyHelper;
+import edu.pitt.dbmi.nlp.noble.tools.ConText;
+import edu.pitt.dbmi.nlp.noble.util.FileTools;
+import edu.pitt.dbmi.nlp.noble.util.JSONUtils;
+
+public class CodingServletTest {
+
+	private static CodingServlet createServlet(File dir) throws Exception {
+		final Properties p = new Properties();
+		p.setProperty("terminology.location",dir.getAbsolutePath());
+		p.setProperty("default.terminology","test");
+		p.setProperty("coder.threads","3");
+		p.setProperty("max.documents","10");
+		p.setProperty("max.request.size","4096");
+		CodingServlet servlet = new CodingServlet();
+		servlet.init(new ServletConfig() {
+			public String getServletName() {
+				return "CodingServlet";
+			}
+			public ServletContext getServletContext() {
+				return null;
+			}
+			public String getInitParameter(String name) {
+				return p.getProperty(name);
+			}
+			public Enumeration<String> getInitParameterNames() {
+				return Collections.enumeration(p.stringPropertyNames());
+			}
+		});
+		return servlet;
+	}
+
+	/**
+	 * batch of JSON and plain text documents should be coded and returned in input order
+	 * @throws Exception
+	 */
+	public void testCoding() throws Exception {
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		CodingServlet servlet = null;
+		try{
+			TerminologyHelper.createTerminology(dir);
+			servlet = createServlet(dir);
+			servlet.setConText(new ConText(TerminologyHelper.createModifierTerminology()));
+
+			// JSON batch
+			StringBuilder json = new StringBuilder("{\"documents\":[");
+			for(int i=0;i<8;i++)
+				json.append((i>0?",":"")+"{\"id\":\"r"+i+"\",\"text\":\""+((i%2 == 0)?"No lymph node metastasis.":"Deep margin is negative for melanoma.")+"\"}");
+			json.append("]}");
+			StringWriter out = new StringWriter();
+			servlet.code(new HashMap<String,String>(),CodingServlet.CONTENT_TYPE_JSON+"; charset=UTF-8",new StringReader(json.toString()),out);
+			Map result = (Map) JSONUtils.parse(out.toString());
+			List docs = (List) result.get("documents");
+			assertTrue(Long.valueOf(8).equals(result.get("count")) && docs.size() == 8,"wrong document count "+out);
+			assertTrue(result.get("time") instanceof Long,"request time is missing");
+			for(int i=0;i<docs.size();i++){
+				Map doc = (Map) docs.get(i);
+				assertTrue(("r"+i).equals(doc.get("id")),"documents are out of order "+doc.get("id"));
+				String codes = "";
+				for(Object m: (List) doc.get("mentions"))
+					codes += ((Map)m).get("code")+" ";
+				assertTrue(codes.equals((i%2 == 0)?"C4 C5 ":"C6 C8 "),"wrong mentions "+codes+" in "+doc);
+			}
+			Map mention = (Map)((List)((Map) docs.get(0)).get("mentions")).get(1);
+			assertTrue("metastasis".equals(mention.get("text")) && Long.valueOf(14).equals(mention.get("start")),"wrong mention "+mention);
+			assertTrue(ConText.MODIFIER_VALUE_NEGATIVE.equals(((Map)mention.get("modifiers")).get(ConText.MODIFIER_TYPE_POLARITY)),"modifiers are missing "+mention);
+
+			// plain text batch
+			out = new StringWriter();
+			servlet.code(new HashMap<String,String>(),"text/plain",new StringReader("Breast carcinoma.\f\nDeep margin.\n\f  "),out);
+			docs = (List)((Map) JSONUtils.parse(out.toString())).get("documents");
+			assertTrue(docs.size() == 2 && "1".equals(((Map)docs.get(1)).get("id")),"wrong plain text batch "+out);
+
+			// bad requests: invalid, too many documents and too deep
+			StringBuilder deep = new StringBuilder();
+			for(int i=0;i<4000;i++)
+				deep.append("[");
+			for(String body: new String [] {"{\"documents\":5}","[{\"id\":1}]","[\"a\",","[\"1\",\"2\",\"3\",\"4\",\"5\",\"6\",\"7\",\"8\",\"9\",\"10\",\"11\"]",deep.toString()}){
+				out = new StringWriter();
+				try{
+					servlet.code(new HashMap<String,String>(),CodingServlet.CONTENT_TYPE_JSON,new StringReader(body),out);
+					assertTrue(false,"invalid request was accepted: "+body);
+				}catch(TerminologyException ex){
+					assertTrue(out.toString().length() == 0,"response was written for invalid request");
+				}
+			}
+			Map<String,String> params = new HashMap<String,String>();
+			params.put("term","../test");
+			try{
+				servlet.code(params,"text/plain",new StringReader("text"),new StringWriter());
+				assertTrue(false,"terminology outside of location was accepted");
+			}catch(TerminologyException ex){
+				// expected
+			}
+
+			// request body is limited while it is read
+			StringBuilder text = new StringBuilder();
+			while(text.length() < 5000)
+				text.append("Breast carcinoma. ");
+			for(String type: new String [] {CodingServlet.CONTENT_TYPE_JSON,"text/plain"}){
+				String body = type.equals(CodingServlet.CONTENT_TYPE_JSON)?"[\""+text+"\"]":text.toString();
+				try{
+					servlet.code(new HashMap<String,String>(),type,new StringReader(body),new StringWriter());
+					assertTrue(false,"large "+type+" request was accepted");
+				}catch(TerminologyException ex){
+					assertTrue(ex.getMessage().contains("larger"),"wrong error "+ex.getMessage());
+				}
+			}
+		}finally{
+			if(servlet != null)
+				servlet.destroy();
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		CodingServletTest test = new CodingServletTest();
+		test.testCoding();
+		System.out.println("ok");
+	}
+}
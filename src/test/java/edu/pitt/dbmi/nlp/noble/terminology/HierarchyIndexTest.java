@@ -0,0 +1,154 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.HierarchyIndex;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.util.FileTools;
+import edu.pitt.dbmi.nlp.noble.util.PathHelper;
+
+public class HierarchyIndexTest {
+	private static final int SIZE = 300;
+
+	/**
+	 * create terminology with random polyhierarchy, a few roots and a cycle
+	 * @return terminology
+	 * @throws TerminologyException
+	 */
+	private static NobleCoderTerminology createTerminology(NobleCoderTerminology terminology) throws TerminologyException{
+		Random random = new Random(12345);
+		for(int i=0;i<SIZE;i++){
+			Concept c = new Concept("C"+i,"concept "+i);
+			// concepts point to one or two lower numbered parents
+			if(i > 0){
+				c.addRelatedConcept(Relation.BROADER,"C"+random.nextInt(i));
+				if(i > 10 && random.nextBoolean())
+					c.addRelatedConcept(Relation.BROADER,"C"+random.nextInt(i));
+			}
+			// parent that does not exist
+			if(i == 7)
+				c.addRelatedConcept(Relation.BROADER,"X1");
+			// cycle C200 -> C250 -> C260 -> C200
+			if(i == 200)
+				c.addRelatedConcept(Relation.BROADER,"C250");
+			if(i == 250)
+				c.addRelatedConcept(Relation.BROADER,"C260");
+			if(i == 260)
+				c.addRelatedConcept(Relation.BROADER,"C200");
+			terminology.addConcept(c);
+		}
+		// intermediate root stops the search
+		terminology.addRoot("C0");
+		terminology.addRoot("C20");
+		return terminology;
+	}
+
+	/**
+	 * index should return the same ancestors as breadth first search
+	 * @throws Exception
+	 */
+	public void testAncestors() throws Exception {
+		NobleCoderTerminology terminology = createTerminology(new NobleCoderTerminology());
+		for(int limit: new int [] {7,3,-1}){
+			PathHelper paths = new PathHelper(terminology);
+			paths.setPathDepthLimit(limit);
+			HierarchyIndex index = paths.createHierarchyIndex();
+			assertTrue(index.size() == SIZE && !index.isMapped(),"wrong index size "+index.size());
+			for(int i=0;i<SIZE;i++){
+				Concept c = terminology.lookupConcept("C"+i);
+				Map<String,Integer> expected = toCodes(paths.findAncestors(c,limit));
+				Map<String,Integer> actual = index.getAncestors(c.getCode(),-1);
+				assertTrue(expected.equals(actual),"wrong ancestors of "+c.getCode()+" with limit "+limit+": "+actual+" vs "+expected);
+				for(String a: expected.keySet()){
+					assertTrue(index.hasAncestor(c.getCode(),a),"ancestor "+a+" of "+c.getCode()+" was not found");
+					assertTrue(index.getDistance(c.getCode(),a) == expected.get(a),"wrong distance");
+				}
+			}
+		}
+	}
+
+	/**
+	 * lowest common ancestor should have the shortest combined distance
+	 * @throws Exception
+	 */
+	public void testCommonAncestor() throws Exception {
+		NobleCoderTerminology terminology = createTerminology(new NobleCoderTerminology());
+		PathHelper paths = new PathHelper(terminology);
+		HierarchyIndex index = paths.createHierarchyIndex();
+		Random random = new Random(1);
+		for(int n=0;n<1000;n++){
+			String a = "C"+random.nextInt(SIZE), b = "C"+random.nextInt(SIZE);
+			String lca = index.getLowestCommonAncestor(a,b);
+			int best = Integer.MAX_VALUE;
+			for(int i=0;i<SIZE;i++){
+				int da = index.getDistance(a,"C"+i), db = index.getDistance(b,"C"+i);
+				if(da > -1 && db > -1)
+					best = Math.min(best,da+db);
+			}
+			if(lca == null)
+				assertTrue(best == Integer.MAX_VALUE,"common ancestor of "+a+" and "+b+" was not found");
+			else
+				assertTrue(index.getDistance(a,lca)+index.getDistance(b,lca) == best,"common ancestor of "+a+" and "+b+" is not the lowest");
+		}
+		assertTrue("C5".equals(index.getLowestCommonAncestor("C5","C5")),"concept should be its own common ancestor");
+	}
+
+	/**
+	 * persisted index should be memory mapped and used by path helper
+	 * @throws Exception
+	 */
+	public void testPersistence() throws Exception {
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			NobleCoderTerminology terminology = createTerminology(new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),false));
+			terminology.getStorage().commit();
+			PathHelper builder = new PathHelper(terminology);
+			builder.createAncestryCache();
+			assertTrue(new File(terminology.getStorage().getLocation(),HierarchyIndex.HIERARCHY_INDEX_FILE).exists(),"hierarchy index was not saved");
+
+			PathHelper paths = new PathHelper(terminology);
+			HierarchyIndex index = paths.getHierarchyIndex();
+			assertTrue(index != null && index.isMapped() && index.size() == SIZE,"hierarchy index was not loaded");
+			for(int i=0;i<SIZE;i+=7){
+				Concept c = terminology.lookupConcept("C"+i);
+				assertTrue(toCodes(paths.getAncestors(c)).equals(toCodes(paths.findAncestors(c))),"wrong ancestors of "+c.getCode());
+				for(String a: toCodes(paths.findAncestors(c)).keySet())
+					assertTrue(paths.hasAncestor(c,terminology.lookupConcept(a)),"ancestor "+a+" of "+c.getCode()+" was not found");
+			}
+			Concept lca = paths.getLowestCommonAncestor(terminology.lookupConcept("C100"),terminology.lookupConcept("C150"));
+			assertTrue(lca != null && lca.getCode().equals(index.getLowestCommonAncestor("C100","C150")),"wrong common ancestor");
+
+			// index with smaller limit can't be used for deeper search
+			paths.setPathDepthLimit(10);
+			assertTrue(paths.getHierarchyIndex() == null,"index with smaller depth limit was used");
+			terminology.dispose();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	private static Map<String,Integer> toCodes(Map<Concept,Integer> map){
+		Map<String,Integer> codes = new LinkedHashMap<String, Integer>();
+		for(Concept c: map.keySet())
+			codes.put(c.getCode(),map.get(c));
+		return codes;
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		HierarchyIndexTest test = new HierarchyIndexTest();
+		test.testAncestors();
+		test.testCommonAncestor();
+		test.testPersistence();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,84 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.RegExpIndex;
+
+public class RegExpIndexTest {
+
+	/**
+	 * create terminology with a few regular expression synonyms
+	 * @return terminology
+	 * @throws TerminologyException
+	 */
+	private NobleCoderTerminology createTerminology() throws TerminologyException{
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		Concept size = new Concept("R1","Size");
+		size.addSynonym("/\\d+ cm/");
+		terminology.addConcept(size);
+		Concept decimal = new Concept("R2","Decimal Size");
+		decimal.addSynonym("/\\d+\\.\\d+ cm/");
+		terminology.addConcept(decimal);
+		return terminology;
+	}
+
+	/**
+	 * regex synonyms should still be found and overlapping matches from different expressions preserved
+	 * @throws TerminologyException
+	 */
+	public void testRegExpSearch() throws TerminologyException{
+		NobleCoderTerminology terminology = createTerminology();
+		assertTrue(codes(terminology.search("The tumor is 2.5 cm in size.")).contains("R2"),"decimal size was not found");
+		assertTrue(codes(terminology.search("The tumor is 2 cm in size.")).contains("R1"),"size was not found");
+		assertTrue(codes(terminology.search("No tumor is seen.")).isEmpty(),"unexpected match");
+
+		// index has to pick up concepts that were added after first search
+		Concept weight = new Concept("R3","Weight");
+		weight.addSynonym("/\\d+ (g|grams)/");
+		terminology.addConcept(weight);
+		assertTrue(codes(terminology.search("Specimen weighs 20 grams.")).contains("R3"),"index was not updated");
+	}
+
+	/**
+	 * combined filter should let through every text that any expression matches
+	 */
+	public void testFilter(){
+		Map<String,Set<String>> map = new LinkedHashMap<String,Set<String>>();
+		map.put("\\b(\\d+ cm)\\b",new TreeSet<String>(Arrays.asList("R1")));
+		map.put("\\b(\\d+\\.\\d+ mm)\\b",new TreeSet<String>(Arrays.asList("R2")));
+		RegExpIndex index = new RegExpIndex(map);
+		assertTrue(index.size() == 2,"wrong index size");
+		assertTrue(index.matches("measures 2 CM"),"case insensitive match failed");
+		assertTrue(index.matches("measures 2.5 mm"),"second expression did not match");
+		assertTrue(!index.matches("no measurements"),"filter matched unexpected text");
+
+		// group references disable combined filter, but must not break anything
+		map.put("\\b(\\w)\\1\\b",new TreeSet<String>(Arrays.asList("R3")));
+		index = new RegExpIndex(map);
+		assertTrue(index.matches("no measurements"),"index without a filter should always pass the text");
+	}
+
+	private static Set<String> codes(Concept [] concepts){
+		Set<String> codes = new TreeSet<String>();
+		for(Concept c: concepts)
+			codes.add(c.getCode());
+		return codes;
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		RegExpIndexTest test = new RegExpIndexTest();
+		test.testRegExpSearch();
+		test.testFilter();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,129 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+
+public class SearchOptionsTest {
+	private static final List<String> TEXT = Arrays.asList(
+			"Invasive ductal carcinoma of the breast is seen.",
+			"No lymph node metastasis.",
+			"Deep margin is negative for melanoma.",
+			"Breast carcinoma, ductal, invasive.");
+
+	/**
+	 * search options should not change terminology settings
+	 * @throws TerminologyException
+	 */
+	public void testSearchMethodIsolation() throws TerminologyException{
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		boolean ignoreUsedWords = terminology.isIgnoreUsedWords();
+		String method = terminology.getDefaultSearchMethod();
+
+		terminology.search(TEXT.get(0),NobleCoderTerminology.ALL_MATCH);
+
+		assertTrue(method.equals(terminology.getDefaultSearchMethod()),"default search method was modified");
+		assertTrue(ignoreUsedWords == terminology.isIgnoreUsedWords(),"ignore used words flag was modified");
+
+		SearchOptions options = terminology.getSearchOptions(NobleCoderTerminology.ALL_MATCH);
+		assertTrue(!options.isSubsumptionMode() && !options.isIgnoreUsedWords(),"all-match options were not applied");
+	}
+
+	/**
+	 * semantic types passed as objects should not be split on commas in their names,
+	 * stemming and digits can be set per search options
+	 * @throws TerminologyException
+	 */
+	public void testFilters() throws TerminologyException{
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		SemanticType protein = SemanticType.getSemanticType("Amino Acid, Peptide, or Protein","T116");
+		Concept concept = new Concept("C10","Keratin");
+		concept.addSemanticType(protein);
+		terminology.addConcept(concept);
+		concept = new Concept("C11","Melanocyte");
+		concept.addSemanticType(SemanticType.getSemanticType("Cell","T025"));
+		terminology.addConcept(concept);
+
+		SearchOptions all = terminology.getSearchOptions(NobleCoderTerminology.ALL_MATCH);
+		SearchOptions options = new SearchOptions(all,null,new SemanticType [] {protein});
+		assertTrue(options.getSemanticTypeFilter().size() == 1 && options.getSemanticTypeFilter().contains(protein),
+				"semantic type filter was not kept intact: "+options.getSemanticTypeFilter());
+		assertTrue(options.getSearchMethod().equals(all.getSearchMethod()) && !options.isSubsumptionMode(),"search options were not copied");
+		assertTrue("C10:Keratin".equals(toString(terminology.search("Keratin in melanocyte",options))),"semantic type filter was not applied");
+		assertTrue(new SearchOptions(options,null,new SemanticType [0]).getSemanticTypeFilter() == null,"empty semantic type filter was not removed");
+
+		// stemming of search text
+		Properties p = new Properties();
+		p.setProperty("stem.words","false");
+		p.setProperty("ignore.digits","true");
+		SearchOptions unstemmed = terminology.getSearchOptions(p);
+		assertTrue(!unstemmed.isStemWords() && unstemmed.isIgnoreDigits(),"stemming and digit options were not read");
+		assertTrue(terminology.search("melanomas",NobleCoderTerminology.BEST_MATCH).length == 1,"stemmed word was not found");
+		assertTrue(terminology.search("melanomas",unstemmed).length == 0,"search text was stemmed");
+	}
+
+	/**
+	 * the same terminology should produce the same results from multiple threads
+	 * @throws Exception
+	 */
+	public void testConcurrentSearch() throws Exception{
+		final NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		final SearchOptions best = terminology.getSearchOptions(NobleCoderTerminology.BEST_MATCH);
+		final SearchOptions all = terminology.getSearchOptions(NobleCoderTerminology.ALL_MATCH);
+
+		// get expected results sequentially
+		List<String> expected = new ArrayList<String>();
+		for(String text: TEXT){
+			expected.add(toString(terminology.search(text,best)));
+			expected.add(toString(terminology.search(text,all)));
+		}
+
+		// run the same thing in parallel
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+		for(int i=0;i<16;i++){
+			futures.add(pool.submit(new Callable<List<String>>() {
+				public List<String> call() throws Exception {
+					List<String> result = new ArrayList<String>();
+					for(String text: TEXT){
+						result.add(SearchOptionsTest.toString(terminology.search(text,best)));
+						result.add(SearchOptionsTest.toString(terminology.search(text,all)));
+					}
+					return result;
+				}
+			}));
+		}
+		for(Future<List<String>> f: futures){
+			assertTrue(expected.equals(f.get()),"concurrent search returned different results: "+f.get()+" vs "+expected);
+		}
+		pool.shutdown();
+	}
+
+	private static String toString(Concept [] concepts){
+		StringBuffer b = new StringBuffer();
+		for(Concept c: concepts)
+			b.append(c.getCode()+":"+c.getMatchedTerm()+" ");
+		return b.toString().trim();
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		SearchOptionsTest test = new SearchOptionsTest();
+		test.testSearchMethodIsolation();
+		test.testFilters();
+		test.testConcurrentSearch();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,247 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.LogStorageProvider;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.MemoryStorageProvider;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider;
+import edu.pitt.dbmi.nlp.noble.util.BlacklistHandler;
+import edu.pitt.dbmi.nlp.noble.util.FileTools;
+import edu.pitt.dbmi.nlp.noble.util.LogMap;
+
+public class StorageProviderTest {
+	private static final List<String> TEXT = Arrays.asList(
+			"Invasive ductal carcinoma of the breast is seen.",
+			"No lymph node metastasis.",
+			"Deep margin is negative for melanoma.");
+
+	/**
+	 * every storage backend should persist terminology and give the same search results
+	 * @throws Exception
+	 */
+	public void testBackends() throws Exception{
+		NobleCoderTerminology memory = TerminologyHelper.createTerminology();
+		List<String> expected = search(memory);
+		for(String backend: Arrays.asList(StorageProvider.JDBM,StorageProvider.MEMORY,StorageProvider.LOG)){
+			File dir = File.createTempFile("terminology","");
+			dir.delete();
+			dir.mkdirs();
+			try{
+				// select backend before tables are created
+				File location = new File(dir,"test"+NobleCoderTerminology.TERM_SUFFIX);
+				location.mkdirs();
+				Properties p = new Properties();
+				p.setProperty(NobleCoderTerminology.STORAGE_BACKEND,backend);
+				FileWriter w = new FileWriter(new File(location,NobleCoderTerminology.SEARCH_PROPERTIES));
+				p.store(w,"Optional Search Options");
+				w.close();
+
+				NobleCoderTerminology terminology = new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),false);
+				assertTrue(backend.equals(terminology.getStorage().getProvider().getName()),"wrong storage backend: "+terminology.getStorage().getProvider().getName());
+				for(String code: Arrays.asList("C1","C2","C3","C4","C5","C6","C7","C8","C9"))
+					terminology.addConcept(memory.lookupConcept(code));
+				// commit tables directly, since JDBM defrag needs sun.nio.ch access on newer JVMs
+				terminology.getStorage().commit();
+				terminology.dispose();
+
+				terminology = new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),true);
+				assertTrue(terminology.getStorage().tableExists("termMap"),backend+" table was not persisted");
+				assertTrue(terminology.getAllConcepts().size() == 9,backend+" lost concepts");
+				assertTrue(expected.equals(search(terminology)),backend+" returned different results");
+				terminology.dispose();
+			}finally{
+				FileTools.deleteDirectory(dir);
+			}
+		}
+		assertTrue(NobleCoderTerminology.Storage.getStorageProvider(LogStorageProvider.class.getName()) instanceof LogStorageProvider,"provider class was not loaded");
+		assertTrue(NobleCoderTerminology.Storage.getStorageProvider("memory") instanceof MemoryStorageProvider,"provider name was not recognized");
+	}
+
+	/**
+	 * log map should replay overwrites and removes and survive compaction
+	 * @throws Exception
+	 */
+	public void testLogMap() throws Exception{
+		File dir = File.createTempFile("logmap","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			String prefix = new File(dir,"table").getAbsolutePath();
+			LogMap<String,List<String>> map = new LogMap<String,List<String>>(prefix,"test",false);
+			for(int i=0;i<100;i++)
+				map.put("key"+i,Arrays.asList("a"+i,"b"+i));
+			assertTrue(Arrays.asList("a1","b1").equals(map.put("key1",Arrays.asList("c"))),"previous value was not returned");
+			assertTrue(map.put("key100",Arrays.asList("d")) == null && map.remove("key100") != null,"value was returned for a new key");
+			assertTrue(map.remove("key2").equals(Arrays.asList("a2","b2")),"wrong removed value");
+			assertTrue(map.get("key1").equals(Arrays.asList("c")),"value was not overwritten");
+			map.dispose();
+
+			map = new LogMap<String,List<String>>(prefix,"test",false);
+			assertTrue(map.size() == 99,"wrong size after reopen: "+map.size());
+			assertTrue(map.get("key1").equals(Arrays.asList("c")),"overwrite was lost");
+			assertTrue(!map.containsKey("key2"),"remove was lost");
+			long size = map.getFile().length();
+			map.compact();
+			assertTrue(map.getFile().length() < size,"log was not compacted");
+			assertTrue(map.get("key50").equals(Arrays.asList("a50","b50")),"value lost in compaction");
+			map.dispose();
+
+			map = new LogMap<String,List<String>>(prefix,"test",true);
+			assertTrue(map.size() == 99 && new ArrayList<String>(map.get("key99")).equals(Arrays.asList("a99","b99")),"compacted log was not reopened");
+			map.dispose();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * tables of all backends should reject changes when they are opened in read-only mode
+	 * @throws Exception
+	 */
+	public void testReadOnly() throws Exception{
+		File dir = File.createTempFile("readonly","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			for(String backend: Arrays.asList(StorageProvider.MEMORY,StorageProvider.LOG)){
+				StorageProvider provider = NobleCoderTerminology.Storage.getStorageProvider(backend);
+				Map<String,String> map = provider.createMap(dir,backend,false);
+				assertTrue(map.put("a","1") == null && "1".equals(map.put("a","2")),backend+" did not return previous value");
+				provider.commit(map);
+				provider.dispose(map);
+
+				map = provider.createMap(dir,backend,true);
+				assertTrue(provider.isReadOnly(map) && "2".equals(map.get("a")),backend+" table was not reopened");
+				try{
+					map.put("b","1");
+					assertTrue(false,backend+" read-only table was modified");
+				}catch(UnsupportedOperationException ex){
+					assertTrue(!map.containsKey("b"),backend+" read-only table was modified");
+				}
+				provider.dispose(map);
+			}
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * backend set through API should be used for new terminology and its blacklist, and be remembered when it is reopened
+	 * @throws Exception
+	 */
+	public void testStorageBackend() throws Exception{
+		NobleCoderTerminology memory = TerminologyHelper.createTerminology();
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			String name = new File(dir,"test").getAbsolutePath();
+			NobleCoderTerminology terminology = new NobleCoderTerminology();
+			terminology.setStorageBackend(StorageProvider.LOG);
+			terminology.load(name,false);
+			assertTrue(StorageProvider.LOG.equals(terminology.getStorage().getProvider().getName()),"backend was not set: "+terminology.getStorage().getProvider().getName());
+			for(String code: Arrays.asList("C1","C2","C3"))
+				terminology.addConcept(memory.lookupConcept(code));
+			BlacklistHandler blacklist = new BlacklistHandler(terminology);
+			blacklist.save();
+			assertTrue(blacklist.hasBlacklist() && terminology.getStorage().getProvider().tableExists(terminology.getStorage().getLocation(),"blacklist"),"blacklist was not saved with log backend");
+			terminology.save();
+			terminology.dispose();
+
+			terminology = new NobleCoderTerminology(name,true);
+			assertTrue(StorageProvider.LOG.equals(terminology.getStorage().getProvider().getName()),"backend was not remembered");
+			assertTrue(terminology.getAllConcepts().size() == 3,"lost concepts");
+			terminology.dispose();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * log map should keep strings larger then 64K and allow reads from several threads while it is written
+	 * @throws Exception
+	 */
+	public void testLogMapConcurrency() throws Exception{
+		File dir = File.createTempFile("logmap","");
+		dir.delete();
+		dir.mkdirs();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try{
+			String prefix = new File(dir,"table").getAbsolutePath();
+			final LogMap<String,String> map = new LogMap<String,String>(prefix,"test",false);
+			StringBuffer b = new StringBuffer();
+			while(b.length() < 100000)
+				b.append("ductal carcinoma \u00e9 ");
+			String large = b.toString();
+			map.put("large",large);
+			for(int i=0;i<1000;i++)
+				map.put("key"+i,"value"+i);
+			map.commit();
+
+			List<Future<Boolean>> readers = new ArrayList<Future<Boolean>>();
+			for(int t=0;t<4;t++){
+				readers.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() throws Exception {
+						for(int n=0;n<5;n++){
+							for(int i=0;i<1000;i++){
+								if(!("value"+i).equals(map.get("key"+i)))
+									return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for(int i=1000;i<2000;i++)
+				map.put("key"+i,"value"+i);
+			for(Future<Boolean> f: readers)
+				assertTrue(f.get(),"concurrent read returned wrong value");
+			assertTrue(large.equals(map.get("large")),"large value was not read back");
+			map.dispose();
+
+			LogMap<String,String> copy = new LogMap<String,String>(prefix,"test",true);
+			assertTrue(copy.size() == 2001 && large.equals(copy.get("large")) && "value1999".equals(copy.get("key1999")),"values were not reopened");
+			copy.dispose();
+		}finally{
+			executor.shutdown();
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	private static List<String> search(NobleCoderTerminology terminology) throws TerminologyException{
+		List<String> result = new ArrayList<String>();
+		for(String text: TEXT){
+			StringBuffer b = new StringBuffer();
+			for(Concept c: terminology.search(text))
+				b.append(c.getCode()+":"+c.getMatchedTerm()+" ");
+			result.add(b.toString().trim());
+		}
+		return result;
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		StorageProviderTest test = new StorageProviderTest();
+		test.testBackends();
+		test.testLogMap();
+		test.testReadOnly();
+		test.testStorageBackend();
+		test.testLogMapConcurrency();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,132 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TermIndex;
+import edu.pitt.dbmi.nlp.noble.util.FileTools;
+
+public class TermIndexTest {
+	private static final List<String> TEXT = Arrays.asList(
+			"Invasive ductal carcinoma of the breast is seen.",
+			"No lymph node metastasis.",
+			"Deep margin is negative for melanoma.",
+			"Breast carcinoma, ductal, invasive.");
+
+	/**
+	 * persisted terminology should produce identical results with and without term index
+	 * @throws Exception
+	 */
+	public void testTermIndex() throws Exception{
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			NobleCoderTerminology memory = TerminologyHelper.createTerminology();
+			NobleCoderTerminology terminology = new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),false);
+			for(String code: Arrays.asList("C1","C2","C3","C4","C5","C6","C7","C8","C9"))
+				terminology.addConcept(memory.lookupConcept(code));
+			// commit tables directly, since defrag in save() needs sun.nio.ch access on newer JVMs
+			terminology.getStorage().commit();
+			terminology.getStorage().saveTermIndex();
+			assertTrue(new File(terminology.getLocation(),NobleCoderTerminology.TERM_INDEX_FILE).exists(),"term index was not saved");
+
+			// reload saved index
+			terminology.reload();
+			TermIndex index = terminology.getStorage().getTermIndex();
+			assertTrue(index != null && index.getTermCount() == terminology.getStorage().getTermMap().size(),"term index was not loaded");
+			assertTrue(index.isMapped(),"term index was not memory mapped");
+			List<String> indexed = search(terminology);
+
+			// modified tables should not use the index
+			terminology.getStorage().resetTermIndex();
+			assertTrue(terminology.getStorage().getTermIndex() == null,"out of date term index was used");
+			List<String> tables = search(terminology);
+
+			assertTrue(indexed.equals(tables),"term index returned different results: "+indexed+" vs "+tables);
+			assertTrue(tables.equals(search(memory)),"in-memory terminology returned different results");
+			terminology.dispose();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * tables committed without saving terminology should never be read through the old term index
+	 * @throws Exception
+	 */
+	public void testStaleTermIndex() throws Exception{
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			NobleCoderTerminology memory = TerminologyHelper.createTerminology();
+			NobleCoderTerminology terminology = new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),false);
+			for(String code: Arrays.asList("C1","C2","C3","C4","C5","C6","C7","C8","C9"))
+				terminology.addConcept(memory.lookupConcept(code));
+			terminology.getStorage().commit();
+			terminology.getStorage().saveTermIndex();
+
+			// add a concept and commit tables the way an import checkpoint does
+			terminology.reload();
+			terminology.addConcept(new Concept("C10","Sentinel Lymph Node"));
+			terminology.getStorage().commit();
+			assertTrue(!new File(terminology.getLocation(),NobleCoderTerminology.TERM_INDEX_FILE).exists(),"stale term index was not removed");
+
+			// reopen and check that new term is found
+			terminology.reload();
+			assertTrue(terminology.getStorage().getTermIndex() == null,"stale term index was loaded");
+			Concept [] result = terminology.search("sentinel lymph node",NobleCoderTerminology.BEST_MATCH);
+			assertTrue(result.length == 1 && result[0].getCode().equals("C10"),"committed term was not found: "+Arrays.toString(result));
+
+			// saving index again should find it as well
+			terminology.getStorage().saveTermIndex();
+			terminology.reload();
+			assertTrue(terminology.getStorage().getTermIndex() != null,"term index was not saved");
+			result = terminology.search("sentinel lymph node",NobleCoderTerminology.BEST_MATCH);
+			assertTrue(result.length == 1 && result[0].getCode().equals("C10"),"term was not found through term index: "+Arrays.toString(result));
+			terminology.dispose();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	private static List<String> search(NobleCoderTerminology terminology) throws TerminologyException{
+		List<String> result = new ArrayList<String>();
+		for(String text: TEXT){
+			List<SearchOptions> options = new ArrayList<SearchOptions>();
+			for(String method: Arrays.asList(NobleCoderTerminology.BEST_MATCH,NobleCoderTerminology.ALL_MATCH,NobleCoderTerminology.PRECISE_MATCH,
+					NobleCoderTerminology.PARTIAL_MATCH,NobleCoderTerminology.NONOVERLAP_MATCH,NobleCoderTerminology.TRIE_MATCH))
+				options.add(terminology.getSearchOptions(method));
+			// trie match that skips terms of used words
+			Properties p = new Properties();
+			p.setProperty("default.search.method",NobleCoderTerminology.TRIE_MATCH);
+			p.setProperty("ignore.used.words","true");
+			options.add(terminology.getSearchOptions(p));
+			for(SearchOptions o: options){
+				StringBuffer b = new StringBuffer();
+				for(Concept c: terminology.search(text,o))
+					b.append(c.getCode()+":"+c.getMatchedTerm()+" ");
+				result.add(b.toString().trim());
+			}
+		}
+		return result;
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		TermIndexTest test = new TermIndexTest();
+		test.testTermIndex();
+		test.testStaleTermIndex();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,78 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.SearchOptions;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TermTrie;
+
+public class TermTrieTest {
+	private static final List<String> TEXT = Arrays.asList(
+			"Invasive ductal carcinoma of the breast is seen.",
+			"No lymph node metastasis.",
+			"Deep margin is negative for melanoma.",
+			"Carcinoma of the breast with lymph node metastases.");
+
+	/**
+	 * trie-match should find the same concepts as best-match and all-match, when terms are in order
+	 * @throws TerminologyException
+	 */
+	public void testTrieMatch() throws TerminologyException{
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		Properties p = new Properties();
+		p.setProperty("subsumption.mode","false");
+		p.setProperty("default.search.method",NobleCoderTerminology.TRIE_MATCH);
+		SearchOptions trieAll = terminology.getSearchOptions(p);
+		SearchOptions trieBest = terminology.getSearchOptions(NobleCoderTerminology.TRIE_MATCH);
+		for(String text: TEXT){
+			Set<String> best = codes(terminology.search(text,NobleCoderTerminology.BEST_MATCH));
+			Set<String> all = codes(terminology.search(text,NobleCoderTerminology.ALL_MATCH));
+			assertTrue(best.equals(codes(terminology.search(text,trieBest))),"trie-match differs from best-match for: "+text);
+			assertTrue(all.equals(codes(terminology.search(text,trieAll))),"trie-match differs from all-match for: "+text);
+		}
+	}
+
+	/**
+	 * trie should survive a save/load round trip
+	 * @throws Exception
+	 */
+	public void testSaveLoad() throws Exception{
+		TermTrie trie = TermTrie.build(Arrays.asList("carcinoma duct invas","carcinoma","breast carcinoma","lymph node"));
+		File file = File.createTempFile("termTrie",".trie");
+		try{
+			trie.save(file);
+			TermTrie copy = TermTrie.load(file);
+			assertTrue(copy.size() == 4,"wrong number of terms");
+			for(String term: Arrays.asList("carcinoma duct invas","carcinoma","breast carcinoma","lymph node"))
+				assertTrue(copy.contains(term),"term is missing after load: "+term);
+			assertTrue(!copy.contains("carcinoma duct"),"prefix should not be a term");
+			assertTrue(!copy.contains("lymph"),"prefix should not be a term");
+		}finally{
+			file.delete();
+		}
+	}
+
+	private static Set<String> codes(Concept [] concepts){
+		Set<String> codes = new TreeSet<String>();
+		for(Concept c: concepts)
+			codes.add(c.getCode());
+		return codes;
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		TermTrieTest test = new TermTrieTest();
+		test.testTrieMatch();
+		test.testSaveLoad();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,139 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Properties;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider;
+import edu.pitt.dbmi.nlp.noble.tools.ConText;
+
+public class TerminologyHelper {
+
+	/**
+	 * create small in-memory terminology
+	 * @return terminology
+	 * @throws TerminologyException
+	 */
+	public static NobleCoderTerminology createTerminology() throws TerminologyException{
+		NobleCoderTerminology terminology = new NobleCoderTerminology();
+		String [][] concepts = new String [][]{
+			{"C1","Invasive Ductal Carcinoma","IDC"},
+			{"C2","Carcinoma","cancer"},
+			{"C3","Breast"},
+			{"C4","Lymph Node"},
+			{"C5","Metastasis","metastases"},
+			{"C6","Deep Margin"},
+			{"C7","Margin"},
+			{"C8","Melanoma"},
+			{"C9","Breast Carcinoma","carcinoma of the breast"}};
+		for(String [] c: concepts){
+			Concept concept = new Concept(c[0],c[1]);
+			for(int i=2;i<c.length;i++)
+				concept.addSynonym(c[i]);
+			terminology.addConcept(concept);
+		}
+		return terminology;
+	}
+
+	/**
+	 * create a small modifier terminology that is setup the same way as ConText terminology
+	 * @return terminology
+	 * @throws TerminologyException
+	 */
+	public static NobleCoderTerminology createModifierTerminology() throws TerminologyException{
+		NobleCoderTerminology terminology = new NobleCoderTerminology();
+		terminology.setDefaultSearchMethod(NobleCoderTerminology.CUSTOM_MATCH);
+		terminology.setContiguousMode(true);
+		terminology.setSubsumptionMode(false);
+		terminology.setOverlapMode(true);
+		terminology.setPartialMode(false);
+		terminology.setOrderedMode(true);
+		terminology.setMaximumWordGap(0);
+		terminology.setScoreConcepts(false);
+		terminology.setHandlePossibleAcronyms(false);
+		terminology.setStemWords(false);
+		terminology.setStripStopWords(false);
+		terminology.setIgnoreSmallWords(false);
+		terminology.setIgnoreDigits(false);
+
+		// default values and groups
+		Concept polarity = new Concept(ConText.MODIFIER_TYPE_POLARITY,ConText.MODIFIER_TYPE_POLARITY);
+		polarity.addProperty(ConText.PROP_HAS_DEFAULT_VALUE,ConText.MODIFIER_VALUE_POSITIVE);
+		terminology.addConcept(polarity);
+		Concept negation = new Concept("DefiniteNegatedExistence","Definite Negated Existence");
+		negation.addRelatedConcept(Relation.getRelation(ConText.HAS_TERMINATION),"Conjunction");
+		negation.addRelatedConcept(Relation.getRelation(ConText.HAS_PSEUDO),"PseudoNegation");
+		negation.addProperty(ConText.PROP_WINDOW_SIZE,"6");
+		terminology.addConcept(negation);
+		terminology.addConcept(new Concept("Conjunction","Conjunction"));
+		terminology.addConcept(new Concept("PseudoNegation","Pseudo Negation"));
+		Concept family = new Concept("FamilyMember","Family Member");
+		family.addRelatedConcept(Relation.getRelation(ConText.HAS_TERMINATION),"Conjunction");
+		terminology.addConcept(family);
+
+		// modifiers
+		addModifier(terminology,"no_DefiniteNegatedExistence","no","DefiniteNegatedExistence",ConText.MODIFIER_TYPE_POLARITY,ConText.MODIFIER_VALUE_NEGATIVE,ConText.ACTION_FORWARD);
+		addModifier(terminology,"denies_DefiniteNegatedExistence","denies","DefiniteNegatedExistence",ConText.MODIFIER_TYPE_POLARITY,ConText.MODIFIER_VALUE_NEGATIVE,ConText.ACTION_FORWARD);
+		addModifier(terminology,"family_history_FamilyMember","family history","FamilyMember",ConText.MODIFIER_TYPE_EXPERIENCER,ConText.MODIFIER_VALUE_FAMILY_MEMBER,ConText.ACTION_FORWARD);
+
+		// terminators and pseudo modifiers
+		Concept but = new Concept("but_Conjunction","but");
+		but.addSemanticType(SemanticType.getSemanticType(ConText.SEMTYPE_INSTANCE));
+		but.addProperty(ConText.HAS_SENTENCE_ACTION,ConText.ACTION_TERMINATE);
+		but.addRelatedConcept(Relation.BROADER,"Conjunction");
+		terminology.addConcept(but);
+		Concept pseudo = new Concept("no_increase_PseudoNegation","no increase");
+		pseudo.addSemanticType(SemanticType.getSemanticType(ConText.SEMTYPE_INSTANCE));
+		pseudo.addSemanticType(SemanticType.getSemanticType(ConText.PSEUDO));
+		pseudo.addRelatedConcept(Relation.BROADER,"PseudoNegation");
+		terminology.addConcept(pseudo);
+		return terminology;
+	}
+
+	/**
+	 * add a modifier concept that is setup the same way as in ConText terminology
+	 * @param terminology - terminology
+	 * @param code - code of modifier
+	 * @param term - term
+	 * @param parent - code of parent concept
+	 * @param type - modifier type
+	 * @param value - modifier value
+	 * @param action - sentence action
+	 * @throws TerminologyException
+	 */
+	public static void addModifier(NobleCoderTerminology terminology, String code, String term, String parent, String type, String value, String action) throws TerminologyException{
+		Concept c = new Concept(code,term);
+		for(String st: Arrays.asList(ConText.SEMTYPE_INSTANCE,ConText.MODIFIER,ConText.LINGUISTIC_MODIFIER,type))
+			c.addSemanticType(SemanticType.getSemanticType(st));
+		c.addProperty(ConText.HAS_SENTENCE_ACTION,action);
+		c.addProperty(type,value);
+		c.addRelatedConcept(Relation.BROADER,parent);
+		terminology.addConcept(c);
+	}
+
+	/**
+	 * persist a small terminology in a given directory
+	 * @param dir - directory
+	 * @return location of terminology
+	 * @throws Exception
+	 */
+	public static File createTerminology(File dir) throws Exception {
+		File location = new File(dir,"test"+NobleCoderTerminology.TERM_SUFFIX);
+		location.mkdirs();
+		Properties p = new Properties();
+		p.setProperty(NobleCoderTerminology.STORAGE_BACKEND,StorageProvider.MEMORY);
+		FileWriter w = new FileWriter(new File(location,NobleCoderTerminology.SEARCH_PROPERTIES));
+		p.store(w,"Optional Search Options");
+		w.close();
+
+		NobleCoderTerminology memory = createTerminology();
+		NobleCoderTerminology terminology = new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),false);
+		for(String code: Arrays.asList("C1","C2","C3","C4","C5","C6","C7","C8","C9"))
+			terminology.addConcept(memory.lookupConcept(code));
+		terminology.getStorage().commit();
+		terminology.dispose();
+		return location;
+	}
+}
@@ -0,0 +1,123 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.TerminologyRegistry;
+import edu.pitt.dbmi.nlp.noble.util.FileTools;
+
+public class TerminologyRegistryTest {
+
+	/**
+	 * handles to the same location should share a single terminology that is disposed of with the last handle
+	 * @throws Exception
+	 */
+	public void testSharing() throws Exception {
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			File location = TerminologyHelper.createTerminology(dir);
+			TerminologyRegistry.Handle a = TerminologyRegistry.open(location);
+			TerminologyRegistry.Handle b = TerminologyRegistry.open(new File(dir,"test").getAbsolutePath());
+			TerminologyRegistry.Handle c = TerminologyRegistry.open(new File(new File(dir,"."),"test"+NobleCoderTerminology.TERM_SUFFIX));
+			assertTrue(a.getTerminology() == b.getTerminology() && b.getTerminology() == c.getTerminology(),"terminology was loaded more then once");
+			assertTrue(TerminologyRegistry.getReferenceCount(location) == 3,"wrong reference count");
+
+			// each handle has its own search options
+			Properties p = new Properties();
+			p.setProperty("default.search.method",NobleCoderTerminology.ALL_MATCH);
+			b.setSearchProperties(p);
+			assertTrue(NobleCoderTerminology.ALL_MATCH.equals(b.getSearchOptions().getSearchMethod()),"search options were not set");
+			assertTrue(!NobleCoderTerminology.ALL_MATCH.equals(a.getSearchOptions().getSearchMethod()),"search options are shared between handles");
+			assertTrue(!NobleCoderTerminology.ALL_MATCH.equals(a.getTerminology().getDefaultSearchMethod()),"shared terminology was changed");
+			assertTrue(a.search("invasive ductal carcinoma of the breast").length > 0,"nothing was found");
+
+			// closing twice should not release terminology
+			a.close();
+			a.close();
+			assertTrue(TerminologyRegistry.getReferenceCount(location) == 2,"handle was released twice");
+			b.close();
+			c.close();
+			assertTrue(TerminologyRegistry.getReferenceCount(location) == 0,"terminology was not released");
+
+			// next open should load it again
+			TerminologyRegistry.Handle d = TerminologyRegistry.open(location);
+			assertTrue(d.getTerminology() != a.getTerminology(),"disposed terminology was reused");
+			d.close();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * concurrent opens of the same location should load terminology once
+	 * @throws Exception
+	 */
+	public void testConcurrentOpen() throws Exception {
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try{
+			final File location = TerminologyHelper.createTerminology(dir);
+			List<Future<TerminologyRegistry.Handle>> futures = new ArrayList<Future<TerminologyRegistry.Handle>>();
+			for(int i=0;i<8;i++){
+				futures.add(pool.submit(new Callable<TerminologyRegistry.Handle>() {
+					public TerminologyRegistry.Handle call() throws Exception {
+						return TerminologyRegistry.open(location);
+					}
+				}));
+			}
+			List<TerminologyRegistry.Handle> handles = new ArrayList<TerminologyRegistry.Handle>();
+			for(Future<TerminologyRegistry.Handle> f: futures)
+				handles.add(f.get());
+			assertTrue(TerminologyRegistry.getReferenceCount(location) == 8,"wrong reference count");
+			for(TerminologyRegistry.Handle h: handles)
+				assertTrue(h.getTerminology() == handles.get(0).getTerminology(),"terminology was loaded more then once");
+			assertTrue(handles.get(0).search("invasive ductal carcinoma of the breast").length > 0,"nothing was found");
+			for(TerminologyRegistry.Handle h: handles)
+				h.close();
+			assertTrue(TerminologyRegistry.getReferenceCount(location) == 0,"terminology was not released");
+		}finally{
+			pool.shutdown();
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+		/**
+	 * missing terminology should not be registered
+	 * @throws Exception
+	 */
+	public void testMissing() throws Exception {
+		File dir = File.createTempFile("missing","");
+		dir.delete();
+		File location = new File(dir,"test"+NobleCoderTerminology.TERM_SUFFIX);
+		try{
+			TerminologyRegistry.open(location);
+			assertTrue(false,"missing terminology was opened");
+		}catch(java.io.FileNotFoundException ex){
+			assertTrue(TerminologyRegistry.getReferenceCount(location) == 0,"missing terminology was registered");
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		TerminologyRegistryTest test = new TerminologyRegistryTest();
+		test.testSharing();
+		test.testConcurrentOpen();
+		test.testMissing();
+		System.out.println("ok");
+	}
+}
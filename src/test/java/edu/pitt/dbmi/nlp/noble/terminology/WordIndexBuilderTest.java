@@ -0,0 +1,92 @@
+package edu.pitt.dbmi.nlp.noble.terminology;
+
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.WordIndexBuilder;
+import edu.pitt.dbmi.nlp.noble.util.FileTools;
+
+public class WordIndexBuilderTest {
+
+	private static File createDirectory() throws Exception {
+		File dir = File.createTempFile("words","");
+		dir.delete();
+		return dir;
+	}
+
+	private static void add(WordIndexBuilder words, String term) throws Exception {
+		for(String w: term.split(" "))
+			words.add(w,term);
+	}
+
+	/**
+	 * pairs spilled into many runs should merge into the same word tables
+	 * @throws Exception
+	 */
+	public void testLoad() throws Exception {
+		File dir = createDirectory();
+		try{
+			NobleCoderTerminology.Storage storage = new NobleCoderTerminology.Storage();
+			WordIndexBuilder words = new WordIndexBuilder(dir);
+			words.setBufferSize(2);
+			for(String term: Arrays.asList("lymph node","node","con/prn node","lymph node","melanoma"))
+				add(words,term);
+			assertTrue(words.flush() > 3,"buffer was not spilled: "+words.getRunCount());
+			words.load(new PropertyChangeSupport(this),storage,false,true);
+
+			assertTrue(storage.getWordMap().get("node").equals(new HashSet<String>(Arrays.asList("lymph node","node","con/prn node"))),"wrong terms "+storage.getWordMap().get("node"));
+			assertTrue(storage.getWordMap().get("con/prn").equals(new HashSet<String>(Arrays.asList("con/prn node"))),"word is not a valid file name");
+			assertTrue(storage.getWordStatMap().get("node").termCount == 4 && storage.getWordStatMap().get("node").isTerm,"wrong word stats for node");
+			assertTrue(storage.getWordStatMap().get("lymph").termCount == 2 && !storage.getWordStatMap().get("lymph").isTerm,"wrong word stats for lymph");
+			assertTrue(storage.totalTermsPerWord == 8 && storage.maxTermsPerWord == 4,"wrong totals "+storage.totalTermsPerWord+" "+storage.maxTermsPerWord);
+
+			// rarest word only
+			storage.getWordMap().clear();
+			words.load(new PropertyChangeSupport(this),storage,true,false);
+			assertTrue(storage.getWordMap().get("lymph").contains("lymph node") && !storage.getWordMap().get("node").contains("lymph node"),"term is not under its rarest word");
+			words.dispose();
+			assertTrue(!dir.exists(),"runs were not removed");
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * runs spilled after a checkpoint should be discarded on resume
+	 * @throws Exception
+	 */
+	public void testResume() throws Exception {
+		File dir = createDirectory();
+		try{
+			WordIndexBuilder words = new WordIndexBuilder(dir);
+			add(words,"lymph node");
+			int runs = words.flush();
+			add(words,"melanoma");
+			words.flush();
+
+			words = new WordIndexBuilder(dir,runs);
+			assertTrue(words.getRunCount() == runs,"wrong run count "+words.getRunCount());
+			NobleCoderTerminology.Storage storage = new NobleCoderTerminology.Storage();
+			words.load(new PropertyChangeSupport(this),storage,false,true);
+			assertTrue(storage.getWordMap().containsKey("lymph") && !storage.getWordMap().containsKey("melanoma"),"later run was not discarded");
+			words.dispose();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		WordIndexBuilderTest test = new WordIndexBuilderTest();
+		test.testLoad();
+		test.testResume();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,131 @@
+package edu.pitt.dbmi.nlp.noble.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.pitt.dbmi.nlp.noble.coder.model.Mention;
+import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyException;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyHelper;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+
+public class ConTextLexiconTest {
+	private static final List<String> TEXT = Arrays.asList(
+			"No melanoma but carcinoma of the breast.",
+			"There is no increase in melanoma.",
+			"Patient denies cancer, no lymph node metastasis.",
+			"Family history of breast carcinoma, no melanoma.",
+			"No no no margin.");
+
+	/**
+	 * compiled lexicon should find the same modifier mentions as regular dictionary lookup
+	 * @throws TerminologyException
+	 */
+	public void testMatch() throws TerminologyException {
+		NobleCoderTerminology terminology = TerminologyHelper.createModifierTerminology();
+		// overlapping and nested modifier phrases
+		TerminologyHelper.addModifier(terminology,"fh2","family history of","FamilyMember",ConText.MODIFIER_TYPE_EXPERIENCER,ConText.MODIFIER_VALUE_FAMILY_MEMBER,ConText.ACTION_FORWARD);
+		TerminologyHelper.addModifier(terminology,"ev","evidence","DefiniteNegatedExistence",ConText.MODIFIER_TYPE_POLARITY,ConText.MODIFIER_VALUE_POSITIVE,ConText.ACTION_FORWARD);
+		TerminologyHelper.addModifier(terminology,"no_evidence_of","no evidence of","DefiniteNegatedExistence",ConText.MODIFIER_TYPE_POLARITY,ConText.MODIFIER_VALUE_NEGATIVE,ConText.ACTION_FORWARD);
+		TerminologyHelper.addModifier(terminology,"history","history","FamilyMember",ConText.MODIFIER_TYPE_EXPERIENCER,ConText.MODIFIER_VALUE_FAMILY_MEMBER,ConText.ACTION_FORWARD);
+		TerminologyHelper.addModifier(terminology,"no_increase_in","no increase in","DefiniteNegatedExistence",ConText.MODIFIER_TYPE_POLARITY,ConText.MODIFIER_VALUE_NEGATIVE,ConText.ACTION_FORWARD);
+		TerminologyHelper.addModifier(terminology,"increase","increase","DefiniteNegatedExistence",ConText.MODIFIER_TYPE_POLARITY,ConText.MODIFIER_VALUE_POSITIVE,ConText.ACTION_FORWARD);
+
+		ConTextLexicon lexicon = new ConTextLexicon(terminology);
+		assertTrue(NobleCoderTerminology.TRIE_MATCH.equals(lexicon.getSearchOptions().getSearchMethod()),"lexicon does not use trie-match");
+		List<String> text = new ArrayList<String>(TEXT);
+		text.addAll(Arrays.asList(
+				"family history of cancer",
+				"no evidence of disease",
+				"Family history of no evidence of melanoma, no increase in family history.",
+				"There is no increase, no evidence, no history and no family history of no increase in melanoma."));
+		for(String t: text){
+			Set<String> expected = toString(terminology.process(new Sentence(t)).getMentions());
+			Set<String> actual = toString(lexicon.match(new Sentence(t)).getMentions());
+			assertTrue(expected.equals(actual),"lexicon found "+actual+" instead of "+expected+" in: "+t);
+		}
+		Set<String> actual = toString(lexicon.match(new Sentence(text.get(TEXT.size()+2))).getMentions());
+		assertTrue(actual.containsAll(Arrays.asList("family_history_FamilyMember 0:14","fh2 0:17")),"contained phrase was dropped: "+actual);
+		actual = toString(lexicon.match(new Sentence("no evidence of disease")).getMentions());
+		assertTrue(actual.contains("ev 3:11"),"contained phrase was dropped: "+actual);
+	}
+
+	/**
+	 * compiled entries should resolve parents, terminations and pseudo modifiers
+	 * @throws TerminologyException
+	 */
+	public void testEntries() throws TerminologyException {
+		NobleCoderTerminology terminology = TerminologyHelper.createModifierTerminology();
+		ConTextLexicon lexicon = new ConTextLexicon(terminology);
+		ConTextLexicon.Entry no = lexicon.getEntry(terminology.lookupConcept("no_DefiniteNegatedExistence"));
+		ConTextLexicon.Entry but = lexicon.getEntry(terminology.lookupConcept("but_Conjunction"));
+		ConTextLexicon.Entry pseudo = lexicon.getEntry(terminology.lookupConcept("no_increase_PseudoNegation"));
+		assertTrue(no.isModifier() && no.isLinguisticModifier() && !no.isQualifier() && !no.isTerminator(),"wrong modifier flags");
+		assertTrue(no.getWindowSize() == 6,"window size was not inherited from parent");
+		assertTrue(but.isTerminator() && but.isTerminatorOf(no) && !no.isTerminatorOf(no),"wrong terminator");
+		assertTrue(pseudo.isPseudo() && pseudo.isPseudoOf(no) && !but.isPseudoOf(no),"wrong pseudo modifier");
+		assertTrue(no == lexicon.getEntry(terminology.lookupConcept("no_DefiniteNegatedExistence")),"entry was not memoized");
+		assertTrue(new ConText(lexicon).getLexicon() == lexicon && new ConText(lexicon).getTerminology() == terminology,"lexicon was not shared");
+	}
+
+	/**
+	 * ConText should assign modifiers from a single lexicon pass
+	 * @throws TerminologyException
+	 */
+	public void testConText() throws TerminologyException {
+		NobleCoderTerminology anchors = TerminologyHelper.createTerminology();
+		ConText conText = new ConText(TerminologyHelper.createModifierTerminology());
+		String [][] expected = new String [][]{
+			{"Melanoma",ConText.MODIFIER_VALUE_NEGATIVE,"Breast Carcinoma",ConText.MODIFIER_VALUE_POSITIVE},
+			{"Melanoma",ConText.MODIFIER_VALUE_POSITIVE},
+			{"Carcinoma",ConText.MODIFIER_VALUE_NEGATIVE,"Metastasis",ConText.MODIFIER_VALUE_NEGATIVE}};
+		for(int i=0;i<expected.length;i++){
+			Sentence sentence = new Sentence(TEXT.get(i));
+			anchors.process(sentence);
+			conText.process(sentence);
+			for(int j=0;j<expected[i].length;j+=2){
+				Mention m = getMention(sentence,expected[i][j]);
+				assertTrue(m != null,"mention "+expected[i][j]+" was not found in: "+sentence.getText());
+				String value = m.getModifierValue(ConText.MODIFIER_TYPE_POLARITY);
+				assertTrue(expected[i][j+1].equals(value),"wrong polarity "+value+" of "+expected[i][j]+" in: "+sentence.getText());
+			}
+		}
+		Sentence sentence = new Sentence(TEXT.get(3));
+		anchors.process(sentence);
+		conText.process(sentence);
+		Mention m = getMention(sentence,"Breast Carcinoma");
+		assertTrue(ConText.MODIFIER_VALUE_FAMILY_MEMBER.equals(m.getModifierValue(ConText.MODIFIER_TYPE_EXPERIENCER)),"experiencer was not assigned");
+		assertTrue(ConText.MODIFIER_VALUE_POSITIVE.equals(m.getModifierValue(ConText.MODIFIER_TYPE_POLARITY)),"negation was applied before its position");
+	}
+
+	private static Mention getMention(Sentence sentence, String name){
+		for(Mention m: sentence.getMentions()){
+			if(name.equals(m.getConcept().getName()))
+				return m;
+		}
+		return null;
+	}
+
+	private static Set<String> toString(List<Mention> mentions){
+		Set<String> set = new TreeSet<String>();
+		for(Mention m: mentions)
+			set.add(m.getConcept().getCode()+" "+m.getStartPosition()+":"+m.getEndPosition());
+		return set;
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		ConTextLexiconTest test = new ConTextLexiconTest();
+		test.testMatch();
+		test.testEntries();
+		test.testConText();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,92 @@
+package edu.pitt.dbmi.nlp.noble.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.pitt.dbmi.nlp.noble.coder.model.Document;
+import edu.pitt.dbmi.nlp.noble.coder.model.Sentence;
+import edu.pitt.dbmi.nlp.noble.coder.processor.ReportProcessor;
+
+public class LineClassifierTest {
+	private static final String REPORT =
+			"FINAL DIAGNOSIS:\n"+
+			"A.  SKIN OF BACK, EXCISION:\n"+
+			"    1. MALIGNANT MELANOMA, CLARK LEVEL 4,\n"+
+			"      BRESLOW DEPTH 2 MM.\n"+
+			"----------\n"+
+			"Tumor size........2.1 cm\n"+
+			"\n"+
+			"The specimen is received in formalin and is serially sectioned\n"+
+			"and entirely submitted. Dr. Smith was notified vs. paged.\n";
+
+	/**
+	 * every line should get a single label
+	 */
+	public void testClassify() {
+		String [][] expected = new String [][]{
+			{"FINAL DIAGNOSIS:",Sentence.TYPE_HEADER},
+			{"A.  SKIN OF BACK, EXCISION:",Sentence.TYPE_BULLET},
+			{"    2. MALIGNANT MELANOMA",Sentence.TYPE_BULLET},
+			{"----------",Sentence.TYPE_DIVIDER},
+			{"Tumor size........2.1 cm",Sentence.TYPE_WORKSHEET},
+			{"Margins ( ) involved (X) uninvolved",Sentence.TYPE_WORKSHEET},
+			{"Tumor is present. Margins are clear.",Sentence.TYPE_PROSE},
+			{"margins are clear",Sentence.TYPE_LINE}};
+		for(String [] e: expected){
+			LineClassifier.Line line = LineClassifier.classify(e[0]);
+			assertTrue(e[1].equals(line.getType()),"wrong type "+line.getType()+" of: "+e[0]);
+		}
+		assertTrue(LineClassifier.classify("   ").isBlank(),"line is not blank");
+		assertTrue(LineClassifier.classify("is serially sectioned").isProseEnd(),"line should continue");
+		assertTrue(LineClassifier.classify("and entirely submitted.").isProseStart(),"line should be a continuation");
+		assertTrue(!LineClassifier.classify("entirely submitted.").isProseEnd(),"line should not continue");
+		assertTrue(LineClassifier.classify("MELANOMA, CLARK LEVEL 4,").isBulletEnd(),"bullet should continue");
+		assertTrue(LineClassifier.classify("  BRESLOW DEPTH 2 MM.").isBulletStart(),"line should be a bullet continuation");
+	}
+
+	/**
+	 * prose check should be the same as matching the whole text
+	 */
+	public void testProse() {
+		String pattern = ".*\\b[a-z]+(\\.|\\?|!)\\s+[A-Z][a-z]+\\b.*";
+		List<String> text = Arrays.asList("Tumor is present. Margins are clear.","Tumor is present.\nMargins are clear.",
+				"Tumor is present  here. Margins","Dr. Smith","vs. Fig. 1","is present!  Margins","is present.\r\nMargins\r\n");
+		for(String t: text)
+			assertTrue(t.matches(pattern) == LineClassifier.isProse(t),"wrong prose check for: "+t);
+	}
+
+	/**
+	 * sentences of a report should be labeled by line classifier
+	 * @throws Exception
+	 */
+	public void testSentences() throws Exception {
+		Document doc = new ReportProcessor().process(new Document(REPORT));
+		List<String> types = new ArrayList<String>();
+		for(Sentence s: doc.getSentences())
+			types.add(s.getSentenceType()+": "+s.getText().replaceAll("\\s+"," ").trim());
+		List<String> expected = Arrays.asList(
+				Sentence.TYPE_HEADER+": FINAL DIAGNOSIS:",
+				Sentence.TYPE_BULLET+": SKIN OF BACK, EXCISION:",
+				Sentence.TYPE_BULLET+": MALIGNANT MELANOMA, CLARK LEVEL 4, BRESLOW DEPTH 2 MM.",
+				Sentence.TYPE_DIVIDER+": ----------",
+				Sentence.TYPE_WORKSHEET+": Tumor size........2.1 cm",
+				Sentence.TYPE_PROSE+": The specimen is received in formalin and is serially sectioned and entirely submitted.",
+				Sentence.TYPE_PROSE+": Dr. Smith was notified vs. paged.");
+		assertTrue(expected.equals(types),"wrong sentences "+types);
+		assertTrue("2.1 cm".equals(doc.getProperties().get("Tumor size")),"property was not parsed "+doc.getProperties());
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		LineClassifierTest test = new LineClassifierTest();
+		test.testClassify();
+		test.testProse();
+		test.testSentences();
+		System.out.println("ok");
+	}
+}
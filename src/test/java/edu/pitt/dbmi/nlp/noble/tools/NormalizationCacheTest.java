@@ -0,0 +1,66 @@
+package edu.pitt.dbmi.nlp.noble.tools;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.pitt.dbmi.nlp.noble.terminology.Concept;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyHelper;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+
+public class NormalizationCacheTest {
+	private static final List<String> WORDS = Arrays.asList("Carcinomas","carcinomas","patient's","ER/PR","the","1.3","HER2-neu","nodes","of","Melanoma");
+
+	/**
+	 * cached values should be the same as computed ones for every combination of flags
+	 */
+	public void testEquivalence(){
+		NormalizationCache cache = new NormalizationCache(100);
+		for(int n=0;n<3;n++){
+			for(String w: WORDS){
+				for(int f=0;f<8;f++){
+					boolean stem = (f & 1) > 0, digits = (f & 2) > 0, stop = (f & 4) > 0;
+					assertTrue(cache.normalizeWords(w,stem,digits,stop).equals(TextTools.normalizeWords(w,stem,digits,stop)),"wrong words for "+w+" flags "+f);
+					assertTrue(cache.normalize(w,stem,digits,stop,true,false).equals(TextTools.normalize(w,stem,digits,stop,true,false)),"wrong term for "+w+" flags "+f);
+				}
+				assertTrue(cache.stem(w).equals(TextTools.stem(w)),"wrong stem for "+w);
+			}
+		}
+		// first pass misses, other two hit
+		assertTrue(cache.getMissCount() == WORDS.size()*17 && cache.getHitCount() == 2*WORDS.size()*17,"wrong statistics: "+cache);
+		assertTrue(cache.getHitRate() > 0.6,"wrong hit rate: "+cache.getHitRate());
+		cache.clear();
+		assertTrue(cache.getHitCount() == 0 && cache.getMissCount() == 0,"cache was not cleared");
+	}
+
+	/**
+	 * terminology searches should reuse normalized words
+	 * @throws Exception
+	 */
+	public void testTerminology() throws Exception{
+		NobleCoderTerminology terminology = TerminologyHelper.createTerminology();
+		NormalizationCache cache = new NormalizationCache(1000);
+		terminology.setNormalizationCache(cache);
+		Concept [] first = terminology.search("invasive ductal carcinoma of breast with lymph node metastasis");
+		long misses = cache.getMissCount();
+		Concept [] second = terminology.search("invasive ductal carcinoma of breast with lymph node metastasis");
+		assertTrue(first.length == second.length,"cached search returned different results");
+		assertTrue(cache.getMissCount() == misses && cache.getHitCount() > 0,"normalized words were not reused: "+cache);
+
+		// disabled cache should give the same result
+		terminology.setNormalizationCache(null);
+		Concept [] third = terminology.search("invasive ductal carcinoma of breast with lymph node metastasis");
+		assertTrue(Arrays.asList(first).equals(Arrays.asList(third)),"uncached search returned different results");
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		NormalizationCacheTest test = new NormalizationCacheTest();
+		test.testEquivalence();
+		test.testTerminology();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,59 @@
+package edu.pitt.dbmi.nlp.noble.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * compare speed of single pass word normalization with the regular expression version.
+ * Run as: java edu.pitt.dbmi.nlp.noble.tools.TextToolsBenchmark [iterations]
+ *
+ * @author tseytlin
+ */
+public class TextToolsBenchmark {
+	private static final List<String> TEXT = Arrays.asList(
+			"FINAL DIAGNOSIS:",
+			"A.	INVASIVE DUCTAL CARCINOMA IN UPPER OUTER QUADRANT, 1.3 CM IN GREATEST DIMENSION.",
+			"B.	NOTTINGHAM SCORE 8/9 (TUBULES 2, NUCLEAR GRADE 3, MITOTIC RATE 3).",
+			"The patient's lymph node(s) are negative for metastatic carcinoma (0/12).",
+			"Deep and peripheral margins are free of melanoma in-situ, closest margin is 0.5 cm.",
+			"ER/PR positive, HER2-neu 3+ by immunohistochemistry.");
+	private static int sink;
+
+	private static long run(List<String> words, int iterations, boolean regex){
+		long time = System.nanoTime();
+		for(int i=0;i<iterations;i++){
+			for(String w: words){
+				List<String> n = (regex)?TextTools.normalizeWordsRegex(w,true,true,true):TextTools.normalizeWords(w,true,true,true);
+				sink += n.size();
+			}
+		}
+		return System.nanoTime()-time;
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 */
+	public static void main(String[] args) {
+		int iterations = (args.length > 0)?Integer.parseInt(args[0]):20000;
+
+		// normalize every token, the same way getNormalizedWordMap() does
+		List<String> words = new ArrayList<String>();
+		for(String s: TEXT)
+			words.addAll(TextTools.getWords(s));
+
+		// warm up
+		run(words,iterations/10,true);
+		run(words,iterations/10,false);
+
+		long regex = run(words,iterations,true);
+		long single = run(words,iterations,false);
+		long calls = ((long)iterations)*words.size();
+		System.out.println("words per iteration: "+words.size()+", iterations: "+iterations);
+		System.out.println("regex normalizer:       "+(regex/calls)+" ns/word");
+		System.out.println("single pass normalizer: "+(single/calls)+" ns/word");
+		System.out.println("speedup: "+String.format("%.1f",((double)regex)/single)+"x (checksum "+sink+")");
+	}
+}
@@ -1,8 +1,10 @@
 package edu.pitt.dbmi.nlp.noble.tools;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 
 public class TextToolsTest {
 
@@ -45,6 +47,33 @@ public class TextToolsTest {
 		}
 	}
 	
+	/**
+	 * single pass normalizer should give exactly the same words as regular expressions
+	 */
+	public void testNormalizeWords(){
+		List<String> text = new ArrayList<String>(Arrays.asList("","   ","...","A","Patient's Name..................PatientX",
+				"B.	NOTTINGHAM SCORE 8/9 (TUBULES 2, NUCLEAR GRADE 3, MITOTIC RATE 3.",
+				"A.	INVASIVE DUCTAL CARCINOMA IN UPPER OUTER QUADRANT, 1.3 CM IN",
+				"Margin(s) and node(es) of patients' breast(ies) are .5 and 0.25_3 cm","don't a's's 1ab's x_ab's (s) abc",
+				"in-situ carcinoma, BRCA2 mutation; ER/PR+ HER2-neu 3+","Protégé naïve café"));
+		Random r = new Random(42);
+		String chars = "aAsSeEiI'()._1 ,-\t";
+		for(int i=0;i<20000;i++){
+			StringBuilder b = new StringBuilder();
+			for(int j=r.nextInt(12);j>=0;j--)
+				b.append(chars.charAt(r.nextInt(chars.length())));
+			text.add(b.toString());
+		}
+		for(String s: text){
+			for(int f=0;f<8;f++){
+				boolean stem = (f & 1) > 0, digits = (f & 2) > 0, stop = (f & 4) > 0;
+				List<String> expected = TextTools.normalizeWordsRegex(s,stem,digits,stop);
+				List<String> actual = TextTools.normalizeWords(s,stem,digits,stop);
+				if(!expected.equals(actual))
+					throw new AssertionError("normalized words differ for '"+s+"' "+stem+" "+digits+" "+stop+": "+expected+" vs "+actual);
+			}
+		}
+	}
 	
 	/**
 	 * The main method.
@@ -55,6 +84,7 @@ public class TextToolsTest {
 	public static void main(String [] s) throws Exception{
 		TextToolsTest t = new TextToolsTest();
 		t.testWordSplit();
+		t.testNormalizeWords();
 	}
 
 }
@@ -0,0 +1,84 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class AtomMapTest {
+
+	/**
+	 * atoms added in random order from several threads should all be found after build
+	 * @throws Exception
+	 */
+	public void testLookup() throws Exception {
+		File dir = File.createTempFile("atoms","");
+		dir.delete();
+		lookup(new AtomMap(dir),dir);
+	}
+
+	/**
+	 * atoms that do not fit into a single sorted run should be merged from several runs
+	 * @throws Exception
+	 */
+	public void testMerge() throws Exception {
+		File dir = File.createTempFile("atoms","");
+		dir.delete();
+		lookup(new AtomMap(dir,1000),dir);
+	}
+
+	private void lookup(final AtomMap map, File dir) throws Exception {
+		try{
+			final Map<String,String> expected = new HashMap<String,String>();
+			Random random = new Random(42);
+			for(int i=0;i<20000;i++)
+				expected.put("A"+random.nextInt(100000000),"C"+random.nextInt(10000000));
+			expected.put("A1","Cé");
+			final List<String> keys = new ArrayList<String>(expected.keySet());
+			Collections.shuffle(keys,random);
+
+			List<Thread> threads = new ArrayList<Thread>();
+			for(int t=0;t<4;t++){
+				final int offset = t;
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						try{
+							for(int i=offset;i<keys.size();i+=4)
+								map.put(keys.get(i),expected.get(keys.get(i)));
+						}catch(Exception ex){
+							throw new RuntimeException(ex);
+						}
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			for(Thread thread: threads)
+				thread.join();
+			map.build();
+
+			assertTrue(map.size() == expected.size(),"wrong size "+map.size());
+			for(String aui: keys)
+				assertTrue(expected.get(aui).equals(map.get(aui)),"wrong cui for "+aui+": "+map.get(aui));
+			assertTrue(map.get("A") == null && map.get("B1") == null && map.get("A1234567890") == null,"unknown atom was found");
+		}finally{
+			map.dispose();
+		}
+		assertTrue(!dir.exists(),"map files were not removed");
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		AtomMapTest test = new AtomMapTest();
+		test.testLookup();
+		test.testMerge();
+		System.out.println("ok");
+	}
+}
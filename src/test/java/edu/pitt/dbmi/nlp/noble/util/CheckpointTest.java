@@ -0,0 +1,53 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.File;
+
+import edu.pitt.dbmi.nlp.noble.terminology.impl.MemoryStorageProvider;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+
+public class CheckpointTest {
+
+	/**
+	 * fresh import should not look resumed after its own checkpoints, a checkpoint loaded from disk should
+	 * @throws Exception
+	 */
+	public void testResumed() throws Exception {
+		File dir = File.createTempFile("checkpoint","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			NobleCoderTerminology.Storage storage = new NobleCoderTerminology.Storage(new MemoryStorageProvider());
+			storage.load(dir,false);
+			Checkpoint checkpoint = new Checkpoint(storage,2);
+			assertTrue(!checkpoint.isResumed(),"fresh import is resumed");
+			checkpoint.done("MRSAB");
+			assertTrue(!checkpoint.isResumed(),"fresh import is resumed after first stage");
+			for(int i=1;i<=5;i++)
+				checkpoint.update("concepts","C"+i,i);
+			checkpoint.done("concepts");
+			checkpoint.update("words","w",1);
+			assertTrue(!checkpoint.isResumed(),"fresh import is resumed after several stages");
+			assertTrue(new File(dir,Checkpoint.CHECKPOINT_FILE).exists(),"checkpoint was not saved");
+
+			// import that was killed
+			checkpoint = new Checkpoint(storage,2);
+			assertTrue(checkpoint.isResumed() && checkpoint.isDone("concepts") && "C5".equals(checkpoint.getPosition("concepts")),"checkpoint was not loaded");
+			checkpoint.clear();
+			assertTrue(!checkpoint.isResumed() && !new File(dir,Checkpoint.CHECKPOINT_FILE).exists(),"checkpoint was not cleared");
+			storage.dispose();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		CheckpointTest test = new CheckpointTest();
+		test.testResumed();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,348 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import edu.pitt.dbmi.nlp.noble.mentions.model.OntologyHelper;
+import edu.pitt.dbmi.nlp.noble.ontology.IOntology;
+import edu.pitt.dbmi.nlp.noble.terminology.Concept;
+import edu.pitt.dbmi.nlp.noble.terminology.Relation;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.StorageProvider;
+
+public class ConceptImporterTest {
+
+	/**
+	 * write a small set of RRF files
+	 * @param dir - directory
+	 * @throws Exception
+	 */
+	public static void createRRF(File dir) throws Exception {
+		dir.mkdirs();
+		write(new File(dir,"MRSAB.RRF"),
+				"C1||||NCI|NCI|1|||||||||||||||||ENG|UTF-8|Y|Y|NCI Thesaurus|",
+				"C2||||MSH|MSH|1|||||||||||||||||ENG|UTF-8|Y|Y|MeSH|");
+		write(new File(dir,"MRCONSO.RRF"),
+				"C0000001|ENG|S|L2|PF|S2|Y|A2||||MSH|MH|D1|Malignant Melanoma|0|N||",
+				"C0000001|ENG|P|L1|PF|S1|Y|A1||||NCI|PT|N1|Melanoma|0|N||",
+				"C0000001|FRE|P|L3|PF|S3|Y|A3||||MSH|MH|D1|Mélanome|0|N||",
+				"C0000002|ENG|P|L4|PF|S4|Y|A4||||NCI|PT|N2|Skin Neoplasm|0|N||",
+				"C0000003|ENG|P|L5|PF|S5|Y|A5||||NCI|PT|N3|Obsolete Thing|0|O||",
+				"C0000004|ENG|P|L6|PF|S6|Y|A6||||NCI|PT|N4|Disease|0|N||",
+				"C0000005|ENG|P|L7|PF|S7|Y|A7||||SNOMEDCT|PT|123|Excluded Thing|0|N||");
+		write(new File(dir,"MRDEF.RRF"),
+				"C0000001|A1|AT1||NCI|A malignant tumor of melanocytes.|N||",
+				"C0000003|A5|AT2||NCI|Not imported.|N||");
+		write(new File(dir,"MRSTY.RRF"),
+				"C0000001|T191|B2.2.1.2.1.2|Neoplastic Process|AT3|256|",
+				"C0000002|T191|B2.2.1.2.1.2|Neoplastic Process|AT4|256|",
+				"C0000004|T047|B2.2.1.2.1|Disease or Syndrome|AT5|256|");
+		write(new File(dir,"MRHIER.RRF"),
+				"C0000001|A1|1|A4|NCI|isa|A6.A4|||",
+				"C0000002|A4|1|A6|NCI|isa|A6|||",
+				"C0000005|A7|1|A6|SNOMEDCT|isa|A6|||");
+	}
+
+	private static void write(File file, String ... lines) throws Exception {
+		Writer w = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+		for(String line: lines)
+			w.write(line+"\n");
+		w.close();
+	}
+
+	/**
+	 * write an OBO file with a tree of terms
+	 * @param file - file
+	 * @param count - number of terms
+	 * @throws Exception
+	 */
+	public static void createOBO(File file, int count) throws Exception {
+		Writer w = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+		w.write("format-version: 1.2\ndefault-namespace: test\n\n");
+		for(int i=0;i<count;i++){
+			w.write("[Term]\nid: TST:"+i+"\nname: lesion "+letters(i)+"\n");
+			w.write("synonym: \""+letters(i)+" tumor\" EXACT []\n");
+			if(i > 0)
+				w.write("is_a: TST:"+(i/10)+" ! lesion "+letters(i/10)+"\n");
+			w.write("\n");
+		}
+		w.close();
+	}
+
+	private static String letters(int n){
+		String s = "";
+		for(n = n+26; n > 0; n /= 26)
+			s = (char)('a'+n%26)+s;
+		return s;
+	}
+
+	private static NobleCoderTerminology loadOBO(File dir, File obo, int threadCount) throws Exception {
+		ConceptImporter importer = new ConceptImporter();
+		importer.setThreadCount(threadCount);
+		File location = new File(dir,"obo"+threadCount+NobleCoderTerminology.TERM_SUFFIX);
+		location.mkdirs();
+		Properties p = new Properties();
+		p.setProperty(NobleCoderTerminology.STORAGE_BACKEND,StorageProvider.MEMORY);
+		FileWriter w = new FileWriter(new File(location,NobleCoderTerminology.SEARCH_PROPERTIES));
+		p.store(w,"Optional Search Options");
+		w.close();
+		String name = new File(dir,"obo"+threadCount).getAbsolutePath();
+		NobleCoderTerminology terminology = new NobleCoderTerminology();
+		importer.loadOBO(terminology,Arrays.asList(obo),name);
+		terminology.dispose();
+		return new NobleCoderTerminology(name,true);
+	}
+
+	private static NobleCoderTerminology load(File dir, File rrf, Map<String,List<String>> params, final List<Object> progress) throws Exception {
+		return load(dir,rrf,params,new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent e) {
+				if(ConceptImporter.LOADING_PROGRESS.equals(e.getPropertyName()))
+					progress.add(e.getNewValue());
+			}
+		},Checkpoint.DEFAULT_INTERVAL);
+	}
+
+	private static NobleCoderTerminology load(File dir, File rrf, Map<String,List<String>> params, PropertyChangeListener listener, int checkpointInterval) throws Exception {
+		ConceptImporter importer = new ConceptImporter();
+		importer.setThreadCount(3);
+		importer.setCheckpointInterval(checkpointInterval);
+		importer.addPropertyChangeListener(listener);
+		
+		// JDBM defrag needs sun.nio.ch access on newer JVMs, so use memory backend
+		File location = new File(dir,"test"+NobleCoderTerminology.TERM_SUFFIX);
+		if(!location.exists()){
+			location.mkdirs();
+			Properties p = new Properties();
+			p.setProperty(NobleCoderTerminology.STORAGE_BACKEND,StorageProvider.MEMORY);
+			FileWriter w = new FileWriter(new File(location,NobleCoderTerminology.SEARCH_PROPERTIES));
+			p.store(w,"Optional Search Options");
+			w.close();
+		}
+		params.put("name",Arrays.asList(new File(dir,"test").getAbsolutePath()));
+		importer.loadRRF(new NobleCoderTerminology(),rrf,params);
+		return new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),true);
+	}
+
+	private static Set<String> codes(Concept [] concepts){
+		Set<String> codes = new HashSet<String>();
+		for(Concept c: concepts)
+			codes.add(c.getCode());
+		return codes;
+	}
+
+	/**
+	 * concepts should be assembled from all RRF files with filters applied
+	 * @throws Exception
+	 */
+	public void testLoadRRF() throws Exception {
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		NobleCoderTerminology terminology = null;
+		try{
+			File rrf = new File(dir,"rrf");
+			createRRF(rrf);
+			Map<String,List<String>> params = new HashMap<String,List<String>>();
+			params.put("languages",Arrays.asList("ENG"));
+			params.put("sources",Arrays.asList("NCI","MSH"));
+			List<Object> progress = Collections.synchronizedList(new ArrayList<Object>());
+			terminology = load(dir,rrf,params,progress);
+
+			assertTrue(terminology.lookupConcept("C0000003") == null,"obsolete concept was imported");
+			assertTrue(terminology.lookupConcept("C0000005") == null,"filtered source was imported");
+			Concept c = terminology.lookupConcept("C0000001");
+			assertTrue(c != null && "Melanoma".equals(c.getName()),"wrong concept "+c);
+			assertTrue(new HashSet<String>(Arrays.asList(c.getSynonyms())).equals(new HashSet<String>(Arrays.asList("Melanoma","Malignant Melanoma"))),"wrong synonyms "+Arrays.toString(c.getSynonyms()));
+			assertTrue(c.getDefinitions().length == 1 && c.getDefinition().startsWith("A malignant tumor"),"wrong definitions "+Arrays.toString(c.getDefinitions()));
+			assertTrue(c.getSemanticTypes().length == 1 && "T191".equals(c.getSemanticTypes()[0].getCode()),"wrong semantic types "+Arrays.toString(c.getSemanticTypes()));
+			assertTrue(codes(c.getRelatedConcepts(Relation.BROADER)).equals(Collections.singleton("C0000002")),"wrong parents of "+c.getCode());
+			assertTrue(codes(terminology.lookupConcept("C0000002").getRelatedConcepts(Relation.NARROWER)).equals(Collections.singleton("C0000001")),"wrong children of C0000002");
+			assertTrue(codes(terminology.lookupConcept("C0000004").getRelatedConcepts(Relation.NARROWER)).equals(Collections.singleton("C0000002")),"wrong children of C0000004");
+			assertTrue(codes(terminology.getRootConcepts()).equals(Collections.singleton("C0000004")),"wrong roots "+codes(terminology.getRootConcepts()));
+			assertTrue(terminology.search("malignant melanoma").length > 0,"imported terms were not indexed");
+
+			// progress values should still read as integers
+			assertTrue(!progress.isEmpty(),"no progress was reported");
+			for(Object o: progress)
+				Integer.parseInt(""+o);
+			boolean rate = false;
+			for(Object o: progress)
+				rate |= o instanceof ConceptImporter.Progress && ((ConceptImporter.Progress)o).getRowsPerSecond() > 0;
+			assertTrue(rate,"rows per second was not reported");
+			terminology.dispose();
+
+			// semantic type filter
+			FileTools.deleteDirectory(new File(dir,"test"+NobleCoderTerminology.TERM_SUFFIX));
+			params.put("semanticTypes",Arrays.asList("T047"));
+			terminology = load(dir,rrf,params,progress);
+			assertTrue(terminology.lookupConcept("C0000004") != null,"semantic type was not imported");
+			assertTrue(terminology.lookupConcept("C0000001") == null && terminology.lookupConcept("C0000002") == null,"semantic type filter was ignored");
+		}finally{
+			if(terminology != null)
+				terminology.dispose();
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * import that was interrupted should continue from its last checkpoint
+	 * @throws Exception
+	 */
+	public void testResume() throws Exception {
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		NobleCoderTerminology terminology = null;
+		try{
+			File rrf = new File(dir,"rrf");
+			createRRF(rrf);
+			Map<String,List<String>> params = new HashMap<String,List<String>>();
+			params.put("languages",Arrays.asList("ENG"));
+			params.put("sources",Arrays.asList("NCI","MSH"));
+
+			// interrupt import after first concept was built
+			try{
+				load(dir,rrf,params,new PropertyChangeListener() {
+					private boolean building;
+					public void propertyChange(PropertyChangeEvent e) {
+						if(ConceptImporter.LOADING_MESSAGE.equals(e.getPropertyName()))
+							building = "Building Concepts ...".equals(e.getNewValue());
+						else if(building && ConceptImporter.LOADING_PROGRESS.equals(e.getPropertyName()) && ((Number)e.getNewValue()).intValue() > 4)
+							throw new IllegalStateException("killed");
+					}
+				},1);
+				assertTrue(false,"import was not interrupted");
+			}catch(IllegalStateException ex){
+				// expected
+			}
+			File checkpoint = new File(new File(dir,"test"+NobleCoderTerminology.TERM_SUFFIX),Checkpoint.CHECKPOINT_FILE);
+			assertTrue(checkpoint.exists(),"checkpoint was not saved");
+
+			// pretend that a concept after the checkpoint was written partially before the kill
+			Properties saved = new Properties();
+			FileInputStream in = new FileInputStream(checkpoint);
+			saved.load(in);
+			in.close();
+			String partial = null;
+			for(String cui: Arrays.asList("C0000001","C0000002","C0000004")){
+				if(partial == null && cui.compareTo(saved.getProperty("concepts.position","")) > 0)
+					partial = cui;
+			}
+			if(partial != null){
+				NobleCoderTerminology t = new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),false);
+				t.getStorage().getConceptMap().put(partial,new Concept(partial,"Partial").getContent());
+				t.getStorage().commit();
+				t.dispose();
+			}
+
+			// resume
+			final List<Object> messages = new ArrayList<Object>();
+			terminology = load(dir,rrf,params,new PropertyChangeListener() {
+				public void propertyChange(PropertyChangeEvent e) {
+					if(ConceptImporter.LOADING_MESSAGE.equals(e.getPropertyName()))
+						messages.add(e.getNewValue());
+				}
+			},1);
+			assertTrue(messages.contains("Resuming import from the last checkpoint ..."),"import was not resumed");
+			assertTrue(!checkpoint.exists(),"checkpoint was not removed");
+			for(String cui: Arrays.asList("C0000001","C0000002","C0000004"))
+				assertTrue(terminology.lookupConcept(cui) != null,"concept "+cui+" was lost");
+			assertTrue(partial == null || !"Partial".equals(terminology.lookupConcept(partial).getName()),"partially written concept "+partial+" was not rebuilt");
+			assertTrue(terminology.lookupConcept("C0000003") == null,"obsolete concept was imported");
+			assertTrue(codes(terminology.lookupConcept("C0000004").getRelatedConcepts(Relation.NARROWER)).equals(Collections.singleton("C0000002")),"wrong children of C0000004");
+			assertTrue(codes(terminology.getRootConcepts()).equals(Collections.singleton("C0000004")),"wrong roots "+codes(terminology.getRootConcepts()));
+			assertTrue(terminology.search("malignant melanoma").length > 0 && terminology.search("disease").length > 0,"terms were not indexed");
+		}finally{
+			if(terminology != null)
+				terminology.dispose();
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * parallel OBO import should give the same terminology as a single threaded one
+	 * @throws Exception
+	 */
+	public void testLoadOBO() throws Exception {
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		NobleCoderTerminology serial = null, parallel = null;
+		try{
+			File obo = new File(dir,"test.obo");
+			createOBO(obo,2500);
+			serial = loadOBO(dir,obo,1);
+			parallel = loadOBO(dir,obo,4);
+
+			assertTrue(parallel.getAllConcepts().size() == 2500,"wrong concept count "+parallel.getAllConcepts().size());
+			assertTrue(codes(parallel.getRootConcepts()).equals(Collections.singleton("TST:0")),"wrong roots "+codes(parallel.getRootConcepts()));
+			Concept c = parallel.lookupConcept("TST:1234");
+			assertTrue(c != null && c.getName().equals("lesion "+letters(1234)),"wrong concept "+c);
+			assertTrue(codes(c.getRelatedConcepts(Relation.BROADER)).equals(Collections.singleton("TST:123")),"wrong parents of "+c.getCode());
+			assertTrue(parallel.getStorage().getTermMap().equals(serial.getStorage().getTermMap()),"parallel import has different terms");
+			assertTrue(parallel.getStorage().getWordMap().equals(serial.getStorage().getWordMap()),"parallel import has different words");
+			for(int i: Arrays.asList(0,7,999,1000,2499)){
+				Set<String> found = codes(parallel.search(letters(i)+" tumor"));
+				assertTrue(found.contains("TST:"+i) && found.equals(codes(serial.search(letters(i)+" tumor"))),"wrong search result for "+letters(i)+": "+found);
+			}
+		}finally{
+			if(serial != null)
+				serial.dispose();
+			if(parallel != null)
+				parallel.dispose();
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * classes and instances of an ontology should be converted in parallel
+	 * @throws Exception
+	 */
+	public void testLoadOntology() throws Exception {
+		IOntology ontology = OntologyHelper.createOntology();
+		ConceptImporter importer = new ConceptImporter();
+		importer.setInMemory(true);
+		importer.setThreadCount(4);
+		NobleCoderTerminology terminology = new NobleCoderTerminology();
+		try{
+			importer.loadOntology(terminology,ontology);
+			int count = ontology.getRoot().getSubClasses().length+2;
+			assertTrue(terminology.getAllConcepts().size() == count,"wrong concept count "+terminology.getAllConcepts().size());
+			assertTrue(terminology.lookupConcept("Left") != null,"instance was not imported");
+			Concept c = terminology.lookupConcept("DuctalCarcinoma");
+			assertTrue(c != null && codes(c.getRelatedConcepts(Relation.BROADER)).equals(Collections.singleton("Carcinoma")),"wrong concept "+c);
+			assertTrue(codes(terminology.search("ductal carcinoma")).contains("DuctalCarcinoma"),"classes were not indexed");
+		}finally{
+			terminology.dispose();
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		ConceptImporterTest test = new ConceptImporterTest();
+		test.testLoadRRF();
+		test.testResume();
+		test.testLoadOBO();
+		test.testLoadOntology();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,179 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.pitt.dbmi.nlp.noble.terminology.Concept;
+import edu.pitt.dbmi.nlp.noble.terminology.Relation;
+import edu.pitt.dbmi.nlp.noble.terminology.TerminologyHelper;
+import edu.pitt.dbmi.nlp.noble.terminology.impl.NobleCoderTerminology;
+
+public class ConcurrentCacheTest {
+
+	/**
+	 * cache should never grow past its limit and should count hits and misses
+	 */
+	public void testBounds(){
+		ConcurrentCache<Integer,String> cache = new ConcurrentCache<Integer,String>(100);
+		for(int i=0;i<1000;i++){
+			if(cache.get(i) == null)
+				cache.put(i,"value"+i);
+		}
+		assertTrue(cache.size() <= 100,"cache exceeded its limit: "+cache.size());
+		assertTrue(cache.getMissCount() == 1000 && cache.getHitCount() == 0,"wrong statistics: "+cache);
+		assertTrue(cache.getEvictionCount() == 900,"wrong eviction count: "+cache);
+
+		// repeated overwrites should not leak
+		for(int i=0;i<10000;i++)
+			cache.put(1,"value"+i);
+		assertTrue(cache.size() <= 100 && "value9999".equals(cache.get(1)),"overwrite failed: "+cache);
+		cache.clear();
+		assertTrue(cache.size() == 0 && cache.getWeightedSize() == 0,"cache was not cleared");
+	}
+
+	/**
+	 * frequently used entries should survive a scan of one-off keys
+	 */
+	public void testAdmission(){
+		ConcurrentCache<Integer,String> cache = new ConcurrentCache<Integer,String>(100);
+		for(int n=0;n<10;n++){
+			for(int i=0;i<50;i++){
+				if(cache.get(i) == null)
+					cache.put(i,"hot"+i);
+			}
+		}
+		for(int i=1000;i<2000;i++){
+			if(cache.get(i) == null)
+				cache.put(i,"cold"+i);
+		}
+		int hot = 0;
+		for(int i=0;i<50;i++){
+			if(cache.get(i) != null)
+				hot ++;
+		}
+		assertTrue(hot == 50,"hot entries were evicted by a scan: "+hot);
+	}
+
+	/**
+	 * weights should limit total size instead of entry count
+	 */
+	public void testWeights(){
+		ConcurrentCache<String,String> cache = new ConcurrentCache<String,String>(100);
+		cache.setWeigher(new ConcurrentCache.Weigher<String, String>() {
+			public int getWeight(String key, String value) {
+				return value.length();
+			}
+		});
+		for(int i=0;i<100;i++)
+			cache.put("key"+i,"0123456789");
+		assertTrue(cache.getWeightedSize() <= 100 && cache.size() <= 10,"weight limit was exceeded: "+cache);
+		cache.put("big",new String(new char [101]));
+		assertTrue(cache.get("big") == null,"entry larger then cache was added");
+
+		// oversized value should not leave a stale value of the same key behind
+		cache.put("key99","0123456789");
+		assertTrue("0123456789".equals(cache.get("key99")),"entry was not added");
+		long weight = cache.getWeightedSize();
+		cache.put("key99",new String(new char [101]));
+		assertTrue(cache.get("key99") == null,"stale entry was kept for an oversized value");
+		assertTrue(cache.getWeightedSize() == weight-10,"weight of stale entry was not released: "+cache);
+	}
+
+	/**
+	 * cache should stay consistent when shared by several threads
+	 * @throws Exception
+	 */
+	public void testThreads() throws Exception{
+		final ConcurrentCache<Integer,Integer> cache = new ConcurrentCache<Integer,Integer>(500);
+		final AtomicInteger errors = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t=0;t<4;t++){
+			final int seed = t;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					for(int i=0;i<50000;i++){
+						int key = (i*(seed+7)) % 2000;
+						Integer v = cache.get(key);
+						if(v == null)
+							cache.put(key,key);
+						else if(v.intValue() != key)
+							errors.incrementAndGet();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for(Thread t: threads)
+			t.join();
+		assertTrue(errors.get() == 0,"wrong values were returned");
+		assertTrue(cache.size() <= 500+threads.size(),"cache exceeded its limit: "+cache.size());
+		assertTrue(cache.getHitCount()+cache.getMissCount() == 200000,"lost statistics: "+cache);
+	}
+
+	/**
+	 * persisted terminology should serve repeated concept lookups from the cache
+	 * @throws Exception
+	 */
+	public void testConceptCache() throws Exception{
+		File dir = File.createTempFile("terminology","");
+		dir.delete();
+		dir.mkdirs();
+		try{
+			NobleCoderTerminology memory = TerminologyHelper.createTerminology();
+			assertTrue(memory.getConceptCache() == null,"in-memory terminology should not be cached");
+			NobleCoderTerminology terminology = new NobleCoderTerminology(new File(dir,"test").getAbsolutePath(),false);
+			for(String code: Arrays.asList("C1","C2","C3")){
+				Concept c = memory.lookupConcept(code).clone();
+				c.addRelatedConcept(Relation.NARROWER,"C4");
+				c.getProperties().setProperty("source","test");
+				terminology.addConcept(c);
+			}
+			for(int i=0;i<10;i++){
+				Concept c = terminology.lookupConcept("C1");
+				assertTrue(c != null && c.getName().equals(memory.lookupConcept("C1").getName()),"wrong concept was returned");
+			}
+			ConcurrentCache cache = terminology.getConceptCache();
+			assertTrue(cache.getMissCount() == 1 && cache.getHitCount() == 9,"concept lookups were not cached: "+cache);
+
+			// concepts created from cached content should not share relations or properties
+			Concept c = terminology.lookupConcept("C1");
+			c.addRelatedConcept(Relation.BROADER,"C2");
+			c.getRelationMap().get(Relation.NARROWER.getName()).add("C3");
+			c.getProperties().setProperty("status","changed");
+			c = terminology.lookupConcept("C1");
+			assertTrue(!c.getRelationMap().containsKey(Relation.BROADER.getName()) && c.getRelationMap().get(Relation.NARROWER.getName()).size() == 1 && c.getProperties().size() == 1,"cached content was modified");
+
+			// writes straight to concept table should invalidate cache
+			Map<String,Concept.Content> concepts = terminology.getStorage().getConceptMap();
+			Concept.Content content = concepts.get("C1");
+			content.name = "Renamed";
+			concepts.put("C1",content);
+			assertTrue("Renamed".equals(terminology.lookupConcept("C1").getName()),"stale concept after put");
+			concepts.remove("C1");
+			assertTrue(terminology.lookupConcept("C1") == null,"stale concept after remove");
+			terminology.dispose();
+		}finally{
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		ConcurrentCacheTest test = new ConcurrentCacheTest();
+		test.testBounds();
+		test.testAdmission();
+		test.testWeights();
+		test.testThreads();
+		test.testConceptCache();
+		System.out.println("ok");
+	}
+}
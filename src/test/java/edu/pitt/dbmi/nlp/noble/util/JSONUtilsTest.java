@@ -0,0 +1,98 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JSONUtilsTest {
+
+	/**
+	 * parsed values should have expected types
+	 * @throws Exception
+	 */
+	public void testParse() throws Exception {
+		Object o = JSONUtils.parse(" {\"documents\": [\"text\", {\"id\": 12, \"text\": \"a \\\"b\\\"\\n\\u00e9\"}], \"n\": -1.5e2, \"ok\": true, \"x\": null, \"e\": {}, \"l\": []} ");
+		assertTrue(o instanceof Map,"object was not parsed into a map");
+		Map m = (Map) o;
+		List docs = (List) m.get("documents");
+		assertTrue("text".equals(docs.get(0)),"wrong string "+docs.get(0));
+		Map doc = (Map) docs.get(1);
+		assertTrue(Long.valueOf(12).equals(doc.get("id")),"wrong integer "+doc.get("id"));
+		assertTrue("a \"b\"\n\u00e9".equals(doc.get("text")),"wrong escapes "+doc.get("text"));
+		assertTrue(Double.valueOf(-150).equals(m.get("n")),"wrong number "+m.get("n"));
+		assertTrue(Boolean.TRUE.equals(m.get("ok")) && m.containsKey("x") && m.get("x") == null,"wrong literals");
+		assertTrue(((Map)m.get("e")).isEmpty() && ((List)m.get("l")).isEmpty(),"wrong empty values");
+	}
+
+	/**
+	 * invalid JSON should be rejected
+	 */
+	public void testInvalid() {
+		for(String s: Arrays.asList("","{","[1,]","{\"a\" 1}","\"abc","[1] 2","tru","{\"a\":\"\\x\"}")){
+			try{
+				JSONUtils.parse(s);
+				assertTrue(false,"invalid JSON was parsed: "+s);
+			}catch(IOException ex){
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * deeply nested JSON should be rejected before it exhausts the stack
+	 * @throws Exception
+	 */
+	public void testDepth() throws Exception {
+		StringBuilder b = new StringBuilder();
+		for(int i=0;i<JSONUtils.MAX_DEPTH;i++)
+			b.append(i%2 == 0?"[":"{\"a\":");
+		b.append("1");
+		for(int i=JSONUtils.MAX_DEPTH-1;i>=0;i--)
+			b.append(i%2 == 0?"]":"}");
+		assertTrue(JSONUtils.parse(b.toString()) instanceof List,"nesting within limit was rejected");
+		assertTrue(JSONUtils.parse("[[1],[2],[[3]]]").equals(Arrays.asList(Arrays.asList(1L),Arrays.asList(2L),Arrays.asList(Arrays.asList(3L)))),"depth was not restored after nested value");
+
+		b = new StringBuilder();
+		for(int i=0;i<100000;i++)
+			b.append("[");
+		try{
+			JSONUtils.parse(b.toString());
+			assertTrue(false,"deeply nested JSON was parsed");
+		}catch(IOException ex){
+			assertTrue(ex.getMessage().contains("nested"),"wrong error "+ex.getMessage());
+		}
+	}
+
+	/**
+	 * written JSON should parse back into the same values
+	 * @throws Exception
+	 */
+	public void testWrite() throws Exception {
+		Map<String,Object> m = new LinkedHashMap<String,Object>();
+		m.put("text","line\none\ttab \"quote\" \\ \u0001 \u2028");
+		m.put("list",Arrays.asList(1L,"two",null,Boolean.FALSE));
+		m.put("array",new String [] {"a","b"});
+		String json = JSONUtils.toString(m);
+		assertTrue(!json.contains("\n") && !json.contains("\u2028"),"line breaks were not escaped: "+json);
+		Map p = (Map) JSONUtils.parse(json);
+		assertTrue(m.get("text").equals(p.get("text")),"wrong text "+p.get("text"));
+		assertTrue(m.get("list").equals(p.get("list")),"wrong list "+p.get("list"));
+		assertTrue(Arrays.asList("a","b").equals(p.get("array")),"wrong array "+p.get("array"));
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		JSONUtilsTest test = new JSONUtilsTest();
+		test.testParse();
+		test.testInvalid();
+		test.testDepth();
+		test.testWrite();
+		System.out.println("ok");
+	}
+}
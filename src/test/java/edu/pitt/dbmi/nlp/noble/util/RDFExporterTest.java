@@ -0,0 +1,90 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.File;
+import java.util.Set;
+
+import edu.pitt.dbmi.nlp.noble.mentions.model.Composition;
+import edu.pitt.dbmi.nlp.noble.mentions.model.DomainOntology;
+import edu.pitt.dbmi.nlp.noble.mentions.model.OntologyHelper;
+import edu.pitt.dbmi.nlp.noble.ontology.IInstance;
+import edu.pitt.dbmi.nlp.noble.ontology.IOntology;
+import edu.pitt.dbmi.nlp.noble.ontology.IProperty;
+
+public class RDFExporterTest {
+
+	/**
+	 * create a document with a tumor that references shared instances
+	 * @param domainOntology - domain ontology
+	 * @param title - document title
+	 * @return document
+	 */
+	private static Composition createDocument(DomainOntology domainOntology, String title){
+		IOntology ont = domainOntology.getOntology();
+		Composition doc = new Composition("Left ductal carcinoma.");
+		doc.setDomainOntology(domainOntology);
+		doc.setTitle(title);
+		IInstance tumor = DomainOntology.createInstance(ont.getClass("DuctalCarcinoma"));
+		tumor.addPropertyValue(ont.getProperty("hasLaterality"),ont.getInstance("Left"));
+		tumor.addPropertyValue(ont.getProperty("hasNegation"),DomainOntology.getDefaultInstance(ont.getClass("Negation")));
+		doc.getInstance().addPropertyValue(ont.getProperty(DomainOntology.HAS_MENTION_ANNOTATION),tumor);
+		return doc;
+	}
+
+	/**
+	 * exported documents should release their instances and keep shared ones
+	 * @throws Exception
+	 */
+	public void testExport() throws Exception {
+		IOntology ont = OntologyHelper.createOntology();
+		ont.getRoot().createSubClass(DomainOntology.COMPOSITION);
+		ont.createProperty(DomainOntology.HAS_TITLE,IProperty.DATATYPE);
+		ont.createProperty(DomainOntology.HAS_MENTION_ANNOTATION,IProperty.OBJECT);
+		ont.createProperty("hasLaterality",IProperty.OBJECT);
+		ont.createProperty("hasNegation",IProperty.OBJECT);
+		DomainOntology domainOntology = new DomainOntology(ont);
+		domainOntology.getTypeIndex();
+
+		File file = File.createTempFile("RESULTS",".nt");
+		try{
+			RDFExporter exporter = new RDFExporter(file);
+			for(int i=0;i<3;i++){
+				Composition doc = createDocument(domainOntology,"report"+i+".txt");
+				Set<IInstance> instances = doc.getDocumentInstances();
+				assertTrue(instances.size() == 2,"wrong document instances "+instances);
+				exporter.export(doc);
+				doc.dispose();
+				for(IInstance inst: instances)
+					assertTrue(ont.getInstance(inst.getName()) == null,"instance was not released "+inst);
+			}
+			exporter.flush();
+			assertTrue(ont.getInstance("Left") != null && ont.getInstance("Negation_Instance") != null,"shared instance was removed");
+
+			String text = FileTools.getText(file);
+			String [] lines = text.split("\n");
+			int titles = 0, types = 0;
+			for(String line: lines){
+				assertTrue(line.startsWith("<") && line.endsWith(" ."),"invalid statement "+line);
+				if(line.contains(DomainOntology.HAS_TITLE))
+					titles++;
+				if(line.startsWith("<"+ont.getInstance("Negation_Instance").getURI()+">"))
+					types++;
+			}
+			assertTrue(titles == 3,"wrong number of documents: "+titles);
+			assertTrue(types == 1,"shared instance was written more then once: "+types);
+			assertTrue(text.contains("\"report1.txt\""),"title literal was not written");
+		}finally{
+			file.delete();
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		RDFExporterTest test = new RDFExporterTest();
+		test.testExport();
+		System.out.println("ok");
+	}
+}
@@ -0,0 +1,83 @@
+package edu.pitt.dbmi.nlp.noble.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class RRFSorterTest {
+
+	/**
+	 * rows split across many small chunks should come back grouped by CUI and in file order
+	 * @throws Exception
+	 */
+	public void testSort() throws Exception {
+		File dir = File.createTempFile("rrf","");
+		dir.delete();
+		dir.mkdirs();
+		RRFSorter sorter = new RRFSorter(new File(dir,"runs"),4);
+		try{
+			// write rows with mixed line endings and non-ascii text
+			File file = new File(dir,"MRTEST.RRF");
+			Random random = new Random(7);
+			List<String> expected = new ArrayList<String>();
+			Writer w = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+			for(int i=0;i<2000;i++){
+				String cui = "C"+random.nextInt(300);
+				int type = random.nextInt(3);
+				String text = "row "+i+((i%5 == 0)?" éè":"");
+				w.write(cui+"|"+type+"|"+text+"|"+((i%7 == 0)?"\r\n":"\n"));
+				expected.add(cui+"|"+type+"|"+text);
+			}
+			w.close();
+
+			sorter.setChunkSize(333);
+			sorter.add(file,new RRFSorter.RowHandler() {
+				public void parse(String[] fields, long position, List<RRFSorter.Record> records) {
+					records.add(new RRFSorter.Record(fields[0],Integer.parseInt(fields[1]),position,fields[2]));
+				}
+			});
+			assertTrue(sorter.await(60000),"sorting did not finish");
+			assertTrue(sorter.getRowCount() == 2000 && sorter.getRecordCount() == 2000,"wrong row count "+sorter.getRowCount());
+
+			List<String> actual = new ArrayList<String>();
+			Set<String> cuis = new HashSet<String>();
+			String previous = null;
+			for(List<RRFSorter.Record> group = sorter.next(); group != null; group = sorter.next()){
+				String cui = group.get(0).getCui();
+				assertTrue(cuis.add(cui),"CUI "+cui+" was returned in more then one group");
+				assertTrue(previous == null || previous.compareTo(cui) < 0,"groups are out of order");
+				for(int i=0;i<group.size();i++){
+					RRFSorter.Record r = group.get(i);
+					assertTrue(cui.equals(r.getCui()),"wrong record "+r+" in group "+cui);
+					assertTrue(i == 0 || group.get(i-1).compareTo(r) < 0,"records are out of order in group "+cui);
+					actual.add(r.getCui()+"|"+r.getType()+"|"+r.getValue(0));
+				}
+				previous = cui;
+			}
+			Collections.sort(expected);
+			Collections.sort(actual);
+			assertTrue(expected.equals(actual),"rows were lost or changed");
+		}finally{
+			sorter.dispose();
+			FileTools.deleteDirectory(dir);
+		}
+	}
+
+	private static void assertTrue(boolean b, String message){
+		if(!b)
+			throw new AssertionError(message);
+	}
+
+	public static void main(String[] args) throws Exception {
+		RRFSorterTest test = new RRFSorterTest();
+		test.testSort();
+		System.out.println("ok");
+	}
+}